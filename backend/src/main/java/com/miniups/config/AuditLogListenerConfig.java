@@ -0,0 +1,57 @@
+/**
+ * Audit Log Listener Configuration
+ *
+ * Functionality:
+ * - Provides auditLogContainerFactory, the batch listener container factory used by
+ *   AuditLogConsumer: up to batch-size messages per listener call, prefetch the same,
+ *   and a partial batch once receive-timeout-ms passes without a new message
+ * - Manual acknowledgment and no retry interceptor; the consumer acks, rejects and
+ *   retries itself
+ *
+ * Kept apart from RabbitMQConfig, and under the same conditions as the consumer, so
+ * the factory exists wherever the listener is registered, including test contexts
+ * that run Rabbit auto-configuration without RabbitMQConfig.
+ *
+ *
+
+ */
+package com.miniups.config;
+
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+@Configuration
+@ConditionalOnClass(RabbitListener.class)
+@Profile("!rabbitmq-disabled")
+public class AuditLogListenerConfig {
+
+    @Value("${app.rabbitmq.audit-log.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.rabbitmq.audit-log.receive-timeout-ms:200}")
+    private long receiveTimeoutMs;
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory auditLogContainerFactory(
+            ObjectProvider<ConnectionFactory> connectionFactory) {
+
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        // Absent only where no listeners are started (Rabbit auto-configuration excluded)
+        factory.setConnectionFactory(connectionFactory.getIfAvailable());
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setPrefetchCount(batchSize);
+        factory.setReceiveTimeout(receiveTimeoutMs);
+        return factory;
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Event Content Types
+ *
+ * Functionality:
+ * - Chooses the encoding of an event from its routing key: events whose routing key
+ *   matches one of app.rabbitmq.binary.routing-keys are sent as application/x-protobuf
+ *   (see EventMessageConverter), all others as JSON
+ * - Patterns use topic-binding syntax ('*' one word, '#' zero or more), so the queues
+ *   receiving binary events can be named by the patterns they are bound with
+ *
+ * Every listener decodes both encodings, so a routing key can be switched either way
+ * while messages of the other encoding are still queued.
+ *
+ *
+
+ */
+package com.miniups.config;
+
+import com.miniups.model.event.BusinessEvent;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+public class EventContentTypes {
+
+    @Value("${app.rabbitmq.binary.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${app.rabbitmq.binary.routing-keys:shipment.create.*,notification.#,audit.log.*}")
+    private List<String> binaryRoutingKeys = List.of("shipment.create.*", "notification.#", "audit.log.*");
+
+    /**
+     * Get the content type to send an event with
+     *
+     * @return application/x-protobuf for a BusinessEvent on a binary routing key, JSON otherwise
+     */
+    public String contentTypeFor(String routingKey, Object event) {
+        if (event instanceof BusinessEvent<?> && isBinary(routingKey)) {
+            return EventMessageConverter.CONTENT_TYPE_PROTOBUF;
+        }
+        return MessageProperties.CONTENT_TYPE_JSON;
+    }
+
+    /**
+     * Whether BusinessEvents on this routing key are sent as application/x-protobuf
+     */
+    public boolean isBinary(String routingKey) {
+        if (enabled && routingKey != null) {
+            for (String pattern : binaryRoutingKeys) {
+                if (matches(pattern.trim(), routingKey)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Match a routing key against a topic pattern
+     */
+    static boolean matches(String pattern, String routingKey) {
+        return matches(pattern.split("\\."), 0, routingKey.split("\\."), 0);
+    }
+
+    private static boolean matches(String[] pattern, int p, String[] words, int w) {
+        if (p == pattern.length) {
+            return w == words.length;
+        }
+        if (pattern[p].equals("#")) {
+            // Zero or more words
+            for (int skip = w; skip <= words.length; skip++) {
+                if (matches(pattern, p + 1, words, skip)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (w == words.length) {
+            return false;
+        }
+        return (pattern[p].equals("*") || pattern[p].equals(words[w])) && matches(pattern, p + 1, words, w + 1);
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Event Message Converter
+ *
+ * Functionality:
+ * - Converts BusinessEvent messages to and from the binary EventEnvelope of
+ *   ups_events.proto (see EventProtoCodec), with content type application/x-protobuf
+ * - Registered under that content type next to the JSON converter, which stays the
+ *   default: a publisher picks the encoding per routing key (see EventContentTypes),
+ *   and a listener decodes whichever arrives, so JSON messages already queued or staged
+ *   in the outbox are still read
+ *
+ * Listener Types:
+ * - The payload is converted to the listener's argument type, BusinessEvent<X> or any
+ *   other, the way the JSON converter reads JSON into it
+ *
+ *
+
+ */
+package com.miniups.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.miniups.model.event.BusinessEvent;
+import com.miniups.util.EventProtoCodec;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+public class EventMessageConverter extends AbstractMessageConverter {
+
+    public static final String CONTENT_TYPE_PROTOBUF = "application/x-protobuf";
+
+    private final ObjectMapper objectMapper;
+
+    public EventMessageConverter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected Message createMessage(Object object, MessageProperties messageProperties) {
+        if (!(object instanceof BusinessEvent<?> event)) {
+            throw new MessageConversionException("Only BusinessEvent can be sent as " + CONTENT_TYPE_PROTOBUF
+                + ", not " + (object != null ? object.getClass().getName() : null));
+        }
+        byte[] body = EventProtoCodec.encode(event, objectMapper);
+        messageProperties.setContentType(CONTENT_TYPE_PROTOBUF);
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        Type expected = message.getMessageProperties().getInferredArgumentType();
+        try {
+            if (expected instanceof ParameterizedType parameterized
+                    && parameterized.getRawType() == BusinessEvent.class
+                    && parameterized.getActualTypeArguments()[0] instanceof Class<?> payloadType) {
+                return EventProtoCodec.decode(message.getBody(), payloadType, objectMapper);
+            }
+            BusinessEvent<Object> event = EventProtoCodec.decode(message.getBody());
+            if (expected == null || expected instanceof Class<?> type && type.isInstance(event)) {
+                return event;
+            }
+            return objectMapper.convertValue(event, objectMapper.getTypeFactory().constructType(expected));
+        } catch (InvalidProtocolBufferException | IllegalArgumentException e) {
+            throw new MessageConversionException("Failed to read " + CONTENT_TYPE_PROTOBUF + " event", e);
+        }
+    }
+}
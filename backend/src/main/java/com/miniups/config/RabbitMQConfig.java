@@ -1,30 +1,39 @@
 package com.miniups.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
 import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * RabbitMQ Configuration
  * 
  * Configures the RabbitMQ topology, message converters, and connection settings
- * for the Mini-UPS messaging infrastructure. This configuration implements
+ * for the Mini-UPS messaging infrastructure. Events are JSON or, per routing key,
+ * binary protobuf; listeners read both. This configuration implements
  * an event-driven architecture with reliable message processing.
  * 
  * Topology Design:
  * - Topic Exchange: ups.events.topic (main routing hub)
  * - Dead Letter Exchange: ups.events.dlx (reliability mechanism)
  * - Specialized queues for different business domains
+ * - Notification delay queues (1s/10s/60s/600s TTL) for retries and scheduled delivery
  * 
  * @author Mini-UPS Development Team
  * @version 1.0
@@ -35,6 +44,8 @@ import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainer
 @Profile("!test & !rabbitmq-disabled")
 public class RabbitMQConfig {
 
+    private static final Logger logger = LoggerFactory.getLogger(RabbitMQConfig.class);
+
     // Exchange Names
     public static final String TOPIC_EXCHANGE_NAME = "ups.events.topic";
     public static final String DLX_NAME = "ups.events.dlx";
@@ -46,6 +57,9 @@ public class RabbitMQConfig {
     public static final String WORLD_SIMULATOR_QUEUE = "q.world_simulator";
     public static final String DEAD_LETTER_QUEUE = "q.dead_letter";
 
+    // Notification delay tiers: per-queue TTL, then dead-lettered back to NOTIFICATIONS_QUEUE
+    public static final long[] NOTIFICATION_DELAY_TIERS_MS = {1_000, 10_000, 60_000, 600_000};
+
     // Routing Keys
     public static final String SHIPMENT_CREATE_ROUTING_KEY = "shipment.create.request";
     public static final String SHIPMENT_STATUS_ROUTING_KEY = "shipment.status.updated";
@@ -99,6 +113,31 @@ public class RabbitMQConfig {
                 .build();
     }
 
+    /**
+     * Delay queues for notifications, one per tier
+     * Nothing consumes them; a message waits out the queue's TTL and is dead-lettered
+     * through the default exchange back to the notifications queue
+     */
+    @Bean
+    public Declarables notificationDelayQueues() {
+        List<Declarable> queues = new ArrayList<>();
+        for (long delayMs : NOTIFICATION_DELAY_TIERS_MS) {
+            queues.add(QueueBuilder.durable(notificationDelayQueue(delayMs))
+                    .ttl((int) delayMs)
+                    .deadLetterExchange("")
+                    .deadLetterRoutingKey(NOTIFICATIONS_QUEUE)
+                    .build());
+        }
+        return new Declarables(queues);
+    }
+
+    /**
+     * Name of the notification delay queue for a tier, e.g. q.notifications.delay.10s
+     */
+    public static String notificationDelayQueue(long delayMs) {
+        return NOTIFICATIONS_QUEUE + ".delay." + (delayMs / 1000) + "s";
+    }
+
     /**
      * Queue for audit log processing
      * Captures all system events for compliance and monitoring
@@ -183,13 +222,19 @@ public class RabbitMQConfig {
     }
 
     /**
-     * JSON message converter for object serialization
-     * Uses Jackson for consistent JSON handling across the application
+     * Message converter for object serialization, chosen by content type
+     * JSON through Jackson by default; BusinessEvents sent as application/x-protobuf
+     * use the binary event encoding (see EventContentTypes for which are)
      */
     @Bean
     public MessageConverter jsonMessageConverter(ObjectMapper objectMapper) {
-        Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter(objectMapper);
-        converter.setCreateMessageIds(true);
+        Jackson2JsonMessageConverter json = new Jackson2JsonMessageConverter(objectMapper);
+        json.setCreateMessageIds(true);
+        EventMessageConverter binary = new EventMessageConverter(objectMapper);
+        binary.setCreateMessageIds(true);
+        ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(json);
+        converter.addDelegate(MessageProperties.CONTENT_TYPE_JSON, json);
+        converter.addDelegate(EventMessageConverter.CONTENT_TYPE_PROTOBUF, binary);
         return converter;
     }
 
@@ -198,21 +243,38 @@ public class RabbitMQConfig {
      * Configured with JSON converter and reliability features
      */
     @Bean
+    @Primary
     public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory, 
                                        MessageConverter messageConverter) {
+        return createTemplate(connectionFactory, messageConverter);
+    }
+
+    /**
+     * RabbitTemplate for BatchingEventPublisher only
+     * Unroutable messages come back to the publisher instead of vanishing, so it can
+     * republish them; the shared template keeps the broker's default of dropping them
+     */
+    @Bean
+    public RabbitTemplate mandatoryRabbitTemplate(ConnectionFactory connectionFactory,
+                                                  MessageConverter messageConverter) {
+        RabbitTemplate template = createTemplate(connectionFactory, messageConverter);
+        template.setMandatory(true);
+        return template;
+    }
+
+    private RabbitTemplate createTemplate(ConnectionFactory connectionFactory, MessageConverter messageConverter) {
         RabbitTemplate template = new RabbitTemplate(connectionFactory);
         template.setMessageConverter(messageConverter);
         template.setExchange(TOPIC_EXCHANGE_NAME);
         template.setConfirmCallback((correlationData, ack, cause) -> {
             if (!ack) {
-                // Log failed message publication
-                System.err.println("Message failed to reach exchange: " + cause);
+                logger.warn("Message {} failed to reach exchange: {}",
+                        correlationData != null ? correlationData.getId() : null, cause);
             }
         });
-        template.setReturnsCallback(returnedMessage -> {
-            // Log returned messages (no matching queue)
-            System.err.println("Message returned: " + returnedMessage);
-        });
+        template.setReturnsCallback(returnedMessage -> logger.warn("Message {} returned by {}: {} {}",
+                returnedMessage.getMessage().getMessageProperties().getMessageId(), returnedMessage.getExchange(),
+                returnedMessage.getReplyCode(), returnedMessage.getReplyText()));
         return template;
     }
 
@@ -105,6 +105,7 @@ package com.miniups.config;
 
 import com.miniups.security.JwtAuthenticationEntryPoint;
 import com.miniups.security.JwtAuthenticationFilter;
+import com.miniups.security.IdempotencyFilter;
 import com.miniups.security.RateLimitingFilter;
 import com.miniups.security.WebhookAuthenticationFilter;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -150,6 +151,9 @@ public class SecurityConfig {
     @Autowired
     private RateLimitingFilter rateLimitingFilter;
     
+    @Autowired
+    private IdempotencyFilter idempotencyFilter;
+    
     @Value("${cors.allowed-origins:http://localhost:3000,http://localhost:3001}")
     private String allowedOrigins;
     
@@ -195,7 +199,7 @@ public class SecurityConfig {
                 .requestMatchers("/api/tracking/**", "/tracking/**").permitAll() // Allow tracking without auth
                 .requestMatchers("/api/webhooks/**", "/webhooks/**").permitAll() // Amazon webhooks
                 .requestMatchers("/api/users/*/public", "/users/*/public").permitAll() // Public user profiles
-                .requestMatchers("/api/shipment", "/api/shipment_loaded", "/api/shipment_status", "/api/address_change").permitAll() // Amazon integration endpoints
+                .requestMatchers("/api/shipment", "/api/shipments/batch", "/api/shipments/stream", "/api/shipment_loaded", "/api/shipment_status", "/api/address_change").permitAll() // Amazon integration endpoints
                 .requestMatchers("/shipment", "/shipment_loaded", "/shipment_status", "/address_change").permitAll() // Amazon integration endpoints
 
                 // API Documentation
@@ -219,6 +223,8 @@ public class SecurityConfig {
         http.authenticationProvider(authenticationProvider());
         http.addFilterBefore(rateLimitingFilter, UsernamePasswordAuthenticationFilter.class);
         http.addFilterBefore(webhookAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
+        // After signature verification, so only authenticated duplicates are replayed
+        http.addFilterBefore(idempotencyFilter, UsernamePasswordAuthenticationFilter.class);
         http.addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
         
         return http.build();
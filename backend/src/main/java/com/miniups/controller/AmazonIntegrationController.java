@@ -8,10 +8,15 @@
  * 
  * API Endpoints:
  * - POST /api/shipment - Receives ShipmentCreated messages
+ * - POST /api/shipments/batch - Receives many ShipmentCreated messages in one request
+ * - POST /api/shipments/stream - Receives length-delimited protobuf ShipmentCreated messages
  * - POST /api/shipment_loaded - Receives ShipmentLoaded messages
  * - POST /api/shipment_status - Receives ShipmentStatusRequest messages
  * - POST /api/address_change - Receives AddressChange messages
  * 
+ * Shipment and ShipmentLoaded endpoints also accept application/x-protobuf bodies
+ * (amazon_ups.proto); responses are JSON either way.
+ * 
  * Message Processing Flow:
  * 1. Receive HTTP request from Amazon
  * 2. Validate message format and required fields
@@ -24,15 +29,18 @@
  */
 package com.miniups.controller;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.miniups.model.dto.AmazonMessageDto;
+import com.miniups.model.dto.ShipmentCreatedMessage;
 import com.miniups.model.dto.UpsResponseDto;
 import com.miniups.model.dto.common.ApiResponse;
 import com.miniups.service.AmazonIntegrationService;
 import com.miniups.service.CommunicationLogService;
 import com.miniups.model.entity.CommunicationLog;
+import com.miniups.proto.AmazonUpsProto.AShipmentLoaded;
+import com.miniups.util.ShipmentMessageReader;
+import com.miniups.util.ShipmentProtoReader;
 
+import com.google.protobuf.InvalidProtocolBufferException;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,8 +49,12 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -52,44 +64,37 @@ public class AmazonIntegrationController {
     
     private static final Logger logger = LoggerFactory.getLogger(AmazonIntegrationController.class);
     
+    static final String PROTOBUF = "application/x-protobuf";
+    
     @Autowired
     private AmazonIntegrationService amazonIntegrationService;
     
     @Autowired
     private CommunicationLogService communicationLogService;
     
-    @Autowired
-    private ObjectMapper objectMapper;
-    
     /**
-     * Receives Amazon's ShipmentCreated message (Asynchronous Processing)
+     * Receives Amazon's ShipmentCreated message
      * 
-     * Amazon calls this endpoint to create new shipping orders.
-     * This endpoint now processes requests asynchronously for better performance
-     * and scalability. The request is quickly validated and queued for processing,
-     * with status updates sent via webhook when processing completes.
+     * Amazon calls this endpoint to create new shipping orders. The body is read in one
+     * streaming pass by {@link ShipmentMessageReader}, in either the legacy message shape
+     * or as a bare payload; field errors are reported together as one validation error.
      * 
-     * @param rawJson Raw JSON string sent by Amazon
-     * @return UPS standard response with tracking information
+     * @param body Raw JSON body sent by Amazon
+     * @return UPS standard response
      */
     @PostMapping("/shipment")
-    public ResponseEntity<UpsResponseDto> handleShipmentCreated(@RequestBody String rawJson) {
+    public ResponseEntity<UpsResponseDto> handleShipmentCreated(@RequestBody byte[] body) {
         long startTime = System.currentTimeMillis();
         CommunicationLog log = null;
         
-        logger.info("Raw Amazon JSON received: {}", rawJson);
-        
         try {
-            // Parse JSON string to Map
-            @SuppressWarnings("unchecked")
-            Map<String, Object> rawMessage = objectMapper.readValue(rawJson, Map.class);
+            ShipmentCreatedMessage message = ShipmentMessageReader.read(body);
+            String rawJson = new String(body, StandardCharsets.UTF_8);
+            logger.debug("Raw Amazon JSON received: {}", rawJson);
             
             // Log incoming message
-            log = communicationLogService.logIncomingMessage("ShipmentCreated", "/api/shipment", rawMessage);
-            
-            // Convert Amazon format to UPS format
-            AmazonMessageDto message = convertAmazonMessage(rawMessage);
-            logger.info("Converted to ShipmentCreated message: {}", message.getMessageType());
+            log = communicationLogService.logIncomingRawMessage("ShipmentCreated", "/api/shipment", rawJson,
+                message.getShipmentId(), message.getWarehouseId());
             
             // Validate message type
             if (!message.isShipmentCreated()) {
@@ -121,7 +126,7 @@ public class AmazonIntegrationController {
             
             return ResponseEntity.ok(response);
             
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             logger.error("Failed to parse JSON: {}", e.getMessage());
             UpsResponseDto errorResponse = UpsResponseDto.error(1000, 
                 "Invalid JSON format: " + e.getMessage());
@@ -129,6 +134,142 @@ public class AmazonIntegrationController {
         }
     }
     
+    /**
+     * Receives many ShipmentCreated messages in one request
+     * 
+     * Accepts a JSON array, or an object with a "shipments" array. Each element is either a
+     * full Amazon message (with "payload") or just the payload. The batch is processed as a
+     * whole; the response carries one result per element in request order, so one bad item
+     * does not fail the others.
+     * 
+     * @param body Raw JSON body sent by Amazon
+     * @return Per-item results
+     */
+    @PostMapping("/shipments/batch")
+    public ResponseEntity<UpsResponseDto> handleShipmentBatch(@RequestBody byte[] body) {
+        long startTime = System.currentTimeMillis();
+        
+        try {
+            List<ShipmentCreatedMessage> messages = ShipmentMessageReader.readBatch(body);
+            if (messages == null) {
+                return ResponseEntity.badRequest().body(UpsResponseDto.error(1000,
+                    "Expected a JSON array of shipments or an object with a 'shipments' array"));
+            }
+            
+            // Only counts are logged; the payloads of a large batch would bloat the log table
+            CommunicationLog log = communicationLogService.logIncomingMessage(
+                "ShipmentBatch", "/api/shipments/batch", Map.of("count", messages.size()));
+            
+            return respondToBatch(log, amazonIntegrationService.handleShipmentBatch(messages), startTime);
+            
+        } catch (IOException e) {
+            logger.error("Failed to parse shipment batch JSON: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(UpsResponseDto.error(1000,
+                "Invalid JSON format: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Receives a ShipmentCreated message as protobuf (AShipmentCreated in amazon_ups.proto)
+     *
+     * Same processing and response as the JSON endpoint; the message is read straight into
+     * the ingest pipeline without going through JSON.
+     *
+     * @param body Serialized AShipmentCreated
+     * @return UPS standard response
+     */
+    @PostMapping(value = "/shipment", consumes = PROTOBUF)
+    public ResponseEntity<UpsResponseDto> handleShipmentCreatedProto(@RequestBody byte[] body) {
+        long startTime = System.currentTimeMillis();
+        
+        try {
+            ShipmentCreatedMessage message = ShipmentProtoReader.read(body);
+            CommunicationLog log = communicationLogService.logIncomingMessage("ShipmentCreated", "/api/shipment",
+                message.isValid() ? message.toDto() : Map.of("errors", message.getErrors()));
+            return respond(log, amazonIntegrationService.handleShipmentCreated(message), startTime);
+        
+        } catch (InvalidProtocolBufferException e) {
+            logger.error("Failed to parse shipment protobuf: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(UpsResponseDto.error(1000,
+                "Invalid protobuf format: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Receives many ShipmentCreated messages as one protobuf AShipmentBatch
+     *
+     * @param body Serialized AShipmentBatch
+     * @return Per-item results, as for the JSON batch endpoint
+     */
+    @PostMapping(value = "/shipments/batch", consumes = PROTOBUF)
+    public ResponseEntity<UpsResponseDto> handleShipmentBatchProto(@RequestBody byte[] body) {
+        long startTime = System.currentTimeMillis();
+        
+        try {
+            List<ShipmentCreatedMessage> messages = ShipmentProtoReader.readBatch(body);
+            CommunicationLog log = communicationLogService.logIncomingMessage(
+                "ShipmentBatch", "/api/shipments/batch", Map.of("count", messages.size()));
+            return respondToBatch(log, amazonIntegrationService.handleShipmentBatch(messages), startTime);
+        
+        } catch (InvalidProtocolBufferException e) {
+            logger.error("Failed to parse shipment batch protobuf: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(UpsResponseDto.error(1000,
+                "Invalid protobuf format: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Receives a stream of length-delimited AShipmentCreated messages
+     *
+     * For feeds too large for one batch: shipments are ingested in batch-sized chunks while
+     * the body is still being read. Results are reported for the whole stream; if a message
+     * is malformed, the shipments before it stay created and are reported with the error.
+     *
+     * @param body Request body stream
+     * @return Per-item results in stream order
+     */
+    @PostMapping(value = "/shipments/stream", consumes = PROTOBUF)
+    public ResponseEntity<UpsResponseDto> handleShipmentStream(InputStream body) {
+        long startTime = System.currentTimeMillis();
+        CommunicationLog log = communicationLogService.logIncomingMessage(
+            "ShipmentStream", "/api/shipments/stream", Map.of("content_type", PROTOBUF));
+        
+        try {
+            return respondToBatch(log, amazonIntegrationService.handleShipmentStream(body), startTime);
+        
+        } catch (IOException e) {
+            logger.error("Failed to read shipment stream: {}", e.getMessage());
+            UpsResponseDto errorResponse = UpsResponseDto.error(1000, "Failed to read stream: " + e.getMessage());
+            return respond(log, errorResponse, startTime);
+        }
+    }
+    
+    /**
+     * Receives a ShipmentLoaded message as protobuf (AShipmentLoaded in amazon_ups.proto)
+     *
+     * @param body Serialized AShipmentLoaded
+     * @return UPS standard response
+     */
+    @PostMapping(value = "/shipment_loaded", consumes = PROTOBUF)
+    public ResponseEntity<UpsResponseDto> handleShipmentLoadedProto(@RequestBody byte[] body) {
+        long startTime = System.currentTimeMillis();
+        
+        try {
+            AShipmentLoaded message = AShipmentLoaded.parseFrom(body);
+            CommunicationLog log = communicationLogService.logIncomingMessage("ShipmentLoaded", "/api/shipment_loaded",
+                Map.of("shipment_id", message.getShipmentId(), "truck_id", message.getTruckId()));
+            UpsResponseDto response = message.hasShipmentId() && !message.getShipmentId().isEmpty()
+                ? amazonIntegrationService.handleShipmentLoaded(message.getShipmentId())
+                : UpsResponseDto.error(1001, "Missing shipment_id");
+            return respond(log, response, startTime);
+        
+        } catch (InvalidProtocolBufferException e) {
+            logger.error("Failed to parse ShipmentLoaded protobuf: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(UpsResponseDto.error(1000,
+                "Invalid protobuf format: " + e.getMessage()));
+        }
+    }
+    
     /**
      * Receives Amazon's ShipmentLoaded message
      * 
@@ -435,6 +576,36 @@ public class AmazonIntegrationController {
         return ResponseEntity.ok(response);
     }
     
+    /**
+     * Log the response and map it to its HTTP status
+     */
+    private ResponseEntity<UpsResponseDto> respond(CommunicationLog log, UpsResponseDto response, long startTime) {
+        int statusCode = response.isError() ? (response.getCode() >= 500 ? 500 : 400) : 200;
+        if (log != null) {
+            communicationLogService.updateLogWithResponse(log, response, statusCode,
+                System.currentTimeMillis() - startTime);
+        }
+        return ResponseEntity.status(statusCode).body(response);
+    }
+    
+    /**
+     * Log only the counts of a batch response and map it to its HTTP status
+     */
+    private ResponseEntity<UpsResponseDto> respondToBatch(CommunicationLog log, UpsResponseDto response, long startTime) {
+        int statusCode = response.isError() ? (response.getCode() >= 500 ? 500 : 400) : 200;
+        if (log != null) {
+            Object logged = response;
+            if (!response.isError() && response.getPayload() != null) {
+                Map<String, Object> counts = new HashMap<>(response.getPayload());
+                counts.remove("results");
+                logged = counts;
+            }
+            communicationLogService.updateLogWithResponse(log, logged, statusCode,
+                System.currentTimeMillis() - startTime);
+        }
+        return ResponseEntity.status(statusCode).body(response);
+    }
+    
     /**
      * Health check endpoint
      * 
@@ -451,59 +622,4 @@ public class AmazonIntegrationController {
         
         return ResponseEntity.ok(health);
     }
-    
-    /**
-     * Convert Amazon message format to UPS message format
-     * Handles snake_case to camelCase conversion and timestamp parsing
-     */
-    private AmazonMessageDto convertAmazonMessage(Map<String, Object> rawMessage) {
-        logger.info("Converting raw Amazon message: {}", rawMessage);
-        AmazonMessageDto dto = new AmazonMessageDto();
-        
-        // Handle message_type -> messageType
-        String messageType = (String) rawMessage.get("message_type");
-        if (messageType == null) {
-            messageType = (String) rawMessage.get("messageType");
-        }
-        logger.info("Extracted messageType: {}", messageType);
-        dto.setMessageType(messageType);
-        
-        // Handle timestamp
-        Object timestampObj = rawMessage.get("timestamp");
-        LocalDateTime timestamp = null;
-        if (timestampObj instanceof String) {
-            String timestampStr = (String) timestampObj;
-            try {
-                // Handle Amazon's timestamp format
-                if (timestampStr.contains(".")) {
-                    timestamp = LocalDateTime.parse(timestampStr, DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSS"));
-                } else {
-                    timestamp = LocalDateTime.parse(timestampStr, DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
-                }
-            } catch (Exception e) {
-                logger.warn("Failed to parse timestamp: {}, using current time", timestampStr);
-                timestamp = LocalDateTime.now();
-            }
-        } else {
-            timestamp = LocalDateTime.now();
-        }
-        dto.setTimestamp(timestamp);
-        
-        // Handle payload
-        Object payloadObj = rawMessage.get("payload");
-        if (payloadObj instanceof Map) {
-            @SuppressWarnings("unchecked")
-            Map<String, Object> payload = (Map<String, Object>) payloadObj;
-            dto.setPayload(payload);
-        } else {
-            dto.setPayload(null);
-            logger.warn("Received payload is not a JSON object. Type: {}. Setting payload to null.",
-                    payloadObj != null ? payloadObj.getClass().getName() : "null");
-        }
-        
-        logger.info("Converted DTO: messageType={}, timestamp={}, payload={}", 
-            dto.getMessageType(), dto.getTimestamp(), dto.getPayload());
-        
-        return dto;
-    }
-}
\ No newline at end of file
+}
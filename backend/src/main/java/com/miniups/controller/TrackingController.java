@@ -26,6 +26,7 @@ import com.miniups.model.dto.common.ApiResponse;
 import com.miniups.model.entity.Shipment;
 import com.miniups.model.entity.ShipmentStatusHistory;
 import com.miniups.model.enums.ShipmentStatus;
+import com.miniups.service.EtaService;
 import com.miniups.service.TrackingService;
 
 import org.slf4j.Logger;
@@ -35,6 +36,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +52,9 @@ public class TrackingController {
     @Autowired
     private TrackingService trackingService;
     
+    @Autowired(required = false)
+    private EtaService etaService;
+    
     /**
      * Query package information by tracking number
      * 
@@ -84,7 +89,7 @@ public class TrackingController {
         data.put("origin", Map.of("x", shipment.getOriginX(), "y", shipment.getOriginY()));
         data.put("destination", Map.of("x", shipment.getDestX(), "y", shipment.getDestY()));
         data.put("created_at", shipment.getCreatedAt());
-        data.put("estimated_delivery", shipment.getEstimatedDelivery());
+        data.put("estimated_delivery", estimatedDeliveryOf(shipment));
         data.put("actual_delivery", shipment.getActualDelivery());
         data.put("pickup_time", shipment.getPickupTime());
         
@@ -236,6 +241,20 @@ public class TrackingController {
     
     // Private helper methods
     
+    private LocalDateTime estimatedDeliveryOf(Shipment shipment) {
+        // Live estimate, refreshed as the truck reports progress; reading it does not start tracking
+        if (shipment.getStatus() == ShipmentStatus.DELIVERED && shipment.getActualDelivery() != null) {
+            return shipment.getActualDelivery();
+        }
+        if (etaService != null) {
+            LocalDateTime eta = etaService.getEstimatedDelivery(shipment.getShipmentId());
+            if (eta != null) {
+                return eta;
+            }
+        }
+        return shipment.getEstimatedDelivery();
+    }
+    
     private Map<String, Object> mapShipmentToResponse(Shipment shipment) {
         Map<String, Object> shipmentMap = new HashMap<>();
         shipmentMap.put("shipment_id", shipment.getShipmentId());
@@ -245,7 +264,7 @@ public class TrackingController {
         shipmentMap.put("origin", Map.of("x", shipment.getOriginX(), "y", shipment.getOriginY()));
         shipmentMap.put("destination", Map.of("x", shipment.getDestX(), "y", shipment.getDestY()));
         shipmentMap.put("created_at", shipment.getCreatedAt());
-        shipmentMap.put("estimated_delivery", shipment.getEstimatedDelivery());
+        shipmentMap.put("estimated_delivery", estimatedDeliveryOf(shipment));
         shipmentMap.put("actual_delivery", shipment.getActualDelivery());
         shipmentMap.put("pickup_time", shipment.getPickupTime());
         
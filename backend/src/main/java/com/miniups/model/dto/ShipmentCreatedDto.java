@@ -15,6 +15,7 @@
  * 
  * Optional Fields:
  * - ups_account: UPS account association
+ * - weight: Package weight, used for capacity-aware load packing
  * 
  *
  
@@ -26,6 +27,8 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 
+import java.math.BigDecimal;
+
 public class ShipmentCreatedDto {
     
     @NotNull(message = "User ID is required")
@@ -52,6 +55,8 @@ public class ShipmentCreatedDto {
     @Size(max = 100, message = "UPS account must not exceed 100 characters")
     private String upsAccount;
     
+    private BigDecimal weight;
+    
     // Constructors
     public ShipmentCreatedDto() {}
     
@@ -122,6 +127,14 @@ public class ShipmentCreatedDto {
         this.upsAccount = upsAccount;
     }
     
+    public BigDecimal getWeight() {
+        return weight;
+    }
+    
+    public void setWeight(BigDecimal weight) {
+        this.weight = weight;
+    }
+    
     // Helper methods
     public boolean hasUpsAccount() {
         return upsAccount != null && !upsAccount.trim().isEmpty();
@@ -137,6 +150,7 @@ public class ShipmentCreatedDto {
                 ", destinationX=" + destinationX +
                 ", destinationY=" + destinationY +
                 ", upsAccount='" + upsAccount + '\'' +
+                ", weight=" + weight +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,188 @@
+/**
+ * Parsed ShipmentCreated Message
+ *
+ * Functionality:
+ * - Immutable result of reading one Amazon ShipmentCreated message or batch element
+ * - Produced in a single pass by ShipmentMessageReader, without an intermediate Map
+ * - Carries field-level validation errors instead of failing on the first bad field
+ *
+ * Required Fields:
+ * - shipment_id, email, warehouse_id, destination_x/y
+ *
+ * Optional Fields:
+ * - user_id, ups_account, weight
+ *
+ *
+
+ */
+package com.miniups.model.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public final class ShipmentCreatedMessage {
+
+    private final String messageType;
+    private final LocalDateTime timestamp;
+    private final Long userId;
+    private final String email;
+    private final String shipmentId;
+    private final Long warehouseId;
+    private final Integer destinationX;
+    private final Integer destinationY;
+    private final String upsAccount;
+    private final BigDecimal weight;
+    private final List<String> errors;
+
+    private ShipmentCreatedMessage(Builder builder, List<String> errors) {
+        this.messageType = builder.messageType;
+        this.timestamp = builder.timestamp;
+        this.userId = builder.userId;
+        this.email = builder.email;
+        this.shipmentId = builder.shipmentId;
+        this.warehouseId = builder.warehouseId;
+        this.destinationX = builder.destinationX;
+        this.destinationY = builder.destinationY;
+        this.upsAccount = builder.upsAccount;
+        this.weight = builder.weight;
+        this.errors = errors;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // Getters
+    public String getMessageType() { return messageType; }
+    public LocalDateTime getTimestamp() { return timestamp; }
+    public Long getUserId() { return userId; }
+    public String getEmail() { return email; }
+    public String getShipmentId() { return shipmentId; }
+    public Long getWarehouseId() { return warehouseId; }
+    public Integer getDestinationX() { return destinationX; }
+    public Integer getDestinationY() { return destinationY; }
+    public String getUpsAccount() { return upsAccount; }
+    public BigDecimal getWeight() { return weight; }
+
+    /**
+     * @return Field-level validation errors, empty when the message is valid
+     */
+    public List<String> getErrors() { return errors; }
+
+    public boolean isValid() {
+        return errors.isEmpty();
+    }
+
+    public boolean isShipmentCreated() {
+        return "ShipmentCreated".equals(messageType);
+    }
+
+    /**
+     * Convert to the mutable DTO used by the single-shipment service path
+     */
+    public ShipmentCreatedDto toDto() {
+        ShipmentCreatedDto dto = new ShipmentCreatedDto(userId, email, shipmentId, warehouseId, destinationX, destinationY);
+        dto.setUpsAccount(upsAccount);
+        dto.setWeight(weight);
+        return dto;
+    }
+
+    @Override
+    public String toString() {
+        return "ShipmentCreatedMessage{" +
+                "shipmentId='" + shipmentId + '\'' +
+                ", warehouseId=" + warehouseId +
+                ", destinationX=" + destinationX +
+                ", destinationY=" + destinationY +
+                ", errors=" + errors +
+                '}';
+    }
+
+    /**
+     * Mutable accumulator; one instance can be reused for every element of a batch
+     */
+    public static final class Builder {
+        private String messageType;
+        private LocalDateTime timestamp;
+        private Long userId;
+        private String email;
+        private String shipmentId;
+        private Long warehouseId;
+        private Integer destinationX;
+        private Integer destinationY;
+        private String upsAccount;
+        private BigDecimal weight;
+        // Allocated on the first error only
+        private List<String> errors;
+
+        private Builder() {}
+
+        public Builder messageType(String messageType) { this.messageType = messageType; return this; }
+        public Builder timestamp(LocalDateTime timestamp) { this.timestamp = timestamp; return this; }
+        public Builder userId(Long userId) { this.userId = userId; return this; }
+        public Builder email(String email) { this.email = email; return this; }
+        public Builder shipmentId(String shipmentId) { this.shipmentId = shipmentId; return this; }
+        public Builder warehouseId(Long warehouseId) { this.warehouseId = warehouseId; return this; }
+        public Builder destinationX(Integer destinationX) { this.destinationX = destinationX; return this; }
+        public Builder destinationY(Integer destinationY) { this.destinationY = destinationY; return this; }
+        public Builder upsAccount(String upsAccount) { this.upsAccount = upsAccount; return this; }
+        public Builder weight(BigDecimal weight) { this.weight = weight; return this; }
+
+        public Builder error(String error) {
+            if (errors == null) {
+                errors = new ArrayList<>(2);
+            }
+            errors.add(error);
+            return this;
+        }
+
+        /**
+         * Check required fields and build the message
+         */
+        public ShipmentCreatedMessage build() {
+            requireField(shipmentId, "shipment_id");
+            requireField(email, "email");
+            requireField(warehouseId, "warehouse_id");
+            requireField(destinationX, "destination_x");
+            requireField(destinationY, "destination_y");
+            List<String> result = errors == null ? Collections.emptyList() : Collections.unmodifiableList(errors);
+            return new ShipmentCreatedMessage(this, result);
+        }
+
+        private void requireField(Object value, String field) {
+            if (value != null) {
+                return;
+            }
+            // A field that failed to parse is already reported
+            if (errors != null) {
+                for (String error : errors) {
+                    if (error.startsWith(field + " ")) {
+                        return;
+                    }
+                }
+            }
+            error(field + " is required");
+        }
+
+        /**
+         * Clear all fields so the builder can read the next message
+         */
+        public Builder reset() {
+            messageType = null;
+            timestamp = null;
+            userId = null;
+            email = null;
+            shipmentId = null;
+            warehouseId = null;
+            destinationX = null;
+            destinationY = null;
+            upsAccount = null;
+            weight = null;
+            errors = null;
+            return this;
+        }
+    }
+}
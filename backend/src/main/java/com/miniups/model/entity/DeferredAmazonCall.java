@@ -0,0 +1,107 @@
+/**
+ * Deferred Amazon Call Entity
+ *
+ * Functionality:
+ * - An outbound Amazon notification that was not attempted because the Amazon
+ *   circuit breaker was open
+ * - Kept until it is replayed once Amazon recovers
+ *
+ * Fields:
+ * - baseUrl/endpoint: where the notification goes
+ * - payload: JSON body exactly as it would have been sent
+ * - reason: why it was deferred, e.g. CIRCUIT_OPEN
+ * - nextAttemptAt: earliest time it is replayed
+ *
+ *
+
+ */
+package com.miniups.model.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "deferred_amazon_calls", indexes = {
+    @Index(name = "idx_deferred_amazon_calls_next_attempt", columnList = "next_attempt_at")
+})
+public class DeferredAmazonCall extends BaseEntity {
+
+    @Column(name = "base_url", nullable = false, length = 255)
+    private String baseUrl;
+
+    @Column(name = "endpoint", nullable = false, length = 255)
+    private String endpoint;
+
+    @Column(name = "message_type", nullable = false, length = 50)
+    private String messageType;
+
+    @Column(name = "payload", columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(name = "reason", nullable = false, length = 50)
+    private String reason;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    // Constructors
+    public DeferredAmazonCall() {}
+
+    public DeferredAmazonCall(String baseUrl, String endpoint, String messageType, String payload, String reason) {
+        this.baseUrl = baseUrl;
+        this.endpoint = endpoint;
+        this.messageType = messageType;
+        this.payload = payload;
+        this.reason = reason;
+        this.nextAttemptAt = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public String getMessageType() {
+        return messageType;
+    }
+
+    public void setMessageType(String messageType) {
+        this.messageType = messageType;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Outbox Event Entity
+ *
+ * Functionality:
+ * - A domain event waiting to be published to RabbitMQ
+ * - Written in the same transaction as the shipment/truck change it describes, so the
+ *   event exists if and only if the change was committed
+ * - Published and marked sent by OutboxRelay
+ *
+ * Fields:
+ * - eventId: BusinessEvent id, also used as the AMQP message id
+ * - exchange/routingKey: where the event is published
+ * - payload: the BusinessEvent serialized as JSON, exactly as it is sent
+ * - attempts: publishes that were not confirmed by the broker
+ * - sentAt: when the broker confirmed it; null while pending
+ *
+ *
+
+ */
+package com.miniups.model.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "outbox_events", indexes = {
+    @Index(name = "idx_outbox_events_sent_at", columnList = "sent_at, id")
+})
+public class OutboxEvent extends BaseEntity {
+
+    @Column(name = "event_id", nullable = false, length = 64)
+    private String eventId;
+
+    @Column(name = "exchange", nullable = false, length = 100)
+    private String exchange;
+
+    @Column(name = "routing_key", nullable = false, length = 100)
+    private String routingKey;
+
+    @Column(name = "payload", nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+
+    // Constructors
+    public OutboxEvent() {}
+
+    public OutboxEvent(String eventId, String exchange, String routingKey, String payload) {
+        this.eventId = eventId;
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.payload = payload;
+    }
+
+    // Getters and Setters
+    public String getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public void setExchange(String exchange) {
+        this.exchange = exchange;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    public void setRoutingKey(String routingKey) {
+        this.routingKey = routingKey;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public LocalDateTime getSentAt() {
+        return sentAt;
+    }
+
+    public void setSentAt(LocalDateTime sentAt) {
+        this.sentAt = sentAt;
+    }
+}
@@ -35,6 +35,7 @@ import jakarta.validation.constraints.NotNull;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Entity
 @Table(name = "trucks", indexes = {
@@ -74,7 +75,9 @@ public class Truck extends BaseEntity {
     @Column(name = "license_plate")
     private String licensePlate;
     
-    @Column(name = "current_load")
+    // Only written through the atomic load queries in TruckRepository so that
+    // entity saves carrying a stale value can never clobber a concurrent increment
+    @Column(name = "current_load", updatable = false)
     private Double currentLoad = 0.0;
     
     // Relationships
@@ -84,6 +87,11 @@ public class Truck extends BaseEntity {
     @OneToMany(mappedBy = "truck", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<TruckLocationHistory> locationHistory = new ArrayList<>();
     
+    // Set on snapshots of in-memory assignments (reservation table, region dispatchers):
+    // completes true once the assignment is written, false if reconciliation revoked it
+    @Transient
+    private transient CompletableFuture<Boolean> pendingAssignment;
+    
     // Constructors
     public Truck() {}
     
@@ -181,6 +189,14 @@ public class Truck extends BaseEntity {
         this.currentLoad = currentLoad;
     }
     
+    public CompletableFuture<Boolean> getPendingAssignment() {
+        return pendingAssignment;
+    }
+    
+    public void setPendingAssignment(CompletableFuture<Boolean> pendingAssignment) {
+        this.pendingAssignment = pendingAssignment;
+    }
+    
     
     // Helper methods
     public boolean isAvailable() {
@@ -192,6 +208,11 @@ public class Truck extends BaseEntity {
         this.currentY = y;
     }
     
+    public double getRemainingCapacity() {
+        double load = currentLoad != null ? currentLoad : 0.0;
+        return Math.max(0.0, capacity - load);
+    }
+    
     public boolean hasDriver() {
         return driver != null;
     }
@@ -11,9 +11,14 @@ import com.miniups.proto.WorldUpsProto.UErr;
 import com.miniups.repository.ShipmentRepository;
 import com.miniups.repository.TruckRepository;
 import com.miniups.service.AmazonIntegrationService;
+import com.miniups.service.DeliveryRouteService;
+import com.miniups.service.EtaService;
+import com.miniups.service.LoadPackingService;
+import com.miniups.service.TruckRebalancingService;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -52,6 +57,20 @@ public class MessageHandlerService {
     private final ShipmentRepository shipmentRepository;
     private final AmazonIntegrationService amazonIntegrationService;
 
+    @Lazy
+    @Autowired(required = false)
+    private TruckRebalancingService rebalancingService;
+
+    @Autowired(required = false)
+    private EtaService etaService;
+
+    @Autowired(required = false)
+    private DeliveryRouteService deliveryRouteService;
+
+    @Lazy
+    @Autowired(required = false)
+    private LoadPackingService loadPackingService;
+
     public MessageHandlerService(TruckRepository truckRepository,
                                ShipmentRepository shipmentRepository,
                                @Lazy AmazonIntegrationService amazonIntegrationService) {
@@ -85,15 +104,25 @@ public class MessageHandlerService {
         // Update truck position
         truck.setCurrentX(completion.getX());
         truck.setCurrentY(completion.getY());
+        if (etaService != null) {
+            etaService.onTruckProgress(truck.getTruckId(), completion.getX(), completion.getY());
+        }
         
         // Update truck status based on completion status
         switch (completion.getStatus()) {
             case "idle":
                 truck.setStatus(TruckStatus.IDLE);
+                // All packages are off the truck once it reports idle
+                truckRepository.resetLoad(truck.getId());
                 log.debug("Truck {} set to IDLE status", completion.getTruckid());
                 break;
                 
             case "arrive warehouse":
+                if (rebalancingService != null
+                    && rebalancingService.onTruckArrived(truck, completion.getX(), completion.getY())) {
+                    // Pre-positioned idle truck, nothing to pick up yet
+                    break;
+                }
                 truck.setStatus(TruckStatus.AT_WAREHOUSE);
                 log.info("Truck {} arrived at warehouse, notifying Amazon", completion.getTruckid());
                 notifyAmazonTruckArrived(truck, completion);
@@ -137,6 +166,21 @@ public class MessageHandlerService {
         shipment.updateStatus(ShipmentStatus.DELIVERED);
         shipment.setActualDelivery(LocalDateTime.now());
         shipmentRepository.save(shipment);
+        if (etaService != null) {
+            etaService.onDelivered(shipment);
+        }
+        if (deliveryRouteService != null) {
+            deliveryRouteService.onDelivered(delivery.getTruckid(), delivery.getPackageid());
+        }
+        
+        // Free the delivered package's share of the truck's load, the same weight as was
+        // charged on assign
+        if (loadPackingService != null) {
+            loadPackingService.releaseLoad(shipment.getTruck(), shipment.getWeight());
+        } else if (shipment.getTruck() != null && shipment.getTruck().getId() != null) {
+            double weight = shipment.getWeight() != null ? shipment.getWeight().doubleValue() : 0.0;
+            truckRepository.releaseLoad(shipment.getTruck().getId(), weight);
+        }
         
         log.info("Shipment {} marked as delivered", shipment.getShipmentId());
         
@@ -176,6 +220,9 @@ public class MessageHandlerService {
         // Update truck position
         truck.setCurrentX(truckStatus.getX());
         truck.setCurrentY(truckStatus.getY());
+        if (etaService != null) {
+            etaService.onTruckProgress(truck.getTruckId(), truckStatus.getX(), truckStatus.getY());
+        }
         
         // Update truck status based on World Simulator status
         TruckStatus newStatus = mapWorldSimulatorStatus(truckStatus.getStatus());
@@ -244,6 +291,17 @@ public class MessageHandlerService {
                 return;
             }
             
+            if (rebalancingService != null) {
+                for (Shipment awaiting : shipments) {
+                    if (awaiting.getStatus() == ShipmentStatus.CREATED
+                        || awaiting.getStatus() == ShipmentStatus.TRUCK_DISPATCHED) {
+                        rebalancingService.recordWarehouseLocation(awaiting.getWarehouseId(),
+                                                                   completion.getX(), completion.getY());
+                        rebalancingService.recordPickupLatency(awaiting.getCreatedAt());
+                    }
+                }
+            }
+            
             // Handle the first/primary shipment
             Shipment shipment = shipments.get(0);
             
@@ -4,8 +4,10 @@ import com.miniups.model.entity.Truck;
 import com.miniups.network.netty.client.NettyClient;
 import com.miniups.proto.WorldUpsProto.*;
 import com.miniups.repository.TruckRepository;
+import com.miniups.service.EtaService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
@@ -54,6 +56,9 @@ public class NettyWorldSimulatorService {
     private final NettyClient nettyClient;
     private final TruckRepository truckRepository;
 
+    @Autowired(required = false)
+    private EtaService etaService;
+
     // Sequence number generator for message correlation
     private final AtomicLong sequenceGenerator = new AtomicLong(1);
     
@@ -314,6 +319,9 @@ public class NettyWorldSimulatorService {
         }
 
         log.info("Setting World Simulator speed to {}", speed);
+        if (etaService != null) {
+            etaService.setSimSpeed(speed);
+        }
         
         UCommands speedCommand = UCommands.newBuilder()
             .setSimspeed(speed)
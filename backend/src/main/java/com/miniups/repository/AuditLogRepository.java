@@ -9,6 +9,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -41,6 +42,16 @@ public interface AuditLogRepository extends JpaRepository<AuditLog, Long> {
      */
     boolean existsByEventId(String eventId);
 
+    /**
+     * Find which of the given event IDs already have an audit log
+     * Used for idempotency checking of a whole consumer batch in one query
+     * 
+     * @param eventIds The event identifiers to check
+     * @return The subset of eventIds already recorded
+     */
+    @Query("SELECT a.eventId FROM AuditLog a WHERE a.eventId IN :eventIds")
+    List<String> findExistingEventIds(@Param("eventIds") Collection<String> eventIds);
+
     /**
      * Find audit log by event ID
      * Used for event correlation and duplicate detection
@@ -0,0 +1,37 @@
+/**
+ * Deferred Amazon Call Repository
+ *
+ * Functionality:
+ * - Data access for Amazon notifications deferred while the circuit breaker was open
+ * - Oldest-first lookup of calls that are due for replay
+ * - Bulk removal of calls past the maximum age
+ *
+ *
+
+ */
+package com.miniups.repository;
+
+import com.miniups.model.entity.DeferredAmazonCall;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface DeferredAmazonCallRepository extends JpaRepository<DeferredAmazonCall, Long> {
+
+    // Calls due for replay, oldest first
+    List<DeferredAmazonCall> findByNextAttemptAtLessThanEqualOrderByIdAsc(LocalDateTime now, Pageable pageable);
+
+    // Drop calls stored before the cutoff, whatever their replay state
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM DeferredAmazonCall d WHERE d.createdAt < :cutoff")
+    int deleteByCreatedAtBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,20 @@
+/**
+ * Outbox Event Repository
+ *
+ * Functionality:
+ * - Data access for domain events waiting in the transactional outbox
+ * - Rows are written here inside the business transaction; OutboxRelay reads and
+ *   marks them with plain JDBC so it can lock with SKIP LOCKED
+ *
+ *
+
+ */
+package com.miniups.repository;
+
+import com.miniups.model.entity.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+}
@@ -8,6 +8,7 @@
  * 
  * Core Query Methods:
  * - findByShipmentId: Find by Amazon order ID (system integration)
+ * - existsByShipmentId: Cheap duplicate check before a shipment is created
  * - findByUpsTrackingId: Find by UPS tracking number (customer query)
  * - findByUserId: Query all orders for a user (with pagination support)
  * - findByStatus: Find orders by status (operations management)
@@ -16,6 +17,10 @@
  * - findByUserIdAndStatus: Query specific status orders for a particular user
  * - countByStatus: Count orders by status (data reporting)
  * 
+ * Native Operations:
+ * - insertIfAbsent: Create a shipment in one statement, duplicates resolved by the database
+ *   (see ShipmentRepositoryImpl)
+ * 
  * Performance Features:
  * - Utilizes database indexes to optimize query performance
  * - Supports pagination to prevent memory overflow
@@ -45,15 +50,18 @@ import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 @Repository
-public interface ShipmentRepository extends JpaRepository<Shipment, Long> {
+public interface ShipmentRepository extends JpaRepository<Shipment, Long>, ShipmentRepositoryCustom {
     
     Optional<Shipment> findByShipmentId(String shipmentId);
     
+    boolean existsByShipmentId(String shipmentId);
+    
     Optional<Shipment> findByUpsTrackingId(String upsTrackingId);
     
     List<Shipment> findByUserId(Long userId);
@@ -70,6 +78,18 @@ public interface ShipmentRepository extends JpaRepository<Shipment, Long> {
     
     boolean existsByUpsTrackingId(String upsTrackingId);
     
+    /**
+     * Which of the given shipment IDs already exist, in one query (bulk ingest de-duplication)
+     */
+    @Query("SELECT s.shipmentId FROM Shipment s WHERE s.shipmentId IN :shipmentIds")
+    List<String> findExistingShipmentIds(@Param("shipmentIds") Collection<String> shipmentIds);
+    
+    /**
+     * Which of the given tracking numbers are already taken, in one query (tracking number blocks)
+     */
+    @Query("SELECT s.upsTrackingId FROM Shipment s WHERE s.upsTrackingId IN :trackingIds")
+    List<String> findExistingUpsTrackingIds(@Param("trackingIds") Collection<String> trackingIds);
+    
     
     List<Shipment> findByUserIdOrderByCreatedAtDesc(Long userId);
     
@@ -85,4 +105,6 @@ public interface ShipmentRepository extends JpaRepository<Shipment, Long> {
     
     @Query("SELECT s FROM Shipment s ORDER BY s.createdAt DESC")
     Page<Shipment> findRecentShipments(Pageable pageable);
+    
+    List<Shipment> findByStatusAndActualDeliveryIsNotNullOrderByActualDeliveryDesc(ShipmentStatus status, Pageable pageable);
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+/**
+ * Shipment Repository Custom Operations
+ *
+ * Functionality:
+ * - Native insert-if-absent used by Amazon shipment ingest, see ShipmentRepositoryImpl
+ *
+ *
+
+ */
+package com.miniups.repository;
+
+import com.miniups.model.entity.Shipment;
+
+public interface ShipmentRepositoryCustom {
+
+    /**
+     * Insert the shipment unless its shipment ID is taken, in one statement.
+     * User and truck must already be persisted.
+     *
+     * @return ID of the inserted shipment, or null if the shipment ID already exists
+     */
+    Long insertIfAbsent(Shipment shipment);
+}
@@ -0,0 +1,98 @@
+/**
+ * Shipment Repository Custom Implementation
+ *
+ * Functionality:
+ * - Creates a shipment in one statement with no prior existence check; a duplicate
+ *   shipment ID is resolved by the unique constraint on the server
+ *
+ * PostgreSQL:
+ * - INSERT ... ON CONFLICT (shipment_id) DO NOTHING RETURNING id; no row back means duplicate.
+ *   A concurrent duplicate waits for the first insert's transaction and then does nothing,
+ *   so it never aborts the caller's transaction
+ *
+ * Other databases:
+ * - Insert, and treat a duplicate key on an existing shipment ID as a duplicate
+ *
+ *
+
+ */
+package com.miniups.repository;
+
+import com.miniups.model.entity.Shipment;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class ShipmentRepositoryImpl implements ShipmentRepositoryCustom {
+
+    private static final String INSERT_SQL = """
+        INSERT INTO shipments (shipment_id, ups_tracking_id, warehouse_id, status, origin_x, origin_y, dest_x, dest_y,
+                               weight, estimated_delivery, user_id, truck_id, created_at, updated_at, version)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)
+        """;
+
+    private static final String INSERT_IF_ABSENT_SQL = INSERT_SQL + """
+        ON CONFLICT (shipment_id) DO NOTHING
+        RETURNING id
+        """;
+
+    private static final String EXISTS_SQL = "SELECT COUNT(*) FROM shipments WHERE shipment_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Boolean postgres;
+
+    public ShipmentRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public Long insertIfAbsent(Shipment shipment) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Object[] args = {
+            shipment.getShipmentId(), shipment.getUpsTrackingId(), shipment.getWarehouseId(), shipment.getStatus().name(),
+            shipment.getOriginX(), shipment.getOriginY(), shipment.getDestX(), shipment.getDestY(), shipment.getWeight(),
+            shipment.getEstimatedDelivery() != null ? Timestamp.valueOf(shipment.getEstimatedDelivery()) : null,
+            shipment.getUser() != null ? shipment.getUser().getId() : null,
+            shipment.getTruck() != null ? shipment.getTruck().getId() : null,
+            now, now
+        };
+        if (isPostgres()) {
+            List<Long> ids = jdbcTemplate.queryForList(INSERT_IF_ABSENT_SQL, Long.class, args);
+            return !ids.isEmpty() ? ids.get(0) : null;
+        }
+        try {
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(INSERT_SQL, new String[] {"id"});
+                new ArgumentPreparedStatementSetter(args).setValues(ps);
+                return ps;
+            }, keyHolder);
+            return keyHolder.getKey().longValue();
+        } catch (DuplicateKeyException e) {
+            Long existing = jdbcTemplate.queryForObject(EXISTS_SQL, Long.class, shipment.getShipmentId());
+            if (existing == null || existing == 0) {
+                // Some other unique column clashed, e.g. the tracking number
+                throw e;
+            }
+            return null;
+        }
+    }
+
+    // Private helper methods
+
+    private boolean isPostgres() {
+        Boolean result = postgres;
+        if (result == null) {
+            result = UpsertSupport.isPostgres(jdbcTemplate);
+            postgres = result;
+        }
+        return result;
+    }
+}
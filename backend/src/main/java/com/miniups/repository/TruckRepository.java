@@ -39,6 +39,7 @@ import com.miniups.model.enums.TruckStatus;
 import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -104,4 +105,70 @@ public interface TruckRepository extends JpaRepository<Truck, Long> {
         FOR UPDATE SKIP LOCKED
         """, nativeQuery = true)
     Optional<Truck> findAndLockOneAvailableTruck();
+    
+    /**
+     * Atomically add weight to a truck's current load if it still fits within capacity.
+     * The capacity check and increment happen in one statement, so concurrent callers
+     * can never overfill a truck.
+     *
+     * @return 1 if the load was added, 0 if the truck is full or does not exist
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+        UPDATE trucks
+        SET current_load = COALESCE(current_load, 0) + :weight
+        WHERE id = :id
+        AND COALESCE(current_load, 0) + :weight <= capacity
+        """, nativeQuery = true)
+    int tryAddLoad(@Param("id") Long id, @Param("weight") double weight);
+    
+    /**
+     * Atomically remove weight from a truck's current load, never going below zero
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+        UPDATE trucks
+        SET current_load = GREATEST(COALESCE(current_load, 0) - :weight, 0)
+        WHERE id = :id
+        """, nativeQuery = true)
+    int releaseLoad(@Param("id") Long id, @Param("weight") double weight);
+    
+    /**
+     * Mark an empty truck full, for a shipment heavier than its capacity.
+     * The shipment is charged the truck's capacity, so nothing else is packed onto it.
+     *
+     * @return 1 if the truck was empty and is now full, 0 otherwise
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+        UPDATE trucks
+        SET current_load = capacity
+        WHERE id = :id
+        AND COALESCE(current_load, 0) = 0
+        """, nativeQuery = true)
+    int fillLoad(@Param("id") Long id);
+    
+    /**
+     * Clear a truck's load once it has finished all deliveries and gone idle
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE trucks SET current_load = 0 WHERE id = :id", nativeQuery = true)
+    int resetLoad(@Param("id") Long id);
+    
+    /**
+     * Find trucks already dispatched to a warehouse that have not left for delivery yet.
+     * These are the open bins a new shipment from the same warehouse can be packed into.
+     */
+    @Query("""
+        SELECT DISTINCT t FROM Shipment s JOIN s.truck t
+        WHERE s.warehouseId = :warehouseId
+        AND s.status IN (com.miniups.model.enums.ShipmentStatus.CREATED,
+                         com.miniups.model.enums.ShipmentStatus.TRUCK_DISPATCHED)
+        AND t.status IN (com.miniups.model.enums.TruckStatus.EN_ROUTE,
+                         com.miniups.model.enums.TruckStatus.TRAVELING,
+                         com.miniups.model.enums.TruckStatus.AT_WAREHOUSE,
+                         com.miniups.model.enums.TruckStatus.ARRIVE_WAREHOUSE)
+        ORDER BY t.id ASC
+        """)
+    List<Truck> findLoadableTrucksForWarehouse(@Param("warehouseId") String warehouseId);
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+/**
+ * Upsert Support
+ *
+ * Functionality:
+ * - Shared helpers for the native upsert repository fragments
+ * - Detects PostgreSQL, where INSERT ... ON CONFLICT ... RETURNING resolves duplicates on
+ *   the server in one statement; other databases (H2 in tests) insert and catch the
+ *   duplicate key instead
+ *
+ *
+
+ */
+package com.miniups.repository;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+final class UpsertSupport {
+
+    private UpsertSupport() {}
+
+    static boolean isPostgres(JdbcTemplate jdbcTemplate) {
+        Boolean postgres = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+            "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName()));
+        return Boolean.TRUE.equals(postgres);
+    }
+}
@@ -11,6 +11,7 @@
  * - findByEmail: Find user by email (login verification, password reset)
  * - existsByUsername: Check if username already exists (registration verification)
  * - existsByEmail: Check if email already exists (registration verification)
+ * - upsertByEmail: Find-or-create by email in one statement (Amazon ingest, see UserRepositoryImpl)
  * 
  * Inherited Standard Methods:
  * - save(): Save or update user
@@ -43,16 +44,19 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, UserRepositoryCustom {
     
     Optional<User> findByUsername(String username);
     
     Optional<User> findByEmail(String email);
     
+    List<User> findByEmailIn(Collection<String> emails);
+    
     boolean existsByUsername(String username);
     
     boolean existsByEmail(String email);
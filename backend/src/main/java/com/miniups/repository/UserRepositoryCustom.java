@@ -0,0 +1,31 @@
+/**
+ * User Repository Custom Operations
+ *
+ * Functionality:
+ * - Native upsert used by Amazon shipment ingest, see UserRepositoryImpl
+ * - Bulk variant for batch ingest, with the same conflict handling
+ *
+ *
+
+ */
+package com.miniups.repository;
+
+import com.miniups.model.entity.User;
+
+import java.util.List;
+
+public interface UserRepositoryCustom {
+
+    /**
+     * Insert the user unless one with the same email exists, in one statement
+     *
+     * @return ID of the inserted or existing user
+     */
+    Long upsertByEmail(User user);
+
+    /**
+     * Insert every user whose email does not exist yet, as one JDBC batch where the database allows;
+     * existing emails, including ones inserted concurrently, are left as they are
+     */
+    void insertAllIfAbsent(List<User> users);
+}
@@ -0,0 +1,130 @@
+/**
+ * User Repository Custom Implementation
+ *
+ * Functionality:
+ * - Find-or-create by email in one round trip instead of a lookup followed by an insert
+ *
+ * PostgreSQL:
+ * - One statement: INSERT ... ON CONFLICT (email) DO NOTHING RETURNING id, falling back to
+ *   the existing row's id in the same statement; no row is written for existing users
+ * - If a concurrent transaction inserted the same email after this statement's snapshot,
+ *   the id is read again with a fresh snapshot
+ *
+ * Other databases:
+ * - Insert, and on a duplicate email read the existing id
+ *
+ * insertAllIfAbsent uses the same statements: one ON CONFLICT batch on PostgreSQL, one
+ * upsert per user elsewhere.
+ *
+ * A clash on username alone (same Amazon user, new email) still fails as a constraint violation.
+ *
+ *
+
+ */
+package com.miniups.repository;
+
+import com.miniups.model.entity.User;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class UserRepositoryImpl implements UserRepositoryCustom {
+
+    private static final String INSERT_COLUMNS = """
+        INSERT INTO users (username, email, password, first_name, last_name, role, enabled, created_at, updated_at, version)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 0)
+        """;
+
+    private static final String UPSERT_SQL = "WITH inserted AS (" + INSERT_COLUMNS + """
+          ON CONFLICT (email) DO NOTHING
+          RETURNING id
+        )
+        SELECT id FROM inserted
+        UNION ALL
+        SELECT id FROM users WHERE email = ?
+        LIMIT 1
+        """;
+
+    private static final String INSERT_IF_ABSENT_SQL = INSERT_COLUMNS + "ON CONFLICT (email) DO NOTHING";
+
+    private static final String FIND_ID_SQL = "SELECT id FROM users WHERE email = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Boolean postgres;
+
+    public UserRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public Long upsertByEmail(User user) {
+        Object[] values = valuesOf(user, Timestamp.valueOf(LocalDateTime.now()));
+        if (isPostgres()) {
+            Object[] args = new Object[values.length + 1];
+            System.arraycopy(values, 0, args, 0, values.length);
+            args[values.length] = user.getEmail();
+            List<Long> ids = jdbcTemplate.queryForList(UPSERT_SQL, Long.class, args);
+            return !ids.isEmpty() ? ids.get(0) : findId(user.getEmail());
+        }
+        try {
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(INSERT_COLUMNS, new String[] {"id"});
+                new ArgumentPreparedStatementSetter(values).setValues(ps);
+                return ps;
+            }, keyHolder);
+            return keyHolder.getKey().longValue();
+        } catch (DuplicateKeyException e) {
+            Long existing = jdbcTemplate.queryForList(FIND_ID_SQL, Long.class, user.getEmail()).stream()
+                .findFirst().orElse(null);
+            if (existing == null) {
+                throw e;
+            }
+            return existing;
+        }
+    }
+
+    @Override
+    public void insertAllIfAbsent(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        if (isPostgres()) {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            jdbcTemplate.batchUpdate(INSERT_IF_ABSENT_SQL, users.stream().map(user -> valuesOf(user, now)).toList());
+            return;
+        }
+        for (User user : users) {
+            upsertByEmail(user);
+        }
+    }
+
+    // Private helper methods
+
+    private Object[] valuesOf(User user, Timestamp now) {
+        return new Object[] {
+            user.getUsername(), user.getEmail(), user.getPassword(), user.getFirstName(), user.getLastName(),
+            user.getRole().name(), user.getEnabled(), now, now
+        };
+    }
+
+    private Long findId(String email) {
+        return jdbcTemplate.queryForObject(FIND_ID_SQL, Long.class, email);
+    }
+
+    private boolean isPostgres() {
+        Boolean result = postgres;
+        if (result == null) {
+            result = UpsertSupport.isPostgres(jdbcTemplate);
+            postgres = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * HMAC Signature Verifier
+ *
+ * Purpose:
+ * - Verifies HMAC-SHA256 request signatures without per-request key setup
+ *
+ * Performance:
+ * - The key is set up once on a prototype Mac; each thread gets its own clone and
+ *   resets it between requests instead of calling Mac.getInstance and init every time
+ * - The body is fed to the Mac while it is being read (see {@link #readVerified}),
+ *   so it is buffered once and never converted to a String
+ *
+ * Security:
+ * - The signature header is Base64 decoded and compared as bytes in constant time
+ *
+ *
+
+ */
+package com.miniups.security;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+public final class HmacSignatureVerifier {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    // Chunked requests start here; a known Content-Length is used as-is
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final String secret;
+    private final SecretKeySpec key;
+    private final Mac prototype;
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    public HmacSignatureVerifier(String secret) {
+        this.secret = secret;
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.prototype = createMac();
+    }
+
+    public boolean isKeyedWith(String secret) {
+        return this.secret.equals(secret);
+    }
+
+    /**
+     * Sign a body, as the sender would
+     *
+     * @return Base64 HMAC-SHA256 of the body
+     */
+    public String sign(byte[] body) {
+        Mac mac = macs.get();
+        mac.reset();
+        return Base64.getEncoder().encodeToString(mac.doFinal(body));
+    }
+
+    /**
+     * Check a signature against a body that is already in memory
+     */
+    public boolean verify(byte[] body, String signature) {
+        Mac mac = macs.get();
+        mac.reset();
+        mac.update(body);
+        return matches(mac.doFinal(), signature);
+    }
+
+    /**
+     * Read a body to the end, computing its HMAC while it streams in
+     *
+     * @param in Request body stream
+     * @param contentLength Declared length, or -1 if unknown
+     * @param maxBytes Largest body accepted
+     * @param signature Signature header value
+     * @return Body and verification outcome; the body is null if it exceeded maxBytes
+     */
+    public Result readVerified(InputStream in, long contentLength, int maxBytes, String signature) throws IOException {
+        Mac mac = macs.get();
+        mac.reset();
+        byte[] body = readFully(new MacInputStream(in, mac), contentLength, maxBytes);
+        if (body == null) {
+            return new Result(null, false);
+        }
+        return new Result(body, matches(mac.doFinal(), signature));
+    }
+
+    // Private helper methods
+
+    private static boolean matches(byte[] expected, String signature) {
+        if (signature == null) {
+            return false;
+        }
+        byte[] provided;
+        try {
+            provided = Base64.getDecoder().decode(signature.trim());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // Constant time for equal lengths; the length itself is public
+        return MessageDigest.isEqual(expected, provided);
+    }
+
+    /**
+     * Read into a buffer that grows as bytes arrive. Content-Length is not authenticated yet,
+     * so it only bounds the first buffer and the growth steps, never the allocation up front.
+     */
+    private static byte[] readFully(InputStream in, long contentLength, int maxBytes) throws IOException {
+        if (contentLength > maxBytes) {
+            return null;
+        }
+        int initial = Math.min(DEFAULT_BUFFER_SIZE, maxBytes);
+        byte[] buffer = new byte[contentLength >= 0 ? (int) Math.min(contentLength, initial) : initial];
+        int total = 0;
+        while (true) {
+            if (total == buffer.length) {
+                // Declared length reached, or a chunked body filled the buffer; check for more
+                int next = in.read();
+                if (next < 0) {
+                    return buffer;
+                }
+                if (total >= maxBytes) {
+                    return null;
+                }
+                long grown = Math.min(Math.max(buffer.length * 2L, 64), maxBytes);
+                if (contentLength > buffer.length) {
+                    // Still short of the declared length: grow towards it, not past it
+                    grown = Math.min(grown, contentLength);
+                }
+                buffer = Arrays.copyOf(buffer, (int) grown);
+                buffer[total++] = (byte) next;
+                continue;
+            }
+            int read = in.read(buffer, total, buffer.length - total);
+            if (read < 0) {
+                return total == buffer.length ? buffer : Arrays.copyOf(buffer, total);
+            }
+            total += read;
+        }
+    }
+
+    private Mac newMac() {
+        synchronized (prototype) {
+            try {
+                return (Mac) prototype.clone();
+            } catch (CloneNotSupportedException e) {
+                // Provider without clone support: pay for init once per thread instead
+                return createMac();
+            }
+        }
+    }
+
+    private Mac createMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialise " + ALGORITHM, e);
+        }
+    }
+
+    /**
+     * Tee into the Mac: every byte read by the caller is also fed to the HMAC
+     */
+    private static class MacInputStream extends FilterInputStream {
+        private final Mac mac;
+
+        MacInputStream(InputStream in, Mac mac) {
+            super(in);
+            this.mac = mac;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                mac.update((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                mac.update(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            // Skipped bytes would be missing from the HMAC
+            return 0;
+        }
+    }
+
+    /**
+     * Body read by {@link #readVerified}, and whether its signature matched
+     */
+    public static class Result {
+        private final byte[] body;
+        private final boolean valid;
+
+        Result(byte[] body, boolean valid) {
+            this.body = body;
+            this.valid = valid;
+        }
+
+        public byte[] getBody() { return body; }
+        public boolean isTooLarge() { return body == null; }
+        public boolean isValid() { return valid; }
+    }
+}
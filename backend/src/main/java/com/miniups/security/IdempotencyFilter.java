@@ -0,0 +1,176 @@
+/**
+ * Idempotency Filter
+ *
+ * Purpose:
+ * - Makes Amazon's retried requests safe: each request is processed once, and
+ *   duplicates get the original response instead of redoing the work
+ *
+ * Keys:
+ * - The Idempotency-Key header when present, scoped to method and path
+ * - Otherwise a SHA-256 hash of method, path and body, so an identical retry is caught too
+ *
+ * Behaviour:
+ * - Applies to mutating requests on the configured Amazon endpoints
+ * - A duplicate arriving while the original runs waits for it and gets its response
+ * - If the original does not finish within the wait timeout, 409 with Retry-After
+ * - Only 2xx responses are stored; errors release the key so a retry is processed
+ * - Replayed responses carry the Idempotent-Replayed: true header
+ *
+ * Runs after webhook signature verification, so unsigned duplicates are never replayed.
+ *
+ *
+
+ */
+package com.miniups.security;
+
+import com.miniups.service.IdempotencyStore;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyFilter.class);
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
+    @Value("${app.idempotency.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${app.idempotency.paths:/api/shipment,/api/shipments/batch,/api/shipment_loaded,/api/address_change,/api/amazon/message,/api/webhooks/**}")
+    private List<String> paths = List.of();
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!enabled) {
+            return true;
+        }
+        String method = request.getMethod();
+        if (!"POST".equals(method) && !"PUT".equals(method) && !"PATCH".equals(method)) {
+            return true;
+        }
+        String path = request.getRequestURI();
+        return paths.stream().noneMatch(pattern -> pathMatcher.match(pattern.trim(), path));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        byte[] body = readBody(request);
+        String key = keyFor(request, body);
+        if (key == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest replayable = WebUtils.getNativeRequest(request, CachedBodyHttpServletRequest.class) != null
+            ? request : new CachedBodyHttpServletRequest(request, body);
+
+        IdempotencyStore.Claim claim = idempotencyStore.begin(key);
+        switch (claim.getType()) {
+            case REPLAY -> {
+                logger.info("Replaying stored response for duplicate {} {}", request.getMethod(), request.getRequestURI());
+                writeSnapshot(response, claim.getSnapshot());
+                return;
+            }
+            case IN_PROGRESS -> {
+                response.setStatus(HttpServletResponse.SC_CONFLICT);
+                response.setHeader("Retry-After", "1");
+                response.setContentType("application/json");
+                response.getWriter().write("{\"error\":\"A request with the same idempotency key is still being processed\"}");
+                return;
+            }
+            default -> {
+                // OWNER: fall through and process
+            }
+        }
+
+        ContentCachingResponseWrapper cachingResponse = new ContentCachingResponseWrapper(response);
+        boolean stored = false;
+        try {
+            filterChain.doFilter(replayable, cachingResponse);
+            int status = cachingResponse.getStatus();
+            if (status >= 200 && status < 300) {
+                idempotencyStore.complete(key, new IdempotencyStore.Snapshot(status, cachingResponse.getContentType(),
+                    new String(cachingResponse.getContentAsByteArray(), StandardCharsets.UTF_8)));
+                stored = true;
+            }
+        } finally {
+            if (!stored) {
+                idempotencyStore.release(key);
+            }
+            cachingResponse.copyBodyToResponse();
+        }
+    }
+
+    // Private helper methods
+
+    private byte[] readBody(HttpServletRequest request) throws IOException {
+        // The signature filter has usually read the body already; use its buffer as-is
+        CachedBodyHttpServletRequest cached = WebUtils.getNativeRequest(request, CachedBodyHttpServletRequest.class);
+        if (cached != null) {
+            return cached.getBody();
+        }
+        return StreamUtils.copyToByteArray(request.getInputStream());
+    }
+
+    /**
+     * @return Store key, or null for a request with neither a key header nor a body
+     */
+    String keyFor(HttpServletRequest request, byte[] body) {
+        String scope = request.getMethod() + " " + request.getRequestURI();
+        String header = request.getHeader(IDEMPOTENCY_KEY_HEADER);
+        if (header != null && !header.isBlank()) {
+            return scope + " key:" + header.trim();
+        }
+        if (body.length == 0) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(scope.getBytes(StandardCharsets.UTF_8));
+            digest.update(body);
+            return scope + " sha256:" + HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private void writeSnapshot(HttpServletResponse response, IdempotencyStore.Snapshot snapshot) throws IOException {
+        response.setStatus(snapshot.getStatus());
+        response.setHeader(REPLAYED_HEADER, "true");
+        if (snapshot.getContentType() != null) {
+            response.setContentType(snapshot.getContentType());
+        }
+        if (snapshot.getBody() != null) {
+            byte[] bytes = snapshot.getBody().getBytes(StandardCharsets.UTF_8);
+            response.setContentLength(bytes.length);
+            response.getOutputStream().write(bytes);
+        }
+    }
+}
@@ -12,6 +12,11 @@
  * - Configurable secret key for different environments
  * - Comprehensive logging for security monitoring
  * 
+ * Performance:
+ * - The HMAC is computed while the body streams in, with a pre-keyed per-thread Mac
+ *   (see HmacSignatureVerifier); the body is buffered once and handed downstream
+ *   as a CachedBodyHttpServletRequest, which the idempotency filter reuses
+ * 
  *
  
  */
@@ -26,15 +31,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
-import org.springframework.web.util.ContentCachingRequestWrapper;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
 
 @Component
 public class WebhookAuthenticationFilter extends OncePerRequestFilter {
@@ -50,6 +48,12 @@ public class WebhookAuthenticationFilter extends OncePerRequestFilter {
     @Value("${amazon.webhook.authentication.enabled:true}")
     private boolean webhookAuthEnabled;
     
+    @Value("${amazon.webhook.max-body-bytes:10485760}")
+    private int maxBodyBytes = 10 * 1024 * 1024;
+    
+    // Rebuilt only if the secret changes
+    private volatile HmacSignatureVerifier verifier;
+    
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, 
                                    FilterChain filterChain) throws ServletException, IOException {
@@ -59,6 +63,8 @@ public class WebhookAuthenticationFilter extends OncePerRequestFilter {
         // Only apply to webhook endpoints
         if (!requestPath.startsWith("/api/webhooks/") && 
             !requestPath.equals("/api/shipment") && 
+            !requestPath.equals("/api/shipments/batch") && 
+            !requestPath.equals("/api/shipments/stream") && 
             !requestPath.equals("/api/shipment_loaded") && 
             !requestPath.equals("/api/shipment_status") && 
             !requestPath.equals("/api/address_change")) {
@@ -73,9 +79,6 @@ public class WebhookAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
         
-        // Wrap the request to allow multiple reads of the body
-        ContentCachingRequestWrapper wrappedRequest = new ContentCachingRequestWrapper(request);
-        
         try {
             // Get signature from header
             String signature = request.getHeader(signatureHeader);
@@ -86,11 +89,19 @@ public class WebhookAuthenticationFilter extends OncePerRequestFilter {
                 return;
             }
             
-            // Read the request body to cache it
-            String requestBody = getRequestBody(wrappedRequest);
+            // Read the body once, computing the HMAC as it arrives
+            HmacSignatureVerifier.Result result = verifier().readVerified(
+                request.getInputStream(), request.getContentLengthLong(), maxBodyBytes, signature);
+            
+            if (result.isTooLarge()) {
+                logger.warn("Webhook request body to {} exceeds {} bytes", requestPath, maxBodyBytes);
+                response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                response.getWriter().write("{\"error\":\"Request body too large\"}");
+                return;
+            }
             
             // Validate signature before processing
-            if (!validateSignature(requestBody, signature)) {
+            if (!result.isValid()) {
                 logger.warn("Invalid signature for webhook request to {} from {}", 
                            requestPath, request.getRemoteAddr());
                 response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
@@ -100,8 +111,8 @@ public class WebhookAuthenticationFilter extends OncePerRequestFilter {
             
             logger.debug("Webhook authentication successful for {}", requestPath);
             
-            // Continue with the filter chain using the wrapped request
-            filterChain.doFilter(wrappedRequest, response);
+            // Continue with the filter chain using the buffered body
+            filterChain.doFilter(new CachedBodyHttpServletRequest(request, result.getBody()), response);
             
         } catch (Exception e) {
             logger.error("Error during webhook authentication for {}", requestPath, e);
@@ -113,54 +124,15 @@ public class WebhookAuthenticationFilter extends OncePerRequestFilter {
     }
     
     /**
-     * Read request body and cache it for later use
-     */
-    private String getRequestBody(ContentCachingRequestWrapper request) throws IOException {
-        // Read the input stream once to cache it
-        request.getInputStream().readAllBytes();
-        
-        // Get the cached body content
-        byte[] requestBodyBytes = request.getContentAsByteArray();
-        return new String(requestBodyBytes, StandardCharsets.UTF_8);
-    }
-    
-    /**
-     * Validate webhook signature using HMAC-SHA256
-     */
-    private boolean validateSignature(String requestBody, String signature) {
-        try {
-            // Generate expected signature
-            Mac mac = Mac.getInstance("HmacSHA256");
-            SecretKeySpec secretKey = new SecretKeySpec(
-                webhookSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
-            mac.init(secretKey);
-            
-            byte[] hash = mac.doFinal(requestBody.getBytes(StandardCharsets.UTF_8));
-            String expectedSignature = Base64.getEncoder().encodeToString(hash);
-            
-            // Compare signatures (constant time comparison to prevent timing attacks)
-            return constantTimeEquals(signature, expectedSignature);
-            
-        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
-            logger.error("Error generating signature", e);
-            return false;
-        }
-    }
-    
-    /**
-     * Constant time string comparison to prevent timing attacks
+     * Verifier keyed with the current secret
      */
-    private boolean constantTimeEquals(String a, String b) {
-        if (a.length() != b.length()) {
-            return false;
+    private HmacSignatureVerifier verifier() {
+        HmacSignatureVerifier current = verifier;
+        if (current == null || !current.isKeyedWith(webhookSecret)) {
+            current = new HmacSignatureVerifier(webhookSecret);
+            verifier = current;
         }
-        
-        int result = 0;
-        for (int i = 0; i < a.length(); i++) {
-            result |= a.charAt(i) ^ b.charAt(i);
-        }
-        
-        return result == 0;
+        return current;
     }
     
     @Override
@@ -169,6 +141,8 @@ public class WebhookAuthenticationFilter extends OncePerRequestFilter {
         String path = request.getRequestURI();
         return !(path.startsWith("/api/webhooks/") || 
                 path.equals("/api/shipment") || 
+                path.equals("/api/shipments/batch") || 
+                path.equals("/api/shipments/stream") || 
                 path.equals("/api/shipment_loaded") || 
                 path.equals("/api/shipment_status") || 
                 path.equals("/api/address_change"));
@@ -36,6 +36,7 @@ import com.miniups.repository.AuditLogRepository;
 import com.miniups.service.consumer.AnalyticsConsumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -59,17 +60,20 @@ public class AdminService {
     private final UserRepository userRepository;
     private final AuditLogRepository auditLogRepository;
     private final AnalyticsConsumer analyticsConsumer;
+    private final EtaService etaService;
     
     public AdminService(ShipmentRepository shipmentRepository,
                        TruckRepository truckRepository,
                        UserRepository userRepository,
                        AuditLogRepository auditLogRepository,
-                       AnalyticsConsumer analyticsConsumer) {
+                       AnalyticsConsumer analyticsConsumer,
+                       @Autowired(required = false) EtaService etaService) {
         this.shipmentRepository = shipmentRepository;
         this.truckRepository = truckRepository;
         this.userRepository = userRepository;
         this.auditLogRepository = auditLogRepository;
         this.analyticsConsumer = analyticsConsumer;
+        this.etaService = etaService;
     }
     
     /**
@@ -183,6 +187,19 @@ public class AdminService {
         return userStats;
     }
     
+    /**
+     * Calculate average delivery time from observed deliveries
+     *
+     * @return Mean creation-to-delivery time in days, 0 if nothing was delivered yet
+     */
+    private double calculateAverageDeliveryDays() {
+        if (etaService == null) {
+            return 0.0;
+        }
+        double days = etaService.getAverageDeliveryMillis() / 86_400_000.0;
+        return Math.round(days * 1000.0) / 1000.0;
+    }
+
     /**
      * Calculate revenue statistics with growth rates
      * 
@@ -433,7 +450,7 @@ public class AdminService {
         
         // Performance metrics (enhanced with real calculations)
         Map<String, Object> performanceMetrics = new HashMap<>();
-        performanceMetrics.put("averageDeliveryTime", 2.5); // days
+        performanceMetrics.put("averageDeliveryTime", calculateAverageDeliveryDays()); // days
         performanceMetrics.put("onTimeDeliveryRate", 94.2); // percentage
         performanceMetrics.put("customerSatisfaction", 4.6); // out of 5
         performanceMetrics.put("operationalEfficiency", 87.3); // percentage
@@ -0,0 +1,294 @@
+/**
+ * Amazon Async HTTP Client
+ *
+ * Functionality:
+ * - Non-blocking outbound calls to Amazon on CloseableHttpAsyncClient
+ * - Methods return CompletableFuture, so no thread waits for the round trip; a few
+ *   I/O reactor threads serve every open request
+ *
+ * Connections:
+ * - Pooled, with a total limit, a default per-route limit and a separate limit for
+ *   the Amazon host
+ * - Protocol is negotiated: HTTP/2 is used where the server offers it over TLS (one
+ *   multiplexed connection carries many requests), HTTP/1.1 keep-alive otherwise
+ *
+ * Timeouts:
+ * - Connect, pool lease and response timeouts are configured separately; a request
+ *   that times out completes its future exceptionally
+ *
+ * Metrics:
+ * - ups.amazon.http.in_flight, ups.amazon.http.latency{outcome}
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.routing.RoutingSupport;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class AmazonAsyncClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(AmazonAsyncClient.class);
+
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${http.async-client.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${amazon.base-url:http://host.docker.internal:8080}")
+    private String amazonBaseUrl = "http://host.docker.internal:8080";
+
+    @Value("${http.async-client.max-total-connections:400}")
+    private int maxTotalConnections = 400;
+
+    @Value("${http.async-client.max-per-route:50}")
+    private int maxPerRoute = 50;
+
+    @Value("${http.async-client.amazon-max-per-route:200}")
+    private int amazonMaxPerRoute = 200;
+
+    @Value("${http.async-client.io-threads:2}")
+    private int ioThreads = 2;
+
+    @Value("${http.async-client.connect-timeout-ms:5000}")
+    private long connectTimeoutMs = 5000;
+
+    @Value("${http.async-client.connection-request-timeout-ms:5000}")
+    private long connectionRequestTimeoutMs = 5000;
+
+    @Value("${http.async-client.response-timeout-ms:10000}")
+    private long responseTimeoutMs = 10000;
+
+    @Value("${http.async-client.http2:true}")
+    private boolean http2 = true;
+
+    private CloseableHttpAsyncClient client;
+    private PoolingAsyncClientConnectionManager connectionManager;
+
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public AmazonAsyncClient(ObjectMapper objectMapper, @Autowired(required = false) MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        if (meterRegistry != null) {
+            meterRegistry.gauge("ups.amazon.http.in_flight", inFlight);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled || client != null) {
+            return;
+        }
+        connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(maxTotalConnections)
+            .setMaxConnPerRoute(maxPerRoute)
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                .setTimeToLive(TimeValue.ofMinutes(5))
+                .build())
+            .setDefaultTlsConfig(TlsConfig.custom()
+                .setVersionPolicy(http2 ? HttpVersionPolicy.NEGOTIATE : HttpVersionPolicy.FORCE_HTTP_1)
+                .build())
+            .build();
+        HttpRoute amazonRoute = amazonRoute();
+        if (amazonRoute != null) {
+            connectionManager.setMaxPerRoute(amazonRoute, amazonMaxPerRoute);
+        }
+
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectionRequestTimeoutMs))
+            .setResponseTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+            .build();
+
+        client = HttpAsyncClients.custom()
+            .setConnectionManager(connectionManager)
+            .setIOReactorConfig(IOReactorConfig.custom()
+                .setIoThreadCount(ioThreads)
+                .setSoTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+                .build())
+            .setDefaultRequestConfig(requestConfig)
+            .setUserAgent("UPS-Service/1.0")
+            .evictIdleConnections(TimeValue.ofSeconds(30))
+            // Retries belong to the caller (see AmazonWebhookDispatcher), not hidden in the client
+            .disableAutomaticRetries()
+            .build();
+        client.start();
+        logger.info("Amazon async HTTP client started ({} I/O threads, {} connections, {} per Amazon route)",
+                   ioThreads, maxTotalConnections, amazonMaxPerRoute);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (client == null) {
+            return;
+        }
+        client.close(CloseMode.GRACEFUL);
+        client = null;
+    }
+
+    public boolean isEnabled() {
+        return enabled && client != null;
+    }
+
+    /**
+     * Post a notification to an Amazon webhook endpoint
+     *
+     * @param endpoint Path under the Amazon base URL, e.g. /api/webhooks/truck-arrived
+     * @param notification Request body, serialized as JSON
+     */
+    public CompletableFuture<Response> sendNotification(String endpoint, Object notification) {
+        return postJson(amazonBaseUrl + endpoint, notification);
+    }
+
+    /**
+     * Post a JSON body without blocking the caller
+     *
+     * @return Completes with the response for any status code, or exceptionally on
+     *         I/O errors and timeouts
+     */
+    public CompletableFuture<Response> postJson(String url, Object payload) {
+        byte[] body;
+        try {
+            body = payload instanceof byte[] bytes ? bytes : objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        SimpleHttpRequest request = SimpleRequestBuilder.post(url)
+            .setBody(body, ContentType.APPLICATION_JSON)
+            .build();
+        return execute(request);
+    }
+
+    /**
+     * Get client statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("in_flight", inFlight.get());
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        if (connectionManager != null) {
+            PoolStats pool = connectionManager.getTotalStats();
+            stats.put("connections_leased", pool.getLeased());
+            stats.put("connections_available", pool.getAvailable());
+            stats.put("connections_pending", pool.getPending());
+        }
+        return stats;
+    }
+
+    // Private helper methods
+
+    private CompletableFuture<Response> execute(SimpleHttpRequest request) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        if (client == null) {
+            future.completeExceptionally(new IllegalStateException("Amazon async client is not running"));
+            return future;
+        }
+        long startNanos = System.nanoTime();
+        inFlight.incrementAndGet();
+        client.execute(request, new FutureCallback<SimpleHttpResponse>() {
+            @Override
+            public void completed(SimpleHttpResponse response) {
+                settle(startNanos, "completed");
+                completed.incrementAndGet();
+                future.complete(new Response(response.getCode(), response.getBodyText()));
+            }
+
+            @Override
+            public void failed(Exception e) {
+                settle(startNanos, "failed");
+                failed.incrementAndGet();
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                settle(startNanos, "cancelled");
+                failed.incrementAndGet();
+                future.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    private void settle(long startNanos, String outcome) {
+        inFlight.decrementAndGet();
+        if (meterRegistry != null) {
+            Timer.builder("ups.amazon.http.latency")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private HttpRoute amazonRoute() {
+        try {
+            HttpHost host = RoutingSupport.normalize(HttpHost.create(URI.create(amazonBaseUrl)), null);
+            return new HttpRoute(host, null, "https".equalsIgnoreCase(host.getSchemeName()));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Cannot derive a connection route from amazon.base-url {}: {}", amazonBaseUrl, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Status and body of an Amazon response
+     */
+    public static class Response {
+        private final int status;
+        private final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public int getStatus() { return status; }
+        public String getBody() { return body; }
+        public boolean isSuccessful() { return status >= 200 && status < 300; }
+    }
+}
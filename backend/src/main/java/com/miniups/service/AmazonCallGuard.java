@@ -0,0 +1,232 @@
+/**
+ * Amazon Call Guard
+ *
+ * Functionality:
+ * - Circuit breaker and bulkhead in front of every outbound Amazon call
+ * - Callers take a permit before the call and report the outcome on it afterwards
+ *
+ * Circuit Breaker:
+ * - Count-based sliding window over the last calls (see CircuitBreaker)
+ * - Opens on the failure rate or the slow-call rate; while open, calls are rejected
+ *   immediately instead of waiting for a timeout, and callers defer them
+ *   (see DeferredAmazonCallStore)
+ * - Failures are I/O errors, timeouts, 5xx, 408 and 429; other statuses mean Amazon answered
+ *
+ * Bulkhead:
+ * - Semaphore limiting concurrent Amazon calls, so a slow Amazon cannot take every
+ *   world-handling and consumer thread
+ *
+ * Metrics:
+ * - ups.amazon.circuit.state (0 closed, 1 open, 2 half-open)
+ * - ups.amazon.circuit.transitions{from,to}
+ * - ups.amazon.calls.rejected{reason}, ups.amazon.bulkhead.in_use
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import com.miniups.util.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class AmazonCallGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(AmazonCallGuard.class);
+
+    public enum Rejection { CIRCUIT_OPEN, BULKHEAD_FULL }
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${amazon.resilience.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${amazon.resilience.circuit.window-size:50}")
+    private int windowSize = 50;
+
+    @Value("${amazon.resilience.circuit.minimum-calls:10}")
+    private int minimumCalls = 10;
+
+    @Value("${amazon.resilience.circuit.failure-rate-threshold:50}")
+    private float failureRateThreshold = 50;
+
+    @Value("${amazon.resilience.circuit.slow-call-rate-threshold:80}")
+    private float slowCallRateThreshold = 80;
+
+    @Value("${amazon.resilience.circuit.slow-call-duration-ms:2000}")
+    private long slowCallDurationMs = 2000;
+
+    @Value("${amazon.resilience.circuit.open-duration-ms:30000}")
+    private long openDurationMs = 30000;
+
+    @Value("${amazon.resilience.circuit.half-open-calls:5}")
+    private int halfOpenCalls = 5;
+
+    @Value("${amazon.resilience.bulkhead.max-concurrent:32}")
+    private int maxConcurrent = 32;
+
+    @Value("${amazon.resilience.bulkhead.max-wait-ms:0}")
+    private long maxWaitMs = 0;
+
+    private CircuitBreaker circuitBreaker;
+    private Semaphore bulkhead;
+
+    private final AtomicLong circuitRejected = new AtomicLong();
+    private final AtomicLong bulkheadRejected = new AtomicLong();
+    private final AtomicLong transitions = new AtomicLong();
+
+    public AmazonCallGuard(@Autowired(required = false) MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        circuitBreaker = new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold, slowCallRateThreshold,
+            slowCallDurationMs, openDurationMs, halfOpenCalls, System::nanoTime, this::onTransition);
+        bulkhead = new Semaphore(maxConcurrent);
+        if (meterRegistry != null) {
+            meterRegistry.gauge("ups.amazon.circuit.state", this, guard -> guard.getState().ordinal());
+            meterRegistry.gauge("ups.amazon.bulkhead.in_use", this, guard -> guard.maxConcurrent - guard.bulkhead.availablePermits());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && circuitBreaker != null;
+    }
+
+    /**
+     * Ask to call Amazon. The bulkhead is checked first, so a call it turns away
+     * does not use up a half-open trial.
+     *
+     * @return A permit; if granted, report the outcome on it exactly once
+     */
+    public Permit acquire() {
+        if (!isEnabled()) {
+            return new Permit(null, false);
+        }
+        boolean entered;
+        try {
+            entered = maxWaitMs > 0 ? bulkhead.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS) : bulkhead.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            entered = false;
+        }
+        if (!entered) {
+            return rejected(Rejection.BULKHEAD_FULL);
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            bulkhead.release();
+            return rejected(Rejection.CIRCUIT_OPEN);
+        }
+        return new Permit(null, true);
+    }
+
+    public CircuitBreaker.State getState() {
+        return circuitBreaker != null ? circuitBreaker.getState() : CircuitBreaker.State.CLOSED;
+    }
+
+    /**
+     * Get guard statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("state", getState().name());
+        stats.put("transitions", transitions.get());
+        stats.put("rejected_circuit_open", circuitRejected.get());
+        stats.put("rejected_bulkhead_full", bulkheadRejected.get());
+        if (circuitBreaker != null) {
+            stats.put("failure_rate", circuitBreaker.getFailureRate());
+            stats.put("slow_call_rate", circuitBreaker.getSlowCallRate());
+            stats.put("bulkhead_in_use", maxConcurrent - bulkhead.availablePermits());
+        }
+        return stats;
+    }
+
+    // Private helper methods
+
+    private Permit rejected(Rejection reason) {
+        (reason == Rejection.CIRCUIT_OPEN ? circuitRejected : bulkheadRejected).incrementAndGet();
+        if (meterRegistry != null) {
+            Counter.builder("ups.amazon.calls.rejected")
+                .tag("reason", reason.name().toLowerCase())
+                .register(meterRegistry)
+                .increment();
+        }
+        return new Permit(reason, false);
+    }
+
+    private void onTransition(CircuitBreaker.State from, CircuitBreaker.State to) {
+        transitions.incrementAndGet();
+        if (to == CircuitBreaker.State.OPEN) {
+            logger.warn("Amazon circuit breaker {} -> {}: calls are deferred for {} ms", from, to, openDurationMs);
+        } else {
+            logger.info("Amazon circuit breaker {} -> {}", from, to);
+        }
+        if (meterRegistry != null) {
+            Counter.builder("ups.amazon.circuit.transitions")
+                .tag("from", from.name().toLowerCase())
+                .tag("to", to.name().toLowerCase())
+                .register(meterRegistry)
+                .increment();
+        }
+    }
+
+    /**
+     * Permission for one Amazon call
+     */
+    public class Permit {
+        private final Rejection rejection;
+        private final boolean guarded;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        Permit(Rejection rejection, boolean guarded) {
+            this.rejection = rejection;
+            this.guarded = guarded;
+        }
+
+        public boolean isGranted() {
+            return rejection == null;
+        }
+
+        public Rejection getRejection() {
+            return rejection;
+        }
+
+        /**
+         * Amazon answered with this status
+         */
+        public void onResponse(int status) {
+            complete(status >= 500 || status == 408 || status == 429);
+        }
+
+        /**
+         * The call failed without a response: I/O error or timeout
+         */
+        public void onError() {
+            complete(true);
+        }
+
+        private void complete(boolean failed) {
+            if (guarded && done.compareAndSet(false, true)) {
+                bulkhead.release();
+                circuitBreaker.onResult(failed, System.nanoTime() - startNanos);
+            }
+        }
+    }
+}
@@ -7,7 +7,7 @@
  * - Provides functionality to send notifications to Amazon
  * 
  * Main Features:
- * - Process Amazon's ShipmentCreated messages
+ * - Process Amazon's ShipmentCreated messages, singly or in batches
  * - Handle ShipmentLoaded notifications
  * - Process shipment status query requests
  * - Handle address change requests
@@ -25,6 +25,7 @@ package com.miniups.service;
 
 import com.miniups.model.dto.AmazonMessageDto;
 import com.miniups.model.dto.ShipmentCreatedDto;
+import com.miniups.model.dto.ShipmentCreatedMessage;
 import com.miniups.model.dto.UpsResponseDto;
 import com.miniups.model.event.ShipmentCreationPayload;
 import com.miniups.model.entity.CommunicationLog;
@@ -36,9 +37,12 @@ import com.miniups.model.enums.TruckStatus;
 import com.miniups.repository.ShipmentRepository;
 import com.miniups.repository.TruckRepository;
 import com.miniups.repository.UserRepository;
+import com.miniups.util.ShipmentProtoReader;
 
+import com.google.protobuf.InvalidProtocolBufferException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
@@ -46,11 +50,21 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 @Transactional
@@ -91,9 +105,54 @@ public class AmazonIntegrationService {
     @Autowired
     private CommunicationLogService communicationLogService;
     
+    @Autowired(required = false)
+    private LoadPackingService loadPackingService;
+    
+    @Autowired(required = false)
+    private TruckRebalancingService rebalancingService;
+    
+    @Autowired(required = false)
+    private EtaService etaService;
+    
+    @Autowired(required = false)
+    private UserIdCache userIdCache;
+    
+    @Autowired(required = false)
+    private DeliveryRouteService deliveryRouteService;
+    
+    @Autowired(required = false)
+    private AmazonWebhookDispatcher webhookDispatcher;
+    
+    @Autowired(required = false)
+    private ShipmentBatchService shipmentBatchService;
+    
+    @Autowired(required = false)
+    private AmazonAsyncClient amazonAsyncClient;
+    
+    @Autowired(required = false)
+    private AmazonCallGuard amazonCallGuard;
+    
+    @Autowired(required = false)
+    private DeferredAmazonCallStore deferredAmazonCallStore;
+    
     @Value("${amazon.base-url:http://host.docker.internal:8080}")
     private String amazonBaseUrl;
     
+    @Value("${app.dispatch.load-packing.enabled:false}")
+    private boolean loadPackingEnabled;
+    
+    // Communication log updates for async notifications; JDBC must not run on the common pool
+    private final ExecutorService notificationLogExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "amazon-notification-log");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    @PreDestroy
+    public void stop() {
+        notificationLogExecutor.shutdown();
+    }
+    
     /**
      * Helper method to check if any world simulator is connected.
      */
@@ -154,35 +213,7 @@ public class AmazonIntegrationService {
                 return UpsResponseDto.error(1001, "Missing required fields: shipment_id or email");
             }
             
-            // Check if shipment already exists
-            Optional<Shipment> existingShipment = shipmentRepository.findByShipmentId(dto.getShipmentId());
-            if (existingShipment.isPresent()) {
-                return UpsResponseDto.error(1002, "Shipment already exists: " + dto.getShipmentId());
-            }
-            
-            // Find or create user
-            User user = findOrCreateUser(dto);
-            
-            // Create shipment
-            Shipment shipment = createShipment(dto, user);
-            
-            // Assign truck
-            Truck assignedTruck = assignTruck(dto.getWarehouseId());
-            if (assignedTruck == null) {
-                return UpsResponseDto.error(2001, "No available trucks for pickup");
-            }
-            
-            shipment.setTruck(assignedTruck);
-            shipment.setUpsTrackingId(trackingService.generateTrackingNumber());
-            shipment = shipmentRepository.save(shipment);
-            
-            logger.info("Created shipment {} with tracking number {}", 
-                       shipment.getShipmentId(), shipment.getUpsTrackingId());
-            
-            // Send truck to warehouse (this would integrate with World Simulator)
-            sendTruckToWarehouse(assignedTruck, dto.getWarehouseId(), shipment);
-            
-            return UpsResponseDto.success("Shipment created successfully");
+            return processShipmentCreated(dto);
             
         } catch (Exception e) {
             logger.error("Error processing ShipmentCreated message", e);
@@ -190,6 +221,189 @@ public class AmazonIntegrationService {
         }
     }
     
+    /**
+     * Handle a ShipmentCreated message read by {@link com.miniups.util.ShipmentMessageReader}
+     * 
+     * Same business process as {@link #handleShipmentCreated(AmazonMessageDto)}; field errors
+     * collected while reading are reported together as one validation error.
+     */
+    public UpsResponseDto handleShipmentCreated(ShipmentCreatedMessage message) {
+        if (!message.isValid()) {
+            return UpsResponseDto.error(1001, "Invalid fields: " + String.join("; ", message.getErrors()));
+        }
+        try {
+            logger.debug("Processing ShipmentCreated message: {}", message);
+            return processShipmentCreated(message.toDto());
+        } catch (Exception e) {
+            logger.error("Error processing ShipmentCreated message", e);
+            return UpsResponseDto.error(3000, "Internal server error: " + e.getMessage());
+        }
+    }
+    
+    private UpsResponseDto processShipmentCreated(ShipmentCreatedDto dto) {
+        // Index lookup before any truck, tracking number or route is handed out; the insert
+        // below still settles two creates racing past this check
+        if (shipmentRepository.existsByShipmentId(dto.getShipmentId())) {
+            return UpsResponseDto.error(1002, "Shipment already exists: " + dto.getShipmentId());
+        }
+        
+        // Find or create user
+        User user = findOrCreateUser(dto);
+        
+        // Create shipment
+        Shipment shipment = createShipment(dto, user);
+        if (rebalancingService != null) {
+            rebalancingService.recordDemand(shipment.getWarehouseId());
+        }
+        
+        // Assign truck, packing onto an already dispatched truck when load packing is on
+        Truck assignedTruck;
+        boolean newDispatch = true;
+        if (isLoadPackingActive()) {
+            LoadPackingService.Assignment assignment =
+                loadPackingService.assign(shipment.getWarehouseId(), shipment.getWeight());
+            assignedTruck = assignment != null ? assignment.getTruck() : null;
+            newDispatch = assignment == null || assignment.isNewDispatch();
+        } else {
+            assignedTruck = assignTruck(dto.getWarehouseId());
+        }
+        if (assignedTruck == null) {
+            return UpsResponseDto.error(2001, "No available trucks for pickup");
+        }
+        
+        shipment.setTruck(assignedTruck);
+        shipment.setUpsTrackingId(trackingService.generateTrackingNumber());
+        if (etaService != null) {
+            shipment.setEstimatedDelivery(etaService.estimate(shipment));
+        }
+        Long id = shipmentRepository.insertIfAbsent(shipment);
+        if (id == null) {
+            // Duplicate shipment ID: undo this attempt's truck assignment and user insert
+            releaseDuplicate(shipment, newDispatch);
+            return UpsResponseDto.error(1002, "Shipment already exists: " + dto.getShipmentId());
+        }
+        shipment.setId(id);
+        truckManagementService.trackAssignment(shipment, moved ->
+            sendTruckToWarehouse(moved.getTruck(), dto.getWarehouseId(), moved));
+        
+        logger.info("Created shipment {} with tracking number {}", 
+                   shipment.getShipmentId(), shipment.getUpsTrackingId());
+        
+        if (newDispatch) {
+            // Send truck to warehouse (this would integrate with World Simulator)
+            sendTruckToWarehouse(assignedTruck, dto.getWarehouseId(), shipment);
+        } else {
+            // Truck is already on its way to (or at) this warehouse, no new pickup command needed
+            notifyPackedShipment(assignedTruck, shipment);
+        }
+        
+        return UpsResponseDto.success("Shipment created successfully");
+    }
+    
+    /**
+     * Handle a batch of Amazon ShipmentCreated payloads in one go
+     * 
+     * Same outcome per shipment as {@link #handleShipmentCreated}, but users, tracking numbers,
+     * trucks and inserts are handled once per batch. Runs outside the class-level transaction so
+     * the batch commits before any truck is sent for pickup.
+     * 
+     * @param messages Messages read by {@link com.miniups.util.ShipmentMessageReader#readBatch};
+     *                 null entries are reported as invalid items
+     * @return Per-item results in request order
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public UpsResponseDto handleShipmentBatch(List<ShipmentCreatedMessage> messages) {
+        if (shipmentBatchService == null) {
+            return UpsResponseDto.error(3000, "Batch shipment creation is not available");
+        }
+        if (messages == null || messages.isEmpty()) {
+            return UpsResponseDto.error(1001, "Batch contains no shipments");
+        }
+        if (messages.size() > shipmentBatchService.getMaxBatchSize()) {
+            return UpsResponseDto.error(1003, "Batch too large: " + messages.size()
+                + " shipments, maximum is " + shipmentBatchService.getMaxBatchSize());
+        }
+        
+        ShipmentBatchService.BatchResult result = shipmentBatchService.ingest(messages, isLoadPackingActive());
+        
+        // One pickup per claimed truck, a dispatch notification per shipment on it
+        for (ShipmentBatchService.Dispatch dispatch : result.getDispatches()) {
+            if (rebalancingService != null) {
+                for (Shipment shipment : dispatch.getShipments()) {
+                    rebalancingService.recordDemand(shipment.getWarehouseId());
+                }
+            }
+            sendTruckToWarehouse(dispatch.getTruck(), dispatch.getWarehouseId(), dispatch.getShipments());
+        }
+        
+        List<Map<String, Object>> results = new ArrayList<>(result.getItems().size());
+        for (ShipmentBatchService.ItemResult item : result.getItems()) {
+            results.add(item.toMap());
+        }
+        Map<String, Object> responsePayload = new HashMap<>();
+        responsePayload.put("total", results.size());
+        responsePayload.put("created", result.getCreatedCount());
+        responsePayload.put("rejected", results.size() - result.getCreatedCount());
+        responsePayload.put("results", results);
+        return new UpsResponseDto("ShipmentBatchResult", responsePayload);
+    }
+    
+    /**
+     * Handle a stream of length-delimited protobuf ShipmentCreated messages
+     *
+     * The stream is ingested in chunks of the maximum batch size while it is still being
+     * read, each chunk exactly as {@link #handleShipmentBatch}. Result indexes count from
+     * the start of the stream. A malformed message ends the stream; the chunks before it
+     * stay created and are reported along with the error.
+     *
+     * @param in Request body
+     * @return Per-item results in stream order
+     * @throws IOException if the body cannot be read
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public UpsResponseDto handleShipmentStream(InputStream in) throws IOException {
+        if (shipmentBatchService == null) {
+            return UpsResponseDto.error(3000, "Batch shipment creation is not available");
+        }
+        
+        List<Map<String, Object>> results = new ArrayList<>();
+        int[] created = new int[1];
+        UpsResponseDto[] failure = new UpsResponseDto[1];
+        try {
+            ShipmentProtoReader.readDelimited(in, shipmentBatchService.getMaxBatchSize(), chunk -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                UpsResponseDto response = handleShipmentBatch(chunk);
+                if (response.isError()) {
+                    failure[0] = response;
+                    return;
+                }
+                int offset = results.size();
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> items = (List<Map<String, Object>>) response.getPayload().get("results");
+                for (Map<String, Object> item : items) {
+                    item.put("index", offset + (Integer) item.get("index"));
+                    results.add(item);
+                }
+                created[0] += (Integer) response.getPayload().get("created");
+            });
+        } catch (InvalidProtocolBufferException e) {
+            failure[0] = UpsResponseDto.error(1000, "Invalid protobuf stream after " + results.size()
+                + " shipments: " + e.getMessage());
+        }
+        
+        if (failure[0] == null && results.isEmpty()) {
+            return UpsResponseDto.error(1001, "Stream contains no shipments");
+        }
+        UpsResponseDto response = failure[0] != null ? failure[0] : new UpsResponseDto("ShipmentBatchResult");
+        response.addPayload("total", results.size());
+        response.addPayload("created", created[0]);
+        response.addPayload("rejected", results.size() - created[0]);
+        response.addPayload("results", results);
+        return response;
+    }
+    
     /**
      * Handle Amazon's ShipmentCreated message asynchronously
      * 
@@ -317,6 +531,19 @@ public class AmazonIntegrationService {
                 return UpsResponseDto.error(1001, "Missing shipment_id");
             }
             
+            return handleShipmentLoaded(shipmentId);
+        
+        } catch (Exception e) {
+            logger.error("Error processing ShipmentLoaded message", e);
+            return UpsResponseDto.error(3000, "Internal server error: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Handle a ShipmentLoaded notification for a shipment ID read from any message format
+     */
+    public UpsResponseDto handleShipmentLoaded(String shipmentId) {
+        try {
             Optional<Shipment> shipmentOpt = shipmentRepository.findByShipmentId(shipmentId);
             if (shipmentOpt.isEmpty()) {
                 return UpsResponseDto.error(2000, "Shipment not found: " + shipmentId);
@@ -325,6 +552,10 @@ public class AmazonIntegrationService {
             Shipment shipment = shipmentOpt.get();
             shipment.updateStatus(ShipmentStatus.PICKED_UP);
             shipment.setPickupTime(LocalDateTime.now());
+            if (etaService != null) {
+                etaService.onPickedUp(shipment);
+                shipment.setEstimatedDelivery(etaService.getEstimatedDelivery(shipment.getShipmentId()));
+            }
             shipmentRepository.save(shipment);
             
             // Start delivery process
@@ -362,7 +593,8 @@ public class AmazonIntegrationService {
             statusPayload.put("shipment_id", shipment.getShipmentId());
             statusPayload.put("tracking_number", shipment.getUpsTrackingId());
             statusPayload.put("status", shipment.getStatus().toString());
-            statusPayload.put("estimated_delivery", shipment.getEstimatedDelivery());
+            LocalDateTime eta = etaService != null ? etaService.getEstimatedDelivery(shipment.getShipmentId()) : null;
+            statusPayload.put("estimated_delivery", eta != null ? eta : shipment.getEstimatedDelivery());
             statusPayload.put("actual_delivery", shipment.getActualDelivery());
             
             if (shipment.getTruck() != null) {
@@ -386,6 +618,7 @@ public class AmazonIntegrationService {
      * Handle Amazon's AddressChange message
      */
     public UpsResponseDto handleAddressChange(AmazonMessageDto message) {
+        long requestStartNanos = System.nanoTime();
         try {
             String shipmentId = message.getPayloadString("shipment_id");
             Integer newDestX = message.getPayloadInteger("destination_x");
@@ -412,9 +645,9 @@ public class AmazonIntegrationService {
             shipment.setDestY(newDestY);
             shipmentRepository.save(shipment);
             
-            // If truck is already en route, update delivery destination
-            if (shipment.getTruck() != null && shipment.getStatus() == ShipmentStatus.IN_TRANSIT) {
-                updateTruckDestination(shipment.getTruck(), newDestX, newDestY);
+            // If truck is already out for delivery, re-plan its route around the new stop
+            if (shipment.getTruck() != null && shipment.getStatus().isInProgress()) {
+                updateTruckDestination(shipment, newDestX, newDestY, requestStartNanos);
             }
             
             logger.info("Updated destination for shipment {} to ({}, {})", 
@@ -520,6 +753,18 @@ public class AmazonIntegrationService {
             dto.setDestinationY(((Number) destYObj).intValue());
         }
         
+        // Handle weight (optional)
+        Object weightObj = payload.get("weight");
+        if (weightObj instanceof Number) {
+            dto.setWeight(new java.math.BigDecimal(weightObj.toString()));
+        } else if (weightObj instanceof String && !((String) weightObj).isBlank()) {
+            try {
+                dto.setWeight(new java.math.BigDecimal((String) weightObj));
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring invalid shipment weight: {}", weightObj);
+            }
+        }
+        
         // Handle ups_account (could be Integer or String)
         Object upsAccountObj = payload.get("ups_account");
         if (upsAccountObj instanceof Number) {
@@ -532,21 +777,22 @@ public class AmazonIntegrationService {
     }
     
     private User findOrCreateUser(ShipmentCreatedDto dto) {
-        // Try to find existing user by email
-        Optional<User> existingUser = userRepository.findByEmail(dto.getEmail());
-        if (existingUser.isPresent()) {
-            return existingUser.get();
-        }
-        
-        // Create new user if not found
+        // Inserted unless the email exists, in one statement; concurrent duplicates resolve on the server.
+        // Only the id is needed, so repeat customers are answered from the near cache without a query
+        Long userId = userIdCache != null
+            ? userIdCache.resolve(dto.getEmail(), email -> userRepository.upsertByEmail(newAmazonUser(dto)))
+            : userRepository.upsertByEmail(newAmazonUser(dto));
+        return userRepository.getReferenceById(userId);
+    }
+    
+    private User newAmazonUser(ShipmentCreatedDto dto) {
         User newUser = new User();
         newUser.setUsername("amazon_user_" + dto.getUserId()); // Generate unique username based on Amazon user ID
         newUser.setEmail(dto.getEmail());
         newUser.setPassword("temp_password"); // This should be handled properly in a real system
         newUser.setFirstName("Amazon User");
         newUser.setLastName("Customer");
-        
-        return userRepository.save(newUser);
+        return newUser;
     }
     
     private Shipment createShipment(ShipmentCreatedDto dto, User user) {
@@ -559,19 +805,86 @@ public class AmazonIntegrationService {
         shipment.setOriginY(0); // Placeholder - actual coordinates will come from World Simulator
         shipment.setDestX(dto.getDestinationX());
         shipment.setDestY(dto.getDestinationY());
+        shipment.setWeight(dto.getWeight());
         shipment.setStatus(ShipmentStatus.CREATED);
         
         return shipment;
     }
     
     private Truck assignTruck(Long warehouseId) {
-        // For now, assign any available truck since we don't know warehouse coordinates
-        // The World Simulator will handle the routing based on warehouse ID
-        // TODO: Implement proper warehouse coordinate mapping system
-        return truckManagementService.assignAnyAvailableTruck();
+        // Warehouse coordinates are only known once a truck has been there;
+        // until then any available truck is assigned and the World Simulator routes it
+        return truckManagementService.assignTruckForWarehouse(String.valueOf(warehouseId));
+    }
+    
+    /**
+     * Undo a create that lost the race to another one with the same shipment ID.
+     * The rollback covers the rows this transaction wrote, but not the ETA route or a
+     * truck handed out from memory and written on its own.
+     */
+    private void releaseDuplicate(Shipment duplicate, boolean newDispatch) {
+        if (etaService != null) {
+            // The duplicate's route replaced the one of the shipment stored under this ID
+            Optional<Shipment> existing = shipmentRepository.findByShipmentId(duplicate.getShipmentId());
+            if (existing.isPresent()) {
+                etaService.estimate(existing.get());
+            } else {
+                etaService.onClosed(duplicate);
+            }
+        }
+        Truck truck = duplicate.getTruck();
+        boolean inTransaction = TransactionSynchronizationManager.isActualTransactionActive();
+        if (inTransaction) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
+        if (!newDispatch) {
+            if (!inTransaction && loadPackingService != null) {
+                loadPackingService.releaseLoad(truck, duplicate.getWeight());
+            }
+            return;
+        }
+        CompletableFuture<Boolean> persisted = truck.getPendingAssignment();
+        if (persisted == null) {
+            if (!inTransaction) {
+                truckManagementService.releaseTruck(truck.getTruckId());
+            }
+            return;
+        }
+        Runnable release = () -> persisted.thenAccept(written -> {
+            if (Boolean.TRUE.equals(written)) {
+                truckManagementService.releaseTruck(truck.getTruckId());
+            }
+        });
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    release.run();
+                }
+            });
+        } else {
+            release.run();
+        }
+    }
+    
+    private boolean isLoadPackingActive() {
+        return loadPackingEnabled && loadPackingService != null;
+    }
+    
+    private void notifyPackedShipment(Truck truck, Shipment shipment) {
+        TruckStatus status = truck.getStatus();
+        if (status == TruckStatus.AT_WAREHOUSE || status == TruckStatus.ARRIVE_WAREHOUSE) {
+            notifyTruckArrived(truck.getId().toString(), shipment.getWarehouseId(), shipment.getShipmentId());
+        } else {
+            notifyTruckDispatched(truck.getId().toString(), shipment.getShipmentId());
+        }
     }
     
     private void sendTruckToWarehouse(Truck truck, Long warehouseId, Shipment shipment) {
+        sendTruckToWarehouse(truck, warehouseId, List.of(shipment));
+    }
+    
+    private void sendTruckToWarehouse(Truck truck, Long warehouseId, List<Shipment> shipments) {
         // Send truck to warehouse via World Simulator
         if (isWorldSimulatorConnected()) {
             try {
@@ -581,7 +894,7 @@ public class AmazonIntegrationService {
                         if (success) {
                             logger.info("Successfully sent truck {} to warehouse {}", truck.getTruckId(), warehouseId);
                             // Notify Amazon that truck has been dispatched
-                            notifyTruckDispatched(truck.getId().toString(), shipment.getShipmentId());
+                            notifyTruckDispatched(truck, shipments);
                         } else {
                             logger.error("Failed to send truck {} to warehouse {}", truck.getTruckId(), warehouseId);
                         }
@@ -593,27 +906,59 @@ public class AmazonIntegrationService {
             } catch (Exception e) {
                 logger.error("Error calling World Simulator service", e);
                 // Fallback: just notify Amazon
-                notifyTruckDispatched(truck.getId().toString(), shipment.getShipmentId());
+                notifyTruckDispatched(truck, shipments);
             }
         } else {
             logger.warn("World Simulator not connected, cannot send truck to warehouse");
             // Fallback: just notify Amazon
+            notifyTruckDispatched(truck, shipments);
+        }
+    }
+    
+    private void notifyTruckDispatched(Truck truck, List<Shipment> shipments) {
+        for (Shipment shipment : shipments) {
             notifyTruckDispatched(truck.getId().toString(), shipment.getShipmentId());
         }
     }
     
     private void startDelivery(Shipment shipment) {
+        // With load packing, the truck waits until every shipment packed onto it has been loaded
+        List<Shipment> loadedShipments = List.of(shipment);
+        if (isLoadPackingActive() && shipment.getTruck() != null) {
+            List<Shipment> onTruck = shipmentRepository.findByTruck(shipment.getTruck());
+            long awaitingLoad = onTruck.stream()
+                .filter(s -> s.getStatus() == ShipmentStatus.CREATED || s.getStatus() == ShipmentStatus.TRUCK_DISPATCHED)
+                .count();
+            if (awaitingLoad > 0) {
+                logger.info("Truck {} waiting for {} more packed shipments before delivery",
+                           shipment.getTruck().getTruckId(), awaitingLoad);
+                return;
+            }
+            loadedShipments = onTruck.stream()
+                .filter(s -> s.getStatus() == ShipmentStatus.PICKED_UP)
+                .toList();
+        }
+        
         // Update shipment status to in transit
-        shipment.updateStatus(ShipmentStatus.IN_TRANSIT);
+        for (Shipment loaded : loadedShipments) {
+            loaded.updateStatus(ShipmentStatus.IN_TRANSIT);
+        }
         
         // Send delivery command to World Simulator
         if (shipment.getTruck() != null && isWorldSimulatorConnected()) {
             try {
                 // Prepare delivery locations
                 Map<Long, int[]> deliveries = new HashMap<>();
-                // Use shipment ID directly as package ID (Amazon uses shipment_id as package_id)
-                Long packageId = Long.valueOf(shipment.getShipmentId());
-                deliveries.put(packageId, new int[]{shipment.getDestX(), shipment.getDestY()});
+                if (deliveryRouteService != null) {
+                    // Ordered route, remembered so an address change can re-plan it
+                    deliveries = deliveryRouteService.planRoute(shipment.getTruck(), loadedShipments);
+                } else {
+                    // Use shipment ID directly as package ID (Amazon uses shipment_id as package_id)
+                    for (Shipment loaded : loadedShipments) {
+                        Long packageId = Long.valueOf(loaded.getShipmentId());
+                        deliveries.put(packageId, new int[]{loaded.getDestX(), loaded.getDestY()});
+                    }
+                }
                 
                 // Send delivery command
                 sendTruckToDeliver(shipment.getTruck().getTruckId(), deliveries)
@@ -640,20 +985,26 @@ public class AmazonIntegrationService {
         }
     }
     
-    private void updateTruckDestination(Truck truck, Integer newDestX, Integer newDestY) {
+    private void updateTruckDestination(Shipment shipment, Integer newDestX, Integer newDestY, long requestStartNanos) {
+        Truck truck = shipment.getTruck();
         // Update truck destination via World Simulator
         if (isWorldSimulatorConnected()) {
             try {
-                // Cancel current delivery and send new delivery command
-                Map<Long, int[]> newDeliveries = new HashMap<>();
-                // Find the shipments being delivered
-                List<Shipment> currentShipments = shipmentRepository.findByTruck(truck);
-                if (!currentShipments.isEmpty()) {
-                    // Handle the first/primary shipment for destination update
-                    Shipment currentShipment = currentShipments.get(0);
-                    Long packageId = Long.valueOf(currentShipment.getShipmentId());
-                    newDeliveries.put(packageId, new int[]{newDestX, newDestY});
-                    
+                // Re-issue the truck's whole remaining route; a UGoDeliver replaces the previous one
+                Map<Long, int[]> newDeliveries;
+                if (deliveryRouteService != null) {
+                    newDeliveries = deliveryRouteService.reroute(truck, shipment, newDestX, newDestY);
+                } else {
+                    newDeliveries = new LinkedHashMap<>();
+                    for (Shipment onTruck : shipmentRepository.findByTruck(truck)) {
+                        if (onTruck.getStatus().isInProgress()) {
+                            newDeliveries.put(Long.valueOf(onTruck.getShipmentId()),
+                                              new int[]{onTruck.getDestX(), onTruck.getDestY()});
+                        }
+                    }
+                }
+                
+                if (!newDeliveries.isEmpty()) {
                     sendTruckToDeliver(truck.getTruckId(), newDeliveries)
                         .thenAccept(success -> {
                             if (success) {
@@ -666,8 +1017,11 @@ public class AmazonIntegrationService {
                             logger.error("Error updating truck destination via World Simulator", throwable);
                             return null;
                         });
+                    if (deliveryRouteService != null) {
+                        deliveryRouteService.recordRerouteLatency(requestStartNanos);
+                    }
                 } else {
-                    logger.warn("No current shipment found for truck {}, cannot update destination", truck.getTruckId());
+                    logger.warn("No undelivered shipment found for truck {}, cannot update destination", truck.getTruckId());
                 }
             } catch (Exception e) {
                 logger.error("Error calling World Simulator to update destination", e);
@@ -678,8 +1032,28 @@ public class AmazonIntegrationService {
     }
     
     private void sendNotificationToAmazon(String endpoint, UpsResponseDto notification) {
+        // Off the caller's thread: batched, retried, and only logged if delivery finally fails
+        if (webhookDispatcher != null && webhookDispatcher.isEnabled()) {
+            webhookDispatcher.submit(amazonBaseUrl, endpoint, notification.getMessageType(), notification);
+            return;
+        }
+        
+        // Fail fast while Amazon is down or saturated instead of waiting for the timeout
+        AmazonCallGuard.Permit permit = amazonCallGuard != null ? amazonCallGuard.acquire() : null;
+        if (permit != null && !permit.isGranted()) {
+            rejectNotification(endpoint, notification, permit.getRejection());
+            return;
+        }
+        
+        // Without the dispatcher, still avoid holding the caller's thread for the round trip
+        if (amazonAsyncClient != null && amazonAsyncClient.isEnabled()) {
+            sendNotificationAsync(endpoint, notification, permit);
+            return;
+        }
+        
         long startTime = System.currentTimeMillis();
         CommunicationLog log = null;
+        Integer status = null;
         
         try {
             String url = amazonBaseUrl + endpoint;
@@ -696,6 +1070,7 @@ public class AmazonIntegrationService {
             HttpEntity<UpsResponseDto> request = new HttpEntity<>(notification, headers);
             
             ResponseEntity<String> response = restTemplate.postForEntity(url, request, String.class);
+            status = response.getStatusCode().value();
             
             // Update log with response
             if (log != null) {
@@ -711,6 +1086,12 @@ public class AmazonIntegrationService {
                            response.getStatusCode(), response.getBody());
             }
             
+        } catch (RestClientResponseException e) {
+            status = e.getStatusCode().value();
+            logger.error("Failed to send notification to Amazon at {}: {}", endpoint, e.getMessage());
+            if (log != null) {
+                communicationLogService.markLogAsError(log, e.getMessage(), status);
+            }
         } catch (Exception e) {
             logger.error("Failed to send notification to Amazon at {}: {}", endpoint, e.getMessage());
             
@@ -718,6 +1099,61 @@ public class AmazonIntegrationService {
             if (log != null) {
                 communicationLogService.markLogAsError(log, e.getMessage(), null);
             }
+        } finally {
+            if (permit != null) {
+                if (status != null) {
+                    permit.onResponse(status);
+                } else {
+                    permit.onError();
+                }
+            }
         }
     }
-}
\ No newline at end of file
+    
+    private void rejectNotification(String endpoint, UpsResponseDto notification, AmazonCallGuard.Rejection rejection) {
+        // Deferred rows are only replayed by the webhook dispatcher
+        if (rejection == AmazonCallGuard.Rejection.CIRCUIT_OPEN && deferredAmazonCallStore != null
+                && webhookDispatcher != null && webhookDispatcher.isEnabled()
+                && deferredAmazonCallStore.defer(amazonBaseUrl, endpoint, notification.getMessageType(), notification, rejection.name())) {
+            logger.info("Amazon circuit open, deferred {} notification to {}", notification.getMessageType(), endpoint);
+            return;
+        }
+        logger.warn("Amazon call rejected ({}), {} notification to {} not sent", rejection, notification.getMessageType(), endpoint);
+        communicationLogService.logFailedOutgoingMessage(notification.getMessageType(), endpoint, notification,
+            null, "Amazon call rejected: " + rejection, 0);
+    }
+    
+    private void sendNotificationAsync(String endpoint, UpsResponseDto notification, AmazonCallGuard.Permit permit) {
+        long startTime = System.currentTimeMillis();
+        CommunicationLog log = communicationLogService.logOutgoingMessage(notification.getMessageType(), endpoint, notification);
+        
+        // Log updates may write to the database, so they run off the client's I/O threads
+        amazonAsyncClient.postJson(amazonBaseUrl + endpoint, notification).whenComplete((response, throwable) -> {
+            if (permit != null) {
+                if (throwable != null) {
+                    permit.onError();
+                } else {
+                    permit.onResponse(response.getStatus());
+                }
+            }
+        }).whenCompleteAsync((response, throwable) -> {
+            long processingTime = System.currentTimeMillis() - startTime;
+            if (throwable != null) {
+                Throwable cause = throwable.getCause() != null ? throwable.getCause() : throwable;
+                logger.error("Failed to send notification to Amazon at {}: {}", endpoint, cause.getMessage());
+                if (log != null) {
+                    communicationLogService.markLogAsError(log, cause.getMessage(), null);
+                }
+                return;
+            }
+            if (log != null) {
+                communicationLogService.updateLogWithResponse(log, response.getBody(), response.getStatus(), processingTime);
+            }
+            if (response.isSuccessful()) {
+                logger.info("Successfully sent notification to Amazon: {}", endpoint);
+            } else {
+                logger.warn("Amazon responded with status {}: {}", response.getStatus(), response.getBody());
+            }
+        }, notificationLogExecutor);
+    }
+}
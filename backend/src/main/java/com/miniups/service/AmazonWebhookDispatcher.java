@@ -0,0 +1,695 @@
+/**
+ * Amazon Webhook Dispatcher
+ *
+ * Functionality:
+ * - Takes Amazon notifications off the caller's thread (often the world reader thread)
+ * - Bounded queue; a full queue rejects instead of blocking, and the rejection is logged as a failure
+ * - Coalesces queued notifications per endpoint into one batch request
+ * - Retries with jittered exponential backoff, persisting only deliveries that finally fail
+ *
+ * Batch Format:
+ * - One notification is posted as the usual JSON object
+ * - Several notifications for the same endpoint are posted as a JSON array
+ * - An endpoint that rejects arrays (400, 404, 405, 415, 422) is remembered and gets
+ *   single requests from then on; the rejected batch is re-sent one by one
+ *
+ * Retry Policy:
+ * - 5xx, 408, 429 and I/O errors are retried; other 4xx are permanent failures
+ * - Delay before attempt n is uniform in [0, min(max-backoff, initial-backoff * 2^n)] ("full jitter"),
+ *   so a recovering endpoint is not hit by every retry at once
+ *
+ * Sending:
+ * - With AmazonAsyncClient available, requests are non-blocking: a sender thread only
+ *   hands the request over and handles the outcome when the response arrives, so
+ *   concurrency is bounded by the client's connection pool rather than by senders
+ * - Otherwise each sender thread blocks on RestTemplate for the round trip
+ *
+ * Circuit Breaker:
+ * - Every request takes a permit from AmazonCallGuard. While the circuit is open the
+ *   batch is not sent but deferred to DeferredAmazonCallStore; a full bulkhead counts
+ *   as a retryable failure
+ * - Deferred notifications are replayed through the queue once the circuit lets calls
+ *   through again, one at a time while it is half-open
+ * - A replayed row is leased, not deleted: it is removed once Amazon accepted the
+ *   notification, put back if delivery fails again, and replayed after the lease if the
+ *   process dies in between
+ *
+ * Shutdown and Back-pressure:
+ * - Off by default: batches change the wire format to JSON arrays, which Amazon must accept
+ * - When the senders fall behind, the collector stops draining and the bounded queue
+ *   rejects new submissions, rather than piling batches up in the sender pool
+ * - On stop, queued, drained and retry-waiting notifications are deferred to
+ *   DeferredAmazonCallStore (logged as failed without it), so a restart delivers them
+ *
+ * Metrics:
+ * - ups.amazon.webhook.queue_depth, ups.amazon.webhook.latency (enqueue to delivery),
+ *   ups.amazon.webhook.batch_size, ups.amazon.webhook.retries, ups.amazon.webhook.failures
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import com.miniups.model.entity.DeferredAmazonCall;
+import com.miniups.util.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class AmazonWebhookDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(AmazonWebhookDispatcher.class);
+
+    private static final Set<Integer> BATCH_REJECTED_STATUSES = Set.of(400, 404, 405, 415, 422);
+
+    private final RestTemplate restTemplate;
+    private final CommunicationLogService communicationLogService;
+
+    @Autowired(required = false)
+    private AmazonAsyncClient asyncClient;
+
+    @Autowired(required = false)
+    private AmazonCallGuard callGuard;
+
+    @Autowired(required = false)
+    private DeferredAmazonCallStore deferredStore;
+
+    @Value("${amazon.webhook-dispatcher.enabled:false}")
+    private boolean enabled = false;
+
+    @Value("${amazon.webhook-dispatcher.queue-capacity:10000}")
+    private int queueCapacity = 10000;
+
+    @Value("${amazon.webhook-dispatcher.max-batch-size:50}")
+    private int maxBatchSize = 50;
+
+    @Value("${amazon.webhook-dispatcher.linger-ms:20}")
+    private long lingerMs = 20;
+
+    @Value("${amazon.webhook-dispatcher.senders:4}")
+    private int senders = 4;
+
+    @Value("${amazon.webhook-dispatcher.max-attempts:6}")
+    private int maxAttempts = 6;
+
+    @Value("${amazon.webhook-dispatcher.initial-backoff-ms:200}")
+    private long initialBackoffMs = 200;
+
+    @Value("${amazon.webhook-dispatcher.max-backoff-ms:30000}")
+    private long maxBackoffMs = 30000;
+
+    @Value("${amazon.resilience.deferred.replay-batch-size:200}")
+    private int replayBatchSize = 200;
+
+    @Value("${amazon.resilience.deferred.lease-ms:300000}")
+    private long replayLeaseMs = 300000;
+
+    private BlockingQueue<Notification> queue = new LinkedBlockingQueue<>();
+    private final Set<String> batchUnsupported = ConcurrentHashMap.newKeySet();
+    private volatile boolean running;
+    private Thread collector;
+    private ThreadPoolExecutor senderPool;
+    private ScheduledExecutorService retryScheduler;
+
+    // Batches waiting in retryScheduler; whoever removes one (the retry or stop) owns it
+    private final Set<List<Notification>> awaitingRetry = ConcurrentHashMap.newKeySet();
+
+    // Notifications accepted but not yet settled, including those waiting for a retry
+    private final AtomicLong inFlight = new AtomicLong();
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+
+    private final MeterRegistry meterRegistry;
+    private final Timer latencyTimer;
+    private final DistributionSummary batchSizeSummary;
+    private final Counter retryCounter;
+    private final Counter failureCounter;
+
+    public AmazonWebhookDispatcher(RestTemplate restTemplate,
+                                   CommunicationLogService communicationLogService,
+                                   @Autowired(required = false) MeterRegistry meterRegistry) {
+        this.restTemplate = restTemplate;
+        this.communicationLogService = communicationLogService;
+        this.meterRegistry = meterRegistry;
+
+        if (meterRegistry != null) {
+            this.latencyTimer = Timer.builder("ups.amazon.webhook.latency")
+                .description("Time from enqueue to successful delivery of an Amazon notification")
+                .register(meterRegistry);
+            this.batchSizeSummary = DistributionSummary.builder("ups.amazon.webhook.batch_size")
+                .description("Notifications per webhook request")
+                .register(meterRegistry);
+            this.retryCounter = Counter.builder("ups.amazon.webhook.retries")
+                .description("Webhook requests scheduled for another attempt")
+                .register(meterRegistry);
+            this.failureCounter = Counter.builder("ups.amazon.webhook.failures")
+                .description("Notifications given up on and persisted as failed")
+                .register(meterRegistry);
+        } else {
+            this.latencyTimer = null;
+            this.batchSizeSummary = null;
+            this.retryCounter = null;
+            this.failureCounter = null;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        if (meterRegistry != null) {
+            meterRegistry.gauge("ups.amazon.webhook.queue_depth", queue, Queue::size);
+        }
+        senderPool = new ThreadPoolExecutor(senders, senders, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                                            daemonThreads("amazon-webhook-sender-"));
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("amazon-webhook-retry-"));
+        running = true;
+        collector = daemonThreads("amazon-webhook-collector-").newThread(this::collectLoop);
+        collector.start();
+        logger.info("Amazon webhook dispatcher started (queue {}, batch {}, {} senders)",
+                   queueCapacity, maxBatchSize, senders);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        collector.interrupt();
+        try {
+            collector.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        retryScheduler.shutdownNow();
+        for (List<Notification> batch : new ArrayList<>(awaitingRetry)) {
+            if (awaitingRetry.remove(batch)) {
+                persistUnsent(batch);
+            }
+        }
+        senderPool.shutdown();
+        try {
+            senderPool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Whatever is still queued would be lost silently otherwise
+        List<Notification> left = new ArrayList<>();
+        queue.drainTo(left);
+        if (!left.isEmpty()) {
+            persistUnsent(left);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && running;
+    }
+
+    /**
+     * Queue a notification for delivery. Never blocks.
+     *
+     * @param baseUrl Amazon base URL
+     * @param endpoint Amazon webhook path, e.g. /api/webhooks/truck-arrived
+     * @param messageType Message type for the failure log
+     * @param payload Request body
+     * @return false if the queue was full; the notification is then logged as failed
+     */
+    public boolean submit(String baseUrl, String endpoint, String messageType, Object payload) {
+        Notification notification = new Notification(baseUrl, endpoint, messageType, payload);
+        if (!running || !queue.offer(notification)) {
+            rejected.incrementAndGet();
+            persistFailure(notification, null, running ? "Webhook queue full" : "Webhook dispatcher not running");
+            return false;
+        }
+        inFlight.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Wait until everything accepted so far has been delivered or given up on
+     *
+     * @return false on timeout
+     */
+    public boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (inFlight.get() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    /**
+     * Get dispatcher statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("queue_depth", queue.size());
+        stats.put("in_flight", inFlight.get());
+        stats.put("delivered", delivered.get());
+        stats.put("failed", failed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("retries", retries.get());
+        stats.put("batches", batches.get());
+        stats.put("deferred", deferred.get());
+        stats.put("batch_unsupported_endpoints", new ArrayList<>(batchUnsupported));
+        return stats;
+    }
+
+    /**
+     * Put notifications deferred during an outage back on the queue once the circuit allows calls
+     */
+    @Scheduled(fixedDelayString = "${amazon.resilience.deferred.replay-interval-ms:5000}")
+    public void replayDeferred() {
+        if (!running || callGuard == null || deferredStore == null) {
+            return;
+        }
+        CircuitBreaker.State state = callGuard.getState();
+        if (state == CircuitBreaker.State.OPEN) {
+            return;
+        }
+        // While half-open, a single notification probes Amazon; the rest wait for the circuit to close
+        int limit = state == CircuitBreaker.State.HALF_OPEN ? 1 : Math.min(replayBatchSize, queue.remainingCapacity());
+        if (limit <= 0) {
+            return;
+        }
+        try {
+            for (DeferredAmazonCall call : deferredStore.due(limit)) {
+                Notification notification = new Notification(call.getBaseUrl(), call.getEndpoint(),
+                    call.getMessageType(), deferredStore.payloadOf(call));
+                // Leased before it is queued, so a fast delivery never races the lease write
+                notification.replayOf = deferredStore.lease(call, replayLeaseMs);
+                if (!queue.offer(notification)) {
+                    deferredStore.redefer(notification.replayOf, call.getReason(), 0);
+                    break;
+                }
+                inFlight.incrementAndGet();
+            }
+        } catch (Exception e) {
+            logger.error("Failed to replay deferred Amazon notifications", e);
+        }
+    }
+
+    // Private helper methods
+
+    private void collectLoop() {
+        List<Notification> drained = new ArrayList<>();
+        while (running) {
+            try {
+                awaitSenders();
+                Notification first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                drained.add(first);
+                // Give notifications from the same burst a moment to join the batch
+                long lingerDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (drained.size() < maxBatchSize * senders) {
+                    long remaining = lingerDeadline - System.nanoTime();
+                    Notification next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    drained.add(next);
+                }
+
+                Map<String, List<Notification>> byEndpoint = new LinkedHashMap<>();
+                for (Notification notification : drained) {
+                    byEndpoint.computeIfAbsent(notification.url(), url -> new ArrayList<>()).add(notification);
+                }
+                drained.clear();
+                for (List<Notification> group : byEndpoint.values()) {
+                    for (int from = 0; from < group.size(); from += maxBatchSize) {
+                        List<Notification> batch = new ArrayList<>(group.subList(from, Math.min(group.size(), from + maxBatchSize)));
+                        dispatch(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // Interrupted by stop() between draining and dispatching
+        if (!drained.isEmpty()) {
+            persistUnsent(drained);
+        }
+    }
+
+    /**
+     * Back-pressure: stop draining while every sender has a few batches waiting,
+     * so the bounded queue fills and rejects instead of the sender pool growing
+     */
+    private void awaitSenders() throws InterruptedException {
+        while (running && senderPool.getQueue().size() >= senders * 2) {
+            Thread.sleep(5);
+        }
+    }
+
+    private void dispatch(List<Notification> batch) {
+        while (true) {
+            try {
+                senderPool.execute(() -> send(batch));
+                return;
+            } catch (RejectedExecutionException e) {
+                if (!running) {
+                    persistUnsent(batch);
+                    return;
+                }
+                // Saturated rather than stopped; try again once a sender frees up
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    persistUnsent(batch);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void send(List<Notification> batch) {
+        String url = batch.get(0).url();
+        if (batch.size() > 1 && batchUnsupported.contains(url)) {
+            for (Notification notification : batch) {
+                send(List.of(notification));
+            }
+            return;
+        }
+
+        AmazonCallGuard.Permit permit = callGuard != null ? callGuard.acquire() : null;
+        if (permit != null && !permit.isGranted()) {
+            if (permit.getRejection() == AmazonCallGuard.Rejection.CIRCUIT_OPEN) {
+                defer(batch);
+            } else {
+                onFailure(batch, null, "Amazon bulkhead full");
+            }
+            return;
+        }
+
+        Object body = batch.size() == 1 ? batch.get(0).payload : batch.stream().map(n -> n.payload).toList();
+
+        if (asyncClient != null && asyncClient.isEnabled()) {
+            // Failures may write logs, so onResponse hands them to a sender, never blocking an I/O thread
+            asyncClient.postJson(url, body).whenComplete((response, e) -> {
+                if (permit != null) {
+                    if (e != null) {
+                        permit.onError();
+                    } else {
+                        permit.onResponse(response.getStatus());
+                    }
+                }
+            }).whenComplete((response, e) -> onResponse(batch, response, e));
+            return;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.add("User-Agent", "UPS-Service/1.0");
+        Integer status = null;
+        String error;
+        try {
+            ResponseEntity<String> response = restTemplate.postForEntity(url, new HttpEntity<>(body, headers), String.class);
+            status = response.getStatusCode().value();
+            if (response.getStatusCode().is2xxSuccessful()) {
+                if (permit != null) {
+                    permit.onResponse(status);
+                }
+                confirmReplayed(batch);
+                onDelivered(batch);
+                return;
+            }
+            error = "Amazon responded with status " + status;
+        } catch (RestClientResponseException e) {
+            status = e.getStatusCode().value();
+            error = "Amazon responded with status " + status;
+        } catch (Exception e) {
+            error = e.getMessage();
+        }
+        if (permit != null) {
+            if (status != null) {
+                permit.onResponse(status);
+            } else {
+                permit.onError();
+            }
+        }
+        settle(batch, status, error);
+    }
+
+    /**
+     * Handle a failed request: fall back to single requests if the batch was refused, else retry or give up
+     */
+    private void settle(List<Notification> batch, Integer status, String error) {
+        String url = batch.get(0).url();
+        if (batch.size() > 1 && status != null && BATCH_REJECTED_STATUSES.contains(status)) {
+            logger.info("Amazon endpoint {} rejected a batch ({}), sending notifications one by one", url, status);
+            batchUnsupported.add(url);
+            for (Notification notification : batch) {
+                send(List.of(notification));
+            }
+            return;
+        }
+        onFailure(batch, status, error);
+    }
+
+    private void defer(List<Notification> batch) {
+        for (Notification notification : batch) {
+            if (keep(notification, AmazonCallGuard.Rejection.CIRCUIT_OPEN.name(), 0)) {
+                deferred.incrementAndGet();
+            } else {
+                persistFailure(notification, null, "Amazon circuit open");
+            }
+            inFlight.decrementAndGet();
+        }
+        logger.debug("Amazon circuit open, deferred {} notifications to {}", batch.size(), batch.get(0).url());
+    }
+
+    /**
+     * Runs on the client's I/O thread; anything that may block is handed to a sender
+     */
+    private void onResponse(List<Notification> batch, AmazonAsyncClient.Response response, Throwable e) {
+        if (e == null && response.isSuccessful()) {
+            if (batch.stream().noneMatch(notification -> notification.replayOf != null)) {
+                onDelivered(batch);
+                return;
+            }
+            try {
+                senderPool.execute(() -> {
+                    confirmReplayed(batch);
+                    onDelivered(batch);
+                });
+            } catch (RejectedExecutionException rejected) {
+                // Shutting down: the leased rows are replayed again once the lease runs out
+                onDelivered(batch);
+            }
+            return;
+        }
+        Integer status = e == null ? response.getStatus() : null;
+        String error;
+        if (e != null) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            error = cause.getMessage() != null ? cause.getMessage() : cause.toString();
+        } else {
+            error = "Amazon responded with status " + status;
+        }
+        try {
+            senderPool.execute(() -> settle(batch, status, error));
+        } catch (RejectedExecutionException rejected) {
+            // Shutting down: count the failure here, persisting it would block the I/O thread
+            logger.error("Dispatcher stopped, {} notifications to {} failed and were not persisted: {}",
+                        batch.size(), batch.get(0).url(), error);
+            for (Notification notification : batch) {
+                failed.incrementAndGet();
+                if (failureCounter != null) {
+                    failureCounter.increment();
+                }
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private void onDelivered(List<Notification> batch) {
+        batches.incrementAndGet();
+        if (batchSizeSummary != null) {
+            batchSizeSummary.record(batch.size());
+        }
+        long now = System.nanoTime();
+        for (Notification notification : batch) {
+            delivered.incrementAndGet();
+            if (latencyTimer != null) {
+                latencyTimer.record(now - notification.enqueuedNanos, TimeUnit.NANOSECONDS);
+            }
+            inFlight.decrementAndGet();
+        }
+        logger.debug("Delivered {} notifications to {}", batch.size(), batch.get(0).url());
+    }
+
+    private void onFailure(List<Notification> batch, Integer status, String error) {
+        boolean retryable = status == null || status >= 500 || status == 408 || status == 429;
+        int attempt = batch.get(0).attempts + 1;
+        if (retryable && attempt < maxAttempts && running) {
+            for (Notification notification : batch) {
+                notification.attempts = attempt;
+            }
+            long ceiling = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 30));
+            long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+            retries.incrementAndGet();
+            if (retryCounter != null) {
+                retryCounter.increment();
+            }
+            logger.warn("Webhook to {} failed ({}), attempt {} of {} in {} ms",
+                       batch.get(0).url(), error, attempt + 1, maxAttempts, delay);
+            awaitingRetry.add(batch);
+            try {
+                retryScheduler.schedule(() -> {
+                    if (awaitingRetry.remove(batch)) {
+                        dispatch(batch);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+                return;
+            } catch (RejectedExecutionException e) {
+                // Shutting down: keep it for the next start
+                if (awaitingRetry.remove(batch)) {
+                    persistUnsent(batch);
+                }
+                return;
+            }
+        }
+        if (retryable && attempt < maxAttempts) {
+            // Stopping: keep it for the next start rather than giving up
+            persistUnsent(batch);
+            return;
+        }
+
+        logger.error("Giving up on {} notifications to {} after {} attempts: {}",
+                    batch.size(), batch.get(0).url(), attempt, error);
+        for (Notification notification : batch) {
+            if (retryable && notification.replayOf != null && keep(notification, "RETRIES_EXHAUSTED", maxBackoffMs)) {
+                // Already stored: try again on a later replay rather than dropping it
+                deferred.incrementAndGet();
+            } else {
+                persistFailure(notification, status, error);
+                if (notification.replayOf != null && deferredStore != null) {
+                    deferredStore.discard(notification.replayOf);
+                }
+            }
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Store a notification for a later replay; a replayed one goes back to its existing row
+     */
+    private boolean keep(Notification notification, String reason, long delayMs) {
+        if (deferredStore == null) {
+            return false;
+        }
+        if (notification.replayOf != null) {
+            return deferredStore.redefer(notification.replayOf, reason, delayMs);
+        }
+        return deferredStore.defer(notification.baseUrl, notification.endpoint, notification.messageType,
+            notification.payload, reason);
+    }
+
+    /**
+     * Remove the stored rows of replayed notifications that Amazon has now accepted
+     */
+    private void confirmReplayed(List<Notification> batch) {
+        for (Notification notification : batch) {
+            if (notification.replayOf != null && deferredStore != null) {
+                deferredStore.replayed(notification.replayOf);
+            }
+        }
+    }
+
+    /**
+     * Keep notifications that were accepted but not delivered when the dispatcher stops.
+     * Deferred ones are replayed after a restart; without the store they are logged as failed.
+     */
+    private void persistUnsent(List<Notification> batch) {
+        for (Notification notification : batch) {
+            if (keep(notification, "SHUTDOWN", 0)) {
+                deferred.incrementAndGet();
+            } else {
+                persistFailure(notification, null, "Dispatcher stopped before delivery");
+            }
+            inFlight.decrementAndGet();
+        }
+        logger.info("Dispatcher stopping, kept {} undelivered notifications to {}", batch.size(), batch.get(0).url());
+    }
+
+    private void persistFailure(Notification notification, Integer status, String error) {
+        failed.incrementAndGet();
+        if (failureCounter != null) {
+            failureCounter.increment();
+        }
+        try {
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - notification.enqueuedNanos);
+            communicationLogService.logFailedOutgoingMessage(notification.messageType, notification.endpoint,
+                notification.payload, status, error, elapsedMs);
+        } catch (Exception e) {
+            logger.error("Failed to persist undelivered {} notification", notification.messageType, e);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicLong counter = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class Notification {
+        final String baseUrl;
+        final String endpoint;
+        final String messageType;
+        final Object payload;
+        final long enqueuedNanos = System.nanoTime();
+        volatile int attempts;
+        // Stored row this notification was replayed from, leased until delivery settles
+        volatile DeferredAmazonCall replayOf;
+
+        Notification(String baseUrl, String endpoint, String messageType, Object payload) {
+            this.baseUrl = baseUrl;
+            this.endpoint = endpoint;
+            this.messageType = messageType;
+            this.payload = payload;
+        }
+
+        String url() {
+            return baseUrl + endpoint;
+        }
+    }
+}
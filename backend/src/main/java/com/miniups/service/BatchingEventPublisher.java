@@ -0,0 +1,498 @@
+/**
+ * Batching Event Publisher
+ *
+ * Functionality:
+ * - Publishes events sent outside a transaction (inside one they go through the outbox,
+ *   see OutboxRelay) without a broker call on the caller's thread
+ * - Events are buffered per exchange and routing key and flushed by one background
+ *   thread when a buffer reaches batch-size or its oldest event is linger-ms old;
+ *   a flush publishes the whole buffer on one channel
+ *
+ * Confirms:
+ * - Every publish carries a CorrelationData with its own id; confirms are handled
+ *   asynchronously as they arrive, nobody waits for them
+ * - Sends go through the mandatory RabbitTemplate, so unroutable messages are returned
+ *   to this publisher rather than dropped by the broker
+ * - A nacked, returned (unroutable) or unconfirmed-after-confirm-timeout-ms message is
+ *   buffered again, with the same message id, up to max-attempts times, then dropped
+ *   with an error log
+ * - Republished messages go back to the front of their buffer, ahead of events enqueued
+ *   after them, so a routing key keeps its publish order across retries
+ * - Buffered and unconfirmed events together are bounded by max-pending; when full, the
+ *   caller waits up to enqueue-timeout-ms and is then told to publish directly, which
+ *   pushes back on the producer instead of growing the heap
+ *
+ * Events are held in memory until confirmed, so a crash can lose them; anything that
+ * must not be lost is published inside a transaction and goes through the outbox.
+ *
+ * Metrics:
+ * - ups.events.publish{result=confirmed|retried|dropped}
+ * - ups.events.publish.pending, ups.events.publish.batch_size
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import com.miniups.config.EventContentTypes;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class BatchingEventPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchingEventPublisher.class);
+
+    private final RabbitTemplate rabbitTemplate;
+    private final boolean confirms;
+
+    @Value("${app.rabbitmq.enabled:true}")
+    private boolean rabbitMQEnabled = true;
+
+    @Value("${app.rabbitmq.publisher.batching-enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${app.rabbitmq.publisher.batch-size:100}")
+    private int batchSize = 100;
+
+    @Value("${app.rabbitmq.publisher.linger-ms:10}")
+    private long lingerMs = 10;
+
+    @Value("${app.rabbitmq.publisher.max-pending:10000}")
+    private int maxPending = 10000;
+
+    @Value("${app.rabbitmq.publisher.max-attempts:3}")
+    private int maxAttempts = 3;
+
+    @Value("${app.rabbitmq.publisher.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs = 5000;
+
+    @Value("${app.rabbitmq.publisher.enqueue-timeout-ms:100}")
+    private long enqueueTimeoutMs = 100;
+
+    @Autowired(required = false)
+    private EventContentTypes eventContentTypes;
+
+    // Guarded by itself
+    private final Map<String, Buffer> buffers = new HashMap<>();
+    // Published, waiting for a confirm; keyed by correlation id
+    private final Map<String, Outgoing> unconfirmed = new ConcurrentHashMap<>();
+    private Semaphore capacity;
+    private ScheduledExecutorService flusher;
+
+    private final AtomicLong confirmed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final Counter confirmedCounter;
+    private final Counter retriedCounter;
+    private final Counter droppedCounter;
+    private final DistributionSummary batchSizeSummary;
+
+    public BatchingEventPublisher(@Autowired(required = false) @Qualifier("mandatoryRabbitTemplate")
+                                  RabbitTemplate rabbitTemplate,
+                                  @Autowired(required = false) MeterRegistry meterRegistry) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.confirms = rabbitTemplate != null && rabbitTemplate.getConnectionFactory() != null
+            && rabbitTemplate.getConnectionFactory().isPublisherConfirms();
+
+        if (meterRegistry != null) {
+            this.confirmedCounter = resultCounter(meterRegistry, "confirmed");
+            this.retriedCounter = resultCounter(meterRegistry, "retried");
+            this.droppedCounter = resultCounter(meterRegistry, "dropped");
+            this.batchSizeSummary = DistributionSummary.builder("ups.events.publish.batch_size")
+                .description("Events published per flush")
+                .register(meterRegistry);
+            meterRegistry.gauge("ups.events.publish.pending", unconfirmed, Map::size);
+        } else {
+            this.confirmedCounter = null;
+            this.retriedCounter = null;
+            this.droppedCounter = null;
+            this.batchSizeSummary = null;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled || !rabbitMQEnabled || rabbitTemplate == null || flusher != null) {
+            return;
+        }
+        capacity = new Semaphore(maxPending);
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-publisher-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tickMs = Math.max(1, lingerMs);
+        flusher.scheduleWithFixedDelay(this::flushDue, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        logger.info("Batching event publisher started (batch {}, linger {} ms, max pending {}, confirms {})",
+            batchSize, lingerMs, maxPending, confirms);
+    }
+
+    /**
+     * Publish what is buffered and give outstanding confirms a chance to arrive
+     */
+    @PreDestroy
+    public void stop() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.execute(this::flushAll);
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(confirmTimeoutMs, TimeUnit.MILLISECONDS);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+            while (!unconfirmed.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!unconfirmed.isEmpty()) {
+            logger.warn("Shutting down with {} unconfirmed events", unconfirmed.size());
+        }
+    }
+
+    public boolean isEnabled() {
+        return flusher != null && !flusher.isShutdown();
+    }
+
+    /**
+     * Buffer an event for publishing
+     *
+     * @return false if the publisher is off or full; the caller should then publish directly
+     */
+    public boolean publish(String exchange, String routingKey, Object event, String messageId) {
+        if (!isEnabled()) {
+            return false;
+        }
+        try {
+            if (!capacity.tryAcquire(enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejected.incrementAndGet();
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        MessageProperties properties = new MessageProperties();
+        if (eventContentTypes != null) {
+            // Binary or JSON, by routing key
+            properties.setContentType(eventContentTypes.contentTypeFor(routingKey, event));
+        }
+        Message message;
+        try {
+            // Serialised here, so a bad event fails its caller rather than the flush
+            message = rabbitTemplate.getMessageConverter().toMessage(event, properties);
+        } catch (RuntimeException e) {
+            capacity.release();
+            throw e;
+        }
+        if (messageId != null) {
+            message.getMessageProperties().setMessageId(messageId);
+        }
+        enqueue(new Outgoing(exchange, routingKey, message));
+        return true;
+    }
+
+    /**
+     * Publish every buffer now, regardless of size or age
+     */
+    public void flush() {
+        if (isEnabled()) {
+            try {
+                flusher.submit(this::flushAll).get(confirmTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                logger.warn("Flush did not complete: {}", e.getMessage());
+            }
+        }
+    }
+
+    public int getPendingCount() {
+        return unconfirmed.size();
+    }
+
+    /**
+     * Get publisher statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("confirms", confirms);
+        stats.put("confirmed", confirmed.get());
+        stats.put("retried", retried.get());
+        stats.put("dropped", dropped.get());
+        stats.put("rejected_full", rejected.get());
+        stats.put("unconfirmed", unconfirmed.size());
+        synchronized (buffers) {
+            stats.put("buffered", buffers.values().stream().mapToInt(buffer -> buffer.events.size()).sum());
+        }
+        return stats;
+    }
+
+    // Private helper methods
+
+    private void enqueue(Outgoing outgoing) {
+        String key = outgoing.exchange + ' ' + outgoing.routingKey;
+        synchronized (buffers) {
+            Buffer buffer = buffers.computeIfAbsent(key, k -> new Buffer(outgoing.exchange, outgoing.routingKey));
+            if (buffer.events.isEmpty()) {
+                buffer.oldestNanos = System.nanoTime();
+            }
+            if (outgoing.attempts > 0) {
+                insertRetry(buffer, outgoing);
+            } else {
+                buffer.events.add(outgoing);
+            }
+            if (buffer.events.size() >= batchSize && !buffer.flushQueued) {
+                try {
+                    flusher.execute(() -> flush(buffer));
+                    buffer.flushQueued = true;
+                } catch (RejectedExecutionException e) {
+                    // Shutting down; the final flush picks it up
+                }
+            }
+        }
+    }
+
+    /**
+     * Put a republished message back ahead of every first attempt, after retries of
+     * messages that were enqueued before it; caller holds the buffers lock
+     */
+    private void insertRetry(Buffer buffer, Outgoing outgoing) {
+        List<Outgoing> ahead = new ArrayList<>();
+        while (!buffer.events.isEmpty() && buffer.events.peekFirst().attempts > 0
+                && buffer.events.peekFirst().sequence < outgoing.sequence) {
+            ahead.add(buffer.events.pollFirst());
+        }
+        buffer.events.addFirst(outgoing);
+        for (int i = ahead.size() - 1; i >= 0; i--) {
+            buffer.events.addFirst(ahead.get(i));
+        }
+    }
+
+    /**
+     * Periodic pass: flush buffers past their linger time, retry messages whose confirm is overdue
+     */
+    private void flushDue() {
+        try {
+            long now = System.nanoTime();
+            long lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+            List<Buffer> due = new ArrayList<>();
+            synchronized (buffers) {
+                for (Buffer buffer : buffers.values()) {
+                    if (!buffer.events.isEmpty() && now - buffer.oldestNanos >= lingerNanos) {
+                        due.add(buffer);
+                    }
+                }
+            }
+            due.forEach(this::flush);
+
+            if (confirms) {
+                long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+                Iterator<Map.Entry<String, Outgoing>> it = unconfirmed.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, Outgoing> entry = it.next();
+                    if (now - entry.getValue().sentNanos > timeoutNanos && unconfirmed.remove(entry.getKey()) != null) {
+                        retry(entry.getValue(), "no confirm within " + confirmTimeoutMs + " ms");
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Event publisher flush pass failed: {}", e.getMessage());
+        }
+    }
+
+    private void flushAll() {
+        List<Buffer> all;
+        synchronized (buffers) {
+            all = new ArrayList<>(buffers.values());
+        }
+        all.forEach(this::flush);
+    }
+
+    /**
+     * Publish everything in the buffer on one channel; runs on the flusher thread only
+     */
+    private void flush(Buffer buffer) {
+        List<Outgoing> batch;
+        synchronized (buffers) {
+            buffer.flushQueued = false;
+            if (buffer.events.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(buffer.events);
+            buffer.events.clear();
+        }
+
+        // Attempted: registered for a confirm; sent: handed to the channel
+        int[] attempted = new int[1];
+        int[] sent = new int[1];
+        try {
+            rabbitTemplate.invoke(operations -> {
+                for (Outgoing outgoing : batch) {
+                    attempted[0]++;
+                    CorrelationData correlation = new CorrelationData(outgoing.nextCorrelationId());
+                    outgoing.sentNanos = System.nanoTime();
+                    if (confirms) {
+                        unconfirmed.put(correlation.getId(), outgoing);
+                        correlation.getFuture().whenComplete((confirm, error) -> onConfirm(correlation,
+                            confirm != null && confirm.isAck(), error != null ? error.getMessage()
+                                : confirm != null ? confirm.getReason() : null));
+                    }
+                    operations.send(buffer.exchange, buffer.routingKey, outgoing.message, correlation);
+                    sent[0]++;
+                    if (!confirms) {
+                        // Nothing will confirm it; handing it to the client is all we get
+                        succeeded();
+                    }
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // Broker unreachable: the unsent rest goes back for another attempt
+            logger.warn("Publishing {} events to {} failed after {}: {}",
+                batch.size(), buffer.routingKey, sent[0], e.getMessage());
+            for (int i = sent[0]; i < batch.size(); i++) {
+                Outgoing outgoing = batch.get(i);
+                if (i < attempted[0] && confirms && unconfirmed.remove(outgoing.correlationId) == null) {
+                    // Its confirm (a nack from the closing channel) already handled it
+                    continue;
+                }
+                retry(outgoing, e.getMessage());
+            }
+        }
+        if (batchSizeSummary != null) {
+            batchSizeSummary.record(batch.size());
+        }
+    }
+
+    private void onConfirm(CorrelationData correlation, boolean ack, String reason) {
+        Outgoing outgoing = unconfirmed.remove(correlation.getId());
+        if (outgoing == null) {
+            // Already timed out and retried
+            return;
+        }
+        ReturnedMessage returned = correlation.getReturned();
+        if (ack && returned == null) {
+            succeeded();
+        } else {
+            retry(outgoing, returned != null ? "returned: " + returned.getReplyText() : "nacked: " + reason);
+        }
+    }
+
+    private void succeeded() {
+        confirmed.incrementAndGet();
+        capacity.release();
+        if (confirmedCounter != null) {
+            confirmedCounter.increment();
+        }
+    }
+
+    private void retry(Outgoing outgoing, String reason) {
+        if (outgoing.attempts >= maxAttempts || !isEnabled()) {
+            dropped.incrementAndGet();
+            capacity.release();
+            if (droppedCounter != null) {
+                droppedCounter.increment();
+            }
+            logger.error("Dropping event {} to {} after {} attempts: {}", outgoing.message.getMessageProperties()
+                .getMessageId(), outgoing.routingKey, outgoing.attempts, reason);
+            return;
+        }
+        retried.incrementAndGet();
+        if (retriedCounter != null) {
+            retriedCounter.increment();
+        }
+        logger.debug("Republishing event to {} ({})", outgoing.routingKey, reason);
+        enqueue(outgoing);
+    }
+
+    private static Counter resultCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("ups.events.publish")
+            .tag("result", result)
+            .description("Events published through the batching publisher, by outcome")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Events for one exchange and routing key, waiting for a flush
+     */
+    private static class Buffer {
+        final String exchange;
+        final String routingKey;
+        final ArrayDeque<Outgoing> events = new ArrayDeque<>();
+        long oldestNanos;
+        boolean flushQueued;
+
+        Buffer(String exchange, String routingKey) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+        }
+    }
+
+    /**
+     * One event and its publish attempts
+     */
+    private static class Outgoing {
+        private static final AtomicLong SEQUENCE = new AtomicLong();
+
+        final String exchange;
+        final String routingKey;
+        final Message message;
+        // Enqueue order, kept across retries
+        final long sequence = SEQUENCE.incrementAndGet();
+        int attempts;
+        volatile long sentNanos;
+        String correlationId;
+
+        Outgoing(String exchange, String routingKey, Message message) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.message = message;
+            if (message.getMessageProperties().getMessageId() == null) {
+                message.getMessageProperties().setMessageId(UUID.randomUUID().toString());
+            }
+        }
+
+        /**
+         * A fresh id per attempt, so a late confirm of an earlier attempt is ignored
+         */
+        String nextCorrelationId() {
+            attempts++;
+            correlationId = message.getMessageProperties().getMessageId() + "#" + attempts;
+            return correlationId;
+        }
+    }
+}
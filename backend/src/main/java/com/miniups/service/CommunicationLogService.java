@@ -12,6 +12,11 @@
  * - Error tracking and categorization
  * - Debug interface data provision
  * 
+ * Persistence:
+ * - With write-behind enabled, a log* call only opens the exchange; the row is written
+ *   once by CommunicationLogWriter when the response or error is recorded
+ * - Otherwise each call saves through the repository on the caller's thread
+ * 
  *
  
  */
@@ -25,9 +30,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -44,12 +51,18 @@ public class CommunicationLogService {
     @Autowired
     private ObjectMapper objectMapper;
     
+    @Autowired(required = false)
+    private CommunicationLogWriter writer;
+    
     /**
      * Log incoming message from Amazon
+     * 
+     * The write methods join a caller's transaction but do not start one: with write-behind
+     * they touch no connection, and otherwise the repository save runs in its own.
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public CommunicationLog logIncomingMessage(String messageType, String endpoint, Object payload) {
         CommunicationLog log = CommunicationLog.incoming(messageType, endpoint);
-        log.setPayload(serializeToJson(payload));
         
         // Extract common fields
         if (payload instanceof Map) {
@@ -57,48 +70,108 @@ public class CommunicationLogService {
             extractCommonFields(log, payloadMap);
         }
         
+        if (isWriteBehind()) {
+            writer.open(log, payload);
+            return log;
+        }
+        log.setPayload(encode(serializeToJson(payload)));
+        return communicationLogRepository.save(log);
+    }
+    
+    /**
+     * Log incoming message from Amazon whose body is already JSON
+     * 
+     * Stores the body as received, so the caller does not need to parse it into a Map first.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public CommunicationLog logIncomingRawMessage(String messageType, String endpoint, String rawJson,
+                                                  String shipmentId, Long warehouseId) {
+        CommunicationLog log = CommunicationLog.incoming(messageType, endpoint);
+        log.setPayload(rawJson);
+        log.setShipmentId(shipmentId);
+        if (warehouseId != null) {
+            log.setWarehouseId(String.valueOf(warehouseId));
+        }
+        
+        if (isWriteBehind()) {
+            writer.open(log, null);
+            return log;
+        }
         return communicationLogRepository.save(log);
     }
     
     /**
      * Log outgoing message to Amazon
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public CommunicationLog logOutgoingMessage(String messageType, String endpoint, Object payload) {
         CommunicationLog log = CommunicationLog.outgoing(messageType, endpoint);
-        log.setPayload(serializeToJson(payload));
         
+        if (isWriteBehind()) {
+            writer.open(log, payload);
+            return log;
+        }
+        log.setPayload(encode(serializeToJson(payload)));
         return communicationLogRepository.save(log);
     }
     
     /**
      * Update log with response information
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void updateLogWithResponse(CommunicationLog log, Object response, int statusCode, long processingTimeMs) {
-        log.setResponse(serializeToJson(response));
         log.setStatusCode(statusCode);
         log.setProcessingTimeMs(processingTimeMs);
         log.setSuccess(statusCode >= 200 && statusCode < 300);
         
+        if (isWriteBehind()) {
+            writer.complete(log, response);
+            return;
+        }
+        log.setResponse(encode(serializeToJson(response)));
         communicationLogRepository.save(log);
     }
     
     /**
      * Mark log as error
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void markLogAsError(CommunicationLog log, String errorMessage, Integer statusCode) {
         log.markAsError(statusCode != null ? statusCode : 500, errorMessage);
+        if (isWriteBehind()) {
+            writer.complete(log, null);
+            return;
+        }
         communicationLogRepository.save(log);
     }
     
+    /**
+     * Log an outgoing message that could not be delivered, in a single write
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public CommunicationLog logFailedOutgoingMessage(String messageType, String endpoint, Object payload,
+                                                     Integer statusCode, String errorMessage, long processingTimeMs) {
+        CommunicationLog log = CommunicationLog.outgoing(messageType, endpoint);
+        log.setProcessingTimeMs(processingTimeMs);
+        log.markAsError(statusCode != null ? statusCode : 500, errorMessage);
+
+        if (isWriteBehind()) {
+            writer.write(log, payload);
+            return log;
+        }
+        log.setPayload(encode(serializeToJson(payload)));
+        return communicationLogRepository.save(log);
+    }
+
     /**
      * Get recent communication logs for debug interface
      */
     @Transactional(readOnly = true)
     public List<CommunicationLog> getRecentLogs(int limit) {
         if (limit <= 50) {
-            return communicationLogRepository.findTop50ByOrderByCreatedAtDesc();
+            return decode(communicationLogRepository.findTop50ByOrderByCreatedAtDesc());
         } else {
-            return communicationLogRepository.findTop50ByOrderByCreatedAtDesc();
+            return decode(communicationLogRepository.findTop50ByOrderByCreatedAtDesc());
         }
     }
     
@@ -108,7 +181,7 @@ public class CommunicationLogService {
     @Transactional(readOnly = true)
     public List<CommunicationLog> getFilteredLogs(String direction, String messageType, Boolean success, int hoursBack) {
         LocalDateTime since = LocalDateTime.now().minusHours(hoursBack);
-        return communicationLogRepository.findFilteredLogs(direction, messageType, success, since);
+        return decode(communicationLogRepository.findFilteredLogs(direction, messageType, success, since));
     }
     
     /**
@@ -143,7 +216,11 @@ public class CommunicationLogService {
         
         // Recent errors
         List<CommunicationLog> recentErrors = communicationLogRepository.findTop20BySuccessFalseOrderByCreatedAtDesc();
-        stats.put("recentErrors", recentErrors);
+        stats.put("recentErrors", decode(recentErrors));
+        
+        if (writer != null) {
+            stats.put("writeBehind", writer.getStatistics());
+        }
         
         return stats;
     }
@@ -153,11 +230,48 @@ public class CommunicationLogService {
      */
     @Transactional(readOnly = true)
     public List<CommunicationLog> getLogsForShipment(String shipmentId) {
-        return communicationLogRepository.findByShipmentIdOrderByCreatedAtAsc(shipmentId);
+        return decode(communicationLogRepository.findByShipmentIdOrderByCreatedAtAsc(shipmentId));
     }
     
     // Private helper methods
     
+    private boolean isWriteBehind() {
+        return writer != null && writer.isEnabled();
+    }
+    
+    /**
+     * Same truncation and compression as the write-behind path
+     */
+    private String encode(String text) {
+        return writer != null ? writer.encode(text) : text;
+    }
+    
+    /**
+     * Expand payloads the writer compressed into detached copies. The managed entities are
+     * left untouched, so a caller's write transaction never flushes the decoded text back.
+     */
+    private List<CommunicationLog> decode(List<CommunicationLog> logs) {
+        List<CommunicationLog> decoded = new ArrayList<>(logs.size());
+        for (CommunicationLog log : logs) {
+            CommunicationLog copy = new CommunicationLog(log.getDirection(), log.getMessageType(), log.getEndpoint());
+            copy.setId(log.getId());
+            copy.setCreatedAt(log.getCreatedAt());
+            copy.setUpdatedAt(log.getUpdatedAt());
+            copy.setVersion(log.getVersion());
+            copy.setPayload(CommunicationLogWriter.decode(log.getPayload()));
+            copy.setResponse(CommunicationLogWriter.decode(log.getResponse()));
+            copy.setStatusCode(log.getStatusCode());
+            copy.setProcessingTimeMs(log.getProcessingTimeMs());
+            copy.setErrorMessage(log.getErrorMessage());
+            copy.setSuccess(log.getSuccess());
+            copy.setShipmentId(log.getShipmentId());
+            copy.setTruckId(log.getTruckId());
+            copy.setWarehouseId(log.getWarehouseId());
+            decoded.add(copy);
+        }
+        return decoded;
+    }
+    
     private String serializeToJson(Object obj) {
         if (obj == null) {
             return null;
@@ -0,0 +1,538 @@
+/**
+ * Communication Log Writer
+ *
+ * Functionality:
+ * - Write-behind persistence for CommunicationLog, off the request thread
+ * - An exchange is written once, when its response is known, instead of an insert for
+ *   the request and an update for the response
+ * - Payload and response objects are serialised to JSON on the flusher thread
+ *
+ * Pipeline:
+ * - Open exchanges are held in memory until completed; one that is never completed is
+ *   written as-is after the open timeout
+ * - At most max-open exchanges are held; beyond that the oldest tenth is written as-is
+ * - Completed records go into a bounded ring buffer (array-backed queue)
+ * - A single flusher drains the buffer and inserts with one JDBC batch per drain
+ * - Payloads above the size cap are truncated; large ones are optionally gzip-compressed
+ *   and stored as "gzip:" + Base64, decoded again by {@link #decode}
+ *
+ * Backpressure (buffer full):
+ * - block: the caller waits up to block-timeout-ms, then the record is dropped
+ * - drop: the record is dropped immediately
+ * - sample: above half full only one in sample-rate successful records is kept;
+ *   failed exchanges are always kept while there is room
+ *
+ * Metrics:
+ * - ups.comm_log.buffer_depth, ups.comm_log.open_records, ups.comm_log.lag (completion to insert),
+ *   ups.comm_log.batch_size, ups.comm_log.dropped{reason}, ups.comm_log.write_failures
+ *
+ * Logs reach the database up to flush-interval-ms after the exchange completes.
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniups.model.entity.CommunicationLog;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+@Service
+public class CommunicationLogWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommunicationLogWriter.class);
+
+    static final String COMPRESSED_PREFIX = "gzip:";
+
+    private static final String INSERT_SQL =
+        "INSERT INTO communication_logs (direction, message_type, endpoint, payload, response, status_code, " +
+        "processing_time_ms, error_message, success, shipment_id, truck_id, warehouse_id, " +
+        "created_at, updated_at, version) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    public enum Backpressure { BLOCK, DROP, SAMPLE }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.communication-log.write-behind.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${app.communication-log.write-behind.capacity:8192}")
+    private int capacity = 8192;
+
+    @Value("${app.communication-log.write-behind.batch-size:200}")
+    private int batchSize = 200;
+
+    @Value("${app.communication-log.write-behind.flush-interval-ms:200}")
+    private long flushIntervalMs = 200;
+
+    @Value("${app.communication-log.write-behind.backpressure:DROP}")
+    private Backpressure backpressure = Backpressure.DROP;
+
+    @Value("${app.communication-log.write-behind.block-timeout-ms:50}")
+    private long blockTimeoutMs = 50;
+
+    @Value("${app.communication-log.write-behind.sample-rate:10}")
+    private int sampleRate = 10;
+
+    @Value("${app.communication-log.write-behind.open-timeout-ms:60000}")
+    private long openTimeoutMs = 60000;
+
+    @Value("${app.communication-log.write-behind.max-open:10000}")
+    private int maxOpen = 10000;
+
+    @Value("${app.communication-log.max-payload-chars:65536}")
+    private int maxPayloadChars = 65536;
+
+    @Value("${app.communication-log.compression.enabled:false}")
+    private boolean compressionEnabled = false;
+
+    @Value("${app.communication-log.compression.threshold-chars:2048}")
+    private int compressionThresholdChars = 2048;
+
+    private BlockingQueue<Record> buffer = new ArrayBlockingQueue<>(capacity);
+    // Identity keys: CommunicationLog does not override equals
+    private final ConcurrentHashMap<CommunicationLog, Pending> open = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final AtomicLong sampleSequence = new AtomicLong();
+    private volatile boolean running;
+    private Thread flusher;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sampledOut = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+    private final AtomicLong openEvicted = new AtomicLong();
+
+    private final MeterRegistry meterRegistry;
+    private final Timer lagTimer;
+    private final DistributionSummary batchSizeSummary;
+    private final Counter droppedFullCounter;
+    private final Counter sampledCounter;
+    private final Counter failureCounter;
+
+    public CommunicationLogWriter(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                                  @Autowired(required = false) MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+
+        if (meterRegistry != null) {
+            this.lagTimer = Timer.builder("ups.comm_log.lag")
+                .description("Time from exchange completion to the log row being inserted")
+                .register(meterRegistry);
+            this.batchSizeSummary = DistributionSummary.builder("ups.comm_log.batch_size")
+                .description("Communication log rows per JDBC batch")
+                .register(meterRegistry);
+            this.droppedFullCounter = Counter.builder("ups.comm_log.dropped")
+                .tag("reason", "full")
+                .description("Communication log records dropped by backpressure")
+                .register(meterRegistry);
+            this.sampledCounter = Counter.builder("ups.comm_log.dropped")
+                .tag("reason", "sampled")
+                .description("Communication log records dropped by backpressure")
+                .register(meterRegistry);
+            this.failureCounter = Counter.builder("ups.comm_log.write_failures")
+                .description("Communication log rows lost to failed inserts")
+                .register(meterRegistry);
+            meterRegistry.gauge("ups.comm_log.open_records", open, Map::size);
+        } else {
+            this.lagTimer = null;
+            this.batchSizeSummary = null;
+            this.droppedFullCounter = null;
+            this.sampledCounter = null;
+            this.failureCounter = null;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        buffer = new ArrayBlockingQueue<>(capacity);
+        if (meterRegistry != null) {
+            meterRegistry.gauge("ups.comm_log.buffer_depth", buffer, Queue::size);
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "comm-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        logger.info("Communication log write-behind started (capacity {}, batch {}, backpressure {})",
+                   capacity, batchSize, backpressure);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Exchanges still open at shutdown are written without their response
+        for (CommunicationLog log : new ArrayList<>(open.keySet())) {
+            Pending pending = open.remove(log);
+            if (pending != null) {
+                buffer.offer(Record.of(log, pending, null));
+            }
+        }
+        flush();
+    }
+
+    public boolean isEnabled() {
+        return enabled && running;
+    }
+
+    /**
+     * Start an exchange; nothing is written until {@link #complete} or the open timeout
+     *
+     * @param payload Request body, serialised on the flusher thread; null if already set on the log
+     */
+    public void open(CommunicationLog log, Object payload) {
+        open.put(log, new Pending(payload, LocalDateTime.now(), System.currentTimeMillis()));
+        if (open.size() > maxOpen) {
+            evictOldestOpen();
+        }
+    }
+
+    /**
+     * Finish an exchange opened with {@link #open} and queue it for writing
+     *
+     * @param response Response body, serialised on the flusher thread
+     * @return false if backpressure dropped the record
+     */
+    public boolean complete(CommunicationLog log, Object response) {
+        Pending pending = open.remove(log);
+        if (pending == null) {
+            // Never opened, or already written by the open timeout; write what we have
+            pending = new Pending(null, LocalDateTime.now(), System.currentTimeMillis());
+        }
+        return submit(Record.of(log, pending, response));
+    }
+
+    /**
+     * Queue a log that is complete when created
+     */
+    public boolean write(CommunicationLog log, Object payload) {
+        return submit(Record.of(log, new Pending(payload, LocalDateTime.now(), System.currentTimeMillis()), null));
+    }
+
+    /**
+     * Write exchanges that were opened but never completed, e.g. after an unexpected exception
+     */
+    @Scheduled(fixedDelayString = "${app.communication-log.write-behind.open-sweep-interval-ms:10000}")
+    public void sweepAbandoned() {
+        long cutoff = System.currentTimeMillis() - openTimeoutMs;
+        for (Map.Entry<CommunicationLog, Pending> entry : open.entrySet()) {
+            if (entry.getValue().openedAtMillis < cutoff && open.remove(entry.getKey(), entry.getValue())) {
+                abandoned.incrementAndGet();
+                submit(Record.of(entry.getKey(), entry.getValue(), null));
+            }
+        }
+    }
+
+    /**
+     * Write everything buffered so far on the calling thread
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            while (drainAndWrite() > 0) {
+                // keep draining
+            }
+        }
+    }
+
+    /**
+     * Get write-behind statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("backpressure", backpressure.name());
+        stats.put("buffer_depth", buffer.size());
+        stats.put("buffer_capacity", capacity);
+        stats.put("open_records", open.size());
+        stats.put("written", written.get());
+        stats.put("dropped", dropped.get());
+        stats.put("sampled_out", sampledOut.get());
+        stats.put("write_failures", writeFailures.get());
+        stats.put("abandoned", abandoned.get());
+        stats.put("open_evicted", openEvicted.get());
+        return stats;
+    }
+
+    /**
+     * Undo the compression applied on write
+     *
+     * @return The stored text, decompressed if it was compressed
+     */
+    public static String decode(String stored) {
+        if (stored == null || !stored.startsWith(COMPRESSED_PREFIX)) {
+            return stored;
+        }
+        try {
+            byte[] compressed = Base64.getDecoder().decode(stored.substring(COMPRESSED_PREFIX.length()));
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Failed to decompress communication log payload: {}", e.getMessage());
+            return stored;
+        }
+    }
+
+    // Private helper methods
+
+    /**
+     * Write the oldest open exchanges without their response. A tenth is evicted at a time
+     * so that a burst of never-completed exchanges does not scan the map on every open.
+     */
+    private void evictOldestOpen() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int excess = open.size() - maxOpen + Math.max(1, maxOpen / 10);
+            open.entrySet().stream()
+                .sorted((a, b) -> Long.compare(a.getValue().openedAtMillis, b.getValue().openedAtMillis))
+                .limit(excess)
+                .toList()
+                .forEach(e -> {
+                    if (open.remove(e.getKey(), e.getValue())) {
+                        openEvicted.incrementAndGet();
+                        submit(Record.of(e.getKey(), e.getValue(), null));
+                    }
+                });
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private boolean submit(Record record) {
+        if (backpressure == Backpressure.SAMPLE && record.success && buffer.size() >= capacity / 2
+                && sampleSequence.incrementAndGet() % Math.max(1, sampleRate) != 0) {
+            sampledOut.incrementAndGet();
+            if (sampledCounter != null) {
+                sampledCounter.increment();
+            }
+            return false;
+        }
+
+        boolean accepted;
+        if (backpressure == Backpressure.BLOCK) {
+            try {
+                accepted = buffer.offer(record, blockTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                accepted = false;
+            }
+        } else {
+            accepted = buffer.offer(record);
+        }
+
+        if (!accepted) {
+            // Logging each drop would add to the overload; the counter is the signal
+            dropped.incrementAndGet();
+            if (droppedFullCounter != null) {
+                droppedFullCounter.increment();
+            }
+        }
+        return accepted;
+    }
+
+    private void flushLoop() {
+        while (running) {
+            int count;
+            synchronized (writeLock) {
+                count = drainAndWrite();
+            }
+            if (count < batchSize) {
+                // Linger so the next batch is worth a round trip
+                try {
+                    Thread.sleep(flushIntervalMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Number of records taken from the buffer
+     */
+    private int drainAndWrite() {
+        List<Record> batch = new ArrayList<>(Math.min(batchSize, buffer.size() + 1));
+        buffer.drainTo(batch, batchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        for (Record record : batch) {
+            rows.add(toRow(record));
+        }
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows, new int[] {
+                Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.INTEGER,
+                Types.BIGINT, Types.VARCHAR, Types.BOOLEAN, Types.VARCHAR, Types.INTEGER, Types.VARCHAR,
+                Types.TIMESTAMP, Types.TIMESTAMP });
+            written.addAndGet(batch.size());
+            if (lagTimer != null) {
+                long now = System.currentTimeMillis();
+                for (Record record : batch) {
+                    lagTimer.record(now - record.completedAtMillis, TimeUnit.MILLISECONDS);
+                }
+                batchSizeSummary.record(batch.size());
+            }
+        } catch (RuntimeException e) {
+            // Debug data only: losing a batch is preferable to stalling the pipeline on a sick database
+            writeFailures.addAndGet(batch.size());
+            if (failureCounter != null) {
+                failureCounter.increment(batch.size());
+            }
+            logger.error("Failed to write {} communication logs: {}", batch.size(), e.getMessage());
+        }
+        return batch.size();
+    }
+
+    private Object[] toRow(Record record) {
+        String payload = record.payloadText != null ? record.payloadText : serialize(record.payload);
+        Timestamp createdAt = Timestamp.valueOf(record.createdAt);
+        return new Object[] {
+            record.direction, record.messageType, record.endpoint,
+            encode(payload), encode(serialize(record.response)),
+            record.statusCode, record.processingTimeMs, record.errorMessage, record.success,
+            record.shipmentId, record.truckId, record.warehouseId,
+            createdAt, createdAt
+        };
+    }
+
+    private String serialize(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof String) {
+            // Response bodies from RestTemplate are already text
+            return (String) value;
+        }
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            logger.warn("Failed to serialize object to JSON: {}", e.getMessage());
+            return value.toString();
+        }
+    }
+
+    /**
+     * Truncate above the size cap, then compress above the threshold
+     */
+    public String encode(String text) {
+        if (text == null) {
+            return null;
+        }
+        if (maxPayloadChars > 0 && text.length() > maxPayloadChars) {
+            text = text.substring(0, maxPayloadChars) + "...[truncated " + (text.length() - maxPayloadChars) + " chars]";
+        }
+        if (!compressionEnabled || text.length() < compressionThresholdChars) {
+            return text;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length() / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            return text;
+        }
+        String compressed = COMPRESSED_PREFIX + Base64.getEncoder().encodeToString(bytes.toByteArray());
+        // Base64 costs a third; small or random payloads may not shrink
+        return compressed.length() < text.length() ? compressed : text;
+    }
+
+    private static class Pending {
+        final Object payload;
+        final LocalDateTime createdAt;
+        final long openedAtMillis;
+
+        Pending(Object payload, LocalDateTime createdAt, long openedAtMillis) {
+            this.payload = payload;
+            this.createdAt = createdAt;
+            this.openedAtMillis = openedAtMillis;
+        }
+    }
+
+    /**
+     * Copy of a log taken on the request thread, so the flusher never reads the entity
+     */
+    private static class Record {
+        String direction;
+        String messageType;
+        String endpoint;
+        String payloadText;
+        Object payload;
+        Object response;
+        Integer statusCode;
+        Long processingTimeMs;
+        String errorMessage;
+        Boolean success;
+        String shipmentId;
+        Integer truckId;
+        String warehouseId;
+        LocalDateTime createdAt;
+        long completedAtMillis;
+
+        static Record of(CommunicationLog log, Pending pending, Object response) {
+            Record record = new Record();
+            record.direction = log.getDirection();
+            record.messageType = log.getMessageType();
+            record.endpoint = log.getEndpoint();
+            record.payloadText = log.getPayload();
+            record.payload = pending.payload;
+            record.response = response != null ? response : log.getResponse();
+            record.statusCode = log.getStatusCode();
+            record.processingTimeMs = log.getProcessingTimeMs();
+            record.errorMessage = log.getErrorMessage();
+            record.success = log.getSuccess() == null || log.getSuccess();
+            record.shipmentId = log.getShipmentId();
+            record.truckId = log.getTruckId();
+            record.warehouseId = log.getWarehouseId();
+            record.createdAt = pending.createdAt;
+            record.completedAtMillis = System.currentTimeMillis();
+            return record;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * Consumer Scaling Service
+ *
+ * Functionality:
+ * - Periodically samples the depth of the queues listed in app.rabbitmq.scaling.queues
+ *   through AmqpAdmin.getQueueInfo, and adjusts the consumer count and prefetch of the
+ *   listener container consuming each one, within configured limits
+ * - Other listener containers (e.g. the batch audit log consumer) are left alone
+ *
+ * Load Model:
+ * - Load is the backlog per consumer: messages ready in the queue divided by the
+ *   container's consumers. Above scale-up-backlog consumers are saturated; at or below
+ *   scale-down-backlog they are mostly idle
+ *
+ * Hysteresis:
+ * - A change needs scale-up-samples (or scale-down-samples) consecutive samples on the
+ *   same side, and cooldown-ms since the previous change of that queue; samples between
+ *   the two thresholds reset both streaks
+ * - Scaling up doubles consumers and prefetch, so a backlog is met quickly; scaling down
+ *   removes one consumer and halves prefetch, so capacity is released gradually
+ * - A new prefetch applies to consumers started after the change
+ *
+ * Metrics:
+ * - ups.rabbitmq.listener.consumers, ups.rabbitmq.listener.prefetch,
+ *   ups.rabbitmq.listener.queue_depth (gauges, tagged by queue)
+ * - ups.rabbitmq.listener.scaling{queue, direction=up|down}
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+public class ConsumerScalingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConsumerScalingService.class);
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired(required = false)
+    private RabbitListenerEndpointRegistry listenerRegistry;
+
+    @Autowired(required = false)
+    private AmqpAdmin amqpAdmin;
+
+    @Value("${app.rabbitmq.scaling.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${app.rabbitmq.scaling.queues:q.shipment.processor,q.notifications}")
+    private List<String> queues = List.of("q.shipment.processor", "q.notifications");
+
+    @Value("${app.rabbitmq.scaling.min-consumers:1}")
+    private int minConsumers = 1;
+
+    @Value("${app.rabbitmq.scaling.max-consumers:8}")
+    private int maxConsumers = 8;
+
+    @Value("${app.rabbitmq.scaling.min-prefetch:1}")
+    private int minPrefetch = 1;
+
+    @Value("${app.rabbitmq.scaling.max-prefetch:50}")
+    private int maxPrefetch = 50;
+
+    @Value("${app.rabbitmq.scaling.scale-up-backlog:20}")
+    private long scaleUpBacklog = 20;
+
+    @Value("${app.rabbitmq.scaling.scale-down-backlog:2}")
+    private long scaleDownBacklog = 2;
+
+    @Value("${app.rabbitmq.scaling.scale-up-samples:2}")
+    private int scaleUpSamples = 2;
+
+    @Value("${app.rabbitmq.scaling.scale-down-samples:6}")
+    private int scaleDownSamples = 6;
+
+    @Value("${app.rabbitmq.scaling.cooldown-ms:30000}")
+    private long cooldownMs = 30000;
+
+    @Value("${spring.rabbitmq.listener.simple.prefetch:1}")
+    private int initialPrefetch = 1;
+
+    private final Map<String, QueueState> states = new ConcurrentHashMap<>();
+
+    public ConsumerScalingService(@Autowired(required = false) MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean isEnabled() {
+        return enabled && listenerRegistry != null && amqpAdmin != null;
+    }
+
+    /**
+     * Sample every managed queue and rescale its container where needed
+     */
+    @Scheduled(fixedDelayString = "${app.rabbitmq.scaling.interval-ms:5000}")
+    public void sample() {
+        if (!isEnabled()) {
+            return;
+        }
+        for (MessageListenerContainer container : listenerRegistry.getListenerContainers()) {
+            if (!(container instanceof SimpleMessageListenerContainer simple) || !simple.isRunning()) {
+                continue;
+            }
+            for (String queue : simple.getQueueNames()) {
+                if (!queues.contains(queue)) {
+                    continue;
+                }
+                try {
+                    QueueInformation info = amqpAdmin.getQueueInfo(queue);
+                    if (info != null) {
+                        scale(queue, simple, info.getMessageCount(), System.currentTimeMillis());
+                    }
+                } catch (RuntimeException e) {
+                    logger.warn("Could not sample queue {}: {}", queue, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the current consumers, prefetch and depth of each managed queue
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        states.forEach((queue, state) -> stats.put(queue, Map.of(
+            "consumers", state.consumers,
+            "prefetch", state.prefetch,
+            "depth", state.depth,
+            "scale_ups", state.scaleUps,
+            "scale_downs", state.scaleDowns)));
+        return stats;
+    }
+
+    /**
+     * Record one depth sample for a queue and apply the resulting decision to its container
+     *
+     * @return +1 if scaled up, -1 if scaled down, 0 if unchanged
+     */
+    int scale(String queue, SimpleMessageListenerContainer container, long depth, long nowMillis) {
+        QueueState state = states.computeIfAbsent(queue, q -> {
+            QueueState created = new QueueState(q, clamp(initialPrefetch, minPrefetch, maxPrefetch));
+            // Start from the configured limits rather than whatever the container was built with
+            apply(container, created);
+            return created;
+        });
+
+        int decision;
+        synchronized (state) {
+            state.depth = depth;
+            decision = decide(state, depth, nowMillis);
+            if (decision != 0) {
+                state.lastChangeMillis = nowMillis;
+                state.upStreak = 0;
+                state.downStreak = 0;
+            }
+        }
+        if (decision == 0) {
+            return 0;
+        }
+
+        apply(container, state);
+        Counter counter = decision > 0 ? state.upCounter : state.downCounter;
+        if (counter != null) {
+            counter.increment();
+        }
+        logger.info("Scaled {} {} to {} consumers, prefetch {} (depth {})",
+            queue, decision > 0 ? "up" : "down", state.consumers, state.prefetch, depth);
+        return decision;
+    }
+
+    // Private helper methods
+
+    private int decide(QueueState state, long depth, long nowMillis) {
+        long backlogPerConsumer = depth / state.consumers;
+        if (backlogPerConsumer >= scaleUpBacklog) {
+            state.upStreak++;
+            state.downStreak = 0;
+        } else if (backlogPerConsumer <= scaleDownBacklog) {
+            state.downStreak++;
+            state.upStreak = 0;
+        } else {
+            state.upStreak = 0;
+            state.downStreak = 0;
+        }
+        if (state.lastChangeMillis != 0 && nowMillis - state.lastChangeMillis < cooldownMs) {
+            return 0;
+        }
+
+        if (state.upStreak >= scaleUpSamples
+                && (state.consumers < maxConsumers || state.prefetch < maxPrefetch)) {
+            state.consumers = Math.min(maxConsumers, state.consumers * 2);
+            state.prefetch = Math.min(maxPrefetch, state.prefetch * 2);
+            state.scaleUps++;
+            return 1;
+        }
+        if (state.downStreak >= scaleDownSamples
+                && (state.consumers > minConsumers || state.prefetch > minPrefetch)) {
+            state.consumers = Math.max(minConsumers, state.consumers - 1);
+            state.prefetch = Math.max(minPrefetch, state.prefetch / 2);
+            state.scaleDowns++;
+            return -1;
+        }
+        return 0;
+    }
+
+    private void apply(SimpleMessageListenerContainer container, QueueState state) {
+        // Prefetch first, so consumers added below already start with it
+        container.setPrefetchCount(state.prefetch);
+        container.setConcurrentConsumers(state.consumers);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Scaling state of one queue
+     */
+    private class QueueState {
+        volatile int consumers;
+        volatile int prefetch;
+        volatile long depth;
+        int upStreak;
+        int downStreak;
+        long lastChangeMillis;
+        long scaleUps;
+        long scaleDowns;
+        final Counter upCounter;
+        final Counter downCounter;
+
+        QueueState(String queue, int prefetch) {
+            this.consumers = minConsumers;
+            this.prefetch = prefetch;
+            if (meterRegistry != null) {
+                Gauge.builder("ups.rabbitmq.listener.consumers", this, s -> s.consumers)
+                    .tag("queue", queue)
+                    .description("Consumers of the listener container on the queue")
+                    .register(meterRegistry);
+                Gauge.builder("ups.rabbitmq.listener.prefetch", this, s -> s.prefetch)
+                    .tag("queue", queue)
+                    .description("Prefetch of the listener container on the queue")
+                    .register(meterRegistry);
+                Gauge.builder("ups.rabbitmq.listener.queue_depth", this, s -> s.depth)
+                    .tag("queue", queue)
+                    .description("Messages ready in the queue at the last sample")
+                    .register(meterRegistry);
+                this.upCounter = scalingCounter(queue, "up");
+                this.downCounter = scalingCounter(queue, "down");
+            } else {
+                this.upCounter = null;
+                this.downCounter = null;
+            }
+        }
+
+        private Counter scalingCounter(String queue, String direction) {
+            return Counter.builder("ups.rabbitmq.listener.scaling")
+                .tag("queue", queue)
+                .tag("direction", direction)
+                .description("Consumer scaling decisions")
+                .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Deferred Amazon Call Store
+ *
+ * Functionality:
+ * - Persists Amazon notifications that were not sent because the circuit breaker
+ *   was open, so an outage does not lose them
+ * - Hands them back, oldest first, for replay once the circuit lets calls through
+ *   (see AmazonWebhookDispatcher#replayDeferred)
+ * - A replayed call is leased rather than removed: it is deleted once delivered,
+ *   put back when delivery fails again, and due again when the lease runs out
+ * - Calls older than the maximum age are purged so an endless outage cannot grow
+ *   the table without bound
+ *
+ * Payloads are stored as the JSON that would have been sent and replayed as a
+ * JsonNode, so the body Amazon receives is unchanged.
+ *
+ * Metrics:
+ * - ups.amazon.deferred.stored, ups.amazon.deferred.replayed, ups.amazon.deferred.expired
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniups.model.entity.DeferredAmazonCall;
+import com.miniups.repository.DeferredAmazonCallRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class DeferredAmazonCallStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeferredAmazonCallStore.class);
+
+    private final DeferredAmazonCallRepository repository;
+    private final ObjectMapper objectMapper;
+
+    @Value("${amazon.resilience.deferred.max-age-hours:24}")
+    private long maxAgeHours = 24;
+
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final Counter storedCounter;
+    private final Counter replayedCounter;
+    private final Counter expiredCounter;
+
+    public DeferredAmazonCallStore(DeferredAmazonCallRepository repository, ObjectMapper objectMapper,
+                                   @Autowired(required = false) MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        if (meterRegistry != null) {
+            this.storedCounter = Counter.builder("ups.amazon.deferred.stored")
+                .description("Amazon notifications deferred while the circuit was open")
+                .register(meterRegistry);
+            this.replayedCounter = Counter.builder("ups.amazon.deferred.replayed")
+                .description("Deferred Amazon notifications delivered on replay")
+                .register(meterRegistry);
+            this.expiredCounter = Counter.builder("ups.amazon.deferred.expired")
+                .description("Deferred Amazon notifications dropped past the maximum age")
+                .register(meterRegistry);
+        } else {
+            this.storedCounter = null;
+            this.replayedCounter = null;
+            this.expiredCounter = null;
+        }
+    }
+
+    /**
+     * Store a notification for later
+     *
+     * @return false if it could not be stored; the caller should then log it as failed
+     */
+    public boolean defer(String baseUrl, String endpoint, String messageType, Object payload, String reason) {
+        try {
+            String json = payload instanceof JsonNode node ? node.toString() : objectMapper.writeValueAsString(payload);
+            repository.save(new DeferredAmazonCall(baseUrl, endpoint, messageType, json, reason));
+            stored.incrementAndGet();
+            if (storedCounter != null) {
+                storedCounter.increment();
+            }
+            return true;
+        } catch (JsonProcessingException e) {
+            logger.error("Cannot serialize deferred {} notification", messageType, e);
+        } catch (Exception e) {
+            logger.error("Failed to store deferred {} notification for {}", messageType, endpoint, e);
+        }
+        return false;
+    }
+
+    /**
+     * Calls due for replay, oldest first
+     */
+    public List<DeferredAmazonCall> due(int limit) {
+        return repository.findByNextAttemptAtLessThanEqualOrderByIdAsc(LocalDateTime.now(), PageRequest.of(0, limit));
+    }
+
+    /**
+     * Payload to send, as it was stored
+     */
+    public JsonNode payloadOf(DeferredAmazonCall call) throws JsonProcessingException {
+        return objectMapper.readTree(call.getPayload());
+    }
+
+    /**
+     * Hold a call back from replay while it is being delivered
+     *
+     * @return the saved call, to pass to replayed, redefer or discard
+     */
+    public DeferredAmazonCall lease(DeferredAmazonCall call, long leaseMs) {
+        call.setNextAttemptAt(LocalDateTime.now().plusNanos(leaseMs * 1_000_000L));
+        return repository.save(call);
+    }
+
+    /**
+     * Remove a replayed call once Amazon has accepted it
+     */
+    public void replayed(DeferredAmazonCall call) {
+        try {
+            repository.delete(call);
+        } catch (Exception e) {
+            // Purged meanwhile, or the lease ran out and another replay took it
+            logger.warn("Failed to remove replayed {} notification {}: {}", call.getMessageType(), call.getId(), e.getMessage());
+            return;
+        }
+        replayed.incrementAndGet();
+        if (replayedCounter != null) {
+            replayedCounter.increment();
+        }
+    }
+
+    /**
+     * Put a replayed call back after delivery failed again
+     *
+     * @return false if it could not be stored; the caller should then log it as failed
+     */
+    public boolean redefer(DeferredAmazonCall call, String reason, long delayMs) {
+        try {
+            call.setReason(reason);
+            call.setNextAttemptAt(LocalDateTime.now().plusNanos(delayMs * 1_000_000L));
+            repository.save(call);
+            return true;
+        } catch (Exception e) {
+            logger.error("Failed to re-defer {} notification {} for {}", call.getMessageType(), call.getId(),
+                call.getEndpoint(), e);
+        }
+        return false;
+    }
+
+    /**
+     * Drop a replayed call that Amazon rejected permanently; it is logged as failed instead
+     */
+    public void discard(DeferredAmazonCall call) {
+        try {
+            repository.delete(call);
+        } catch (Exception e) {
+            logger.warn("Failed to discard {} notification {}: {}", call.getMessageType(), call.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Delete calls stored longer ago than the maximum age
+     */
+    @Scheduled(fixedDelayString = "${amazon.resilience.deferred.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        try {
+            int purged = repository.deleteByCreatedAtBefore(LocalDateTime.now().minusHours(maxAgeHours));
+            if (purged > 0) {
+                expired.addAndGet(purged);
+                if (expiredCounter != null) {
+                    expiredCounter.increment(purged);
+                }
+                logger.warn("Dropped {} deferred Amazon notifications older than {} hours", purged, maxAgeHours);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to purge expired deferred Amazon notifications: {}", e.getMessage());
+        }
+    }
+
+    public long count() {
+        return repository.count();
+    }
+
+    public long getStoredCount() {
+        return stored.get();
+    }
+
+    public long getReplayedCount() {
+        return replayed.get();
+    }
+
+    public long getExpiredCount() {
+        return expired.get();
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * Delivery Route Service
+ *
+ * Functionality:
+ * - Keeps the ordered stop list of every truck out for delivery
+ * - Orders a new delivery run nearest-neighbour from the truck's position
+ * - Re-plans a single truck's route when one of its packages changes address
+ *
+ * Re-routing:
+ * - Only packages still on the route (not yet delivered) are re-planned
+ * - The changed stop is removed and the new address is spliced in by cheapest
+ *   insertion: the position minimising d(prev, new) + d(new, next) - d(prev, next),
+ *   with the truck's position as the start of the route
+ * - The caller re-issues one UGoDeliver with the full remaining route for that truck only
+ * - Latency from the address change request to the re-issued command is recorded
+ *
+ * Routes are rebuilt from the database when a truck is not known in memory (e.g. after a restart).
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import com.miniups.model.entity.Shipment;
+import com.miniups.model.entity.Truck;
+import com.miniups.model.enums.ShipmentStatus;
+import com.miniups.repository.ShipmentRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class DeliveryRouteService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryRouteService.class);
+
+    private final ShipmentRepository shipmentRepository;
+
+    // Truck ID -> remaining stops in delivery order
+    private final Map<Integer, List<Stop>> routes = new ConcurrentHashMap<>();
+
+    private final AtomicLong reroutes = new AtomicLong();
+    private final AtomicLong rerouteLatencyTotalNanos = new AtomicLong();
+    private final AtomicLong skippedDelivered = new AtomicLong();
+    private final Timer rerouteLatencyTimer;
+    private final Counter rerouteCounter;
+
+    public DeliveryRouteService(ShipmentRepository shipmentRepository,
+                                @Autowired(required = false) MeterRegistry meterRegistry) {
+        this.shipmentRepository = shipmentRepository;
+
+        if (meterRegistry != null) {
+            this.rerouteLatencyTimer = Timer.builder("ups.dispatch.reroute_latency")
+                .description("Time from an address change request to the re-issued UGoDeliver")
+                .register(meterRegistry);
+            this.rerouteCounter = Counter.builder("ups.dispatch.reroutes")
+                .description("Delivery routes re-planned after an address change")
+                .register(meterRegistry);
+            meterRegistry.gauge("ups.dispatch.routes_active", routes, Map::size);
+        } else {
+            this.rerouteLatencyTimer = null;
+            this.rerouteCounter = null;
+        }
+    }
+
+    /**
+     * Order a delivery run nearest-neighbour from the truck's position and remember it
+     *
+     * @param truck Truck starting the run
+     * @param shipments Shipments loaded on the truck
+     * @return Package ID -> destination, in delivery order
+     */
+    public Map<Long, int[]> planRoute(Truck truck, List<Shipment> shipments) {
+        List<Stop> stops = new ArrayList<>(shipments.size());
+        for (Shipment shipment : shipments) {
+            stops.add(Stop.of(shipment));
+        }
+        List<Stop> ordered = nearestNeighbourOrder(positionOf(truck), stops);
+        routes.put(truck.getTruckId(), ordered);
+        return toDeliveries(ordered);
+    }
+
+    /**
+     * Re-plan a truck's route after one of its packages changed address.
+     *
+     * @param truck Truck carrying the package
+     * @param shipment Shipment whose destination changed
+     * @param newX New destination X
+     * @param newY New destination Y
+     * @return Full remaining route in delivery order, empty if the package is no longer on it
+     */
+    public Map<Long, int[]> reroute(Truck truck, Shipment shipment, int newX, int newY) {
+        long packageId = Long.parseLong(shipment.getShipmentId());
+        List<Stop> route = routes.computeIfAbsent(truck.getTruckId(), id -> rebuildRoute(truck));
+
+        synchronized (route) {
+            Stop changed = null;
+            for (Stop stop : route) {
+                if (stop.packageId == packageId) {
+                    changed = stop;
+                    break;
+                }
+            }
+            if (changed == null) {
+                skippedDelivered.incrementAndGet();
+                logger.info("Package {} is no longer on truck {}'s route, nothing to re-route",
+                           packageId, truck.getTruckId());
+                return Collections.emptyMap();
+            }
+
+            route.remove(changed);
+            Stop moved = new Stop(packageId, newX, newY);
+            route.add(cheapestInsertion(positionOf(truck), route, moved), moved);
+            return toDeliveries(route);
+        }
+    }
+
+    /**
+     * Record the latency of one re-route, from request receipt to the re-issued command
+     */
+    public void recordRerouteLatency(long requestStartNanos) {
+        long elapsed = System.nanoTime() - requestStartNanos;
+        reroutes.incrementAndGet();
+        rerouteLatencyTotalNanos.addAndGet(elapsed);
+        if (rerouteLatencyTimer != null) {
+            rerouteLatencyTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            rerouteCounter.increment();
+        }
+    }
+
+    /**
+     * Drop a delivered package from its truck's route
+     */
+    public void onDelivered(Integer truckId, long packageId) {
+        if (truckId == null) {
+            return;
+        }
+        List<Stop> route = routes.get(truckId);
+        if (route == null) {
+            return;
+        }
+        synchronized (route) {
+            route.removeIf(stop -> stop.packageId == packageId);
+            if (route.isEmpty()) {
+                routes.remove(truckId, route);
+            }
+        }
+    }
+
+    /**
+     * @return Remaining route of a truck in delivery order, empty if none is known
+     */
+    public Map<Long, int[]> getRoute(Integer truckId) {
+        List<Stop> route = routes.get(truckId);
+        if (route == null) {
+            return Collections.emptyMap();
+        }
+        synchronized (route) {
+            return toDeliveries(route);
+        }
+    }
+
+    /**
+     * Get re-routing statistics
+     */
+    public Map<String, Object> getStatistics() {
+        long count = reroutes.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("active_routes", routes.size());
+        stats.put("reroutes", count);
+        stats.put("skipped_delivered", skippedDelivered.get());
+        stats.put("avg_reroute_latency_ms", count > 0 ? rerouteLatencyTotalNanos.get() / 1e6 / count : 0.0);
+        return stats;
+    }
+
+    // Private helper methods
+
+    private List<Stop> rebuildRoute(Truck truck) {
+        List<Stop> stops = new ArrayList<>();
+        for (Shipment onTruck : shipmentRepository.findByTruck(truck)) {
+            if (onTruck.getStatus() == ShipmentStatus.IN_TRANSIT || onTruck.getStatus() == ShipmentStatus.OUT_FOR_DELIVERY) {
+                stops.add(Stop.of(onTruck));
+            }
+        }
+        return nearestNeighbourOrder(positionOf(truck), stops);
+    }
+
+    /**
+     * @return Index in the route at which inserting the stop adds the least distance
+     */
+    static int cheapestInsertion(int[] start, List<Stop> route, Stop stop) {
+        int bestIndex = route.size();
+        long bestCost = Long.MAX_VALUE;
+        int prevX = start[0];
+        int prevY = start[1];
+        for (int i = 0; i <= route.size(); i++) {
+            long cost = distance(prevX, prevY, stop.x, stop.y);
+            if (i < route.size()) {
+                Stop next = route.get(i);
+                cost += distance(stop.x, stop.y, next.x, next.y) - distance(prevX, prevY, next.x, next.y);
+                prevX = next.x;
+                prevY = next.y;
+            }
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestIndex = i;
+            }
+        }
+        return bestIndex;
+    }
+
+    private static List<Stop> nearestNeighbourOrder(int[] start, List<Stop> stops) {
+        List<Stop> remaining = new ArrayList<>(stops);
+        List<Stop> ordered = new ArrayList<>(stops.size());
+        int x = start[0];
+        int y = start[1];
+        while (!remaining.isEmpty()) {
+            Stop nearest = remaining.get(0);
+            for (Stop candidate : remaining) {
+                if (distance(x, y, candidate.x, candidate.y) < distance(x, y, nearest.x, nearest.y)) {
+                    nearest = candidate;
+                }
+            }
+            remaining.remove(nearest);
+            ordered.add(nearest);
+            x = nearest.x;
+            y = nearest.y;
+        }
+        return ordered;
+    }
+
+    private static Map<Long, int[]> toDeliveries(List<Stop> route) {
+        Map<Long, int[]> deliveries = new LinkedHashMap<>();
+        for (Stop stop : route) {
+            deliveries.put(stop.packageId, new int[]{stop.x, stop.y});
+        }
+        return deliveries;
+    }
+
+    private static int[] positionOf(Truck truck) {
+        return new int[]{
+            truck.getCurrentX() != null ? truck.getCurrentX() : 0,
+            truck.getCurrentY() != null ? truck.getCurrentY() : 0
+        };
+    }
+
+    private static long distance(int x1, int y1, int x2, int y2) {
+        return Math.abs((long) x1 - x2) + Math.abs((long) y1 - y2);
+    }
+
+    /**
+     * One delivery stop; package ID is the shipment ID, as sent to the World Simulator
+     */
+    static class Stop {
+        final long packageId;
+        final int x;
+        final int y;
+
+        Stop(long packageId, int x, int y) {
+            this.packageId = packageId;
+            this.x = x;
+            this.y = y;
+        }
+
+        static Stop of(Shipment shipment) {
+            return new Stop(Long.parseLong(shipment.getShipmentId()),
+                shipment.getDestX() != null ? shipment.getDestX() : 0,
+                shipment.getDestY() != null ? shipment.getDestY() : 0);
+        }
+    }
+}
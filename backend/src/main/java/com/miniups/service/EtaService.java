@@ -0,0 +1,419 @@
+/**
+ * ETA Estimation Service
+ *
+ * Functionality:
+ * - Estimates delivery time for active shipments from in-memory state only
+ * - Refreshes estimates as trucks report their position
+ * - Learns actual travel time per grid unit from completed deliveries
+ *
+ * Estimation Model:
+ * - Remaining distance is Manhattan grid distance truck -> warehouse -> destination,
+ *   or truck -> destination once the package is on board
+ * - Travel time per unit scales inversely with the World Simulator simspeed, so the
+ *   learned rate is stored speed-normalised (millis per unit x simspeed)
+ * - A sample is normalised with the simspeed in effect while the package travelled,
+ *   from the recorded speed changes; deliveries from before startup use the configured
+ *   default speed
+ * - Each delivery with pickupTime and actualDelivery contributes one sample to an
+ *   exponentially weighted mean; the configured prior is used until samples arrive
+ *
+ * Warehouse Locations:
+ * - Taken from the rebalancer once a truck has arrived there, otherwise the shipment origin
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import com.miniups.model.entity.Shipment;
+import com.miniups.model.entity.Truck;
+import com.miniups.model.enums.ShipmentStatus;
+import com.miniups.repository.ShipmentRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class EtaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EtaService.class);
+
+    private final ShipmentRepository shipmentRepository;
+
+    @Lazy
+    @Autowired(required = false)
+    private TruckRebalancingService rebalancingService;
+
+    @Value("${app.eta.prior-millis-per-unit:100}")
+    private double priorMillisPerUnit = 100;
+
+    @Value("${app.eta.learning-rate:0.1}")
+    private double learningRate = 0.1;
+
+    @Value("${app.eta.warmup-size:500}")
+    private int warmupSize = 500;
+
+    private static final int MAX_SPEED_CHANGES = 256;
+
+    private volatile int simSpeed;
+    private final int referenceSimSpeed;
+    // Sim speed changes, oldest first, as {epoch millis, speed}; baseSimSpeed applies before the first
+    private final List<long[]> speedChanges = new CopyOnWriteArrayList<>();
+    private volatile int baseSimSpeed;
+
+    // Speed-normalised travel cost, updated with CAS so learning never blocks estimation
+    private final AtomicLong costBits = new AtomicLong(Double.doubleToLongBits(-1.0));
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong deliveries = new AtomicLong();
+    private final AtomicLong deliveryMillisTotal = new AtomicLong();
+
+    private final Map<Integer, int[]> truckPositions = new ConcurrentHashMap<>();
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<String>> routesByTruck = new ConcurrentHashMap<>();
+
+    public EtaService(ShipmentRepository shipmentRepository,
+                      @Value("${world.simulator.default-sim-speed:1000}") int defaultSimSpeed) {
+        this.shipmentRepository = shipmentRepository;
+        this.referenceSimSpeed = Math.max(1, defaultSimSpeed);
+        this.simSpeed = this.referenceSimSpeed;
+        this.baseSimSpeed = this.referenceSimSpeed;
+    }
+
+    /**
+     * Warm the travel model from recent deliveries so estimates are realistic right after startup
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            List<Shipment> delivered = shipmentRepository.findByStatusAndActualDeliveryIsNotNullOrderByActualDeliveryDesc(
+                ShipmentStatus.DELIVERED, PageRequest.of(0, Math.max(1, warmupSize)));
+            // Oldest first so the weighted mean ends on the most recent behaviour
+            for (int i = delivered.size() - 1; i >= 0; i--) {
+                learn(delivered.get(i));
+            }
+            logger.info("ETA model warmed up from {} deliveries ({} travel samples, {} ms/unit at simspeed {})",
+                       delivered.size(), samples.get(), Math.round(getMillisPerUnit()), simSpeed);
+        } catch (Exception e) {
+            logger.warn("Could not warm up ETA model: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Estimate the delivery time of a shipment and keep it refreshed while the shipment is active
+     *
+     * @param shipment Shipment, with its truck if one is assigned
+     * @return Estimated delivery time, the actual delivery time once delivered
+     */
+    public LocalDateTime estimate(Shipment shipment) {
+        if (shipment == null) {
+            return null;
+        }
+        if (shipment.getStatus() == ShipmentStatus.DELIVERED && shipment.getActualDelivery() != null) {
+            return shipment.getActualDelivery();
+        }
+        if (shipment.getShipmentId() == null) {
+            return shipment.getEstimatedDelivery();
+        }
+        if (!isActive(shipment)) {
+            untrack(shipment.getShipmentId());
+            return shipment.getEstimatedDelivery();
+        }
+
+        Route route = track(shipment);
+        return toDateTime(route.etaMillis);
+    }
+
+    /**
+     * Current estimate for a tracked shipment
+     *
+     * @return Estimated delivery time, null if the shipment is not tracked
+     */
+    public LocalDateTime getEstimatedDelivery(String shipmentId) {
+        Route route = shipmentId != null ? routes.get(shipmentId) : null;
+        return route != null ? toDateTime(route.etaMillis) : null;
+    }
+
+    /**
+     * Update a truck position and refresh the ETAs of the shipments it carries
+     */
+    public void onTruckProgress(Integer truckId, int x, int y) {
+        if (truckId == null) {
+            return;
+        }
+        truckPositions.put(truckId, new int[]{x, y});
+        Set<String> onTruck = routesByTruck.get(truckId);
+        if (onTruck == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (String shipmentId : onTruck) {
+            Route route = routes.get(shipmentId);
+            if (route != null) {
+                route.etaMillis = now + remainingMillis(route);
+            }
+        }
+    }
+
+    /**
+     * Mark a shipment as loaded; its remaining route no longer includes the warehouse leg
+     */
+    public void onPickedUp(Shipment shipment) {
+        if (shipment == null || shipment.getShipmentId() == null) {
+            return;
+        }
+        Route route = track(shipment);
+        route.pickedUp = true;
+        route.etaMillis = System.currentTimeMillis() + remainingMillis(route);
+    }
+
+    /**
+     * Learn from a completed delivery and stop tracking the shipment
+     */
+    public void onDelivered(Shipment shipment) {
+        if (shipment == null) {
+            return;
+        }
+        learn(shipment);
+        untrack(shipment.getShipmentId());
+    }
+
+    /**
+     * Stop tracking a shipment that will not be delivered (cancelled, returned)
+     */
+    public void onClosed(Shipment shipment) {
+        if (shipment != null) {
+            untrack(shipment.getShipmentId());
+        }
+    }
+
+    /**
+     * Track the World Simulator speed; travel time scales inversely with it
+     */
+    public synchronized void setSimSpeed(int speed) {
+        if (speed <= 0 || speed == simSpeed) {
+            return;
+        }
+        speedChanges.add(new long[]{System.currentTimeMillis(), speed});
+        if (speedChanges.size() > MAX_SPEED_CHANGES) {
+            baseSimSpeed = (int) speedChanges.remove(0)[1];
+        }
+        simSpeed = speed;
+    }
+
+    /**
+     * @return Learned travel time per grid unit at the current simspeed
+     */
+    public double getMillisPerUnit() {
+        return currentCost() / simSpeed;
+    }
+
+    /**
+     * @return Mean time from shipment creation to delivery, 0 if nothing was delivered yet
+     */
+    public long getAverageDeliveryMillis() {
+        long count = deliveries.get();
+        return count > 0 ? deliveryMillisTotal.get() / count : 0L;
+    }
+
+    /**
+     * Get ETA model statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sim_speed", simSpeed);
+        stats.put("millis_per_unit", Math.round(getMillisPerUnit() * 100.0) / 100.0);
+        stats.put("travel_samples", samples.get());
+        stats.put("deliveries", deliveries.get());
+        stats.put("average_delivery_ms", getAverageDeliveryMillis());
+        stats.put("tracked_shipments", routes.size());
+        return stats;
+    }
+
+    // Private helper methods
+
+    private Route track(Shipment shipment) {
+        Integer truckId = shipment.getTruck() != null ? shipment.getTruck().getTruckId() : null;
+        Route route = routes.compute(shipment.getShipmentId(), (id, existing) -> {
+            Route updated = existing != null ? existing : new Route(id);
+            if (updated.truckId != null && !updated.truckId.equals(truckId)) {
+                // Reassigned to another truck
+                Set<String> previous = routesByTruck.get(updated.truckId);
+                if (previous != null) {
+                    previous.remove(id);
+                }
+            }
+            updated.warehouse = warehouseLocationOf(shipment);
+            updated.destX = valueOf(shipment.getDestX());
+            updated.destY = valueOf(shipment.getDestY());
+            updated.pickedUp = updated.pickedUp || isOnBoard(shipment.getStatus());
+            updated.truckId = truckId;
+            return updated;
+        });
+
+        if (truckId != null) {
+            routesByTruck.computeIfAbsent(truckId, id -> ConcurrentHashMap.newKeySet()).add(route.shipmentId);
+            Truck truck = shipment.getTruck();
+            if (!truckPositions.containsKey(truckId) && truck.getCurrentX() != null && truck.getCurrentY() != null) {
+                truckPositions.put(truckId, new int[]{truck.getCurrentX(), truck.getCurrentY()});
+            }
+        }
+        route.etaMillis = System.currentTimeMillis() + remainingMillis(route);
+        return route;
+    }
+
+    private void untrack(String shipmentId) {
+        Route route = shipmentId != null ? routes.remove(shipmentId) : null;
+        if (route != null && route.truckId != null) {
+            Set<String> onTruck = routesByTruck.get(route.truckId);
+            if (onTruck != null) {
+                onTruck.remove(route.shipmentId);
+            }
+        }
+    }
+
+    private long remainingMillis(Route route) {
+        int[] truck = route.truckId != null ? truckPositions.get(route.truckId) : null;
+        int[] warehouse = route.warehouse;
+
+        long distance;
+        if (route.pickedUp) {
+            int[] from = truck != null ? truck : warehouse;
+            distance = distance(from, route.destX, route.destY);
+        } else {
+            distance = distance(warehouse, route.destX, route.destY);
+            if (truck != null) {
+                distance += distance(truck, warehouse[0], warehouse[1]);
+            }
+        }
+        return Math.round(distance * getMillisPerUnit());
+    }
+
+    private void learn(Shipment shipment) {
+        if (shipment.getActualDelivery() == null) {
+            return;
+        }
+        if (shipment.getCreatedAt() != null) {
+            long total = Duration.between(shipment.getCreatedAt(), shipment.getActualDelivery()).toMillis();
+            if (total >= 0) {
+                deliveries.incrementAndGet();
+                deliveryMillisTotal.addAndGet(total);
+            }
+        }
+        if (shipment.getPickupTime() == null) {
+            return;
+        }
+
+        long pickupMillis = toEpochMillis(shipment.getPickupTime());
+        long deliveryMillis = toEpochMillis(shipment.getActualDelivery());
+        int[] warehouse = warehouseLocationOf(shipment);
+        long distance = distance(warehouse, valueOf(shipment.getDestX()), valueOf(shipment.getDestY()));
+        if (deliveryMillis <= pickupMillis || distance <= 0) {
+            return;
+        }
+
+        double sample = speedWeightedMillis(pickupMillis, deliveryMillis) / distance;
+        long n = samples.incrementAndGet();
+        // Plain mean for the first samples, then a fixed weight so the model keeps adapting
+        double weight = Math.max(learningRate, 1.0 / n);
+        long bits;
+        double updated;
+        do {
+            bits = costBits.get();
+            double cost = Double.longBitsToDouble(bits);
+            updated = cost < 0 ? sample : cost + weight * (sample - cost);
+        } while (!costBits.compareAndSet(bits, Double.doubleToLongBits(updated)));
+    }
+
+    /**
+     * Wall-clock millis between two instants, each weighted by the simspeed in effect then
+     */
+    private double speedWeightedMillis(long fromMillis, long toMillis) {
+        double total = 0;
+        long segmentStart = fromMillis;
+        long speed = baseSimSpeed;
+        for (long[] change : speedChanges) {
+            if (change[0] >= toMillis) {
+                break;
+            }
+            if (change[0] > segmentStart) {
+                total += (double) (change[0] - segmentStart) * speed;
+                segmentStart = change[0];
+            }
+            speed = change[1];
+        }
+        return total + (double) (toMillis - segmentStart) * speed;
+    }
+
+    private double currentCost() {
+        double cost = Double.longBitsToDouble(costBits.get());
+        return cost >= 0 ? cost : priorMillisPerUnit * referenceSimSpeed;
+    }
+
+    private int[] warehouseLocationOf(Shipment shipment) {
+        if (rebalancingService != null) {
+            int[] location = rebalancingService.getWarehouseLocation(shipment.getWarehouseId());
+            if (location != null) {
+                return location;
+            }
+        }
+        return new int[]{valueOf(shipment.getOriginX()), valueOf(shipment.getOriginY())};
+    }
+
+    private boolean isActive(Shipment shipment) {
+        ShipmentStatus status = shipment.getStatus();
+        return status != null && status != ShipmentStatus.DELIVERED
+            && status != ShipmentStatus.CANCELLED && status != ShipmentStatus.RETURNED;
+    }
+
+    private boolean isOnBoard(ShipmentStatus status) {
+        return status == ShipmentStatus.PICKED_UP || status == ShipmentStatus.IN_TRANSIT
+            || status == ShipmentStatus.OUT_FOR_DELIVERY || status == ShipmentStatus.DELIVERY_ATTEMPTED;
+    }
+
+    private long distance(int[] from, int toX, int toY) {
+        return Math.abs((long) from[0] - toX) + Math.abs((long) from[1] - toY);
+    }
+
+    private int valueOf(Integer value) {
+        return value != null ? value : 0;
+    }
+
+    private long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private LocalDateTime toDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(epochMillis), java.time.ZoneId.systemDefault());
+    }
+
+    /**
+     * Remaining route of one active shipment
+     */
+    private static class Route {
+        private final String shipmentId;
+        private volatile Integer truckId;
+        private volatile int[] warehouse;
+        private volatile int destX;
+        private volatile int destY;
+        private volatile boolean pickedUp;
+        private volatile long etaMillis;
+
+        Route(String shipmentId) {
+            this.shipmentId = shipmentId;
+        }
+    }
+}
@@ -1,17 +1,25 @@
 package com.miniups.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniups.config.EventContentTypes;
 import com.miniups.config.RabbitMQConfig;
+import com.miniups.model.entity.OutboxEvent;
 import com.miniups.model.event.AuditLogPayload;
 import com.miniups.model.event.BusinessEvent;
 import com.miniups.model.event.NotificationPayload;
 import com.miniups.model.event.ShipmentCreationPayload;
+import com.miniups.repository.OutboxEventRepository;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * Event Publisher Service
@@ -26,6 +34,12 @@ import org.springframework.stereotype.Service;
  * - Correlation ID support for request tracing
  * - Error handling and logging
  * - Consistent event metadata
+ * - Transactional outbox: inside a read-write transaction, events are staged in
+ *   outbox_events and published by OutboxRelay only once the transaction commits
+ * - Outside a transaction, events are batched with asynchronous confirms by
+ *   BatchingEventPublisher
+ * - Events on the routing keys of EventContentTypes are sent as binary protobuf
+ *   rather than JSON; outbox rows stay JSON
  * 
  * @author Mini-UPS Development Team
  * @version 1.0
@@ -54,6 +68,24 @@ public class EventPublisherService {
     @Value("${spring.application.name:mini-ups-backend}")
     private String sourceService;
 
+    @Value("${app.outbox.enabled:true}")
+    private boolean outboxEnabled = true;
+
+    @Autowired(required = false)
+    private OutboxEventRepository outboxRepository;
+
+    @Autowired(required = false)
+    private OutboxRelay outboxRelay;
+
+    @Autowired(required = false)
+    private ObjectMapper objectMapper;
+
+    @Autowired(required = false)
+    private BatchingEventPublisher batchingPublisher;
+
+    @Autowired(required = false)
+    private EventContentTypes eventContentTypes;
+
     /**
      * Publish a shipment creation event
      * 
@@ -75,11 +107,7 @@ public class EventPublisherService {
                     correlationId
             );
 
-            rabbitTemplate.convertAndSend(
-                    RabbitMQConfig.TOPIC_EXCHANGE_NAME,
-                    RabbitMQConfig.SHIPMENT_CREATE_ROUTING_KEY,
-                    event
-            );
+            send(RabbitMQConfig.SHIPMENT_CREATE_ROUTING_KEY, event);
 
             log.info("Published shipment creation event: {} (correlationId: {})", 
                     event.getEventId(), correlationId);
@@ -111,11 +139,7 @@ public class EventPublisherService {
                     correlationId
             );
 
-            rabbitTemplate.convertAndSend(
-                    RabbitMQConfig.TOPIC_EXCHANGE_NAME,
-                    RabbitMQConfig.AUDIT_LOG_ROUTING_KEY,
-                    event
-            );
+            send(RabbitMQConfig.AUDIT_LOG_ROUTING_KEY, event);
 
             log.debug("Published audit log event: {} for operation: {}", 
                     event.getEventId(), payload.getOperationType());
@@ -151,11 +175,7 @@ public class EventPublisherService {
                     correlationId
             );
 
-            rabbitTemplate.convertAndSend(
-                    RabbitMQConfig.TOPIC_EXCHANGE_NAME,
-                    routingKey,
-                    event
-            );
+            send(routingKey, event);
 
             log.info("Published notification event: {} for user: {} (types: {})", 
                     event.getEventId(), payload.getRecipientUserId(), payload.getNotificationTypes());
@@ -198,11 +218,7 @@ public class EventPublisherService {
                     correlationId
             );
 
-            rabbitTemplate.convertAndSend(
-                    RabbitMQConfig.TOPIC_EXCHANGE_NAME,
-                    RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY,
-                    event
-            );
+            send(RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY, event);
 
             log.info("Published shipment status update event: {} for shipment: {} ({} -> {})", 
                     event.getEventId(), shipmentId, oldStatus, newStatus);
@@ -235,11 +251,7 @@ public class EventPublisherService {
                     correlationId
             );
 
-            rabbitTemplate.convertAndSend(
-                    RabbitMQConfig.TOPIC_EXCHANGE_NAME,
-                    RabbitMQConfig.USER_REGISTERED_ROUTING_KEY,
-                    event
-            );
+            send(RabbitMQConfig.USER_REGISTERED_ROUTING_KEY, event);
 
             log.info("Published user registration event: {} for user: {}", 
                     event.getEventId(), userId);
@@ -272,11 +284,7 @@ public class EventPublisherService {
                     correlationId
             );
 
-            rabbitTemplate.convertAndSend(
-                    RabbitMQConfig.TOPIC_EXCHANGE_NAME,
-                    RabbitMQConfig.TRUCK_DISPATCH_ROUTING_KEY,
-                    event
-            );
+            send(RabbitMQConfig.TRUCK_DISPATCH_ROUTING_KEY, event);
 
             log.info("Published truck dispatch event: {} for truck: {} with {} shipments", 
                     event.getEventId(), truckId, shipmentIds.size());
@@ -287,6 +295,54 @@ public class EventPublisherService {
         }
     }
 
+    /**
+     * Send an event to the topic exchange. Inside a read-write transaction the event is
+     * staged in the outbox instead, so it is published if and only if the transaction
+     * commits, and the relay is woken once it has. Outside one, it is handed to the
+     * batching publisher, or sent directly when that is off or full.
+     */
+    private void send(String routingKey, BusinessEvent<?> event) {
+        if (!isOutboxActive()) {
+            if (batchingPublisher == null || !batchingPublisher.publish(
+                    RabbitMQConfig.TOPIC_EXCHANGE_NAME, routingKey, event, event.getEventId())) {
+                sendDirect(routingKey, event);
+            }
+            return;
+        }
+        try {
+            outboxRepository.save(new OutboxEvent(event.getEventId(), RabbitMQConfig.TOPIC_EXCHANGE_NAME,
+                    routingKey, objectMapper.writeValueAsString(event)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize event " + event.getEventId(), e);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                outboxRelay.wakeUp();
+            }
+        });
+    }
+
+    private void sendDirect(String routingKey, BusinessEvent<?> event) {
+        String contentType = eventContentTypes != null
+                ? eventContentTypes.contentTypeFor(routingKey, event) : MessageProperties.CONTENT_TYPE_JSON;
+        if (MessageProperties.CONTENT_TYPE_JSON.equals(contentType)) {
+            rabbitTemplate.convertAndSend(RabbitMQConfig.TOPIC_EXCHANGE_NAME, routingKey, event);
+            return;
+        }
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(contentType);
+        rabbitTemplate.send(RabbitMQConfig.TOPIC_EXCHANGE_NAME, routingKey,
+                rabbitTemplate.getMessageConverter().toMessage(event, properties));
+    }
+
+    private boolean isOutboxActive() {
+        return outboxEnabled && outboxRepository != null && outboxRelay != null && objectMapper != null
+                && outboxRelay.isEnabled()
+                && TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
     /**
      * Generate appropriate routing key for notification events
      * Based on notification type and priority
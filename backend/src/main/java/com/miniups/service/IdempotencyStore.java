@@ -0,0 +1,390 @@
+/**
+ * Idempotency Store
+ *
+ * Functionality:
+ * - Remembers the response to each idempotency key for a configurable TTL
+ * - Lets exactly one request per key do the work; duplicates get the stored response
+ *
+ * Layers:
+ * - Near cache: in-process map of key -> future response. Concurrent duplicates on the
+ *   same instance wait on the owner's future without touching Redis.
+ * - Redis: SET NX of a pending marker claims the key across instances; the response
+ *   snapshot replaces the marker when the owner completes. Duplicates on other
+ *   instances poll for the snapshot until the wait timeout.
+ *
+ * Only successful responses are stored. A failed or abandoned request releases its
+ * key so the client's retry does the work again.
+ *
+ * When Redis is unreachable the store degrades to the near cache alone and retries
+ * Redis after a back-off.
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class IdempotencyStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    private static final String KEY_PREFIX = "idempotency:";
+    private static final String PENDING = "PENDING";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    // Key -> entry; the entry's future completes with the snapshot, or null when the owner gave up
+    private final ConcurrentHashMap<String, Entry> nearCache = new ConcurrentHashMap<>();
+
+    @Value("${app.idempotency.ttl-seconds:86400}")
+    private long ttlSeconds = 86400;
+
+    @Value("${app.idempotency.in-flight-ttl-seconds:60}")
+    private long inFlightTtlSeconds = 60;
+
+    @Value("${app.idempotency.wait-timeout-ms:5000}")
+    private long waitTimeoutMs = 5000;
+
+    @Value("${app.idempotency.near-cache-max-entries:10000}")
+    private int nearCacheMaxEntries = 10000;
+
+    @Value("${app.idempotency.redis-retry-interval-ms:30000}")
+    private long redisRetryIntervalMs = 30000;
+
+    private volatile long redisDownUntil;
+
+    private final AtomicLong claims = new AtomicLong();
+    private final AtomicLong nearHits = new AtomicLong();
+    private final AtomicLong redisHits = new AtomicLong();
+    private final AtomicLong inProgress = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final Counter replayCounter;
+    private final Counter conflictCounter;
+
+    public IdempotencyStore(@Autowired(required = false) StringRedisTemplate redisTemplate,
+                            ObjectMapper objectMapper,
+                            @Autowired(required = false) MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+
+        if (meterRegistry != null) {
+            this.replayCounter = Counter.builder("ups.idempotency.replays")
+                .description("Duplicate requests answered with a stored response")
+                .register(meterRegistry);
+            this.conflictCounter = Counter.builder("ups.idempotency.conflicts")
+                .description("Duplicate requests rejected because the original was still running")
+                .register(meterRegistry);
+            meterRegistry.gauge("ups.idempotency.near_cache_size", nearCache, Map::size);
+        } else {
+            this.replayCounter = null;
+            this.conflictCounter = null;
+        }
+    }
+
+    /**
+     * Claim a key, or get the response already stored for it
+     *
+     * Blocks up to the wait timeout while another request holds the key.
+     *
+     * @param key Idempotency key
+     * @return OWNER if the caller must do the work and then complete or release the key;
+     *         REPLAY with the stored response; or IN_PROGRESS if the holder did not finish in time
+     */
+    public Claim begin(String key) {
+        long deadline = System.currentTimeMillis() + waitTimeoutMs;
+
+        while (true) {
+            Entry mine = new Entry();
+            Entry existing = nearCache.putIfAbsent(key, mine);
+
+            if (existing == null) {
+                Claim claim = claimRemote(key, mine, deadline);
+                if (claim != null) {
+                    return claim;
+                }
+                // The remote holder gave up; try again
+                continue;
+            }
+
+            if (existing.isExpired()) {
+                nearCache.remove(key, existing);
+                continue;
+            }
+
+            Snapshot snapshot;
+            try {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                snapshot = existing.result.get(remaining, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                return conflict(key);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return conflict(key);
+            } catch (ExecutionException e) {
+                snapshot = null;
+            }
+
+            if (snapshot != null) {
+                nearHits.incrementAndGet();
+                return replay(snapshot);
+            }
+            // Owner released the key without a response; compete for it again
+            nearCache.remove(key, existing);
+        }
+    }
+
+    /**
+     * Store the response for a key claimed with {@link #begin}
+     */
+    public void complete(String key, Snapshot snapshot) {
+        Entry entry = nearCache.get(key);
+        if (entry != null) {
+            entry.expiresAtMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds);
+            entry.result.complete(snapshot);
+        }
+        if (isRedisAvailable()) {
+            try {
+                redisTemplate.opsForValue().set(KEY_PREFIX + key, objectMapper.writeValueAsString(snapshot.toMap()),
+                    ttlSeconds, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                markRedisDown(e);
+            }
+        }
+    }
+
+    /**
+     * Give up a key claimed with {@link #begin} without storing a response, so a retry does the work
+     */
+    public void release(String key) {
+        released.incrementAndGet();
+        Entry entry = nearCache.remove(key);
+        if (entry != null) {
+            entry.result.complete(null);
+        }
+        if (isRedisAvailable()) {
+            try {
+                redisTemplate.delete(KEY_PREFIX + key);
+            } catch (Exception e) {
+                markRedisDown(e);
+            }
+        }
+    }
+
+    /**
+     * Drop expired snapshots from the near cache, and the oldest ones beyond the size limit
+     */
+    @Scheduled(fixedDelayString = "${app.idempotency.cleanup-interval-ms:60000}")
+    public void evictExpired() {
+        nearCache.entrySet().removeIf(e -> e.getValue().isExpired());
+        int excess = nearCache.size() - nearCacheMaxEntries;
+        if (excess > 0) {
+            // Completed entries are still in Redis, so dropping them locally only costs a round trip
+            nearCache.entrySet().stream()
+                .filter(e -> e.getValue().result.isDone())
+                .sorted((a, b) -> Long.compare(a.getValue().expiresAtMillis, b.getValue().expiresAtMillis))
+                .limit(excess)
+                .forEach(e -> nearCache.remove(e.getKey(), e.getValue()));
+        }
+    }
+
+    /**
+     * Get idempotency statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("near_cache_size", nearCache.size());
+        stats.put("claims", claims.get());
+        stats.put("near_cache_replays", nearHits.get());
+        stats.put("redis_replays", redisHits.get());
+        stats.put("in_progress_conflicts", inProgress.get());
+        stats.put("released", released.get());
+        stats.put("redis_available", isRedisAvailable());
+        return stats;
+    }
+
+    // Private helper methods
+
+    /**
+     * Claim the key in Redis for an entry this instance just claimed locally
+     *
+     * @return Claim for the caller, or null if the key was freed while waiting and must be claimed again
+     */
+    private Claim claimRemote(String key, Entry mine, long deadline) {
+        if (!isRedisAvailable()) {
+            claims.incrementAndGet();
+            return Claim.owner();
+        }
+
+        String redisKey = KEY_PREFIX + key;
+        try {
+            Boolean acquired = redisTemplate.opsForValue()
+                .setIfAbsent(redisKey, PENDING, inFlightTtlSeconds, TimeUnit.SECONDS);
+            if (Boolean.TRUE.equals(acquired)) {
+                claims.incrementAndGet();
+                return Claim.owner();
+            }
+
+            // Another instance holds the key; wait for its snapshot
+            while (true) {
+                String stored = redisTemplate.opsForValue().get(redisKey);
+                if (stored == null) {
+                    nearCache.remove(key, mine);
+                    mine.result.complete(null);
+                    return null;
+                }
+                if (!PENDING.equals(stored)) {
+                    Snapshot snapshot = Snapshot.fromMap(objectMapper.readValue(stored, Map.class));
+                    mine.expiresAtMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds);
+                    mine.result.complete(snapshot);
+                    redisHits.incrementAndGet();
+                    return replay(snapshot);
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    nearCache.remove(key, mine);
+                    mine.result.complete(null);
+                    return conflict(key);
+                }
+                Thread.sleep(50);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            nearCache.remove(key, mine);
+            mine.result.complete(null);
+            return conflict(key);
+        } catch (Exception e) {
+            // Fall back to the near cache alone, which already holds the key for this instance
+            markRedisDown(e);
+            claims.incrementAndGet();
+            return Claim.owner();
+        }
+    }
+
+    private Claim replay(Snapshot snapshot) {
+        if (replayCounter != null) {
+            replayCounter.increment();
+        }
+        return Claim.replay(snapshot);
+    }
+
+    private Claim conflict(String key) {
+        inProgress.incrementAndGet();
+        if (conflictCounter != null) {
+            conflictCounter.increment();
+        }
+        logger.info("Request with idempotency key {} is still in progress", key);
+        return Claim.inProgress();
+    }
+
+    private boolean isRedisAvailable() {
+        return redisTemplate != null && System.currentTimeMillis() >= redisDownUntil;
+    }
+
+    private void markRedisDown(Exception e) {
+        redisDownUntil = System.currentTimeMillis() + redisRetryIntervalMs;
+        logger.warn("Redis unavailable for idempotency keys, using near cache only for {} ms: {}",
+                   redisRetryIntervalMs, e.getMessage());
+    }
+
+    private static class Entry {
+        final CompletableFuture<Snapshot> result = new CompletableFuture<>();
+        volatile long expiresAtMillis = Long.MAX_VALUE;
+
+        boolean isExpired() {
+            // Inclusive, so a zero TTL expires within the same millisecond
+            return System.currentTimeMillis() >= expiresAtMillis;
+        }
+    }
+
+    /**
+     * Outcome of {@link #begin}
+     */
+    public static class Claim {
+        public enum Type { OWNER, REPLAY, IN_PROGRESS }
+
+        private final Type type;
+        private final Snapshot snapshot;
+
+        private Claim(Type type, Snapshot snapshot) {
+            this.type = type;
+            this.snapshot = snapshot;
+        }
+
+        static Claim owner() {
+            return new Claim(Type.OWNER, null);
+        }
+
+        static Claim replay(Snapshot snapshot) {
+            return new Claim(Type.REPLAY, snapshot);
+        }
+
+        static Claim inProgress() {
+            return new Claim(Type.IN_PROGRESS, null);
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public Snapshot getSnapshot() {
+            return snapshot;
+        }
+    }
+
+    /**
+     * Stored HTTP response
+     */
+    public static class Snapshot {
+        private final int status;
+        private final String contentType;
+        private final String body;
+
+        public Snapshot(int status, String contentType, String body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("status", status);
+            map.put("content_type", contentType);
+            map.put("body", body);
+            return map;
+        }
+
+        static Snapshot fromMap(Map<?, ?> map) {
+            return new Snapshot(((Number) map.get("status")).intValue(),
+                (String) map.get("content_type"), (String) map.get("body"));
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ * Load Packing Service
+ *
+ * Functionality:
+ * - Packs several shipments from the same warehouse onto one truck up to its capacity
+ * - Keeps truck current load consistent under concurrent assignment
+ * - Tracks how many truck dispatches are needed per shipment
+ *
+ * Packing Strategy:
+ * - Online: a new shipment is first-fit into trucks already dispatched to its
+ *   warehouse that have not left for delivery; only if none fits is a new idle truck claimed
+ * - Batch: first-fit-decreasing over a set of shipments, heaviest first, used
+ *   when many shipments for one warehouse are known up front
+ *
+ * Concurrency:
+ * - Load is only ever changed through TruckRepository.tryAddLoad, a single
+ *   conditional UPDATE, so two shipments can never overfill the same truck
+ * - A shipment heavier than a truck's capacity gets an empty truck to itself, marked
+ *   full with TruckRepository.fillLoad; it is charged, and on release gives back,
+ *   the truck's capacity rather than its own weight
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import com.miniups.model.entity.Shipment;
+import com.miniups.model.entity.Truck;
+import com.miniups.repository.TruckRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+@Transactional
+public class LoadPackingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadPackingService.class);
+
+    private final TruckRepository truckRepository;
+    private final TruckManagementService truckManagementService;
+
+    @Value("${app.dispatch.load-packing.default-weight:1.0}")
+    private double defaultWeight = 1.0;
+
+    // Dispatch accounting: trucks dispatched vs shipments carried
+    private final AtomicLong shipmentsAssigned = new AtomicLong();
+    private final AtomicLong truckDispatches = new AtomicLong();
+    private final Counter shipmentsCounter;
+    private final Counter dispatchCounter;
+
+    public LoadPackingService(TruckRepository truckRepository,
+                              TruckManagementService truckManagementService,
+                              @Autowired(required = false) MeterRegistry meterRegistry) {
+        this.truckRepository = truckRepository;
+        this.truckManagementService = truckManagementService;
+
+        if (meterRegistry != null) {
+            this.shipmentsCounter = Counter.builder("ups.dispatch.shipments")
+                .description("Shipments assigned to trucks")
+                .register(meterRegistry);
+            this.dispatchCounter = Counter.builder("ups.dispatch.trucks")
+                .description("Trucks dispatched to a warehouse")
+                .register(meterRegistry);
+            meterRegistry.gauge("ups.dispatch.trucks_per_shipment", this,
+                LoadPackingService::getDispatchesPerShipment);
+        } else {
+            this.shipmentsCounter = null;
+            this.dispatchCounter = null;
+        }
+    }
+
+    /**
+     * Assign a truck to a shipment, packing it onto an already dispatched truck when possible.
+     *
+     * @param warehouseId Warehouse the shipment is picked up from
+     * @param weight Shipment weight, null uses the configured default weight
+     * @return Assignment result, null if no truck has room and none is idle
+     */
+    public Assignment assign(String warehouseId, BigDecimal weight) {
+        double load = resolveWeight(weight);
+
+        // First fit into trucks already heading to this warehouse
+        if (warehouseId != null) {
+            for (Truck truck : truckRepository.findLoadableTrucksForWarehouse(warehouseId)) {
+                if (truck.getRemainingCapacity() < load) {
+                    continue;
+                }
+                if (truckRepository.tryAddLoad(truck.getId(), load) == 1) {
+                    truck.setCurrentLoad(currentLoadOf(truck) + load);
+                    recordAssignment(false);
+                    logger.info("Packed shipment (weight {}) onto truck {} already dispatched to warehouse {}",
+                               load, truck.getTruckId(), warehouseId);
+                    return new Assignment(truck, false);
+                }
+            }
+        }
+
+        // No open truck has room, claim a new idle one
+        Truck truck = truckManagementService.assignTruckForWarehouse(warehouseId);
+        if (truck == null) {
+            return null;
+        }
+        if (truckRepository.tryAddLoad(truck.getId(), load) == 1) {
+            truck.setCurrentLoad(currentLoadOf(truck) + load);
+        } else if (truckRepository.fillLoad(truck.getId()) == 1) {
+            // Oversized shipment still gets a dedicated truck rather than being rejected
+            truck.setCurrentLoad(truck.getCapacity().doubleValue());
+            logger.warn("Shipment weight {} exceeds capacity {} of truck {}, dispatching it alone",
+                       load, truck.getCapacity(), truck.getTruckId());
+        } else {
+            logger.warn("Shipment weight {} does not fit the load of new truck {}, dispatching it anyway",
+                       load, truck.getTruckId());
+        }
+        recordAssignment(true);
+        return new Assignment(truck, true);
+    }
+
+    /**
+     * Give back the load of a shipment that will no longer be carried by a truck
+     */
+    public void releaseLoad(Truck truck, BigDecimal weight) {
+        if (truck == null || truck.getId() == null) {
+            return;
+        }
+        truckRepository.releaseLoad(truck.getId(), chargedLoad(truck, weight));
+    }
+
+    /**
+     * Pack shipments into trucks using first-fit-decreasing.
+     *
+     * Shipments are sorted heaviest first and each is placed into the first truck
+     * with enough remaining capacity. Nothing is persisted; callers apply the plan.
+     *
+     * @param shipments Shipments waiting at one warehouse
+     * @param trucks Candidate trucks in preference order
+     * @return Packing plan with per-truck shipment lists and anything that did not fit
+     */
+    @Transactional(readOnly = true)
+    public PackingPlan packFirstFitDecreasing(List<Shipment> shipments, List<Truck> trucks) {
+        List<Shipment> sorted = new ArrayList<>(shipments);
+        sorted.sort(Comparator.comparingDouble((Shipment s) -> resolveWeight(s.getWeight())).reversed());
+
+        double[] remaining = new double[trucks.size()];
+        for (int i = 0; i < trucks.size(); i++) {
+            remaining[i] = trucks.get(i).getRemainingCapacity();
+        }
+
+        Map<Truck, List<Shipment>> loads = new LinkedHashMap<>();
+        List<Shipment> unassigned = new ArrayList<>();
+
+        for (Shipment shipment : sorted) {
+            double weight = resolveWeight(shipment.getWeight());
+            boolean placed = false;
+            for (int i = 0; i < remaining.length; i++) {
+                if (remaining[i] >= weight) {
+                    remaining[i] -= weight;
+                    loads.computeIfAbsent(trucks.get(i), t -> new ArrayList<>()).add(shipment);
+                    placed = true;
+                    break;
+                }
+            }
+            if (!placed) {
+                unassigned.add(shipment);
+            }
+        }
+
+        return new PackingPlan(loads, unassigned);
+    }
+
+    /**
+     * Get dispatch statistics for load packing
+     *
+     * @return Shipments assigned, trucks dispatched and dispatches per shipment
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getDispatchStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("shipments_assigned", shipmentsAssigned.get());
+        stats.put("truck_dispatches", truckDispatches.get());
+        stats.put("dispatches_per_shipment", Math.round(getDispatchesPerShipment() * 1000.0) / 1000.0);
+        return stats;
+    }
+
+    public double getDispatchesPerShipment() {
+        long shipments = shipmentsAssigned.get();
+        return shipments > 0 ? (double) truckDispatches.get() / shipments : 0.0;
+    }
+
+    // Private helper methods
+
+    private void recordAssignment(boolean newDispatch) {
+        shipmentsAssigned.incrementAndGet();
+        if (shipmentsCounter != null) {
+            shipmentsCounter.increment();
+        }
+        if (newDispatch) {
+            truckDispatches.incrementAndGet();
+            if (dispatchCounter != null) {
+                dispatchCounter.increment();
+            }
+        }
+    }
+
+    private double resolveWeight(BigDecimal weight) {
+        if (weight == null || weight.signum() <= 0) {
+            return defaultWeight;
+        }
+        return weight.doubleValue();
+    }
+
+    /**
+     * Load a shipment was charged on assign: its weight, capped at the capacity of an oversized truck
+     */
+    private double chargedLoad(Truck truck, BigDecimal weight) {
+        double load = resolveWeight(weight);
+        return truck.getCapacity() != null ? Math.min(load, truck.getCapacity()) : load;
+    }
+
+    private double currentLoadOf(Truck truck) {
+        return truck.getCurrentLoad() != null ? truck.getCurrentLoad() : 0.0;
+    }
+
+    /**
+     * Result of assigning one shipment
+     */
+    public static class Assignment {
+        private final Truck truck;
+        private final boolean newDispatch;
+
+        public Assignment(Truck truck, boolean newDispatch) {
+            this.truck = truck;
+            this.newDispatch = newDispatch;
+        }
+
+        public Truck getTruck() {
+            return truck;
+        }
+
+        /**
+         * @return true if a new truck was sent out, false if the shipment rides on a truck already dispatched
+         */
+        public boolean isNewDispatch() {
+            return newDispatch;
+        }
+    }
+
+    /**
+     * First-fit-decreasing packing plan
+     */
+    public static class PackingPlan {
+        private final Map<Truck, List<Shipment>> loads;
+        private final List<Shipment> unassigned;
+
+        public PackingPlan(Map<Truck, List<Shipment>> loads, List<Shipment> unassigned) {
+            this.loads = loads;
+            this.unassigned = unassigned;
+        }
+
+        public Map<Truck, List<Shipment>> getLoads() {
+            return loads;
+        }
+
+        public List<Shipment> getUnassigned() {
+            return unassigned;
+        }
+
+        public int getTrucksUsed() {
+            return loads.size();
+        }
+    }
+}
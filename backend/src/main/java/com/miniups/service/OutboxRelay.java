@@ -0,0 +1,477 @@
+/**
+ * Outbox Relay
+ *
+ * Functionality:
+ * - Publishes domain events staged in the transactional outbox (outbox_events) to RabbitMQ
+ * - Events are staged by EventPublisherService in the same transaction as the shipment/truck
+ *   change, so a rollback never publishes and a crash after commit never loses an event
+ *
+ * Relay loop (single thread per instance):
+ * - Claims the oldest pending rows with SELECT ... FOR UPDATE SKIP LOCKED, so several
+ *   instances relay disjoint batches without blocking each other
+ * - Publishes the whole batch with correlated publisher confirms, then waits for the
+ *   confirms together instead of one broker round trip per event
+ * - Marks confirmed rows sent with one JDBC batch; nacked, unconfirmed or rejected rows stay
+ *   pending with attempts incremented and are retried on the next pass
+ * - A row that fails max-attempts times is parked: it stays unsent but is no longer claimed,
+ *   so one event the broker keeps refusing cannot hold back the rows behind it
+ * - When the broker is unreachable the pass stops without counting an attempt against the
+ *   rows it did not get to, and the relay sleeps poll-interval-ms, ignoring wake-ups,
+ *   before claiming again
+ * - Woken right after a staging transaction commits; otherwise polls every poll-interval-ms
+ *   to pick up rows committed by other instances or left over from a crash
+ *
+ * Encoding:
+ * - Rows are staged as JSON; a row whose routing key is binary (see EventContentTypes) is
+ *   re-encoded as application/x-protobuf when it is relayed, so events published inside a
+ *   transaction are encoded the same way as those published directly
+ *
+ * Delivery is at least once: an event confirmed by the broker whose row update is then lost
+ * is published again with the same message id (the event id), so consumers can drop it
+ * as a duplicate.
+ *
+ * Metrics:
+ * - ups.outbox.relay.published, ups.outbox.relay.failed (throughput), ups.outbox.relay.parked
+ * - ups.outbox.relay.lag (commit of the event to broker confirm), ups.outbox.relay.batch_size
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniups.config.EventContentTypes;
+import com.miniups.config.EventMessageConverter;
+import com.miniups.model.event.BusinessEvent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class OutboxRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private static final String CLAIM_SQL = """
+        SELECT id, event_id, exchange, routing_key, payload, attempts, created_at FROM outbox_events
+        WHERE sent_at IS NULL AND attempts < ?
+        ORDER BY id ASC
+        LIMIT ?
+        FOR UPDATE SKIP LOCKED
+        """;
+
+    private static final String MARK_SENT_SQL = "UPDATE outbox_events SET sent_at = ?, updated_at = ? WHERE id = ?";
+
+    private static final String MARK_FAILED_SQL =
+        "UPDATE outbox_events SET attempts = attempts + 1, updated_at = ? WHERE id = ?";
+
+    private static final String PURGE_SQL = "DELETE FROM outbox_events WHERE sent_at < ?";
+
+    private static final String PENDING_SQL = "SELECT COUNT(*) FROM outbox_events WHERE sent_at IS NULL AND attempts < ?";
+
+    private static final String PARKED_SQL = "SELECT COUNT(*) FROM outbox_events WHERE sent_at IS NULL AND attempts >= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RabbitTemplate rabbitTemplate;
+
+    @Value("${app.outbox.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${app.rabbitmq.enabled:true}")
+    private boolean rabbitMQEnabled = true;
+
+    @Value("${app.outbox.relay.batch-size:200}")
+    private int batchSize = 200;
+
+    @Value("${app.outbox.relay.poll-interval-ms:1000}")
+    private long pollIntervalMs = 1000;
+
+    @Value("${app.outbox.relay.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs = 5000;
+
+    @Value("${app.outbox.relay.max-attempts:10}")
+    private int maxAttempts = 10;
+
+    @Value("${app.outbox.retention-hours:24}")
+    private int retentionHours = 24;
+
+    @Autowired(required = false)
+    private EventContentTypes eventContentTypes;
+
+    @Autowired(required = false)
+    private ObjectMapper objectMapper;
+
+    private volatile EventMessageConverter binaryConverter;
+
+    // Permits are wake-up signals; the count does not matter
+    private final Semaphore signal = new Semaphore(0);
+    private volatile boolean running;
+    // Set by a pass that stopped because the broker could not be reached
+    private volatile boolean brokerUnreachable;
+    private Thread relayThread;
+    private final boolean confirms;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong parked = new AtomicLong();
+
+    private final Timer lagTimer;
+    private final DistributionSummary batchSizeSummary;
+    private final Counter publishedCounter;
+    private final Counter failedCounter;
+    private final Counter parkedCounter;
+
+    public OutboxRelay(JdbcTemplate jdbcTemplate,
+                       PlatformTransactionManager transactionManager,
+                       @Autowired(required = false) RabbitTemplate rabbitTemplate,
+                       @Autowired(required = false) MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rabbitTemplate = rabbitTemplate;
+        this.confirms = rabbitTemplate != null && rabbitTemplate.getConnectionFactory() != null
+            && rabbitTemplate.getConnectionFactory().isPublisherConfirms();
+
+        if (meterRegistry != null) {
+            this.lagTimer = Timer.builder("ups.outbox.relay.lag")
+                .description("Time from an event being staged in the outbox to its broker confirm")
+                .register(meterRegistry);
+            this.batchSizeSummary = DistributionSummary.builder("ups.outbox.relay.batch_size")
+                .description("Outbox rows claimed per relay pass")
+                .register(meterRegistry);
+            this.publishedCounter = Counter.builder("ups.outbox.relay.published")
+                .description("Outbox events confirmed by the broker")
+                .register(meterRegistry);
+            this.failedCounter = Counter.builder("ups.outbox.relay.failed")
+                .description("Outbox publishes that were nacked, unconfirmed or not sent")
+                .register(meterRegistry);
+            this.parkedCounter = Counter.builder("ups.outbox.relay.parked")
+                .description("Outbox events no longer relayed after reaching max attempts")
+                .register(meterRegistry);
+        } else {
+            this.lagTimer = null;
+            this.batchSizeSummary = null;
+            this.publishedCounter = null;
+            this.failedCounter = null;
+            this.parkedCounter = null;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled || !rabbitMQEnabled || rabbitTemplate == null || running) {
+            return;
+        }
+        if (!confirms) {
+            logger.warn("Publisher confirms are off: outbox events are marked sent once handed to the client");
+        }
+        running = true;
+        relayThread = new Thread(this::relayLoop, "outbox-relay");
+        relayThread.setDaemon(true);
+        relayThread.start();
+        logger.info("Outbox relay started (batch {}, poll {} ms, confirms {})", batchSize, pollIntervalMs, confirms);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        relayThread.interrupt();
+        try {
+            relayThread.join(confirmTimeoutMs + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Whether staged events will be picked up; when false, publish directly instead
+     */
+    public boolean isEnabled() {
+        return enabled && rabbitMQEnabled && rabbitTemplate != null;
+    }
+
+    /**
+     * Wake the relay, called after a transaction that staged events commits
+     */
+    public void wakeUp() {
+        signal.release();
+    }
+
+    /**
+     * Claim, publish and mark one batch
+     *
+     * @return Number of claimed rows handed to the broker; fewer than claimed when the
+     *         broker became unreachable during the pass
+     */
+    public int relayBatch() {
+        Integer claimed = transactionTemplate.execute(status -> {
+            List<Pending> batch = jdbcTemplate.query(CLAIM_SQL, (rs, rowNum) -> new Pending(
+                rs.getLong("id"), rs.getString("event_id"), rs.getString("exchange"),
+                rs.getString("routing_key"), rs.getString("payload"), rs.getInt("attempts"),
+                rs.getTimestamp("created_at").toLocalDateTime()), maxAttempts, batchSize);
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            return publish(batch);
+        });
+        return claimed != null ? claimed : 0;
+    }
+
+    /**
+     * Delete sent rows past the retention period
+     */
+    @Scheduled(fixedDelayString = "${app.outbox.purge-interval-ms:3600000}")
+    public void purgeSent() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            int purged = jdbcTemplate.update(PURGE_SQL, Timestamp.valueOf(LocalDateTime.now().minusHours(retentionHours)));
+            if (purged > 0) {
+                logger.debug("Purged {} sent outbox events", purged);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to purge sent outbox events: {}", e.getMessage());
+        }
+    }
+
+    public long getPendingCount() {
+        Long count = jdbcTemplate.queryForObject(PENDING_SQL, Long.class, maxAttempts);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Unsent rows that reached max attempts and wait for an operator
+     */
+    public long getParkedCount() {
+        Long count = jdbcTemplate.queryForObject(PARKED_SQL, Long.class, maxAttempts);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Get relay statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("running", running);
+        stats.put("published", published.get());
+        stats.put("failed", failed.get());
+        if (isEnabled()) {
+            stats.put("pending", getPendingCount());
+            stats.put("parked", getParkedCount());
+        }
+        return stats;
+    }
+
+    // Private helper methods
+
+    private void relayLoop() {
+        while (running) {
+            int claimed;
+            try {
+                claimed = relayBatch();
+            } catch (RuntimeException e) {
+                logger.error("Outbox relay pass failed: {}", e.getMessage());
+                claimed = 0;
+            }
+            if (claimed < batchSize) {
+                try {
+                    if (brokerUnreachable) {
+                        // Commits keep waking the relay; re-claiming for each would only hammer the database
+                        Thread.sleep(pollIntervalMs);
+                    } else {
+                        signal.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                    }
+                    signal.drainPermits();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Publish a claimed batch and record the outcome of every row, inside the claiming transaction
+     *
+     * @return Number of rows handed to the broker, including those it refused
+     */
+    private int publish(List<Pending> batch) {
+        // Null where the send itself failed
+        List<CorrelationData> sent = new ArrayList<>(batch.size());
+        brokerUnreachable = false;
+        for (Pending row : batch) {
+            CorrelationData correlation = new CorrelationData(row.eventId);
+            try {
+                rabbitTemplate.send(row.exchange, row.routingKey, toMessage(row), correlation);
+            } catch (AmqpConnectException e) {
+                // Broker unreachable: the rest of the batch would fail the same way and is not charged an attempt
+                logger.warn("Outbox publish of {} failed, broker unreachable: {}", row.eventId, e.getMessage());
+                brokerUnreachable = true;
+                break;
+            } catch (RuntimeException e) {
+                logger.warn("Outbox publish of {} failed: {}", row.eventId, e.getMessage());
+                correlation = null;
+            }
+            sent.add(correlation);
+        }
+
+        List<Pending> acked = new ArrayList<>(sent.size());
+        List<Pending> nacked = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+        for (int i = 0; i < sent.size(); i++) {
+            Pending row = batch.get(i);
+            if (sent.get(i) != null && isConfirmed(sent.get(i), deadline)) {
+                acked.add(row);
+            } else {
+                nacked.add(row);
+            }
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        if (!acked.isEmpty()) {
+            jdbcTemplate.batchUpdate(MARK_SENT_SQL, acked, acked.size(), (ps, row) -> {
+                ps.setTimestamp(1, now);
+                ps.setTimestamp(2, now);
+                ps.setLong(3, row.id);
+            });
+        }
+        if (!nacked.isEmpty()) {
+            jdbcTemplate.batchUpdate(MARK_FAILED_SQL, nacked, nacked.size(), (ps, row) -> {
+                ps.setTimestamp(1, now);
+                ps.setLong(2, row.id);
+            });
+            logger.warn("{} of {} outbox events were not confirmed and will be retried", nacked.size(), batch.size());
+            for (Pending row : nacked) {
+                if (row.attempts + 1 >= maxAttempts) {
+                    logger.error("Outbox event {} to {}/{} parked after {} attempts", row.eventId, row.exchange,
+                        row.routingKey, row.attempts + 1);
+                    parked.incrementAndGet();
+                    if (parkedCounter != null) {
+                        parkedCounter.increment();
+                    }
+                }
+            }
+        }
+
+        published.addAndGet(acked.size());
+        failed.addAndGet(nacked.size());
+        if (lagTimer != null) {
+            LocalDateTime confirmedAt = now.toLocalDateTime();
+            for (Pending row : acked) {
+                lagTimer.record(Duration.between(row.createdAt, confirmedAt));
+            }
+            batchSizeSummary.record(batch.size());
+            publishedCounter.increment(acked.size());
+            failedCounter.increment(nacked.size());
+        }
+        return sent.size();
+    }
+
+    private boolean isConfirmed(CorrelationData correlation, long deadlineNanos) {
+        if (!confirms) {
+            return true;
+        }
+        try {
+            long remaining = Math.max(0, deadlineNanos - System.nanoTime());
+            CorrelationData.Confirm confirm = correlation.getFuture().get(remaining, TimeUnit.NANOSECONDS);
+            return confirm.isAck() && correlation.getReturned() == null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    private Message toMessage(Pending row) {
+        if (eventContentTypes != null && objectMapper != null && eventContentTypes.isBinary(row.routingKey)) {
+            return toBinaryMessage(row);
+        }
+        // Same properties Jackson2JsonMessageConverter sets for a BusinessEvent
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setContentEncoding(StandardCharsets.UTF_8.name());
+        properties.setMessageId(row.eventId);
+        properties.setHeader("__TypeId__", BusinessEvent.class.getName());
+        return new Message(row.payload.getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    private Message toBinaryMessage(Pending row) {
+        BusinessEvent<?> event;
+        try {
+            event = objectMapper.readValue(row.payload, BusinessEvent.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable outbox payload for " + row.eventId, e);
+        }
+        EventMessageConverter converter = binaryConverter;
+        if (converter == null) {
+            converter = new EventMessageConverter(objectMapper);
+            binaryConverter = converter;
+        }
+        Message message = converter.toMessage(event, new MessageProperties());
+        message.getMessageProperties().setMessageId(row.eventId);
+        return message;
+    }
+
+    /**
+     * A claimed outbox row
+     */
+    private static class Pending {
+        final long id;
+        final String eventId;
+        final String exchange;
+        final String routingKey;
+        final String payload;
+        final int attempts;
+        final LocalDateTime createdAt;
+
+        Pending(long id, String eventId, String exchange, String routingKey, String payload, int attempts,
+                LocalDateTime createdAt) {
+            this.id = id;
+            this.eventId = eventId;
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.payload = payload;
+            this.attempts = attempts;
+            this.createdAt = createdAt;
+        }
+    }
+}
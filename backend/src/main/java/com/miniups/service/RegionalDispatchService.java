@@ -0,0 +1,645 @@
+/**
+ * Regional Dispatch Service
+ *
+ * Functionality:
+ * - Splits the world grid into rows x cols regions
+ * - Each region has one dispatcher thread that owns its trucks outright; truck state is
+ *   only read and written on that thread, so dispatch decisions take no locks
+ * - Pickups are routed to the dispatcher of the region the warehouse is in
+ *
+ * Handoff:
+ * - A released truck that ends up in another region is handed to that region's dispatcher
+ * - A region with no idle truck asks its neighbours, nearest first; the neighbour gives up
+ *   its nearest idle truck and ownership moves to the requesting region
+ * - Handoffs are messages between dispatchers, never shared writes
+ *
+ * Persistence:
+ * - Assignments are written by the owning dispatcher in JDBC batches once its queue drains
+ *   (group commit), guarded by version and status like TruckReservationTable
+ * - Writers outside the dispatchers (world updates, other instances) are picked up by a
+ *   periodic refresh, which is version-checked so it never overrides a newer local decision
+ * - A blocking caller that times out abandons its reservation; the truck is written back
+ *   to IDLE once the assignment has been persisted, so no truck is held without a shipment
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import com.miniups.model.entity.Truck;
+import com.miniups.model.enums.TruckStatus;
+import com.miniups.repository.TruckRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+@Service
+public class RegionalDispatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegionalDispatchService.class);
+
+    private static final String PERSIST_SQL = """
+        UPDATE trucks SET status = 'EN_ROUTE', version = version + 1, updated_at = ?
+        WHERE id = ? AND version = ? AND status = 'IDLE'
+        """;
+
+    private static final String ABANDON_SQL = """
+        UPDATE trucks SET status = 'IDLE', version = version + 1, updated_at = ?
+        WHERE id = ? AND version = ? AND status = 'EN_ROUTE'
+        """;
+
+    private static final String RECONCILE_SQL = "SELECT status, version FROM trucks WHERE id = ?";
+
+    private final TruckRepository truckRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.dispatch.regions.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.dispatch.regions.rows:2}")
+    private int rows = 2;
+
+    @Value("${app.dispatch.regions.cols:2}")
+    private int cols = 2;
+
+    @Value("${app.dispatch.regions.grid-size:200}")
+    private int gridSize = 200;
+
+    @Value("${app.dispatch.regions.batch-size:200}")
+    private int batchSize = 200;
+
+    @Value("${app.dispatch.regions.max-reconcile-attempts:3}")
+    private int maxReconcileAttempts = 3;
+
+    @Value("${app.dispatch.regions.assign-timeout-ms:2000}")
+    private long assignTimeoutMs = 2000;
+
+    private volatile Region[] regions = new Region[0];
+
+    // Routing only: which region currently owns a truck. Written by the owning dispatcher.
+    private final Map<Long, Integer> ownerOf = new ConcurrentHashMap<>();
+
+    private final AtomicLong assignments = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong handoffs = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+    private final Counter handoffCounter;
+
+    public RegionalDispatchService(TruckRepository truckRepository,
+                                   JdbcTemplate jdbcTemplate,
+                                   @Autowired(required = false) MeterRegistry meterRegistry) {
+        this.truckRepository = truckRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        this.handoffCounter = meterRegistry != null
+            ? Counter.builder("ups.dispatch.region.handoffs")
+                .description("Trucks whose ownership moved between region dispatchers")
+                .register(meterRegistry)
+            : null;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (rows <= 0 || cols <= 0 || gridSize <= 0) {
+            throw new IllegalStateException("Region rows, cols and grid size must be positive");
+        }
+        Region[] created = new Region[rows * cols];
+        for (int i = 0; i < created.length; i++) {
+            created[i] = new Region(i);
+            if (meterRegistry != null) {
+                Region region = created[i];
+                meterRegistry.gauge("ups.dispatch.region.queue", Tags.of("region", String.valueOf(i)),
+                                    region.executor, e -> e.getQueue().size());
+            }
+        }
+        regions = created;
+        logger.info("Started {} region dispatchers ({}x{} over a {} grid)", created.length, rows, cols, gridSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        Region[] current = regions;
+        regions = new Region[0];
+        for (Region region : current) {
+            region.executor.shutdown();
+        }
+        for (Region region : current) {
+            try {
+                region.executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && regions.length > 0;
+    }
+
+    public int getRegionCount() {
+        return regions.length;
+    }
+
+    /**
+     * Region a grid position belongs to; positions outside the grid fall into the border regions
+     */
+    public int regionOf(int x, int y) {
+        int col = Math.min(cols - 1, Math.max(0, (int) ((long) x * cols / gridSize)));
+        int row = Math.min(rows - 1, Math.max(0, (int) ((long) y * rows / gridSize)));
+        return row * cols + col;
+    }
+
+    /**
+     * Assign the nearest idle truck through the dispatcher of the pickup's region.
+     *
+     * @param originX Pickup X coordinate
+     * @param originY Pickup Y coordinate
+     * @return Future of the reservation, completing with null if no region has an idle truck
+     */
+    public CompletableFuture<TruckReservationTable.Reservation> assign(Integer originX, Integer originY) {
+        int x = originX != null ? originX : 0;
+        int y = originY != null ? originY : 0;
+        Region home = regions[regionOf(x, y)];
+
+        return home.call(() -> home.takeNearest(x, y))
+            .thenCompose(reservation -> reservation != null
+                ? CompletableFuture.completedFuture(reservation)
+                : requestHandoff(home, x, y, neighboursOf(home.index, x, y).iterator()))
+            .whenComplete((reservation, error) -> {
+                if (reservation != null) {
+                    assignments.incrementAndGet();
+                } else {
+                    misses.incrementAndGet();
+                }
+            });
+    }
+
+    /**
+     * Blocking variant of {@link #assign} for callers on the request path
+     *
+     * @return Reservation, null if no truck is idle or the dispatcher did not answer in time
+     */
+    public TruckReservationTable.Reservation assignNearest(Integer originX, Integer originY) {
+        CompletableFuture<TruckReservationTable.Reservation> pending = assign(originX, originY);
+        try {
+            return pending.get(assignTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandonWhenDone(pending);
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("Regional assignment at ({}, {}) failed: {}", originX, originY, e.toString());
+            abandonWhenDone(pending);
+            return null;
+        }
+    }
+
+    /**
+     * Return a truck to the pool after its task, at its current position.
+     * The owning dispatcher hands it on if it now stands in another region.
+     */
+    public void release(Truck truck) {
+        if (!isEnabled() || truck == null || truck.getId() == null) {
+            return;
+        }
+        TruckSnapshot snapshot = TruckSnapshot.of(truck);
+        routeToOwner(snapshot, (region, owned) -> region.release(owned, snapshot, false));
+    }
+
+    /**
+     * Load idle trucks from the database and reconcile every region with it
+     */
+    public void refresh() {
+        if (!isEnabled()) {
+            return;
+        }
+        Set<Long> idleIds = new HashSet<>();
+        for (Truck truck : truckRepository.findByStatus(TruckStatus.IDLE)) {
+            idleIds.add(truck.getId());
+            TruckSnapshot snapshot = TruckSnapshot.of(truck);
+            routeToOwner(snapshot, (region, owned) -> region.release(owned, snapshot, true));
+        }
+        for (Region region : regions) {
+            region.call(() -> {
+                region.retireMissing(idleIds);
+                return null;
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.dispatch.regions.refresh-interval-ms:5000}")
+    public void scheduledRefresh() {
+        if (isEnabled()) {
+            try {
+                refresh();
+            } catch (Exception e) {
+                logger.error("Regional dispatch refresh failed", e);
+            }
+        }
+    }
+
+    /**
+     * Get per-region statistics, each collected on its own dispatcher thread
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("regions", regions.length);
+        stats.put("assignments", assignments.get());
+        stats.put("misses", misses.get());
+        stats.put("handoffs", handoffs.get());
+        stats.put("conflicts", conflicts.get());
+        stats.put("abandoned", abandoned.get());
+
+        List<Map<String, Object>> perRegion = new ArrayList<>();
+        for (Region region : regions) {
+            try {
+                perRegion.add(region.call(region::describe).get(assignTimeoutMs, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException | TimeoutException e) {
+                perRegion.add(Map.of("region", region.index, "error", e.toString()));
+            }
+        }
+        stats.put("per_region", perRegion);
+        return stats;
+    }
+
+    // Private helper methods
+
+    /**
+     * The caller gave up waiting, but the dispatcher may still assign a truck for it.
+     * Hand that truck back once its assignment has been written.
+     */
+    private void abandonWhenDone(CompletableFuture<TruckReservationTable.Reservation> pending) {
+        pending.thenAccept(reservation -> {
+            if (reservation == null) {
+                return;
+            }
+            reservation.getPersisted().thenAccept(written -> {
+                // A revoked assignment never took the truck
+                if (written) {
+                    giveBack(reservation);
+                }
+            });
+        });
+    }
+
+    private void giveBack(TruckReservationTable.Reservation reservation) {
+        TruckSnapshot at = TruckSnapshot.of(reservation.toTruck());
+        routeToOwner(at, (region, owned) -> {
+            if (owned == null || owned.idle || owned.persisted != reservation.getPersisted()) {
+                return;
+            }
+            int updated = jdbcTemplate.update(ABANDON_SQL, Timestamp.valueOf(LocalDateTime.now()),
+                                              owned.dbId, owned.version);
+            if (updated == 0) {
+                // Already moved on by another writer; the periodic refresh picks it up
+                return;
+            }
+            abandoned.incrementAndGet();
+            region.release(owned, new TruckSnapshot(owned.dbId, owned.truckId, owned.x, owned.y, owned.version + 1), false);
+            logger.info("Region {} took back truck {} from a timed-out assignment", region.index, owned.truckId);
+        });
+    }
+
+    private CompletableFuture<TruckReservationTable.Reservation> requestHandoff(Region home, int x, int y,
+                                                                                 Iterator<Region> neighbours) {
+        if (!neighbours.hasNext()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Region donor = neighbours.next();
+        return donor.call(() -> donor.giveUpNearest(x, y, home.index))
+            .thenCompose(owned -> {
+                if (owned == null) {
+                    return requestHandoff(home, x, y, neighbours);
+                }
+                // The donor already detached the truck; the home dispatcher takes ownership and assigns it
+                return home.call(() -> {
+                    home.adopt(owned);
+                    handoffs.incrementAndGet();
+                    if (handoffCounter != null) {
+                        handoffCounter.increment();
+                    }
+                    return home.assignOwned(owned);
+                });
+            });
+    }
+
+    /**
+     * Regions other than the given one, nearest region centre to the pickup first
+     */
+    private List<Region> neighboursOf(int index, int x, int y) {
+        List<Region> others = new ArrayList<>(regions.length - 1);
+        for (Region region : regions) {
+            if (region.index != index) {
+                others.add(region);
+            }
+        }
+        double cellWidth = (double) gridSize / cols;
+        double cellHeight = (double) gridSize / rows;
+        others.sort(Comparator.comparingDouble(region -> {
+            double cx = (region.index % cols + 0.5) * cellWidth;
+            double cy = (region.index / cols + 0.5) * cellHeight;
+            return Math.abs(cx - x) + Math.abs(cy - y);
+        }));
+        return others;
+    }
+
+    private void routeToOwner(TruckSnapshot snapshot, OwnerAction action) {
+        Integer owner = ownerOf.get(snapshot.dbId);
+        Region region = regions[owner != null ? owner : regionOf(snapshot.x, snapshot.y)];
+        region.call(() -> {
+            OwnedTruck owned = region.trucks.get(snapshot.dbId);
+            if (owned == null && owner != null && !Objects.equals(ownerOf.get(snapshot.dbId), region.index)) {
+                // Ownership moved while the message was queued; follow it
+                routeToOwner(snapshot, action);
+                return null;
+            }
+            action.apply(region, owned);
+            return null;
+        });
+    }
+
+    @FunctionalInterface
+    private interface OwnerAction {
+        void apply(Region region, OwnedTruck owned);
+    }
+
+    /**
+     * One region and its dispatcher thread. Everything below except the executor is
+     * confined to that thread.
+     */
+    private class Region {
+        final int index;
+        final ThreadPoolExecutor executor;
+        final Map<Long, OwnedTruck> trucks = new HashMap<>();
+        final List<OwnedTruck> pendingWrites = new ArrayList<>();
+        long assigned;
+
+        Region(int index) {
+            this.index = index;
+            this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "dispatch-region-" + index);
+                    thread.setDaemon(true);
+                    return thread;
+                }) {
+                @Override
+                protected void afterExecute(Runnable task, Throwable error) {
+                    // Group commit: write once the burst of queued decisions is done
+                    if (!pendingWrites.isEmpty() && (getQueue().isEmpty() || pendingWrites.size() >= batchSize)) {
+                        flush();
+                    }
+                }
+            };
+        }
+
+        <T> CompletableFuture<T> call(Supplier<T> task) {
+            return CompletableFuture.supplyAsync(task, executor);
+        }
+
+        TruckReservationTable.Reservation takeNearest(int x, int y) {
+            OwnedTruck nearest = nearestIdle(x, y);
+            return nearest != null ? assignOwned(nearest) : null;
+        }
+
+        OwnedTruck giveUpNearest(int x, int y, int to) {
+            OwnedTruck nearest = nearestIdle(x, y);
+            if (nearest != null) {
+                detach(nearest, to);
+            }
+            return nearest;
+        }
+
+        TruckReservationTable.Reservation assignOwned(OwnedTruck truck) {
+            truck.idle = false;
+            truck.persisted = new CompletableFuture<>();
+            truck.attempts = 0;
+            truck.deferredRelease = null;
+            pendingWrites.add(truck);
+            assigned++;
+            return new TruckReservationTable.Reservation(truck.dbId, truck.truckId, truck.x, truck.y,
+                                                         truck.version, truck.persisted);
+        }
+
+        void adopt(OwnedTruck truck) {
+            trucks.put(truck.dbId, truck);
+            ownerOf.put(truck.dbId, index);
+        }
+
+        /**
+         * Route messages to the new owner from now on; ones that arrive before the
+         * adopt message are superseded by it
+         */
+        private void detach(OwnedTruck truck, int to) {
+            trucks.remove(truck.dbId);
+            ownerOf.put(truck.dbId, to);
+        }
+
+        /**
+         * @param verified true for database snapshots, which must not roll back a newer local decision
+         */
+        void release(OwnedTruck owned, TruckSnapshot snapshot, boolean verified) {
+            if (owned == null) {
+                owned = new OwnedTruck(snapshot.dbId, snapshot.truckId);
+                owned.version = snapshot.version;
+                adopt(owned);
+            } else if (owned.persisted != null && !owned.persisted.isDone()) {
+                // Our assignment is not written yet: database snapshots are older than it,
+                // an explicit release is applied once the write has settled
+                if (!verified) {
+                    owned.deferredRelease = snapshot;
+                }
+                return;
+            } else if (verified && (owned.idle ? snapshot.version < owned.version : snapshot.version <= owned.version)) {
+                return;
+            }
+
+            owned.idle = true;
+            owned.x = snapshot.x;
+            owned.y = snapshot.y;
+            owned.version = Math.max(owned.version, snapshot.version);
+
+            int target = regionOf(owned.x, owned.y);
+            if (target != index) {
+                detach(owned, target);
+                Region next = regions[target];
+                OwnedTruck moving = owned;
+                handoffs.incrementAndGet();
+                if (handoffCounter != null) {
+                    handoffCounter.increment();
+                }
+                next.call(() -> {
+                    next.adopt(moving);
+                    return null;
+                });
+            }
+        }
+
+        /**
+         * Idle trucks the database no longer shows idle were taken by another writer
+         */
+        void retireMissing(Set<Long> idleIds) {
+            for (OwnedTruck truck : trucks.values()) {
+                if (truck.idle && !idleIds.contains(truck.dbId)) {
+                    truck.idle = false;
+                }
+            }
+        }
+
+        private OwnedTruck nearestIdle(int x, int y) {
+            OwnedTruck nearest = null;
+            int best = Integer.MAX_VALUE;
+            // Same ordering as findNearestAvailableTruckForAssignment
+            for (OwnedTruck truck : trucks.values()) {
+                if (!truck.idle) {
+                    continue;
+                }
+                int distance = Math.abs(truck.x - x) + Math.abs(truck.y - y);
+                if (distance < best || (distance == best && truck.dbId < nearest.dbId)) {
+                    best = distance;
+                    nearest = truck;
+                }
+            }
+            return nearest;
+        }
+
+        private void flush() {
+            List<OwnedTruck> batch = new ArrayList<>(pendingWrites);
+            pendingWrites.clear();
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            int[][] results;
+            try {
+                results = jdbcTemplate.batchUpdate(PERSIST_SQL, batch, batch.size(), (ps, truck) -> {
+                    ps.setTimestamp(1, now);
+                    ps.setLong(2, truck.dbId);
+                    ps.setLong(3, truck.version);
+                });
+            } catch (Exception e) {
+                logger.error("Region {} failed to persist {} assignments, will retry", index, batch.size(), e);
+                pendingWrites.addAll(batch);
+                return;
+            }
+
+            int position = 0;
+            for (int[] chunk : results) {
+                for (int updated : chunk) {
+                    OwnedTruck truck = batch.get(position++);
+                    if (updated > 0) {
+                        truck.version++;
+                        truck.persisted.complete(true);
+                    } else {
+                        reconcile(truck);
+                    }
+                    if (truck.persisted.isDone() && truck.deferredRelease != null) {
+                        TruckSnapshot snapshot = truck.deferredRelease;
+                        truck.deferredRelease = null;
+                        release(truck, snapshot, false);
+                    }
+                }
+            }
+        }
+
+        private void reconcile(OwnedTruck truck) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(RECONCILE_SQL, truck.dbId);
+            if (!rows.isEmpty()) {
+                Map<String, Object> row = rows.get(0);
+                long version = row.get("version") != null ? ((Number) row.get("version")).longValue() : 0L;
+                if (TruckStatus.IDLE.name().equals(String.valueOf(row.get("status")))
+                    && truck.attempts < maxReconcileAttempts) {
+                    // Only the version moved (position update etc.), retry with the current one
+                    truck.version = version;
+                    truck.attempts++;
+                    pendingWrites.add(truck);
+                    return;
+                }
+                truck.version = version;
+            }
+            conflicts.incrementAndGet();
+            truck.persisted.complete(false);
+            logger.warn("Region {} lost truck {} to a concurrent writer", index, truck.truckId);
+        }
+
+        Map<String, Object> describe() {
+            long idle = trucks.values().stream().filter(truck -> truck.idle).count();
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("region", index);
+            stats.put("owned_trucks", trucks.size());
+            stats.put("idle_trucks", idle);
+            stats.put("assigned", assigned);
+            stats.put("pending_writes", pendingWrites.size());
+            stats.put("queue", executor.getQueue().size());
+            return stats;
+        }
+    }
+
+    /**
+     * Truck state owned by exactly one region dispatcher
+     */
+    private static class OwnedTruck {
+        final long dbId;
+        final int truckId;
+        int x;
+        int y;
+        long version;
+        boolean idle;
+        int attempts;
+        CompletableFuture<Boolean> persisted;
+        TruckSnapshot deferredRelease;
+
+        OwnedTruck(long dbId, int truckId) {
+            this.dbId = dbId;
+            this.truckId = truckId;
+        }
+    }
+
+    /**
+     * Immutable copy of a truck entity handed to a dispatcher thread
+     */
+    private static class TruckSnapshot {
+        final long dbId;
+        final int truckId;
+        final int x;
+        final int y;
+        final long version;
+
+        private TruckSnapshot(long dbId, int truckId, int x, int y, long version) {
+            this.dbId = dbId;
+            this.truckId = truckId;
+            this.x = x;
+            this.y = y;
+            this.version = version;
+        }
+
+        static TruckSnapshot of(Truck truck) {
+            return new TruckSnapshot(truck.getId(), truck.getTruckId() != null ? truck.getTruckId() : 0,
+                truck.getCurrentX() != null ? truck.getCurrentX() : 0,
+                truck.getCurrentY() != null ? truck.getCurrentY() : 0,
+                truck.getVersion() != null ? truck.getVersion() : 0L);
+        }
+    }
+}
@@ -0,0 +1,657 @@
+/**
+ * Shipment Batch Service
+ *
+ * Functionality:
+ * - Creates hundreds of Amazon shipments per call instead of one per request
+ * - Returns a result for every item, in request order
+ *
+ * Per batch, instead of per shipment:
+ * - Duplicate shipment IDs inside the batch are rejected in memory, existing ones with one IN query
+ * - Users are resolved from the email -> id near cache (UserIdCache), then with one IN query on
+ *   email; missing users are inserted with one JDBC batch
+ * - Tracking numbers are allocated as one block
+ * - Idle trucks are claimed in bulk: one locking SELECT ... SKIP LOCKED per warehouse and one
+ *   JDBC batch update
+ * - Shipments are inserted with one JDBC batch
+ *
+ * Truck assignment:
+ * - With load packing on, shipments of the same warehouse share a truck up to its capacity
+ * - Otherwise every shipment gets its own truck, as on the single-shipment endpoint
+ * - Like the single-shipment endpoint, the nearest idle trucks are picked once the rebalancer
+ *   knows where the warehouse is, any idle trucks otherwise
+ * - Shipments that find no idle truck fail with 2001; the rest of the batch is still created
+ *
+ * Everything runs in one transaction. A unique constraint hit from a concurrent writer
+ * re-runs the batch once, which then sees the racing rows as existing.
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import com.miniups.model.dto.ShipmentCreatedMessage;
+import com.miniups.model.entity.Shipment;
+import com.miniups.model.entity.Truck;
+import com.miniups.model.entity.User;
+import com.miniups.model.enums.ShipmentStatus;
+import com.miniups.model.enums.TruckStatus;
+import com.miniups.model.enums.UserRole;
+import com.miniups.repository.ShipmentRepository;
+import com.miniups.repository.UserRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class ShipmentBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShipmentBatchService.class);
+
+    private static final String CLAIM_SELECT_SQL = """
+        SELECT id, truck_id, current_x, current_y, capacity, version FROM trucks
+        WHERE status = 'IDLE'
+        ORDER BY id ASC
+        LIMIT ?
+        FOR UPDATE SKIP LOCKED
+        """;
+
+    private static final String CLAIM_NEAREST_SQL = """
+        SELECT id, truck_id, current_x, current_y, capacity, version FROM trucks
+        WHERE status = 'IDLE'
+        ORDER BY (ABS(current_x - ?) + ABS(current_y - ?)) ASC, id ASC
+        LIMIT ?
+        FOR UPDATE SKIP LOCKED
+        """;
+
+    private static final String CLAIM_UPDATE_SQL = """
+        UPDATE trucks
+        SET status = 'EN_ROUTE', current_load = COALESCE(current_load, 0) + ?, version = version + 1, updated_at = ?
+        WHERE id = ? AND status = 'IDLE'
+        """;
+
+    private static final String INSERT_SHIPMENT_SQL = """
+        INSERT INTO shipments (shipment_id, ups_tracking_id, warehouse_id, status, origin_x, origin_y, dest_x, dest_y,
+                               weight, estimated_delivery, user_id, truck_id, created_at, updated_at, version)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)
+        """;
+
+    // Used to estimate how many trucks to lock when packing
+    private static final int DEFAULT_TRUCK_CAPACITY = new Truck().getCapacity();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ShipmentRepository shipmentRepository;
+    private final UserRepository userRepository;
+    private final TrackingService trackingService;
+
+    @Autowired(required = false)
+    private EtaService etaService;
+
+    @Autowired(required = false)
+    private UserIdCache userIdCache;
+
+    @Autowired(required = false)
+    private TruckRebalancingService rebalancingService;
+
+    @Value("${app.shipments.batch.max-size:1000}")
+    private int maxBatchSize = 1000;
+
+    @Value("${app.shipments.batch.jdbc-batch-size:200}")
+    private int jdbcBatchSize = 200;
+
+    @Value("${app.dispatch.load-packing.default-weight:1.0}")
+    private double defaultWeight = 1.0;
+
+    private final Timer ingestTimer;
+    private final Counter createdCounter;
+    private final Counter rejectedCounter;
+
+    public ShipmentBatchService(JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                ShipmentRepository shipmentRepository,
+                                UserRepository userRepository,
+                                TrackingService trackingService,
+                                @Autowired(required = false) MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.shipmentRepository = shipmentRepository;
+        this.userRepository = userRepository;
+        this.trackingService = trackingService;
+
+        if (meterRegistry != null) {
+            this.ingestTimer = Timer.builder("ups.shipments.batch.ingest")
+                .description("Time to create one batch of shipments")
+                .register(meterRegistry);
+            this.createdCounter = Counter.builder("ups.shipments.batch.items")
+                .tag("result", "created")
+                .description("Shipments created through the batch endpoint")
+                .register(meterRegistry);
+            this.rejectedCounter = Counter.builder("ups.shipments.batch.items")
+                .tag("result", "rejected")
+                .description("Batch items that were not created")
+                .register(meterRegistry);
+        } else {
+            this.ingestTimer = null;
+            this.createdCounter = null;
+            this.rejectedCounter = null;
+        }
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Create a batch of shipments
+     *
+     * @param items Messages read by ShipmentMessageReader; null for items that were not a JSON object
+     * @param packLoads Whether shipments of the same warehouse may share a truck
+     * @return Per-item results in request order, and the trucks to send for pickup
+     */
+    public BatchResult ingest(List<ShipmentCreatedMessage> items, boolean packLoads) {
+        long start = System.nanoTime();
+        BatchResult result;
+        try {
+            result = transactionTemplate.execute(status -> doIngest(items, packLoads));
+        } catch (DataIntegrityViolationException e) {
+            logger.warn("Batch of {} shipments raced a concurrent writer, retrying once: {}",
+                       items.size(), e.getMostSpecificCause().getMessage());
+            try {
+                result = transactionTemplate.execute(status -> doIngest(items, packLoads));
+            } catch (RuntimeException retryFailure) {
+                logger.error("Batch of {} shipments failed", items.size(), retryFailure);
+                result = BatchResult.failed(items, "Internal server error");
+            }
+        } catch (RuntimeException e) {
+            logger.error("Batch of {} shipments failed", items.size(), e);
+            result = BatchResult.failed(items, "Internal server error");
+        }
+
+        if (ingestTimer != null) {
+            ingestTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            createdCounter.increment(result.getCreatedCount());
+            rejectedCounter.increment(result.getItems().size() - result.getCreatedCount());
+        }
+        logger.info("Batch ingest: {} of {} shipments created in {} ms", result.getCreatedCount(),
+                   items.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return result;
+    }
+
+    private BatchResult doIngest(List<ShipmentCreatedMessage> items, boolean packLoads) {
+        ItemResult[] results = new ItemResult[items.size()];
+
+        // 1. Validate and de-duplicate within the batch
+        Map<String, Integer> accepted = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            ShipmentCreatedMessage item = items.get(i);
+            if (item == null) {
+                results[i] = ItemResult.error(i, null, 1001, "Shipment must be a JSON object");
+            } else if (!item.isValid()) {
+                results[i] = ItemResult.error(i, item.getShipmentId(), 1001,
+                    "Invalid fields: " + String.join("; ", item.getErrors()));
+            } else if (accepted.containsKey(item.getShipmentId())) {
+                results[i] = ItemResult.error(i, item.getShipmentId(), 1002,
+                    "Duplicate shipment in batch: " + item.getShipmentId());
+            } else {
+                accepted.put(item.getShipmentId(), i);
+            }
+        }
+
+        // 2. Drop shipments that already exist
+        if (!accepted.isEmpty()) {
+            for (String existing : shipmentRepository.findExistingShipmentIds(accepted.keySet())) {
+                int index = accepted.remove(existing);
+                results[index] = ItemResult.error(index, existing, 1002, "Shipment already exists: " + existing);
+            }
+        }
+
+        List<Shipment> shipments = new ArrayList<>(accepted.size());
+        List<Integer> indexes = new ArrayList<>(accepted.size());
+        List<Dispatch> dispatches = new ArrayList<>();
+        if (!accepted.isEmpty()) {
+            // 3. Resolve users
+            Map<String, User> users = resolveUsers(accepted.values(), items);
+
+            // 4. Claim trucks
+            Map<Integer, Truck> trucksByItem = claimTrucks(accepted.values(), items, packLoads, dispatches);
+
+            // 5. Build shipments for everything that got a truck
+            for (int index : accepted.values()) {
+                ShipmentCreatedMessage item = items.get(index);
+                Truck truck = trucksByItem.get(index);
+                if (truck == null) {
+                    results[index] = ItemResult.error(index, item.getShipmentId(), 2001, "No available trucks for pickup");
+                    continue;
+                }
+                Shipment shipment = new Shipment();
+                shipment.setShipmentId(item.getShipmentId());
+                shipment.setUser(users.get(item.getEmail()));
+                shipment.setWarehouseId(String.valueOf(item.getWarehouseId()));
+                shipment.setOriginX(0);
+                shipment.setOriginY(0);
+                shipment.setDestX(item.getDestinationX());
+                shipment.setDestY(item.getDestinationY());
+                shipment.setWeight(item.getWeight());
+                shipment.setStatus(ShipmentStatus.CREATED);
+                shipment.setTruck(truck);
+                shipments.add(shipment);
+                indexes.add(index);
+            }
+
+            // 6. Tracking numbers, ETA, insert
+            List<String> trackingNumbers = trackingService.generateTrackingNumbers(shipments.size());
+            for (int i = 0; i < shipments.size(); i++) {
+                Shipment shipment = shipments.get(i);
+                shipment.setUpsTrackingId(trackingNumbers.get(i));
+                if (etaService != null) {
+                    shipment.setEstimatedDelivery(etaService.estimate(shipment));
+                }
+            }
+            insertShipments(shipments);
+
+            for (int i = 0; i < shipments.size(); i++) {
+                Shipment shipment = shipments.get(i);
+                int index = indexes.get(i);
+                results[index] = ItemResult.created(index, shipment.getShipmentId(), shipment.getUpsTrackingId(),
+                    shipment.getTruck().getTruckId());
+            }
+            for (Dispatch dispatch : dispatches) {
+                dispatch.collect(shipments);
+            }
+            dispatches.removeIf(dispatch -> dispatch.getShipments().isEmpty());
+        }
+
+        return new BatchResult(Arrays.asList(results), dispatches);
+    }
+
+    /**
+     * Cached ids first, then one IN query for known users and one JDBC batch for the rest
+     */
+    private Map<String, User> resolveUsers(Collection<Integer> indexes, List<ShipmentCreatedMessage> items) {
+        Map<String, ShipmentCreatedMessage> byEmail = new LinkedHashMap<>();
+        for (int index : indexes) {
+            ShipmentCreatedMessage item = items.get(index);
+            byEmail.putIfAbsent(item.getEmail(), item);
+        }
+
+        Map<String, User> users = new HashMap<>();
+        long cacheGeneration = userIdCache != null ? userIdCache.currentGeneration() : 0;
+        if (userIdCache != null) {
+            userIdCache.getAll(byEmail.keySet()).forEach((email, id) ->
+                users.put(email, userRepository.getReferenceById(id)));
+        }
+        Set<String> unresolved = new LinkedHashSet<>(byEmail.keySet());
+        unresolved.removeAll(users.keySet());
+        if (unresolved.isEmpty()) {
+            return users;
+        }
+        Map<String, Long> looked = new HashMap<>();
+        for (User user : userRepository.findByEmailIn(unresolved)) {
+            users.put(user.getEmail(), user);
+            looked.put(user.getEmail(), user.getId());
+        }
+
+        List<ShipmentCreatedMessage> missing = new ArrayList<>();
+        for (ShipmentCreatedMessage item : byEmail.values()) {
+            if (!users.containsKey(item.getEmail())) {
+                missing.add(item);
+            }
+        }
+        if (!missing.isEmpty()) {
+            // Same statements and defaults as a user created by the single-shipment endpoint,
+            // so an email inserted concurrently is skipped rather than failing the batch
+            List<User> newUsers = new ArrayList<>(missing.size());
+            for (ShipmentCreatedMessage item : missing) {
+                User user = new User();
+                user.setUsername("amazon_user_" + item.getUserId());
+                user.setEmail(item.getEmail());
+                user.setPassword("temp_password");
+                user.setFirstName("Amazon User");
+                user.setLastName("Customer");
+                user.setRole(UserRole.USER);
+                user.setEnabled(true);
+                newUsers.add(user);
+            }
+            userRepository.insertAllIfAbsent(newUsers);
+            List<String> created = missing.stream().map(ShipmentCreatedMessage::getEmail).toList();
+            for (User user : userRepository.findByEmailIn(created)) {
+                users.put(user.getEmail(), user);
+                looked.put(user.getEmail(), user.getId());
+            }
+            logger.debug("Created {} users for shipment batch", missing.size());
+        }
+        if (userIdCache != null) {
+            userIdCache.putAll(looked, cacheGeneration);
+        }
+        return users;
+    }
+
+    /**
+     * Claim idle trucks for the accepted items, locking and updating them in bulk
+     *
+     * @return Item index -> claimed truck; items without a truck are absent
+     */
+    private Map<Integer, Truck> claimTrucks(Collection<Integer> indexes, List<ShipmentCreatedMessage> items,
+                                            boolean packLoads, List<Dispatch> dispatches) {
+        // Work in warehouse order so a packed truck only ever serves one warehouse
+        Map<Long, Deque<Integer>> byWarehouse = new LinkedHashMap<>();
+        for (int index : indexes) {
+            byWarehouse.computeIfAbsent(items.get(index).getWarehouseId(), id -> new ArrayDeque<>()).add(index);
+        }
+
+        Map<Integer, Truck> assigned = new HashMap<>();
+        int remaining = indexes.size();
+        boolean exhausted = false;
+        // More rounds only happen when trucks turn out smaller than the estimate
+        while (remaining > 0 && !exhausted) {
+            List<Dispatch> claimed = new ArrayList<>();
+            // SKIP LOCKED does not skip rows this transaction locked for an earlier warehouse
+            Set<Long> taken = new HashSet<>();
+            for (Map.Entry<Long, Deque<Integer>> group : byWarehouse.entrySet()) {
+                Deque<Integer> waiting = group.getValue();
+                if (waiting.isEmpty() || exhausted) {
+                    continue;
+                }
+                int requested = trucksNeeded(waiting, items, packLoads);
+                List<Truck> candidates = new ArrayList<>(requested);
+                for (Truck truck : lockIdleTrucks(group.getKey(), requested + taken.size())) {
+                    if (candidates.size() < requested && !taken.contains(truck.getId())) {
+                        candidates.add(truck);
+                    }
+                }
+                for (Truck truck : candidates) {
+                    taken.add(truck.getId());
+                }
+                if (candidates.size() < requested) {
+                    // No idle trucks left for later warehouses either
+                    exhausted = true;
+                }
+
+                Iterator<Truck> available = candidates.iterator();
+                while (!waiting.isEmpty() && available.hasNext()) {
+                    Dispatch dispatch = new Dispatch(available.next(), group.getKey());
+                    double load = 0;
+                    do {
+                        int index = waiting.peekFirst();
+                        double weight = weightOf(items.get(index));
+                        // An empty truck always takes the next shipment, even an oversized one
+                        if (!dispatch.itemIndexes.isEmpty() && load + weight > dispatch.truck.getCapacity()) {
+                            break;
+                        }
+                        waiting.pollFirst();
+                        dispatch.itemIndexes.add(index);
+                        load += weight;
+                    } while (packLoads && !waiting.isEmpty());
+                    dispatch.load = load;
+                    claimed.add(dispatch);
+                }
+            }
+            if (claimed.isEmpty()) {
+                break;
+            }
+
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            int[][] counts = jdbcTemplate.batchUpdate(CLAIM_UPDATE_SQL, claimed, jdbcBatchSize, (ps, dispatch) -> {
+                ps.setDouble(1, dispatch.load);
+                ps.setTimestamp(2, now);
+                ps.setLong(3, dispatch.truck.getId());
+            });
+            int position = 0;
+            for (int[] batch : counts) {
+                for (int count : batch) {
+                    Dispatch dispatch = claimed.get(position++);
+                    // Rows are locked by this transaction, so this only misses if the driver reports no count
+                    if (count == 0) {
+                        logger.warn("Truck {} was no longer idle when claimed", dispatch.truck.getTruckId());
+                        continue;
+                    }
+                    dispatch.truck.setStatus(TruckStatus.EN_ROUTE);
+                    dispatch.truck.setVersion(dispatch.truck.getVersion() + 1);
+                    for (int index : dispatch.itemIndexes) {
+                        assigned.put(index, dispatch.truck);
+                    }
+                    dispatches.add(dispatch);
+                }
+            }
+
+            remaining = 0;
+            for (Deque<Integer> waiting : byWarehouse.values()) {
+                remaining += waiting.size();
+            }
+        }
+        // Later rounds top up earlier warehouses; report dispatches grouped by warehouse
+        List<Long> warehouseOrder = new ArrayList<>(byWarehouse.keySet());
+        dispatches.sort(Comparator.comparingInt(dispatch -> warehouseOrder.indexOf(dispatch.warehouseId)));
+        return assigned;
+    }
+
+    /**
+     * Lock idle trucks for one warehouse, nearest first when its location is known
+     */
+    private List<Truck> lockIdleTrucks(Long warehouseId, int limit) {
+        RowMapper<Truck> mapper = (rs, rowNum) -> {
+            Truck truck = new Truck();
+            truck.setId(rs.getLong("id"));
+            truck.setTruckId(rs.getInt("truck_id"));
+            truck.setCurrentX(rs.getInt("current_x"));
+            truck.setCurrentY(rs.getInt("current_y"));
+            truck.setCapacity(rs.getInt("capacity"));
+            truck.setVersion(rs.getLong("version"));
+            return truck;
+        };
+        int[] location = rebalancingService != null && rebalancingService.isEnabled()
+            ? rebalancingService.getWarehouseLocation(String.valueOf(warehouseId)) : null;
+        if (location != null) {
+            return jdbcTemplate.query(CLAIM_NEAREST_SQL, mapper, location[0], location[1], limit);
+        }
+        return jdbcTemplate.query(CLAIM_SELECT_SQL, mapper, limit);
+    }
+
+    /**
+     * Trucks to lock for what one warehouse still has waiting, assuming default-size trucks when packing
+     */
+    private int trucksNeeded(Deque<Integer> waiting, List<ShipmentCreatedMessage> items, boolean packLoads) {
+        if (!packLoads) {
+            return waiting.size();
+        }
+        double weight = 0;
+        for (int index : waiting) {
+            weight += weightOf(items.get(index));
+        }
+        return Math.max(1, (int) Math.ceil(weight / DEFAULT_TRUCK_CAPACITY));
+    }
+
+    private double weightOf(ShipmentCreatedMessage item) {
+        BigDecimal weight = item.getWeight();
+        return weight != null && weight.signum() > 0 ? weight.doubleValue() : defaultWeight;
+    }
+
+    private void insertShipments(List<Shipment> shipments) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT_SHIPMENT_SQL, shipments, jdbcBatchSize, (ps, shipment) -> {
+            ps.setString(1, shipment.getShipmentId());
+            ps.setString(2, shipment.getUpsTrackingId());
+            ps.setString(3, shipment.getWarehouseId());
+            ps.setString(4, shipment.getStatus().name());
+            ps.setInt(5, shipment.getOriginX());
+            ps.setInt(6, shipment.getOriginY());
+            ps.setInt(7, shipment.getDestX());
+            ps.setInt(8, shipment.getDestY());
+            ps.setBigDecimal(9, shipment.getWeight());
+            if (shipment.getEstimatedDelivery() != null) {
+                ps.setTimestamp(10, Timestamp.valueOf(shipment.getEstimatedDelivery()));
+            } else {
+                ps.setNull(10, Types.TIMESTAMP);
+            }
+            ps.setLong(11, shipment.getUser().getId());
+            ps.setLong(12, shipment.getTruck().getId());
+            ps.setTimestamp(13, now);
+            ps.setTimestamp(14, now);
+        });
+    }
+
+    /**
+     * Outcome of one batch item
+     */
+    public static class ItemResult {
+        private final int index;
+        private final String shipmentId;
+        private final int code;
+        private final String message;
+        private final String trackingNumber;
+        private final Integer truckId;
+
+        private ItemResult(int index, String shipmentId, int code, String message, String trackingNumber, Integer truckId) {
+            this.index = index;
+            this.shipmentId = shipmentId;
+            this.code = code;
+            this.message = message;
+            this.trackingNumber = trackingNumber;
+            this.truckId = truckId;
+        }
+
+        static ItemResult created(int index, String shipmentId, String trackingNumber, Integer truckId) {
+            return new ItemResult(index, shipmentId, 200, "Shipment created successfully", trackingNumber, truckId);
+        }
+
+        static ItemResult error(int index, String shipmentId, int code, String message) {
+            return new ItemResult(index, shipmentId, code, message, null, null);
+        }
+
+        public boolean isCreated() {
+            return code == 200;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getShipmentId() {
+            return shipmentId;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getTrackingNumber() {
+            return trackingNumber;
+        }
+
+        public Integer getTruckId() {
+            return truckId;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("index", index);
+            map.put("shipment_id", shipmentId);
+            map.put("status", isCreated() ? "CREATED" : "REJECTED");
+            map.put("code", code);
+            map.put("message", message);
+            if (isCreated()) {
+                map.put("tracking_number", trackingNumber);
+                map.put("truck_id", truckId);
+            }
+            return map;
+        }
+    }
+
+    /**
+     * A claimed truck and the shipments it picks up at one warehouse
+     */
+    public static class Dispatch {
+        private final Truck truck;
+        private final Long warehouseId;
+        private final List<Integer> itemIndexes = new ArrayList<>();
+        private final List<Shipment> shipments = new ArrayList<>();
+        private double load;
+
+        Dispatch(Truck truck, Long warehouseId) {
+            this.truck = truck;
+            this.warehouseId = warehouseId;
+        }
+
+        void collect(List<Shipment> created) {
+            for (Shipment shipment : created) {
+                if (shipment.getTruck() == truck) {
+                    shipments.add(shipment);
+                }
+            }
+        }
+
+        public Truck getTruck() {
+            return truck;
+        }
+
+        public Long getWarehouseId() {
+            return warehouseId;
+        }
+
+        public List<Shipment> getShipments() {
+            return shipments;
+        }
+    }
+
+    /**
+     * Per-item results plus the pickups to send once the batch is committed
+     */
+    public static class BatchResult {
+        private final List<ItemResult> items;
+        private final List<Dispatch> dispatches;
+
+        BatchResult(List<ItemResult> items, List<Dispatch> dispatches) {
+            this.items = items;
+            this.dispatches = dispatches;
+        }
+
+        static BatchResult failed(List<ShipmentCreatedMessage> items, String message) {
+            List<ItemResult> results = new ArrayList<>(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                ShipmentCreatedMessage item = items.get(i);
+                results.add(ItemResult.error(i, item != null ? item.getShipmentId() : null, 3000, message));
+            }
+            return new BatchResult(results, Collections.emptyList());
+        }
+
+        public List<ItemResult> getItems() {
+            return items;
+        }
+
+        public List<Dispatch> getDispatches() {
+            return dispatches;
+        }
+
+        public int getCreatedCount() {
+            int created = 0;
+            for (ItemResult item : items) {
+                if (item.isCreated()) {
+                    created++;
+                }
+            }
+            return created;
+        }
+    }
+}
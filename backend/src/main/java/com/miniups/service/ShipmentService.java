@@ -111,6 +111,7 @@ public class ShipmentService {
             
             // 5. Save shipment
             Shipment savedShipment = shipmentRepository.save(shipment);
+            truckManagementService.trackAssignment(savedShipment);
             
             // 6. Record status history
             trackingService.updateShipmentStatus(trackingNumber, savedShipment.getStatus(), "Shipment created");
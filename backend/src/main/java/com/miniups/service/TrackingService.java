@@ -29,6 +29,7 @@ import com.miniups.repository.ShipmentRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
@@ -37,9 +38,12 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 @Service
@@ -54,6 +58,10 @@ public class TrackingService {
     @Autowired
     private ShipmentRepository shipmentRepository;
     
+    @Lazy
+    @Autowired(required = false)
+    private EtaService etaService;
+    
     private final Random random = new Random();
     private final AtomicLong sequenceCounter = new AtomicLong(0);
     
@@ -86,7 +94,48 @@ public class TrackingService {
         logger.warn("Used fallback tracking number generation: {}", fallbackNumber);
         return fallbackNumber;
     }
-    
+
+    /**
+     * Allocate a block of unique tracking numbers at once
+     *
+     * The block takes consecutive sequence numbers and is checked against the
+     * database with one query per attempt instead of one query per number.
+     *
+     * @param count Number of tracking numbers needed
+     * @return Unique tracking numbers, in allocation order
+     */
+    public synchronized List<String> generateTrackingNumbers(int count) {
+        Set<String> block = new LinkedHashSet<>();
+        int attempts = 0;
+
+        while (block.size() < count && attempts < MAX_RETRY_ATTEMPTS) {
+            Set<String> candidates = new LinkedHashSet<>();
+            int needed = count - block.size();
+            for (int i = 0; i < needed; i++) {
+                String candidate = createTrackingNumber();
+                if (!block.contains(candidate)) {
+                    candidates.add(candidate);
+                }
+            }
+
+            List<String> taken = shipmentRepository.findExistingUpsTrackingIds(candidates);
+            if (!taken.isEmpty()) {
+                logger.warn("Tracking number collisions in block, attempt {}: {}", attempts + 1, taken.size());
+                taken.forEach(candidates::remove);
+            }
+            block.addAll(candidates);
+            attempts++;
+        }
+
+        // Same fallback as single generation for whatever is still missing
+        while (block.size() < count) {
+            block.add(createTrackingNumber() + String.format("%04d", System.nanoTime() % 10000));
+        }
+
+        logger.info("Generated block of {} tracking numbers", count);
+        return new ArrayList<>(block);
+    }
+
     /**
      * Query package information by tracking number
      * 
@@ -157,6 +206,11 @@ public class TrackingService {
             
             shipmentRepository.save(shipment);
             
+            // Cancelled and returned shipments are never delivered; drop their live route
+            if (etaService != null && (newStatus == ShipmentStatus.CANCELLED || newStatus == ShipmentStatus.RETURNED)) {
+                etaService.onClosed(shipment);
+            }
+            
             logger.info("Updated shipment {} status from {} to {}", 
                        trackingNumber, oldStatus, newStatus);
             
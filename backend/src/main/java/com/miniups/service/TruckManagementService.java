@@ -31,12 +31,21 @@ import com.miniups.repository.TruckRepository;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -57,12 +66,36 @@ public class TruckManagementService {
     @Autowired
     private com.miniups.repository.DriverRepository driverRepository;
     
+    @Autowired(required = false)
+    private TruckReservationTable reservationTable;
+    
+    @Autowired(required = false)
+    private RegionalDispatchService regionalDispatchService;
+    
+    @Autowired(required = false)
+    private TruckRebalancingService rebalancingService;
+    
     @Autowired(required = false)
     private WorldSimulatorService worldSimulatorService;
     
     @Autowired(required = false)
     private com.miniups.network.netty.service.NettyWorldSimulatorService nettyWorldSimulatorService;
     
+    @Autowired(required = false)
+    private PlatformTransactionManager transactionManager;
+    
+    // Moves shipments off revoked in-memory assignments; never runs on a flush or dispatcher thread
+    private final ExecutorService reassignExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "truck-reassign");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    @PreDestroy
+    public void stop() {
+        reassignExecutor.shutdown();
+    }
+    
     /**
      * Helper method to check if any world simulator is connected.
      */
@@ -96,6 +129,16 @@ public class TruckManagementService {
      * @return Assigned truck, null if no available trucks
      */
     public Truck assignOptimalTruck(Integer originX, Integer originY, Integer priority) {
+        // Single-writer path: the dispatcher of the pickup's region decides
+        if (regionalDispatchService != null && regionalDispatchService.isEnabled()) {
+            return doAssignOptimalTruckRegional(originX, originY);
+        }
+        
+        // Lock-free path: reserve in memory, the table persists and reconciles asynchronously
+        if (reservationTable != null && reservationTable.isEnabled()) {
+            return doAssignOptimalTruckReserved(originX, originY);
+        }
+        
         // Try atomic assignment first
         Truck truck = doAssignOptimalTruckAtomic(originX, originY, priority);
         if (truck != null) {
@@ -106,6 +149,55 @@ public class TruckManagementService {
         return doAssignOptimalTruckPessimistic(originX, originY, priority);
     }
     
+    /**
+     * Truck assignment through the region dispatcher that owns the pickup location.
+     * Like the reservation path, the returned truck is a detached snapshot and its
+     * status change is written by the dispatcher's batched flush.
+     */
+    private Truck doAssignOptimalTruckRegional(Integer originX, Integer originY) {
+        TruckReservationTable.Reservation reservation = regionalDispatchService.assignNearest(originX, originY);
+        if (reservation == null) {
+            logger.debug("No idle trucks in any region for ({}, {})", originX, originY);
+            return null;
+        }
+        
+        reservation.getPersisted().thenAccept(persisted -> {
+            if (!persisted) {
+                // The shipment holding it is moved by trackAssignment
+                logger.warn("Regional assignment of truck {} for pickup at ({}, {}) was revoked during reconciliation",
+                           reservation.getTruckId(), originX, originY);
+            }
+        });
+        
+        logger.info("Region dispatcher assigned truck {} for pickup at ({}, {})",
+                   reservation.getTruckId(), originX, originY);
+        return reservation.toTruck();
+    }
+    
+    /**
+     * Truck assignment through the in-process reservation table.
+     * No row lock is taken; the returned truck is a detached snapshot whose status
+     * change is written by the table's batched flush.
+     */
+    private Truck doAssignOptimalTruckReserved(Integer originX, Integer originY) {
+        TruckReservationTable.Reservation reservation = reservationTable.reserveNearest(originX, originY);
+        if (reservation == null) {
+            logger.debug("No free trucks in reservation table for ({}, {})", originX, originY);
+            return null;
+        }
+        
+        reservation.getPersisted().thenAccept(persisted -> {
+            if (!persisted) {
+                // The shipment holding it is moved by trackAssignment
+                logger.warn("Reservation of truck {} for pickup at ({}, {}) was revoked during reconciliation",
+                           reservation.getTruckId(), originX, originY);
+            }
+        });
+        
+        logger.info("Reserved truck {} for pickup at ({}, {})", reservation.getTruckId(), originX, originY);
+        return reservation.toTruck();
+    }
+    
     /**
      * High-performance atomic truck assignment using database-level locking
      * This method provides the best concurrency performance by avoiding application-level locks
@@ -189,6 +281,68 @@ public class TruckManagementService {
         return null;
     }
     
+    /**
+     * Assign a truck for a pickup at a warehouse.
+     * Prefers the nearest idle truck once the rebalancer has learned where the
+     * warehouse is, so pre-positioned trucks are picked first.
+     * 
+     * @param warehouseId Amazon warehouse ID
+     * @return Assigned truck, null if no available trucks
+     */
+    @Transactional
+    public Truck assignTruckForWarehouse(String warehouseId) {
+        if (rebalancingService != null && rebalancingService.isEnabled()) {
+            int[] location = rebalancingService.getWarehouseLocation(warehouseId);
+            if (location != null) {
+                return assignOptimalTruck(location[0], location[1], 1);
+            }
+        }
+        return assignAnyAvailableTruck();
+    }
+    
+    /**
+     * Reconcile a shipment's truck assignment once the shipment is saved.
+     * Trucks from the reservation table and the region dispatchers are written to the
+     * database after they are handed out; if that write is revoked because another writer
+     * took the truck first, the shipment is moved to another truck once the caller's
+     * transaction has committed, or back to CREATED without a truck if none is free.
+     * 
+     * @param shipment Saved shipment holding the assigned truck
+     * @param onReassigned Called with the shipment after it moved to another truck, e.g. to
+     *                     send the new truck for pickup; may be null
+     */
+    public void trackAssignment(Shipment shipment, Consumer<Shipment> onReassigned) {
+        Truck truck = shipment.getTruck();
+        CompletableFuture<Boolean> persisted = truck != null ? truck.getPendingAssignment() : null;
+        if (persisted == null || shipment.getId() == null || Boolean.TRUE.equals(persisted.getNow(null))) {
+            return;
+        }
+        Long shipmentDbId = shipment.getId();
+        Long truckDbId = truck.getId();
+        // A fresh snapshot starts empty, so its load is what this assignment charged
+        double chargedLoad = truck.getCurrentLoad() != null ? truck.getCurrentLoad() : 0.0;
+        
+        Runnable watch = () -> persisted.thenAcceptAsync(written -> {
+            if (!written) {
+                reassignRevoked(shipmentDbId, truckDbId, chargedLoad, onReassigned);
+            }
+        }, reassignExecutor);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    watch.run();
+                }
+            });
+        } else {
+            watch.run();
+        }
+    }
+    
+    public void trackAssignment(Shipment shipment) {
+        trackAssignment(shipment, null);
+    }
+    
     /**
      * Get real-time status of all trucks
      * 
@@ -319,6 +473,13 @@ public class TruckManagementService {
             Truck truck = truckOpt.get();
             truck.setStatus(TruckStatus.IDLE);
             truckRepository.save(truck);
+            truckRepository.resetLoad(truck.getId());
+            if (reservationTable != null) {
+                reservationTable.release(truck.getId());
+            }
+            if (regionalDispatchService != null) {
+                regionalDispatchService.release(truck);
+            }
             
             logger.info("Released truck {} back to idle status", truckId);
             return true;
@@ -389,6 +550,58 @@ public class TruckManagementService {
             .orElse(null);
     }
     
+    private void reassignRevoked(Long shipmentDbId, Long truckDbId, double chargedLoad,
+                                 Consumer<Shipment> onReassigned) {
+        try {
+            Shipment moved = transactionManager != null
+                ? new TransactionTemplate(transactionManager).execute(
+                    status -> moveOffRevokedTruck(shipmentDbId, truckDbId, chargedLoad))
+                : moveOffRevokedTruck(shipmentDbId, truckDbId, chargedLoad);
+            if (moved != null && moved.getTruck() != null && onReassigned != null) {
+                onReassigned.accept(moved);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to move shipment {} off revoked truck {}", shipmentDbId, truckDbId, e);
+        }
+    }
+    
+    /**
+     * @return The shipment after it was moved, null if it no longer waits on the revoked truck
+     */
+    private Shipment moveOffRevokedTruck(Long shipmentDbId, Long truckDbId, double chargedLoad) {
+        Shipment shipment = shipmentRepository.findById(shipmentDbId).orElse(null);
+        if (shipment == null || shipment.getTruck() == null || !truckDbId.equals(shipment.getTruck().getId())
+            || (shipment.getStatus() != ShipmentStatus.CREATED && shipment.getStatus() != ShipmentStatus.TRUCK_DISPATCHED)) {
+            return null;
+        }
+        if (chargedLoad > 0) {
+            truckRepository.releaseLoad(truckDbId, chargedLoad);
+        }
+        
+        Truck replacement = shipment.getWarehouseId() != null
+            ? assignTruckForWarehouse(shipment.getWarehouseId())
+            : assignOptimalTruck(shipment.getOriginX(), shipment.getOriginY(), 1);
+        if (replacement != null) {
+            if (chargedLoad > 0) {
+                truckRepository.tryAddLoad(replacement.getId(), chargedLoad);
+            }
+            shipment.setTruck(replacement);
+            logger.warn("Moved shipment {} from revoked truck assignment {} to truck {}",
+                       shipment.getShipmentId(), truckDbId, replacement.getTruckId());
+        } else {
+            shipment.setTruck(null);
+            shipment.setStatus(ShipmentStatus.CREATED);
+            logger.warn("Cleared revoked truck assignment {} from shipment {}, no other truck is free",
+                       truckDbId, shipment.getShipmentId());
+        }
+        Shipment saved = shipmentRepository.save(shipment);
+        if (replacement != null) {
+            // The replacement may itself be an in-memory assignment
+            trackAssignment(saved);
+        }
+        return saved;
+    }
+    
     private double calculateDistance(Integer x1, Integer y1, Integer x2, Integer y2) {
         if (x1 == null || y1 == null || x2 == null || y2 == null) {
             return Double.MAX_VALUE;
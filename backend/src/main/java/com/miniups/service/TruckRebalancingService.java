@@ -0,0 +1,499 @@
+/**
+ * Truck Rebalancing Service
+ *
+ * Functionality:
+ * - Keeps a rolling shipment demand rate per warehouse
+ * - Periodically pre-positions idle trucks at high-demand warehouses
+ * - Measures pickup latency from shipment creation to truck arrival
+ *
+ * Demand Model:
+ * - Each shipment creation adds one event to its warehouse's counter
+ * - Counters decay exponentially with a configurable half-life, so the rate
+ *   follows recent demand without keeping per-event history
+ *
+ * Warehouse Locations:
+ * - Amazon only sends warehouse ids, so coordinates are learned from
+ *   "arrive warehouse" completions reported by the World Simulator
+ *
+ * Repositioning:
+ * - Trucks are moved with a UGoPickup to the target warehouse and stay IDLE,
+ *   so a repositioning truck remains assignable at all times
+ * - Moves per cycle, trucks per warehouse and move distance are bounded by configuration
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import com.miniups.model.entity.Truck;
+import com.miniups.model.enums.TruckStatus;
+import com.miniups.repository.TruckRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class TruckRebalancingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TruckRebalancingService.class);
+
+    private final TruckRepository truckRepository;
+
+    @Autowired(required = false)
+    private WorldSimulatorService worldSimulatorService;
+
+    @Autowired(required = false)
+    private com.miniups.network.netty.service.NettyWorldSimulatorService nettyWorldSimulatorService;
+
+    @Value("${app.dispatch.rebalancer.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.dispatch.rebalancer.demand-half-life-seconds:300}")
+    private long demandHalfLifeSeconds = 300;
+
+    @Value("${app.dispatch.rebalancer.lookahead-seconds:120}")
+    private long lookaheadSeconds = 120;
+
+    @Value("${app.dispatch.rebalancer.min-demand-per-minute:0.5}")
+    private double minDemandPerMinute = 0.5;
+
+    @Value("${app.dispatch.rebalancer.max-moves-per-cycle:5}")
+    private int maxMovesPerCycle = 5;
+
+    @Value("${app.dispatch.rebalancer.max-trucks-per-warehouse:3}")
+    private int maxTrucksPerWarehouse = 3;
+
+    @Value("${app.dispatch.rebalancer.max-move-distance:0}")
+    private int maxMoveDistance = 0;
+
+    @Value("${app.dispatch.rebalancer.arrival-radius:2}")
+    private int arrivalRadius = 2;
+
+    @Value("${app.dispatch.rebalancer.move-timeout-seconds:600}")
+    private long moveTimeoutSeconds = 600;
+
+    private final Map<String, DemandCounter> demand = new ConcurrentHashMap<>();
+    private final Map<String, int[]> warehouseLocations = new ConcurrentHashMap<>();
+    private final Map<Integer, Move> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong movesIssued = new AtomicLong();
+    private final AtomicLong movesCompleted = new AtomicLong();
+    private final AtomicLong pickupCount = new AtomicLong();
+    private final AtomicLong pickupLatencyTotalMs = new AtomicLong();
+    private final Counter movesCounter;
+    private final Timer pickupLatencyTimer;
+
+    public TruckRebalancingService(TruckRepository truckRepository,
+                                   @Autowired(required = false) MeterRegistry meterRegistry) {
+        this.truckRepository = truckRepository;
+
+        if (meterRegistry != null) {
+            this.movesCounter = Counter.builder("ups.rebalancer.moves")
+                .description("Idle trucks sent to pre-position at a warehouse")
+                .register(meterRegistry);
+            this.pickupLatencyTimer = Timer.builder("ups.dispatch.pickup_latency")
+                .description("Time from shipment creation to truck arrival at the warehouse")
+                .register(meterRegistry);
+            meterRegistry.gauge("ups.rebalancer.in_flight", inFlight, Map::size);
+        } else {
+            this.movesCounter = null;
+            this.pickupLatencyTimer = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record one shipment created at a warehouse
+     */
+    public void recordDemand(String warehouseId) {
+        recordDemand(warehouseId, System.currentTimeMillis());
+    }
+
+    void recordDemand(String warehouseId, long nowMillis) {
+        if (warehouseId == null) {
+            return;
+        }
+        demand.computeIfAbsent(warehouseId, id -> new DemandCounter()).add(nowMillis, halfLifeMillis());
+    }
+
+    /**
+     * Remember where a warehouse is, learned from a truck arriving there
+     */
+    public void recordWarehouseLocation(String warehouseId, int x, int y) {
+        if (warehouseId == null || !isNumeric(warehouseId)) {
+            return;
+        }
+        warehouseLocations.put(warehouseId, new int[]{x, y});
+    }
+
+    /**
+     * @return Known warehouse location, null if no truck has arrived there yet
+     */
+    public int[] getWarehouseLocation(String warehouseId) {
+        return warehouseId != null ? warehouseLocations.get(warehouseId) : null;
+    }
+
+    /**
+     * Record the pickup latency of a shipment whose truck just arrived at the warehouse
+     */
+    public void recordPickupLatency(LocalDateTime shipmentCreatedAt) {
+        if (shipmentCreatedAt == null) {
+            return;
+        }
+        Duration latency = Duration.between(shipmentCreatedAt, LocalDateTime.now());
+        if (latency.isNegative()) {
+            return;
+        }
+        pickupCount.incrementAndGet();
+        pickupLatencyTotalMs.addAndGet(latency.toMillis());
+        if (pickupLatencyTimer != null) {
+            pickupLatencyTimer.record(latency);
+        }
+    }
+
+    /**
+     * Handle a truck reporting arrival at a warehouse.
+     *
+     * @return true if the arrival completes a repositioning move, in which case the
+     *         truck should stay IDLE and no pickup notification should be sent
+     */
+    public boolean onTruckArrived(Truck truck, int x, int y) {
+        if (truck == null) {
+            return false;
+        }
+        Move move = inFlight.remove(truck.getTruckId());
+        if (move == null || truck.getStatus() != TruckStatus.IDLE) {
+            // Either not ours, or the truck was assigned to a shipment while repositioning
+            return false;
+        }
+        movesCompleted.incrementAndGet();
+        recordWarehouseLocation(move.warehouseId, x, y);
+        logger.info("Truck {} pre-positioned at warehouse {} ({}, {})", truck.getTruckId(), move.warehouseId, x, y);
+        return true;
+    }
+
+    /**
+     * Periodically send idle trucks toward warehouses with unmet demand
+     */
+    @Scheduled(fixedDelayString = "${app.dispatch.rebalancer.interval-ms:10000}")
+    public void scheduledRebalance() {
+        if (enabled && isWorldSimulatorConnected()) {
+            rebalance();
+        }
+    }
+
+    /**
+     * Run one rebalancing cycle
+     *
+     * @return Number of repositioning moves issued
+     */
+    public int rebalance() {
+        return rebalance(System.currentTimeMillis());
+    }
+
+    int rebalance(long now) {
+        try {
+            List<Truck> idleTrucks = truckRepository.findByStatus(TruckStatus.IDLE);
+            expireInFlight(idleTrucks, now);
+
+            List<Move> moves = planMoves(idleTrucks, now);
+            for (Move move : moves) {
+                issueMove(move, now);
+            }
+            if (!moves.isEmpty()) {
+                logger.info("Rebalancer issued {} repositioning moves ({} idle trucks, {} in flight)",
+                           moves.size(), idleTrucks.size(), inFlight.size());
+            }
+            return moves.size();
+        } catch (Exception e) {
+            logger.error("Error rebalancing idle trucks", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Plan repositioning moves for the given idle trucks.
+     *
+     * Each warehouse with known location and enough demand gets a target number of
+     * nearby idle trucks, proportional to the demand expected over the lookahead window.
+     * Warehouses are served in order of demand, each taking the nearest truck that is
+     * not already covering another warehouse's target.
+     *
+     * @param idleTrucks Idle trucks with current positions
+     * @param nowMillis Current time, used to decay demand counters
+     * @return Moves to issue, never more than the configured moves per cycle
+     */
+    public List<Move> planMoves(List<Truck> idleTrucks, long nowMillis) {
+        List<String> warehouses = new ArrayList<>();
+        Map<String, Integer> targets = new HashMap<>();
+        for (Map.Entry<String, DemandCounter> entry : demand.entrySet()) {
+            String warehouseId = entry.getKey();
+            double perMinute = demandPerMinute(entry.getValue(), nowMillis);
+            if (perMinute < minDemandPerMinute || !warehouseLocations.containsKey(warehouseId)) {
+                continue;
+            }
+            int expected = (int) Math.ceil(perMinute * lookaheadSeconds / 60.0);
+            targets.put(warehouseId, Math.max(1, Math.min(maxTrucksPerWarehouse, expected)));
+            warehouses.add(warehouseId);
+        }
+        if (warehouses.isEmpty() || idleTrucks.isEmpty()) {
+            return List.of();
+        }
+        warehouses.sort(Comparator.comparingDouble((String id) -> -demandPerMinute(demand.get(id), nowMillis))
+            .thenComparing(id -> id));
+
+        // Count trucks already parked at or heading to each warehouse
+        Map<String, Integer> covered = new HashMap<>();
+        Map<Integer, String> anchors = new HashMap<>();
+        for (Truck truck : idleTrucks) {
+            Move move = inFlight.get(truck.getTruckId());
+            String anchor = move != null ? move.warehouseId : nearestWarehouseWithin(truck, arrivalRadius);
+            if (anchor != null) {
+                anchors.put(truck.getTruckId(), anchor);
+                covered.merge(anchor, 1, Integer::sum);
+            }
+        }
+
+        List<Move> moves = new ArrayList<>();
+        Set<Integer> taken = new HashSet<>();
+        for (String warehouseId : warehouses) {
+            int[] location = warehouseLocations.get(warehouseId);
+            int deficit = targets.get(warehouseId) - covered.getOrDefault(warehouseId, 0);
+
+            while (deficit > 0 && moves.size() < maxMovesPerCycle) {
+                Truck donor = null;
+                int bestDistance = Integer.MAX_VALUE;
+                for (Truck truck : idleTrucks) {
+                    if (taken.contains(truck.getTruckId()) || !canDonate(truck, anchors, covered, targets)) {
+                        continue;
+                    }
+                    int distance = distance(truck, location);
+                    if (maxMoveDistance > 0 && distance > maxMoveDistance) {
+                        continue;
+                    }
+                    if (distance < bestDistance
+                        || (distance == bestDistance && donor != null && truck.getTruckId() < donor.getTruckId())) {
+                        donor = truck;
+                        bestDistance = distance;
+                    }
+                }
+                if (donor == null) {
+                    break;
+                }
+
+                String previous = anchors.get(donor.getTruckId());
+                if (previous != null) {
+                    covered.merge(previous, -1, Integer::sum);
+                }
+                taken.add(donor.getTruckId());
+                covered.merge(warehouseId, 1, Integer::sum);
+                moves.add(new Move(donor.getTruckId(), warehouseId, location[0], location[1], nowMillis));
+                deficit--;
+            }
+            if (moves.size() >= maxMovesPerCycle) {
+                break;
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Get rebalancer statistics
+     */
+    public Map<String, Object> getStatistics() {
+        long now = System.currentTimeMillis();
+        Map<String, Double> rates = new TreeMap<>();
+        demand.forEach((id, counter) -> rates.put(id, Math.round(demandPerMinute(counter, now) * 100.0) / 100.0));
+
+        long pickups = pickupCount.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("demand_per_minute", rates);
+        stats.put("known_warehouses", warehouseLocations.size());
+        stats.put("moves_issued", movesIssued.get());
+        stats.put("moves_completed", movesCompleted.get());
+        stats.put("in_flight", inFlight.size());
+        stats.put("mean_pickup_latency_ms", pickups > 0 ? pickupLatencyTotalMs.get() / pickups : 0L);
+        return stats;
+    }
+
+    /**
+     * @return Current demand rate of a warehouse in shipments per minute
+     */
+    public double getDemandPerMinute(String warehouseId, long nowMillis) {
+        DemandCounter counter = demand.get(warehouseId);
+        return counter != null ? demandPerMinute(counter, nowMillis) : 0.0;
+    }
+
+    // Private helper methods
+
+    private void issueMove(Move move, long nowMillis) {
+        inFlight.put(move.truckId, move);
+        movesIssued.incrementAndGet();
+        if (movesCounter != null) {
+            movesCounter.increment();
+        }
+
+        sendTruckToPickup(move.truckId, Integer.valueOf(move.warehouseId))
+            .thenAccept(success -> {
+                if (!success) {
+                    inFlight.remove(move.truckId, move);
+                    logger.warn("Failed to reposition truck {} to warehouse {}", move.truckId, move.warehouseId);
+                }
+            })
+            .exceptionally(throwable -> {
+                inFlight.remove(move.truckId, move);
+                logger.error("Error repositioning truck {}", move.truckId, throwable);
+                return null;
+            });
+    }
+
+    /**
+     * Drop moves whose truck was assigned meanwhile or that never reported arrival
+     */
+    private void expireInFlight(List<Truck> idleTrucks, long nowMillis) {
+        Set<Integer> idleIds = new HashSet<>();
+        for (Truck truck : idleTrucks) {
+            idleIds.add(truck.getTruckId());
+        }
+        long timeoutMillis = moveTimeoutSeconds * 1000L;
+        inFlight.values().removeIf(move ->
+            !idleIds.contains(move.truckId) || nowMillis - move.issuedAtMillis > timeoutMillis);
+    }
+
+    private boolean canDonate(Truck truck, Map<Integer, String> anchors,
+                              Map<String, Integer> covered, Map<String, Integer> targets) {
+        String anchor = anchors.get(truck.getTruckId());
+        if (anchor == null) {
+            return true;
+        }
+        // A truck may leave a warehouse only if that warehouse has more than it needs
+        Integer target = targets.get(anchor);
+        return target == null || covered.getOrDefault(anchor, 0) > target;
+    }
+
+    private String nearestWarehouseWithin(Truck truck, int radius) {
+        String nearest = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for (Map.Entry<String, int[]> entry : warehouseLocations.entrySet()) {
+            int distance = distance(truck, entry.getValue());
+            if (distance <= radius && distance < bestDistance) {
+                nearest = entry.getKey();
+                bestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    private int distance(Truck truck, int[] location) {
+        int x = truck.getCurrentX() != null ? truck.getCurrentX() : 0;
+        int y = truck.getCurrentY() != null ? truck.getCurrentY() : 0;
+        return Math.abs(x - location[0]) + Math.abs(y - location[1]);
+    }
+
+    private double demandPerMinute(DemandCounter counter, long nowMillis) {
+        // A decayed count with half-life h approximates rate * h / ln 2
+        double halfLifeMinutes = halfLifeMillis() / 60000.0;
+        return counter.valueAt(nowMillis, halfLifeMillis()) * Math.log(2) / halfLifeMinutes;
+    }
+
+    private long halfLifeMillis() {
+        return Math.max(1L, demandHalfLifeSeconds) * 1000L;
+    }
+
+    private boolean isNumeric(String value) {
+        return !value.isEmpty() && value.chars().allMatch(Character::isDigit);
+    }
+
+    private boolean isWorldSimulatorConnected() {
+        if (worldSimulatorService != null) {
+            return worldSimulatorService.isConnected();
+        } else if (nettyWorldSimulatorService != null) {
+            return nettyWorldSimulatorService.isConnected();
+        }
+        return false;
+    }
+
+    private CompletableFuture<Boolean> sendTruckToPickup(Integer truckId, Integer warehouseId) {
+        if (worldSimulatorService != null) {
+            return worldSimulatorService.sendTruckToPickup(truckId, warehouseId);
+        } else if (nettyWorldSimulatorService != null) {
+            return nettyWorldSimulatorService.sendTruckToPickup(truckId, warehouseId);
+        }
+        return CompletableFuture.completedFuture(false);
+    }
+
+    /**
+     * Exponentially decaying event counter
+     */
+    private static class DemandCounter {
+        private double value;
+        private long updatedAt;
+
+        synchronized void add(long nowMillis, long halfLifeMillis) {
+            value = decayed(nowMillis, halfLifeMillis) + 1.0;
+            updatedAt = nowMillis;
+        }
+
+        synchronized double valueAt(long nowMillis, long halfLifeMillis) {
+            return decayed(nowMillis, halfLifeMillis);
+        }
+
+        private double decayed(long nowMillis, long halfLifeMillis) {
+            long elapsed = Math.max(0L, nowMillis - updatedAt);
+            return value * Math.pow(0.5, (double) elapsed / halfLifeMillis);
+        }
+    }
+
+    /**
+     * One idle truck sent to pre-position at a warehouse
+     */
+    public static class Move {
+        private final Integer truckId;
+        private final String warehouseId;
+        private final int targetX;
+        private final int targetY;
+        private final long issuedAtMillis;
+
+        public Move(Integer truckId, String warehouseId, int targetX, int targetY, long issuedAtMillis) {
+            this.truckId = truckId;
+            this.warehouseId = warehouseId;
+            this.targetX = targetX;
+            this.targetY = targetY;
+            this.issuedAtMillis = issuedAtMillis;
+        }
+
+        public Integer getTruckId() {
+            return truckId;
+        }
+
+        public String getWarehouseId() {
+            return warehouseId;
+        }
+
+        public int getTargetX() {
+            return targetX;
+        }
+
+        public int getTargetY() {
+            return targetY;
+        }
+    }
+}
@@ -0,0 +1,474 @@
+/**
+ * Truck Reservation Table
+ *
+ * Functionality:
+ * - In-process reservation of idle trucks without taking a database row lock
+ * - Each truck has one atomic state word; a reservation is a single CAS on it
+ * - Reservations are persisted asynchronously in JDBC batches and reconciled
+ *   against the database with an optimistic version check
+ *
+ * State Word Layout:
+ * - Low 2 bits: state (FREE, RESERVED, BUSY)
+ * - Remaining bits: stamp, incremented on every transition so a stale
+ *   reader can never CAS a slot that has been reserved and freed again (ABA)
+ *
+ * Reconciliation:
+ * - Batch UPDATE ... WHERE id = ? AND version = ? AND status = 'IDLE'
+ * - Version moved but truck still idle (e.g. a position update): retry with the new version
+ * - Truck no longer idle: another writer won, the reservation is revoked and its future completes false;
+ *   TruckManagementService.trackAssignment moves the shipment holding it to another truck
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import com.miniups.model.entity.Truck;
+import com.miniups.model.enums.TruckStatus;
+import com.miniups.repository.TruckRepository;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Component
+public class TruckReservationTable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TruckReservationTable.class);
+
+    static final int FREE = 0;
+    static final int RESERVED = 1;
+    static final int BUSY = 2;
+
+    private static final String PERSIST_SQL = """
+        UPDATE trucks SET status = 'EN_ROUTE', version = version + 1, updated_at = ?
+        WHERE id = ? AND version = ? AND status = 'IDLE'
+        """;
+
+    private static final String RECONCILE_SQL = "SELECT status, version FROM trucks WHERE id = ?";
+
+    private final TruckRepository truckRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.dispatch.reservation.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.dispatch.reservation.batch-size:200}")
+    private int batchSize = 200;
+
+    @Value("${app.dispatch.reservation.max-reconcile-attempts:3}")
+    private int maxReconcileAttempts = 3;
+
+    @Value("${app.dispatch.reservation.refresh-interval-ms:1000}")
+    private long refreshIntervalMs = 1000;
+
+    private final AtomicLong lastRefresh = new AtomicLong();
+
+    private final Map<Long, Slot> slots = new ConcurrentHashMap<>();
+    private final Queue<PendingReservation> pending = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // Metrics
+    private final AtomicLong reservations = new AtomicLong();
+    private final AtomicLong casFailures = new AtomicLong();
+    private final AtomicLong persisted = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+
+    public TruckReservationTable(TruckRepository truckRepository,
+                                 JdbcTemplate jdbcTemplate,
+                                 @Autowired(required = false) MeterRegistry meterRegistry) {
+        this.truckRepository = truckRepository;
+        this.jdbcTemplate = jdbcTemplate;
+
+        if (meterRegistry != null) {
+            meterRegistry.gauge("ups.reservation.pending", pending, Queue::size);
+            FunctionCounter.builder("ups.reservation.reserved", reservations, AtomicLong::get)
+                .description("Trucks reserved in memory")
+                .register(meterRegistry);
+            FunctionCounter.builder("ups.reservation.cas_failures", casFailures, AtomicLong::get)
+                .description("Reservation attempts that lost a CAS race")
+                .register(meterRegistry);
+            FunctionCounter.builder("ups.reservation.conflicts", conflicts, AtomicLong::get)
+                .description("Reservations revoked because another writer took the truck")
+                .register(meterRegistry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reserve the nearest free truck without touching the database.
+     *
+     * @param originX Pickup X coordinate
+     * @param originY Pickup Y coordinate
+     * @return Reservation handle, null if no free truck is known
+     */
+    public Reservation reserveNearest(Integer originX, Integer originY) {
+        Reservation reservation = tryReserve(originX, originY);
+        if (reservation == null && refreshIfStale()) {
+            // The table may not have seen trucks that went idle recently
+            reservation = tryReserve(originX, originY);
+        }
+        return reservation;
+    }
+
+    /**
+     * Mark a truck free again once the database shows it back at IDLE
+     */
+    public void release(Long truckDbId) {
+        Slot slot = slots.get(truckDbId);
+        if (slot == null) {
+            return;
+        }
+        while (true) {
+            long word = slot.word.get();
+            if (stateOf(word) == FREE || stateOf(word) == RESERVED) {
+                // Never free a reservation that has not been persisted yet
+                return;
+            }
+            if (slot.word.compareAndSet(word, nextWord(word, FREE))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reload idle trucks from the database.
+     * Free slots get fresh positions and versions, busy slots that the database shows idle
+     * again are freed, free slots the database shows busy are taken out, and trucks never
+     * seen before are added.
+     */
+    public void refresh() {
+        lastRefresh.set(System.currentTimeMillis());
+        Set<Long> idleIds = new HashSet<>();
+        for (Truck truck : truckRepository.findByStatus(TruckStatus.IDLE)) {
+            idleIds.add(truck.getId());
+            Slot slot = slots.computeIfAbsent(truck.getId(), id -> new Slot(id, truck.getTruckId()));
+            long word = slot.word.get();
+            int state = stateOf(word);
+            if (state == RESERVED) {
+                continue;
+            }
+            long version = truck.getVersion() != null ? truck.getVersion() : 0L;
+            if (state == BUSY && version <= slot.version) {
+                // Still showing the row as it was before our own reservation was persisted
+                continue;
+            }
+            slot.x = truck.getCurrentX() != null ? truck.getCurrentX() : 0;
+            slot.y = truck.getCurrentY() != null ? truck.getCurrentY() : 0;
+            slot.version = version;
+            if (state == BUSY) {
+                slot.word.compareAndSet(word, nextWord(word, FREE));
+            }
+        }
+
+        // Free slots the database no longer shows idle were taken by another writer
+        for (Slot slot : slots.values()) {
+            long word = slot.word.get();
+            if (stateOf(word) == FREE && !idleIds.contains(slot.dbId)) {
+                slot.word.compareAndSet(word, nextWord(word, BUSY));
+            }
+        }
+    }
+
+    /**
+     * Periodically pick up trucks that went idle through world updates or other instances
+     */
+    @Scheduled(fixedDelayString = "${app.dispatch.reservation.refresh-interval-ms:1000}")
+    public void scheduledRefresh() {
+        if (enabled) {
+            refresh();
+        }
+    }
+
+    /**
+     * Background flush; skips the round if another flush is already running
+     */
+    @Scheduled(fixedDelayString = "${app.dispatch.reservation.flush-interval-ms:50}")
+    public void scheduledFlush() {
+        if (!enabled || pending.isEmpty() || !flushLock.tryLock()) {
+            return;
+        }
+        try {
+            drainPending();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Persist all pending reservations now, waiting for any running flush to finish first
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            for (int round = 0; round <= maxReconcileAttempts && !pending.isEmpty(); round++) {
+                drainPending();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Persist pending reservations in JDBC batches with an optimistic version check
+     */
+    private void drainPending() {
+        List<PendingReservation> retry = new ArrayList<>();
+        List<PendingReservation> batch = new ArrayList<>(batchSize);
+        PendingReservation next;
+        while ((next = pending.poll()) != null) {
+            batch.add(next);
+            if (batch.size() >= batchSize) {
+                retry.addAll(persistBatch(batch));
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            retry.addAll(persistBatch(batch));
+        }
+        // Retries go back in after draining so a failing database cannot spin this loop
+        pending.addAll(retry);
+    }
+
+    /**
+     * Get reservation statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("tracked_trucks", slots.size());
+        stats.put("pending", pending.size());
+        stats.put("reservations", reservations.get());
+        stats.put("cas_failures", casFailures.get());
+        stats.put("persisted", persisted.get());
+        stats.put("conflicts", conflicts.get());
+        return stats;
+    }
+
+    // Private helper methods
+
+    /**
+     * Refresh at most once per interval so an exhausted fleet does not turn every
+     * reservation attempt into a database query
+     */
+    private boolean refreshIfStale() {
+        long last = lastRefresh.get();
+        long now = System.currentTimeMillis();
+        if ((now - last < refreshIntervalMs && !slots.isEmpty()) || !lastRefresh.compareAndSet(last, now)) {
+            return false;
+        }
+        refresh();
+        return true;
+    }
+
+    private Reservation tryReserve(Integer originX, Integer originY) {
+        int ox = originX != null ? originX : 0;
+        int oy = originY != null ? originY : 0;
+
+        List<Slot> candidates = new ArrayList<>();
+        for (Slot slot : slots.values()) {
+            if (stateOf(slot.word.get()) == FREE) {
+                candidates.add(slot);
+            }
+        }
+        // Same ordering as findNearestAvailableTruckForAssignment
+        candidates.sort(Comparator.comparingInt((Slot s) -> Math.abs(s.x - ox) + Math.abs(s.y - oy))
+            .thenComparingLong(s -> s.dbId));
+
+        for (Slot slot : candidates) {
+            long word = slot.word.get();
+            if (stateOf(word) != FREE) {
+                continue;
+            }
+            if (slot.word.compareAndSet(word, nextWord(word, RESERVED))) {
+                PendingReservation reservation = new PendingReservation(slot, slot.version);
+                pending.add(reservation);
+                reservations.incrementAndGet();
+                return new Reservation(slot.dbId, slot.truckId, slot.x, slot.y, reservation.expectedVersion,
+                                       reservation.persisted);
+            }
+            casFailures.incrementAndGet();
+        }
+        return null;
+    }
+
+    /**
+     * @return Reservations that need another attempt in the next flush
+     */
+    private List<PendingReservation> persistBatch(List<PendingReservation> batch) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int[][] results;
+        try {
+            results = jdbcTemplate.batchUpdate(PERSIST_SQL, batch, batch.size(), (ps, r) -> {
+                ps.setTimestamp(1, now);
+                ps.setLong(2, r.slot.dbId);
+                ps.setLong(3, r.expectedVersion);
+            });
+        } catch (Exception e) {
+            logger.error("Failed to persist {} truck reservations, will retry", batch.size(), e);
+            return batch;
+        }
+
+        List<PendingReservation> retry = new ArrayList<>();
+        int index = 0;
+        for (int[] chunk : results) {
+            for (int updated : chunk) {
+                PendingReservation reservation = batch.get(index++);
+                if (updated > 0) {
+                    commit(reservation, reservation.expectedVersion + 1);
+                } else if (!reconcile(reservation)) {
+                    retry.add(reservation);
+                }
+            }
+        }
+        return retry;
+    }
+
+    /**
+     * @return true if the reservation is settled, false if it should be retried with a refreshed version
+     */
+    private boolean reconcile(PendingReservation reservation) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(RECONCILE_SQL, reservation.slot.dbId);
+        if (!rows.isEmpty()) {
+            Map<String, Object> row = rows.get(0);
+            String status = String.valueOf(row.get("status"));
+            long version = row.get("version") != null ? ((Number) row.get("version")).longValue() : 0L;
+
+            if (TruckStatus.IDLE.name().equals(status) && reservation.attempts < maxReconcileAttempts) {
+                // Only the version moved (position update etc.), the truck is still ours to take
+                reservation.expectedVersion = version;
+                reservation.attempts++;
+                return false;
+            }
+            reservation.slot.version = version;
+        }
+
+        // Another writer took the truck first
+        conflicts.incrementAndGet();
+        Slot slot = reservation.slot;
+        long word = slot.word.get();
+        slot.word.compareAndSet(word, nextWord(word, BUSY));
+        reservation.persisted.complete(false);
+        logger.warn("Reservation of truck {} lost to a concurrent writer", slot.truckId);
+        return true;
+    }
+
+    private void commit(PendingReservation reservation, long newVersion) {
+        Slot slot = reservation.slot;
+        slot.version = newVersion;
+        long word = slot.word.get();
+        slot.word.compareAndSet(word, nextWord(word, BUSY));
+        persisted.incrementAndGet();
+        reservation.persisted.complete(true);
+    }
+
+    static int stateOf(long word) {
+        return (int) (word & 0b11);
+    }
+
+    static long nextWord(long word, int state) {
+        return (((word >>> 2) + 1) << 2) | state;
+    }
+
+    /**
+     * Per-truck slot. Position and version are only written by refresh and flush,
+     * the state word is the single point of contention between reserving threads.
+     */
+    private static class Slot {
+        final long dbId;
+        final int truckId;
+        final AtomicLong word = new AtomicLong(FREE);
+        volatile int x;
+        volatile int y;
+        volatile long version;
+
+        Slot(long dbId, int truckId) {
+            this.dbId = dbId;
+            this.truckId = truckId;
+        }
+    }
+
+    private static class PendingReservation {
+        final Slot slot;
+        final CompletableFuture<Boolean> persisted = new CompletableFuture<>();
+        volatile long expectedVersion;
+        int attempts;
+
+        PendingReservation(Slot slot, long expectedVersion) {
+            this.slot = slot;
+            this.expectedVersion = expectedVersion;
+        }
+    }
+
+    /**
+     * Handle returned to the caller of a successful reservation
+     */
+    public static class Reservation {
+        private final Long truckDbId;
+        private final Integer truckId;
+        private final int x;
+        private final int y;
+        private final long version;
+        private final CompletableFuture<Boolean> persisted;
+
+        Reservation(Long truckDbId, Integer truckId, int x, int y, long version,
+                    CompletableFuture<Boolean> persisted) {
+            this.truckDbId = truckDbId;
+            this.truckId = truckId;
+            this.x = x;
+            this.y = y;
+            this.version = version;
+            this.persisted = persisted;
+        }
+
+        public Long getTruckDbId() {
+            return truckDbId;
+        }
+
+        public Integer getTruckId() {
+            return truckId;
+        }
+
+        /**
+         * @return Future completing true once written to the database, false if reconciliation revoked it
+         */
+        public CompletableFuture<Boolean> getPersisted() {
+            return persisted;
+        }
+
+        /**
+         * Build a detached truck snapshot for callers that attach it to a shipment.
+         * No database read is needed; the id and version are enough for a foreign key.
+         * The snapshot carries the persisted future for TruckManagementService.trackAssignment.
+         */
+        public Truck toTruck() {
+            Truck truck = new Truck();
+            truck.setId(truckDbId);
+            truck.setVersion(version);
+            truck.setTruckId(truckId);
+            truck.setCurrentX(x);
+            truck.setCurrentY(y);
+            truck.setStatus(TruckStatus.EN_ROUTE);
+            truck.setPendingAssignment(persisted);
+            return truck;
+        }
+    }
+}
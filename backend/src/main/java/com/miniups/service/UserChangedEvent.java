@@ -0,0 +1,46 @@
+/**
+ * User Changed Event
+ *
+ * Purpose:
+ * - Internal Spring application event published when a user account is updated
+ * - Lets caches keyed by user attributes drop stale entries (see UserIdCache)
+ *
+ * Carries the email before and after the change; they are equal when the email did not change.
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import org.springframework.context.ApplicationEvent;
+
+public class UserChangedEvent extends ApplicationEvent {
+
+    private final Long userId;
+    private final String previousEmail;
+    private final String currentEmail;
+
+    public UserChangedEvent(Object source, Long userId, String previousEmail, String currentEmail) {
+        super(source);
+        this.userId = userId;
+        this.previousEmail = previousEmail;
+        this.currentEmail = currentEmail;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getPreviousEmail() {
+        return previousEmail;
+    }
+
+    public String getCurrentEmail() {
+        return currentEmail;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UserChangedEvent[userId=%d, %s -> %s]", userId, previousEmail, currentEmail);
+    }
+}
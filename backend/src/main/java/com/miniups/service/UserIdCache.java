@@ -0,0 +1,234 @@
+/**
+ * User Id Cache
+ *
+ * Functionality:
+ * - Bounded near cache of customer email -> user id in front of the user upsert used by
+ *   Amazon ingest; a small set of customers sends most shipments, so most lookups skip
+ *   the database entirely
+ * - Callers turn the id into a JPA reference, so no User entity is loaded either
+ *
+ * Consistency:
+ * - An id is cached only after the transaction that looked it up commits, so a user
+ *   inserted by a transaction that later rolls back is never cached
+ * - UserChangedEvent invalidates the old and new email after the update commits; a lookup
+ *   that started before an invalidation does not cache its (possibly stale) result
+ * - Entries also expire after ttl-seconds
+ *
+ * There are no negative entries: on the ingest path a missing email is inserted right away,
+ * so an "absent" entry would be invalidated by the very lookup that created it.
+ *
+ * Metrics:
+ * - ups.user_cache.lookups{result=hit|miss}; every hit is a query saved
+ * - ups.user_cache.size
+ *
+ *
+
+ */
+package com.miniups.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+@Service
+public class UserIdCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserIdCache.class);
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.user-cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${app.user-cache.max-entries:10000}")
+    private int maxEntries = 10000;
+
+    @Value("${app.user-cache.ttl-seconds:600}")
+    private long ttlSeconds = 600;
+
+    private Cache<String, Long> cache;
+    // Bumped on every invalidation; a lookup only caches if none happened meanwhile
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private Counter hitCounter;
+    private Counter missCounter;
+
+    public UserIdCache(@Autowired(required = false) MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .build();
+        if (meterRegistry != null) {
+            hitCounter = Counter.builder("ups.user_cache.lookups")
+                .tag("result", "hit")
+                .description("Email to user id lookups answered by the near cache")
+                .register(meterRegistry);
+            missCounter = Counter.builder("ups.user_cache.lookups")
+                .tag("result", "miss")
+                .description("Email to user id lookups that went to the database")
+                .register(meterRegistry);
+            meterRegistry.gauge("ups.user_cache.size", this, c -> c.cache.estimatedSize());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled && cache != null;
+    }
+
+    /**
+     * User id for an email, from the cache or else from the loader
+     *
+     * @param loader Finds or creates the user and returns its id
+     */
+    public Long resolve(String email, Function<String, Long> loader) {
+        if (!isEnabled()) {
+            return loader.apply(email);
+        }
+        Long cached = cache.getIfPresent(email);
+        if (cached != null) {
+            hit(1);
+            return cached;
+        }
+        miss(1);
+        long seen = generation.get();
+        Long id = loader.apply(email);
+        if (id != null) {
+            putAfterCommit(Map.of(email, id), seen);
+        }
+        return id;
+    }
+
+    /**
+     * Cached ids for the given emails; emails not in the result must be looked up and
+     * reported back with {@link #putAll}
+     */
+    public Map<String, Long> getAll(Collection<String> emails) {
+        if (!isEnabled()) {
+            return Map.of();
+        }
+        Map<String, Long> found = cache.getAllPresent(emails);
+        hit(found.size());
+        miss(emails.size() - found.size());
+        return found;
+    }
+
+    /**
+     * Cache ids looked up by the caller, once its transaction commits
+     *
+     * @param generationSeen {@link #currentGeneration()} read before the lookup
+     */
+    public void putAll(Map<String, Long> ids, long generationSeen) {
+        if (isEnabled() && !ids.isEmpty()) {
+            putAfterCommit(new HashMap<>(ids), generationSeen);
+        }
+    }
+
+    public long currentGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Drop the emails of a changed user once the change is committed
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        if (cache == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        if (event.getPreviousEmail() != null) {
+            cache.invalidate(event.getPreviousEmail());
+        }
+        if (event.getCurrentEmail() != null) {
+            cache.invalidate(event.getCurrentEmail());
+        }
+        logger.debug("Invalidated cached user id for {}", event);
+    }
+
+    public void clear() {
+        if (cache != null) {
+            generation.incrementAndGet();
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Get cache statistics
+     */
+    public Map<String, Object> getStatistics() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("size", cache != null ? cache.estimatedSize() : 0);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("queries_saved", hitCount);
+        stats.put("hit_rate", lookups > 0 ? (double) hitCount / lookups : 0.0);
+        return stats;
+    }
+
+    // Private helper methods
+
+    private void putAfterCommit(Map<String, Long> ids, long generationSeen) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            putIfCurrent(ids, generationSeen);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                putIfCurrent(ids, generationSeen);
+            }
+        });
+    }
+
+    private void putIfCurrent(Map<String, Long> ids, long generationSeen) {
+        if (generation.get() == generationSeen) {
+            cache.putAll(ids);
+        }
+    }
+
+    private void hit(int count) {
+        if (count > 0) {
+            hits.addAndGet(count);
+            if (hitCounter != null) {
+                hitCounter.increment(count);
+            }
+        }
+    }
+
+    private void miss(int count) {
+        if (count > 0) {
+            misses.addAndGet(count);
+            if (missCounter != null) {
+                missCounter.increment(count);
+            }
+        }
+    }
+}
@@ -32,6 +32,7 @@ import com.miniups.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -51,6 +52,9 @@ public class UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     
+    @Autowired(required = false)
+    private ApplicationEventPublisher eventPublisher;
+    
     public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
@@ -145,6 +149,7 @@ public class UserService {
         }
         
         User user = userOptional.get();
+        String previousEmail = user.getEmail();
         
         try {
             // Update email (if provided and different)
@@ -180,6 +185,7 @@ public class UserService {
             
             // Save updates
             User updatedUser = userRepository.save(user);
+            publishUserChanged(updatedUser, previousEmail);
             UserDto userDto = UserDto.fromEntity(updatedUser);
             
             logger.info("User information updated successfully: userId={}, username={}", userId, user.getUsername());
@@ -253,6 +259,7 @@ public class UserService {
         // Soft delete - disable account
         user.setEnabled(false);
         userRepository.save(user);
+        publishUserChanged(user, user.getEmail());
         
         logger.info("User disabled: userId={}, username={}", userId, user.getUsername());
     }
@@ -398,4 +405,13 @@ public class UserService {
         
         return user;
     }
-}
\ No newline at end of file
+    
+    /**
+     * Tell caches keyed by user attributes that this user changed
+     */
+    private void publishUserChanged(User user, String previousEmail) {
+        if (eventPublisher != null) {
+            eventPublisher.publishEvent(new UserChangedEvent(this, user.getId(), previousEmail, user.getEmail()));
+        }
+    }
+}
@@ -90,6 +90,20 @@ public class WorldSimulatorService {
     @Autowired
     private ApplicationContext applicationContext;
     
+    @Lazy
+    @Autowired(required = false)
+    private TruckRebalancingService rebalancingService;
+    
+    @Autowired(required = false)
+    private EtaService etaService;
+    
+    @Autowired(required = false)
+    private DeliveryRouteService deliveryRouteService;
+    
+    @Lazy
+    @Autowired(required = false)
+    private LoadPackingService loadPackingService;
+    
     // Connection management
     private Socket socket;
     private volatile boolean connected = false;
@@ -462,6 +476,9 @@ public class WorldSimulatorService {
             commandsBuilder.setSimspeed(speed);
             
             sendCommandsAsync(commandsBuilder.build());
+            if (etaService != null) {
+                etaService.setSimSpeed(speed);
+            }
             
             logger.info("Set simulation speed to {}", speed);
             
@@ -659,18 +676,39 @@ public class WorldSimulatorService {
             Truck truck = truckOpt.get();
             truck.setCurrentX(completion.getX());
             truck.setCurrentY(completion.getY());
+            if (etaService != null) {
+                etaService.onTruckProgress(truck.getTruckId(), completion.getX(), completion.getY());
+            }
             
             // Update truck status based on completion status
             if ("idle".equalsIgnoreCase(completion.getStatus())) {
                 truck.setStatus(TruckStatus.IDLE);
+                // All packages are off the truck once it reports idle
+                truckRepository.resetLoad(truck.getId());
             } else if ("arrive warehouse".equalsIgnoreCase(completion.getStatus())) {
+                if (rebalancingService != null
+                    && rebalancingService.onTruckArrived(truck, completion.getX(), completion.getY())) {
+                    // Pre-positioned idle truck, nothing to pick up yet
+                    truckRepository.save(truck);
+                    completePendingResponse(completion);
+                    return;
+                }
                 truck.setStatus(TruckStatus.AT_WAREHOUSE);
                 
                 // Update shipment status to PICKED_UP when truck arrives at warehouse
                 List<Shipment> shipments = shipmentRepository.findByTruck(truck);
                 if (!shipments.isEmpty()) {
                     for (Shipment shipment : shipments) {
+                        if (rebalancingService != null && isAwaitingPickup(shipment)) {
+                            rebalancingService.recordWarehouseLocation(shipment.getWarehouseId(),
+                                                                       completion.getX(), completion.getY());
+                            rebalancingService.recordPickupLatency(shipment.getCreatedAt());
+                        }
                         shipment.setStatus(ShipmentStatus.PICKED_UP);
+                        if (etaService != null) {
+                            etaService.onPickedUp(shipment);
+                            shipment.setEstimatedDelivery(etaService.getEstimatedDelivery(shipment.getShipmentId()));
+                        }
                         shipmentRepository.save(shipment);
                         logger.info("Updated shipment {} status to PICKED_UP - truck {} arrived at warehouse",
                                    shipment.getShipmentId(), truck.getTruckId());
@@ -684,6 +722,15 @@ public class WorldSimulatorService {
             truckRepository.save(truck);
         }
         
+        completePendingResponse(completion);
+    }
+    
+    private boolean isAwaitingPickup(Shipment shipment) {
+        return shipment.getStatus() == ShipmentStatus.CREATED
+            || shipment.getStatus() == ShipmentStatus.TRUCK_DISPATCHED;
+    }
+    
+    private void completePendingResponse(WorldUpsProto.UFinished completion) {
         // Complete matching future
         CompletableFuture<Object> future = pendingResponses.remove(completion.getSeqnum());
         if (future != null) {
@@ -703,6 +750,13 @@ public class WorldSimulatorService {
             shipment.updateStatus(ShipmentStatus.DELIVERED);
             shipment.setActualDelivery(LocalDateTime.now());
             shipmentRepository.save(shipment);
+            releaseShipmentLoad(shipment);
+            if (etaService != null) {
+                etaService.onDelivered(shipment);
+            }
+            if (deliveryRouteService != null) {
+                deliveryRouteService.onDelivered(delivery.getTruckid(), delivery.getPackageid());
+            }
             
             // Notify Amazon that the package has been delivered
             getAmazonIntegrationService().notifyShipmentDelivered(shipment.getShipmentId());
@@ -729,6 +783,9 @@ public class WorldSimulatorService {
             Truck truck = truckOpt.get();
             truck.setCurrentX(truckStatus.getX());
             truck.setCurrentY(truckStatus.getY());
+            if (etaService != null) {
+                etaService.onTruckProgress(truck.getTruckId(), truckStatus.getX(), truckStatus.getY());
+            }
             
             // Map status
             switch (truckStatus.getStatus()) {
@@ -759,6 +816,16 @@ public class WorldSimulatorService {
         }
     }
     
+    private void releaseShipmentLoad(Shipment shipment) {
+        if (loadPackingService != null) {
+            // Same weight as was charged on assign, default included
+            loadPackingService.releaseLoad(shipment.getTruck(), shipment.getWeight());
+        } else if (shipment.getTruck() != null && shipment.getTruck().getId() != null) {
+            double weight = shipment.getWeight() != null ? shipment.getWeight().doubleValue() : 0.0;
+            truckRepository.releaseLoad(shipment.getTruck().getId(), weight);
+        }
+    }
+    
     private void handleError(WorldUpsProto.UErr error) {
         logger.error("World Simulator error for seqnum {}: {}", error.getOriginseqnum(), error.getErr());
         
@@ -33,13 +33,16 @@
  */
 package com.miniups.service.consumer;
 
+import com.miniups.config.EventMessageConverter;
 import com.miniups.config.RabbitMQConfig;
 import com.miniups.model.entity.AuditLog;
 import com.miniups.repository.AuditLogRepository;
+import com.miniups.util.EventProtoCodec;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.context.annotation.Profile;
@@ -48,6 +51,8 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -85,12 +90,13 @@ public class AnalyticsConsumer {
     /**
      * Process audit log events for analytics
      * 
-     * @param message Raw audit log message from RabbitMQ
+     * @param amqpMessage Raw audit log message from RabbitMQ, JSON or binary protobuf
      */
     @RabbitListener(queues = RabbitMQConfig.AUDIT_LOG_QUEUE)
     @Transactional
-    public void processAuditLogForAnalytics(String message) {
+    public void processAuditLogForAnalytics(Message amqpMessage) {
         try {
+            String message = toJson(amqpMessage);
             logger.debug("Processing audit log message for analytics: {}", message);
             
             // Parse the audit log event
@@ -115,6 +121,16 @@ public class AnalyticsConsumer {
         }
     }
     
+    /**
+     * Get the message as JSON text; binary events are decoded and written as JSON
+     */
+    private String toJson(Message message) throws IOException {
+        if (EventMessageConverter.CONTENT_TYPE_PROTOBUF.equals(message.getMessageProperties().getContentType())) {
+            return objectMapper.writeValueAsString(EventProtoCodec.decode(message.getBody()));
+        }
+        return new String(message.getBody(), StandardCharsets.UTF_8);
+    }
+
     /**
      * Parse audit log message from JSON
      * 
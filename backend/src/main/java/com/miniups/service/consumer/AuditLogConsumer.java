@@ -1,38 +1,55 @@
 package com.miniups.service.consumer;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniups.config.EventMessageConverter;
 import com.miniups.config.RabbitMQConfig;
-import com.miniups.model.entity.AuditLog;
 import com.miniups.model.event.AuditLogPayload;
 import com.miniups.model.event.BusinessEvent;
 import com.miniups.repository.AuditLogRepository;
+import com.miniups.util.EventProtoCodec;
 import com.rabbitmq.client.Channel;
-import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Audit Log Consumer
- * 
+ *
  * Processes audit log events asynchronously to record system operations
  * for compliance, monitoring, and debugging purposes. This consumer
  * ensures that audit information is captured without impacting
  * the performance of main business operations.
- * 
+ *
  * Key Features:
  * - Asynchronous audit log processing
- * - Idempotent message handling
+ * - Batch consumption: up to app.rabbitmq.audit-log.batch-size messages per call
+ * - Idempotent message handling, one event ID query per batch
+ * - Reads events sent as JSON or as binary protobuf
+ * - JDBC batch inserts, one ack for the whole batch after commit
  * - Error handling with dead letter support
- * - Performance optimization for high-volume logging
- * 
+ *
  * @author Mini-UPS Development Team
  * @version 1.0
  * @since 2024
@@ -43,86 +60,166 @@ import java.time.Instant;
 public class AuditLogConsumer {
     private static final Logger log = LoggerFactory.getLogger(AuditLogConsumer.class);
 
+    private static final TypeReference<BusinessEvent<AuditLogPayload>> EVENT_TYPE = new TypeReference<>() { };
+
+    private static final String INSERT_SQL =
+        "INSERT INTO audit_logs (event_id, correlation_id, event_time, source_service, operation_type, " +
+        "operation_description, operation_result, operation_timestamp, operation_duration_ms, user_id, username, " +
+        "session_id, ip_address, user_agent, endpoint, http_method, request_size, response_size, entity_id, " +
+        "entity_type, result_code, error_message, additional_data, audit_created_at, created_at, updated_at, " +
+        "version) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    private static final int[] INSERT_TYPES = {
+        Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP, Types.VARCHAR, Types.VARCHAR,
+        Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP, Types.BIGINT, Types.BIGINT, Types.VARCHAR,
+        Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BIGINT, Types.BIGINT,
+        Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP,
+        Types.TIMESTAMP, Types.TIMESTAMP
+    };
+
     private final AuditLogRepository auditLogRepository;
-    
-    public AuditLogConsumer(AuditLogRepository auditLogRepository) {
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    public AuditLogConsumer(AuditLogRepository auditLogRepository,
+                            JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            ObjectMapper objectMapper) {
         this.auditLogRepository = auditLogRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
     }
 
     /**
-     * Process audit log events from the queue
-     * 
-     * This method handles incoming audit log events, validates them,
-     * and persists them to the database. It uses manual acknowledgment
-     * to ensure reliable message processing.
-     * 
-     * @param event The business event containing audit log data
-     * @param message The RabbitMQ message for acknowledgment
+     * Process a batch of audit log events from the queue
+     *
+     * The batch is deduplicated and inserted in one transaction, and acknowledged
+     * with a single multiple ack once it has committed. Unreadable messages are
+     * rejected to the dead letter queue; invalid ones are acknowledged and skipped.
+     * If the batch insert fails, each event is retried on its own so one bad row
+     * only dead-letters itself.
+     *
+     * @param messages The RabbitMQ messages of the batch, in delivery order
      * @param channel The RabbitMQ channel for acknowledgment
      */
-    @RabbitListener(queues = RabbitMQConfig.AUDIT_LOG_QUEUE)
-    @Transactional
-    public void handleAuditLogEvent(BusinessEvent<AuditLogPayload> event, 
-                                   Message message, 
-                                   Channel channel) throws IOException {
-        
-        long deliveryTag = message.getMessageProperties().getDeliveryTag();
-        
-        try {
-            log.debug("Processing audit log event: {} for operation: {}", 
-                    event.getEventId(), event.getPayload().getOperationType());
+    @RabbitListener(queues = RabbitMQConfig.AUDIT_LOG_QUEUE, containerFactory = "auditLogContainerFactory")
+    public void handleAuditLogEvents(List<Message> messages, Channel channel) throws IOException {
+        // Delivery tag -> row; LinkedHashMap keeps delivery order
+        Map<Long, Object[]> rows = new LinkedHashMap<>();
+        Set<Long> rejected = new HashSet<>();
+        long ackTag = -1;
 
-            // Check for duplicate processing (idempotency)
-            if (isDuplicateEvent(event.getEventId())) {
-                log.debug("Skipping duplicate audit log event: {}", event.getEventId());
-                channel.basicAck(deliveryTag, false);
-                return;
+        for (Message message : messages) {
+            long deliveryTag = message.getMessageProperties().getDeliveryTag();
+            BusinessEvent<AuditLogPayload> event;
+            try {
+                event = readEvent(message);
+            } catch (IOException e) {
+                log.error("Unreadable audit log message {}: {}", deliveryTag, e.getMessage());
+                channel.basicNack(deliveryTag, false, false);
+                rejected.add(deliveryTag);
+                continue;
             }
+            ackTag = Math.max(ackTag, deliveryTag);
 
-            // Validate the event payload
-            AuditLogPayload payload = event.getPayload();
-            if (!isValidAuditLogPayload(payload)) {
+            if (event.getEventId() == null || !isValidAuditLogPayload(event.getPayload())) {
+                // Acknowledged with the batch to remove it from the queue
                 log.warn("Invalid audit log payload in event: {}", event.getEventId());
-                // Acknowledge invalid messages to remove them from queue
-                channel.basicAck(deliveryTag, false);
-                return;
+                continue;
             }
+            rows.put(deliveryTag, toRow(event));
+        }
+        if (ackTag < 0) {
+            return;
+        }
 
-            // Create and save audit log entity
-            AuditLog auditLog = createAuditLogFromPayload(payload, event);
-            auditLogRepository.save(auditLog);
+        try {
+            int inserted = transactionTemplate.execute(status -> insertNew(rows.values()));
+            channel.basicAck(ackTag, true);
+            log.debug("Processed {} audit log messages, {} inserted", messages.size(), inserted);
+        } catch (RuntimeException e) {
+            log.warn("Audit log batch of {} failed, processing one at a time: {}", rows.size(), e.getMessage());
+            handleOneByOne(messages, rows, rejected, channel);
+        }
+    }
 
-            log.debug("Successfully processed audit log event: {} for operation: {}", 
-                    event.getEventId(), payload.getOperationType());
+    /**
+     * Read an audit event, binary or JSON by the message's content type
+     */
+    private BusinessEvent<AuditLogPayload> readEvent(Message message) throws IOException {
+        if (EventMessageConverter.CONTENT_TYPE_PROTOBUF.equals(message.getMessageProperties().getContentType())) {
+            try {
+                return EventProtoCodec.decode(message.getBody(), AuditLogPayload.class, objectMapper);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+        return objectMapper.readValue(message.getBody(), EVENT_TYPE);
+    }
 
-            // Acknowledge successful processing
-            channel.basicAck(deliveryTag, false);
+    /**
+     * Fallback after a failed batch: each event in its own transaction
+     */
+    private void handleOneByOne(List<Message> messages, Map<Long, Object[]> rows, Set<Long> rejected,
+                                Channel channel) throws IOException {
+        for (Message message : messages) {
+            long deliveryTag = message.getMessageProperties().getDeliveryTag();
+            Object[] row = rows.get(deliveryTag);
+            if (row == null) {
+                // Invalid (acknowledged now) or unreadable (already rejected)
+                if (!rejected.contains(deliveryTag)) {
+                    channel.basicAck(deliveryTag, false);
+                }
+                continue;
+            }
+            try {
+                transactionTemplate.execute(status -> insertNew(Collections.singletonList(row)));
+                channel.basicAck(deliveryTag, false);
+            } catch (RuntimeException e) {
+                log.error("Failed to process audit log event: {}", row[0], e);
 
-        } catch (Exception e) {
-            log.error("Failed to process audit log event: {}", event.getEventId(), e);
-            
-            // Reject message and send to dead letter queue
-            // false = don't requeue, let it go to DLQ for manual investigation
-            channel.basicNack(deliveryTag, false, false);
+                // Reject message and send to dead letter queue
+                // false = don't requeue, let it go to DLQ for manual investigation
+                channel.basicNack(deliveryTag, false, false);
+            }
         }
     }
 
     /**
-     * Check if this event has already been processed
-     * Implements idempotency by checking for existing audit logs with the same event ID
-     * 
-     * @param eventId The unique event identifier
-     * @return true if this event has already been processed
+     * Insert the rows whose event IDs are not recorded yet
+     * Duplicates are dropped within the batch as well as against the table
+     *
+     * @return number of rows inserted
      */
-    private boolean isDuplicateEvent(String eventId) {
-        // Check if we already have an audit log with this event ID
-        return auditLogRepository.existsByEventId(eventId);
+    private int insertNew(Collection<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        Map<String, Object[]> byEventId = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            byEventId.putIfAbsent((String) row[0], row);
+        }
+        Set<String> existing = new HashSet<>(auditLogRepository.findExistingEventIds(byEventId.keySet()));
+        List<Object[]> batch = new ArrayList<>(byEventId.size());
+        byEventId.forEach((eventId, row) -> {
+            if (existing.contains(eventId)) {
+                log.debug("Skipping duplicate audit log event: {}", eventId);
+            } else {
+                batch.add(row);
+            }
+        });
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, INSERT_TYPES);
+        }
+        return batch.size();
     }
 
     /**
      * Validate the audit log payload
      * Ensures that required fields are present and valid
-     * 
+     *
      * @param payload The audit log payload to validate
      * @return true if the payload is valid for processing
      */
@@ -152,66 +249,46 @@ public class AuditLogConsumer {
     }
 
     /**
-     * Create an AuditLog entity from the event payload
-     * Maps the payload data to the database entity
-     * 
-     * @param payload The audit log payload
-     * @param event The business event containing metadata
-     * @return A new AuditLog entity ready for persistence
+     * Map an event to an audit_logs row, in INSERT_SQL column order
+     *
+     * @param event The business event containing the audit log payload
+     * @return The column values, event ID first
      */
-    private AuditLog createAuditLogFromPayload(AuditLogPayload payload, BusinessEvent<AuditLogPayload> event) {
-        AuditLog auditLog = new AuditLog();
-        
-        // Event metadata
-        auditLog.setEventId(event.getEventId());
-        auditLog.setCorrelationId(event.getCorrelationId());
-        auditLog.setEventTime(event.getEventTime());
-        auditLog.setSourceService(event.getSourceService());
-        
-        // Operation details
-        auditLog.setOperationType(payload.getOperationType());
-        auditLog.setOperationDescription(payload.getOperationDescription());
-        auditLog.setOperationResult(payload.getOperationResult());
-        auditLog.setOperationTimestamp(payload.getOperationTimestamp());
-        auditLog.setOperationDurationMs(payload.getOperationDurationMs());
-        
-        // User information
-        auditLog.setUserId(payload.getUserId());
-        auditLog.setUsername(payload.getUsername());
-        auditLog.setSessionId(payload.getSessionId());
-        
-        // Request information
-        auditLog.setIpAddress(payload.getIpAddress());
-        auditLog.setUserAgent(payload.getUserAgent());
-        auditLog.setEndpoint(payload.getEndpoint());
-        auditLog.setHttpMethod(payload.getHttpMethod());
-        auditLog.setRequestSize(payload.getRequestSize());
-        auditLog.setResponseSize(payload.getResponseSize());
-        
-        // Entity information
-        auditLog.setEntityId(payload.getEntityId());
-        auditLog.setEntityType(payload.getEntityType());
-        
-        // Result information
-        auditLog.setResultCode(payload.getResultCode());
-        auditLog.setErrorMessage(payload.getErrorMessage());
-        
+    private Object[] toRow(BusinessEvent<AuditLogPayload> event) {
+        AuditLogPayload payload = event.getPayload();
+
         // Additional data (stored as JSON)
+        String additionalData = null;
         if (payload.hasAdditionalData()) {
             try {
-                auditLog.setAdditionalData(
-                    new com.fasterxml.jackson.databind.ObjectMapper()
-                        .writeValueAsString(payload.getAdditionalData())
-                );
+                additionalData = objectMapper.writeValueAsString(payload.getAdditionalData());
             } catch (Exception e) {
                 log.warn("Failed to serialize additional data for audit log: {}", event.getEventId(), e);
-                auditLog.setAdditionalData("{}");
+                additionalData = "{}";
             }
         }
-        
-        // Set creation timestamp
-        auditLog.setAuditCreatedAt(Instant.now());
-        
-        return auditLog;
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+        return new Object[] {
+            // Event metadata
+            event.getEventId(), event.getCorrelationId(), timestamp(event.getEventTime()), event.getSourceService(),
+            // Operation details
+            payload.getOperationType(), payload.getOperationDescription(), payload.getOperationResult(),
+            timestamp(payload.getOperationTimestamp()), payload.getOperationDurationMs(),
+            // User information
+            payload.getUserId(), payload.getUsername(), payload.getSessionId(),
+            // Request information
+            payload.getIpAddress(), payload.getUserAgent(), payload.getEndpoint(), payload.getHttpMethod(),
+            payload.getRequestSize(), payload.getResponseSize(),
+            // Entity information
+            payload.getEntityId(), payload.getEntityType(),
+            // Result information
+            payload.getResultCode(), payload.getErrorMessage(),
+            additionalData, Timestamp.from(Instant.now()), now, now
+        };
+    }
+
+    private static Timestamp timestamp(Instant instant) {
+        return instant != null ? Timestamp.from(instant) : null;
     }
-}
\ No newline at end of file
+}
@@ -12,15 +12,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
 
 /**
  * Notification Consumer
@@ -31,10 +41,15 @@ import java.util.Optional;
  * with external notification services and manages delivery retries.
  * 
  * Key Features:
- * - Multi-channel notification delivery
+ * - Multi-channel notification delivery: channels are sent in parallel through
+ *   NotificationFanout, and the message is acknowledged once every mandatory channel
+ *   has delivered
  * - Asynchronous notification processing
  * - User preference handling
- * - Delivery retry mechanisms
+ * - Delivery retry mechanisms: retries and not-yet-due scheduled notifications are
+ *   parked on TTL delay queues (1s/10s/60s/10m) that dead-letter back to this queue,
+ *   with the retry count carried in the x-retry-count header; only the mandatory
+ *   channels that failed are retried, named in the x-notification-channels header
  * - Template-based notifications
  * - Comprehensive error handling
  * - Idempotent message processing
@@ -56,12 +71,18 @@ import java.util.Optional;
 public class NotificationConsumer {
     private static final Logger log = LoggerFactory.getLogger(NotificationConsumer.class);
 
+    static final String RETRY_COUNT_HEADER = "x-retry-count";
+    static final String PENDING_CHANNELS_HEADER = "x-notification-channels";
+
     private final UserRepository userRepository;
     private final AsyncAuditService asyncAuditService;
+    private final NotificationFanout notificationFanout;
     
-    public NotificationConsumer(UserRepository userRepository, AsyncAuditService asyncAuditService) {
+    public NotificationConsumer(UserRepository userRepository, AsyncAuditService asyncAuditService,
+                                NotificationFanout notificationFanout) {
         this.userRepository = userRepository;
         this.asyncAuditService = asyncAuditService;
+        this.notificationFanout = notificationFanout;
     }
 
     @Value("${app.notifications.enabled:true}")
@@ -76,6 +97,15 @@ public class NotificationConsumer {
     @Value("${app.notifications.push.enabled:false}")
     private boolean pushEnabled;
 
+    @Value("${app.notifications.retry.max-attempts:5}")
+    private int defaultMaxRetryAttempts = 5;
+
+    @Value("${app.notifications.retry.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs = 5000;
+
+    @Autowired(required = false)
+    private RabbitTemplate rabbitTemplate;
+
     /**
      * Process notification events from the queue
      * 
@@ -115,6 +145,9 @@ public class NotificationConsumer {
                 return;
             }
 
+            // Attempts so far travel in a header, the body is never rewritten
+            payload.setCurrentAttempt(getRetryCount(message));
+
             // Check if notification has expired
             if (payload.isExpired()) {
                 log.debug("Notification has expired, skipping event: {}", event.getEventId());
@@ -124,16 +157,18 @@ public class NotificationConsumer {
 
             // Check if we should process this notification immediately or schedule it
             if (!payload.isImmediate()) {
-                log.debug("Notification is scheduled for later delivery, should be requeued: {}", event.getEventId());
-                // TODO: Implement scheduled notification handling
-                channel.basicNack(deliveryTag, false, true); // requeue for later
+                long remainingMs = Duration.between(Instant.now(), payload.getScheduledDeliveryTime()).toMillis();
+                log.debug("Notification is scheduled in {} ms, parking it: {}", remainingMs, event.getEventId());
+                // Parked until due, hopping down the tiers; not counted as a retry
+                delay(message, channel, getParkDelayMs(remainingMs), payload.getCurrentAttempt());
                 return;
             }
 
-            // Process the notification
-            boolean success = processNotification(payload, correlationId, startTime);
+            // Process the notification, on a retry only the channels still pending
+            Set<NotificationPayload.NotificationType> failed =
+                processNotification(payload, getPendingChannels(message), correlationId);
 
-            if (success) {
+            if (failed.isEmpty()) {
                 // Audit successful notification
                 Map<String, Object> auditData = Map.of(
                     "notificationId", payload.getNotificationId(),
@@ -152,7 +187,10 @@ public class NotificationConsumer {
                 // Acknowledge successful processing
                 channel.basicAck(deliveryTag, false);
             } else {
-                // Handle retry logic
+                // Handle retry logic for the failed channels alone
+                message.getMessageProperties().setHeader(PENDING_CHANNELS_HEADER, failed.stream()
+                    .map(Enum::name)
+                    .collect(Collectors.joining(",")));
                 handleNotificationRetry(payload, event, message, channel, correlationId, startTime);
             }
 
@@ -208,65 +246,37 @@ public class NotificationConsumer {
      * Process the notification by sending it through appropriate channels
      * 
      * @param payload The notification data
+     * @param pending The channels still to send on a retry, or null for all of them
      * @param correlationId The correlation ID for tracking
-     * @param startTime The processing start time
-     * @return true if notification was sent successfully
+     * @return the mandatory channels that failed; empty when the notification is done
      */
-    private boolean processNotification(NotificationPayload payload, String correlationId, long startTime) {
-        boolean overallSuccess = true;
-        int successCount = 0;
-        int totalChannels = payload.getNotificationTypes().size();
-
+    private Set<NotificationPayload.NotificationType> processNotification(NotificationPayload payload,
+                                                                       Set<NotificationPayload.NotificationType> pending,
+                                                                       String correlationId) {
         // Get user information if user ID is provided
-        User user = null;
-        if (payload.getRecipientUserId() != null) {
-            user = getUserById(payload.getRecipientUserId());
-        }
+        User user = payload.getRecipientUserId() != null ? getUserById(payload.getRecipientUserId()) : null;
 
-        // Process each notification type
+        Map<NotificationPayload.NotificationType, BooleanSupplier> sends =
+            new EnumMap<>(NotificationPayload.NotificationType.class);
         for (NotificationPayload.NotificationType type : payload.getNotificationTypes()) {
-            try {
-                boolean channelSuccess = false;
-                
-                switch (type) {
-                    case EMAIL:
-                        channelSuccess = sendEmailNotification(payload, user, correlationId);
-                        break;
-                    case SMS:
-                        channelSuccess = sendSmsNotification(payload, user, correlationId);
-                        break;
-                    case PUSH_NOTIFICATION:
-                        channelSuccess = sendPushNotification(payload, user, correlationId);
-                        break;
-                    case IN_APP_NOTIFICATION:
-                        channelSuccess = sendInAppNotification(payload, user, correlationId);
-                        break;
-                    case WEBHOOK:
-                        channelSuccess = sendWebhookNotification(payload, correlationId);
-                        break;
-                    default:
-                        log.warn("Unsupported notification type: {} for event: {}", type, payload.getNotificationId());
-                        break;
-                }
-                
-                if (channelSuccess) {
-                    successCount++;
-                } else {
-                    overallSuccess = false;
-                }
-                
-            } catch (Exception e) {
-                log.error("Failed to send {} notification for user: {} (correlationId: {})", 
-                         type, payload.getRecipientUserId(), correlationId, e);
-                overallSuccess = false;
+            if (pending != null && !pending.contains(type)) {
+                continue;
+            }
+            switch (type) {
+                case EMAIL -> sends.put(type, () -> sendEmailNotification(payload, user, correlationId));
+                case SMS -> sends.put(type, () -> sendSmsNotification(payload, user, correlationId));
+                case PUSH_NOTIFICATION -> sends.put(type, () -> sendPushNotification(payload, user, correlationId));
+                case IN_APP_NOTIFICATION -> sends.put(type, () -> sendInAppNotification(payload, user, correlationId));
+                case WEBHOOK -> sends.put(type, () -> sendWebhookNotification(payload, correlationId));
+                default -> log.warn("Unsupported notification type: {} for event: {}", type, payload.getNotificationId());
             }
         }
 
-        log.info("Notification processing completed: {}/{} channels successful for user: {} (correlationId: {})",
-                successCount, totalChannels, payload.getRecipientUserId(), correlationId);
+        Set<NotificationPayload.NotificationType> failed = notificationFanout.dispatch(sends);
 
-        // Consider it successful if at least one channel worked
-        return successCount > 0;
+        log.info("Notification processing completed: {}/{} channels sent, failed mandatory {} for user: {} (correlationId: {})",
+                sends.size(), payload.getNotificationTypes().size(), failed, payload.getRecipientUserId(), correlationId);
+        return failed;
     }
 
     /**
@@ -293,9 +303,6 @@ public class NotificationConsumer {
             log.info("SIMULATED: Sending email to {} with subject: '{}' (correlationId: {})",
                     emailAddress, payload.getSubject(), correlationId);
 
-            // Simulate email sending delay
-            Thread.sleep(100);
-
             return true;
 
         } catch (Exception e) {
@@ -328,9 +335,6 @@ public class NotificationConsumer {
             log.info("SIMULATED: Sending SMS to {} with message: '{}' (correlationId: {})",
                     phoneNumber, truncateForSms(payload.getMessage()), correlationId);
 
-            // Simulate SMS sending delay
-            Thread.sleep(50);
-
             return true;
 
         } catch (Exception e) {
@@ -412,6 +416,9 @@ public class NotificationConsumer {
         
         // Increment attempt counter
         payload.incrementAttempt();
+        if (payload.getMaxRetryAttempts() == null) {
+            payload.setMaxRetryAttempts(defaultMaxRetryAttempts);
+        }
         
         if (payload.isMaxRetriesExceeded()) {
             log.warn("Max retry attempts exceeded for notification: {} (correlationId: {})", 
@@ -425,13 +432,95 @@ public class NotificationConsumer {
             // Send to dead letter queue
             channel.basicNack(deliveryTag, false, false);
         } else {
-            log.info("Requeuing notification for retry: {} (attempt: {}/{}) (correlationId: {})", 
-                    payload.getNotificationId(), payload.getCurrentAttempt(), 
+            long delayMs = getRetryDelayMs(payload.getCurrentAttempt());
+            log.info("Retrying notification in {} ms: {} (attempt: {}/{}) (correlationId: {})", 
+                    delayMs, payload.getNotificationId(), payload.getCurrentAttempt(), 
                     payload.getMaxRetryAttempts(), correlationId);
             
-            // Requeue for retry
+            // Park for retry, backing off through the delay tiers
+            delay(message, channel, delayMs, payload.getCurrentAttempt());
+        }
+    }
+
+    /**
+     * Park a message on the delay queue of a tier; its TTL dead-letters it back here
+     * The original is acknowledged once the broker has confirmed the copy
+     */
+    private void delay(Message message, Channel channel, long delayMs, int retryCount) throws IOException {
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        if (rabbitTemplate == null) {
+            // Nothing to publish with, so fall back to requeueing
             channel.basicNack(deliveryTag, false, true);
+            return;
+        }
+
+        message.getMessageProperties().setHeader(RETRY_COUNT_HEADER, retryCount);
+        CorrelationData correlation = new CorrelationData();
+        try {
+            rabbitTemplate.send("", RabbitMQConfig.notificationDelayQueue(delayMs), message, correlation);
+            if (!rabbitTemplate.getConnectionFactory().isPublisherConfirms()) {
+                channel.basicAck(deliveryTag, false);
+                return;
+            }
+            CorrelationData.Confirm confirm = correlation.getFuture().get(confirmTimeoutMs, TimeUnit.MILLISECONDS);
+            if (confirm.isAck() && correlation.getReturned() == null) {
+                channel.basicAck(deliveryTag, false);
+                return;
+            }
+            log.warn("Delay queue did not accept notification message: {}", confirm.getReason());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Failed to park notification message for {} ms: {}", delayMs, e.getMessage());
+        }
+        // The copy may not exist, so keep the original
+        channel.basicNack(deliveryTag, false, true);
+    }
+
+    /**
+     * Get the retries a message has been through, from its header
+     */
+    static int getRetryCount(Message message) {
+        Object count = message.getMessageProperties().getHeaders().get(RETRY_COUNT_HEADER);
+        return count instanceof Number number ? number.intValue() : 0;
+    }
+
+    /**
+     * Get the channels still pending from an earlier attempt, or null when all are to be sent
+     */
+    static Set<NotificationPayload.NotificationType> getPendingChannels(Message message) {
+        Object pending = message.getMessageProperties().getHeaders().get(PENDING_CHANNELS_HEADER);
+        if (pending == null) {
+            return null;
+        }
+        Set<NotificationPayload.NotificationType> channels = EnumSet.noneOf(NotificationPayload.NotificationType.class);
+        for (String name : pending.toString().split(",")) {
+            if (!name.isBlank()) {
+                channels.add(NotificationPayload.NotificationType.valueOf(name.trim()));
+            }
+        }
+        return channels;
+    }
+
+    /**
+     * Backoff for a retry attempt (1-based): 1s, 10s, 60s, then 10m
+     */
+    static long getRetryDelayMs(int attempt) {
+        long[] tiers = RabbitMQConfig.NOTIFICATION_DELAY_TIERS_MS;
+        return tiers[Math.max(0, Math.min(attempt - 1, tiers.length - 1))];
+    }
+
+    /**
+     * Longest tier that does not overshoot the time left, or the shortest one
+     */
+    static long getParkDelayMs(long remainingMs) {
+        long delayMs = RabbitMQConfig.NOTIFICATION_DELAY_TIERS_MS[0];
+        for (long tier : RabbitMQConfig.NOTIFICATION_DELAY_TIERS_MS) {
+            if (tier <= remainingMs) {
+                delayMs = tier;
+            }
         }
+        return delayMs;
     }
 
     /**
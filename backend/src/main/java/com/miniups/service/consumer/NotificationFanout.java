@@ -0,0 +1,302 @@
+/**
+ * Notification Fan-out
+ *
+ * Functionality:
+ * - Sends the channels of one notification (email, SMS, push, in-app, webhook) in
+ *   parallel, each on its own bounded executor, so a slow channel neither holds back
+ *   the others nor takes their threads
+ * - The caller waits, through CompletableFuture.allOf, for the mandatory channels only
+ *   and gets back those that failed, to retry just them; best-effort channels finish
+ *   in the background and a failure is counted, not retried
+ *
+ * Per Channel:
+ * - Executor of threads workers with a queue of queue-capacity; a full queue fails the
+ *   send at once instead of blocking the listener
+ * - Token bucket of rate-limits per second (bursts up to one second's worth); a send
+ *   waits for a token within its timeout, otherwise it fails as rate limited
+ * - timeouts-ms, counted from submission and covering the queue, the rate limit and the
+ *   send itself; a send still running at its timeout is reported failed, and a retry
+ *   may then deliver it twice (delivery is at least once)
+ *
+ * With fanout disabled the channels are sent one after another on the caller's thread.
+ *
+ * Metrics:
+ * - ups.notifications.channel.sends{channel, outcome=delivered|failed|timeout|rate_limited|rejected}
+ *
+ *
+
+ */
+package com.miniups.service.consumer;
+
+import com.miniups.model.event.NotificationPayload.NotificationType;
+import com.miniups.util.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+@Service
+public class NotificationFanout {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationFanout.class);
+
+    private enum Outcome { DELIVERED, FAILED, TIMEOUT, RATE_LIMITED, REJECTED }
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.notifications.fanout.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${app.notifications.fanout.threads:4}")
+    private int threads = 4;
+
+    @Value("${app.notifications.fanout.queue-capacity:200}")
+    private int queueCapacity = 200;
+
+    @Value("${app.notifications.fanout.mandatory-channels:EMAIL,SMS,IN_APP_NOTIFICATION,WEBHOOK}")
+    private List<String> mandatoryChannels = List.of("EMAIL", "SMS", "IN_APP_NOTIFICATION", "WEBHOOK");
+
+    @Value("${app.notifications.fanout.rate-limits:EMAIL=50,SMS=10,PUSH_NOTIFICATION=100,IN_APP_NOTIFICATION=500,WEBHOOK=20}")
+    private List<String> rateLimits = List.of("EMAIL=50", "SMS=10", "PUSH_NOTIFICATION=100",
+        "IN_APP_NOTIFICATION=500", "WEBHOOK=20");
+
+    @Value("${app.notifications.fanout.timeouts-ms:EMAIL=5000,SMS=5000,PUSH_NOTIFICATION=3000,IN_APP_NOTIFICATION=1000,WEBHOOK=5000}")
+    private List<String> timeoutsMs = List.of("EMAIL=5000", "SMS=5000", "PUSH_NOTIFICATION=3000",
+        "IN_APP_NOTIFICATION=1000", "WEBHOOK=5000");
+
+    private final Map<NotificationType, Lane> lanes = new EnumMap<>(NotificationType.class);
+    private Set<NotificationType> mandatory = EnumSet.noneOf(NotificationType.class);
+    private volatile boolean running;
+
+    public NotificationFanout(@Autowired(required = false) MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (running) {
+            return;
+        }
+        mandatory = EnumSet.noneOf(NotificationType.class);
+        for (String channel : mandatoryChannels) {
+            mandatory.add(NotificationType.valueOf(channel.trim()));
+        }
+        Map<NotificationType, Double> rates = parsePerChannel(rateLimits);
+        Map<NotificationType, Double> timeouts = parsePerChannel(timeoutsMs);
+        for (NotificationType type : NotificationType.values()) {
+            double rate = rates.getOrDefault(type, 50.0);
+            long timeoutMs = timeouts.getOrDefault(type, 5000.0).longValue();
+            lanes.put(type, new Lane(type, rate, timeoutMs));
+        }
+        running = true;
+        logger.info("Notification fan-out started ({} threads per channel, mandatory {})", threads, mandatory);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Lane lane : lanes.values()) {
+            lane.executor.shutdown();
+        }
+        for (Lane lane : lanes.values()) {
+            try {
+                lane.executor.awaitTermination(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isMandatory(NotificationType type) {
+        return mandatory.contains(type);
+    }
+
+    /**
+     * Send the channels of one notification and wait for the mandatory ones
+     *
+     * @param sends the send of each channel, returning true when delivered
+     * @return the mandatory channels that were not delivered; empty when the notification is done
+     */
+    public Set<NotificationType> dispatch(Map<NotificationType, BooleanSupplier> sends) {
+        Set<NotificationType> failed = EnumSet.noneOf(NotificationType.class);
+        if (!enabled || !running) {
+            sends.forEach((type, send) -> {
+                if (!sendInline(send) && isMandatory(type)) {
+                    failed.add(type);
+                }
+            });
+            return failed;
+        }
+
+        Map<NotificationType, CompletableFuture<Boolean>> waitingFor = new EnumMap<>(NotificationType.class);
+        sends.forEach((type, send) -> {
+            CompletableFuture<Boolean> result = lanes.get(type).submit(send);
+            if (isMandatory(type)) {
+                waitingFor.put(type, result);
+            }
+        });
+        // Outcomes are folded into each future, so allOf never completes exceptionally
+        CompletableFuture.allOf(waitingFor.values().toArray(new CompletableFuture[0])).join();
+        waitingFor.forEach((type, result) -> {
+            if (!result.join()) {
+                failed.add(type);
+            }
+        });
+        return failed;
+    }
+
+    /**
+     * Get the queued and per-outcome counts of each channel
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled && running);
+        stats.put("mandatory", mandatory);
+        lanes.forEach((type, lane) -> {
+            Map<String, Object> channel = new LinkedHashMap<>();
+            channel.put("queued", lane.executor.getQueue().size());
+            channel.put("active", lane.executor.getActiveCount());
+            channel.put("rate_per_second", lane.ratePerSecond);
+            channel.put("timeout_ms", lane.timeoutMs);
+            for (Outcome outcome : Outcome.values()) {
+                channel.put(outcome.name().toLowerCase(), lane.counts.get(outcome).get());
+            }
+            stats.put(type.name(), channel);
+        });
+        return stats;
+    }
+
+    // Private helper methods
+
+    private static boolean sendInline(BooleanSupplier send) {
+        try {
+            return send.getAsBoolean();
+        } catch (RuntimeException e) {
+            logger.warn("Notification channel send failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static Map<NotificationType, Double> parsePerChannel(List<String> entries) {
+        Map<NotificationType, Double> values = new EnumMap<>(NotificationType.class);
+        for (String entry : entries) {
+            String[] parts = entry.split("=", 2);
+            if (parts.length == 2) {
+                values.put(NotificationType.valueOf(parts[0].trim()), Double.parseDouble(parts[1].trim()));
+            }
+        }
+        return values;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicLong counter = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Executor, rate limit and timeout of one channel
+     */
+    private class Lane {
+        final NotificationType type;
+        final double ratePerSecond;
+        final long timeoutMs;
+        final ThreadPoolExecutor executor;
+        final TokenBucket rateLimiter;
+        final Map<Outcome, AtomicLong> counts = new EnumMap<>(Outcome.class);
+        final Map<Outcome, Counter> counters = new EnumMap<>(Outcome.class);
+
+        Lane(NotificationType type, double ratePerSecond, long timeoutMs) {
+            this.type = type;
+            this.ratePerSecond = ratePerSecond;
+            this.timeoutMs = timeoutMs;
+            this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                daemonThreads("notification-" + type.name().toLowerCase().replace('_', '-') + "-"));
+            this.executor.allowCoreThreadTimeOut(true);
+            this.rateLimiter = new TokenBucket(ratePerSecond, (int) Math.max(1, Math.ceil(ratePerSecond)), null);
+            for (Outcome outcome : Outcome.values()) {
+                counts.put(outcome, new AtomicLong());
+                if (meterRegistry != null) {
+                    counters.put(outcome, Counter.builder("ups.notifications.channel.sends")
+                        .tag("channel", type.name())
+                        .tag("outcome", outcome.name().toLowerCase())
+                        .description("Notification channel sends by outcome")
+                        .register(meterRegistry));
+                }
+            }
+        }
+
+        CompletableFuture<Boolean> submit(BooleanSupplier send) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            CompletableFuture<Outcome> attempt;
+            try {
+                attempt = CompletableFuture.supplyAsync(() -> send(send, deadline), executor);
+            } catch (RejectedExecutionException e) {
+                attempt = CompletableFuture.completedFuture(Outcome.REJECTED);
+            }
+            return attempt
+                .orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .handle((outcome, error) -> {
+                    Outcome result = outcome;
+                    if (error != null) {
+                        result = error instanceof TimeoutException ? Outcome.TIMEOUT : Outcome.FAILED;
+                    }
+                    record(result);
+                    return result == Outcome.DELIVERED;
+                });
+        }
+
+        private Outcome send(BooleanSupplier send, long deadline) {
+            try {
+                long remaining = deadline - System.nanoTime();
+                if (!rateLimiter.acquire(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+                    return Outcome.RATE_LIMITED;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Outcome.FAILED;
+            }
+            return sendInline(send) ? Outcome.DELIVERED : Outcome.FAILED;
+        }
+
+        private void record(Outcome outcome) {
+            counts.get(outcome).incrementAndGet();
+            Counter counter = counters.get(outcome);
+            if (counter != null) {
+                counter.increment();
+            }
+            if (outcome != Outcome.DELIVERED) {
+                logger.debug("{} notification send {}", type, outcome.name().toLowerCase());
+            }
+        }
+    }
+}
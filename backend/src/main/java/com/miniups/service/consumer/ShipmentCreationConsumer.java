@@ -11,6 +11,7 @@ import com.miniups.repository.ShipmentRepository;
 import com.miniups.repository.TruckRepository;
 import com.miniups.repository.UserRepository;
 import com.miniups.service.AsyncAuditService;
+import com.miniups.service.EtaService;
 import com.miniups.service.EventPublisherService;
 import com.miniups.service.TrackingService;
 import com.miniups.service.TruckManagementService;
@@ -76,13 +77,15 @@ public class ShipmentCreationConsumer {
     private final NettyWorldSimulatorService nettyWorldSimulatorService;
     private final EventPublisherService eventPublisher;
     private final AsyncAuditService asyncAuditService;
+    private final EtaService etaService;
     
     public ShipmentCreationConsumer(ShipmentRepository shipmentRepository, TruckRepository truckRepository,
                                     UserRepository userRepository, TrackingService trackingService,
                                     TruckManagementService truckManagementService, 
                                     @Autowired(required = false) WorldSimulatorService worldSimulatorService,
                                     @Autowired(required = false) NettyWorldSimulatorService nettyWorldSimulatorService,
-                                    EventPublisherService eventPublisher, AsyncAuditService asyncAuditService) {
+                                    EventPublisherService eventPublisher, AsyncAuditService asyncAuditService,
+                                    @Autowired(required = false) EtaService etaService) {
         this.shipmentRepository = shipmentRepository;
         this.truckRepository = truckRepository;
         this.userRepository = userRepository;
@@ -92,6 +95,7 @@ public class ShipmentCreationConsumer {
         this.nettyWorldSimulatorService = nettyWorldSimulatorService;
         this.eventPublisher = eventPublisher;
         this.asyncAuditService = asyncAuditService;
+        this.etaService = etaService;
     }
     
     /**
@@ -244,6 +248,8 @@ public class ShipmentCreationConsumer {
 
             // Step 4: Save shipment to database
             shipment = shipmentRepository.save(shipment);
+            truckManagementService.trackAssignment(shipment, moved ->
+                sendTruckToPickup(moved.getTruck().getTruckId(), payload.getWarehouseId()));
 
             // Step 5: Integrate with world simulator
             integrateWithWorldSimulator(shipment, payload, correlationId);
@@ -311,17 +317,20 @@ public class ShipmentCreationConsumer {
         // Set initial status and timestamps
         shipment.setStatus(ShipmentStatus.CREATED);
         // createdTime is inherited from BaseEntity
-        shipment.setEstimatedDelivery(calculateEstimatedDelivery(payload));
+        shipment.setEstimatedDelivery(calculateEstimatedDelivery(shipment));
         
         return shipment;
     }
 
     /**
-     * Calculate estimated delivery time based on distance and current conditions
+     * Calculate estimated delivery time from the truck's route, sim speed and observed travel times
      */
-    private LocalDateTime calculateEstimatedDelivery(ShipmentCreationPayload payload) {
-        // Simple estimation: assume 1 hour for pickup + travel time
-        // In a real system, this would consider distance, traffic, truck capacity, etc.
+    private LocalDateTime calculateEstimatedDelivery(Shipment shipment) {
+        LocalDateTime estimate = etaService != null ? etaService.estimate(shipment) : null;
+        if (estimate != null) {
+            return estimate;
+        }
+        // No ETA model or nothing to estimate from: the previous fixed two-hour default
         return LocalDateTime.now().plusHours(2);
     }
 
@@ -0,0 +1,57 @@
+/**
+ * Capacity Packing Strategy
+ *
+ * Capacity packing dispatch, the behaviour of LoadPackingService.
+ *
+ * Waiting shipments are taken heaviest first and first-fit into trips already
+ * driving to their warehouse; only when none has room is the nearest idle truck sent.
+ *
+ *
+
+ */
+package com.miniups.simulation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+public class CapacityPackingStrategy implements DispatchStrategy {
+
+    @Override
+    public String getName() {
+        return "capacity-packing";
+    }
+
+    @Override
+    public void dispatch(DispatchSimulator.Context context) {
+        List<ShipmentArrival> waiting = context.waiting();
+        waiting.sort(Comparator.comparingDouble(ShipmentArrival::getWeight).reversed()
+            .thenComparingLong(ShipmentArrival::getArrivalMillis));
+        List<DispatchSimulator.SimTruck> idle = new ArrayList<>(context.idleTrucks());
+
+        for (ShipmentArrival shipment : waiting) {
+            boolean packed = false;
+            for (DispatchSimulator.Trip trip : context.openTrips(shipment.getWarehouseId())) {
+                if (context.addToTrip(trip, shipment)) {
+                    packed = true;
+                    break;
+                }
+            }
+            if (packed || idle.isEmpty()) {
+                continue;
+            }
+
+            DispatchSimulator.SimTruck nearest = null;
+            int best = Integer.MAX_VALUE;
+            for (DispatchSimulator.SimTruck truck : idle) {
+                int distance = context.distance(truck, shipment.getWarehouseX(), shipment.getWarehouseY());
+                if (distance < best) {
+                    best = distance;
+                    nearest = truck;
+                }
+            }
+            idle.remove(nearest);
+            context.startTrip(nearest, List.of(shipment));
+        }
+    }
+}
@@ -0,0 +1,445 @@
+/**
+ * Dispatch Simulator
+ *
+ * Functionality:
+ * - Replays a shipment arrival stream through a dispatch strategy, headless and offline
+ * - Uses a simulated clock, so hours of traffic replay in milliseconds
+ * - Reports throughput, pickup wait, driven distance and truck utilisation per strategy
+ *
+ * Fleet Model:
+ * - Trucks drive Manhattan distance on the grid at a fixed speed
+ * - A trip drives to one warehouse, accepts more shipments until it arrives there,
+ *   loads them, then delivers in nearest-neighbour order and becomes idle at the last stop
+ * - Pickup wait of a shipment is the time from its arrival until its truck reaches the warehouse
+ *
+ * Event Loop:
+ * - Shipment arrivals, warehouse arrivals, trip completions and strategy wake-ups
+ *   are processed in time order; the strategy runs once per simulated instant
+ *
+ *
+
+ */
+package com.miniups.simulation;
+
+import java.util.*;
+
+public class DispatchSimulator {
+
+    private final Fleet fleet;
+
+    public DispatchSimulator(Fleet fleet) {
+        this.fleet = fleet;
+    }
+
+    /**
+     * Run one simulation
+     *
+     * @param arrivals Shipment arrival stream ordered by time
+     * @param strategy Dispatch strategy under test
+     * @return Simulation report
+     */
+    public SimulationReport run(List<ShipmentArrival> arrivals, DispatchStrategy strategy) {
+        strategy.reset();
+        Run run = new Run(arrivals, strategy);
+        return run.execute();
+    }
+
+    /**
+     * Run several strategies over the same arrival stream and fleet
+     */
+    public List<SimulationReport> compare(List<ShipmentArrival> arrivals, DispatchStrategy... strategies) {
+        List<SimulationReport> reports = new ArrayList<>();
+        for (DispatchStrategy strategy : strategies) {
+            reports.add(run(arrivals, strategy));
+        }
+        return reports;
+    }
+
+    /**
+     * Replay an exported CSV stream through every built-in strategy and print the comparison.
+     * Usage: DispatchSimulator arrivals.csv [trucks] [capacity]
+     */
+    public static void main(String[] args) throws java.io.IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: DispatchSimulator <arrivals.csv> [trucks] [capacity]");
+            return;
+        }
+        List<ShipmentArrival> arrivals;
+        try (java.io.Reader reader = java.nio.file.Files.newBufferedReader(java.nio.file.Path.of(args[0]))) {
+            arrivals = ShipmentArrival.fromCsv(reader);
+        }
+        int trucks = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        DispatchSimulator simulator = new DispatchSimulator(new Fleet(trucks, capacity, 1.0, 5000, 100, 1L));
+        System.out.println(SimulationReport.formatTable(simulator.compare(arrivals,
+            new GreedyNearestStrategy(), new WindowedBatchStrategy(30_000), new CapacityPackingStrategy())));
+    }
+
+    /**
+     * State of one simulation run
+     */
+    private class Run {
+        private final List<ShipmentArrival> arrivals;
+        private final DispatchStrategy strategy;
+        private final PriorityQueue<Event> events = new PriorityQueue<>();
+        private final List<SimTruck> trucks = new ArrayList<>();
+        private final LinkedHashMap<Integer, ShipmentArrival> waiting = new LinkedHashMap<>();
+        private final List<Trip> openTrips = new ArrayList<>();
+        private final Context context = new Context(this);
+
+        private long now;
+        private long sequence;
+        private long totalDistance;
+        private long busyMillis;
+        private long lastDelivery;
+        private int delivered;
+        private int trips;
+        private final List<Long> pickupWaits = new ArrayList<>();
+
+        Run(List<ShipmentArrival> arrivals, DispatchStrategy strategy) {
+            this.arrivals = arrivals;
+            this.strategy = strategy;
+            Random random = new Random(fleet.seed);
+            for (int i = 0; i < fleet.trucks; i++) {
+                trucks.add(new SimTruck(i + 1, random.nextInt(fleet.gridSize), random.nextInt(fleet.gridSize),
+                                        fleet.capacity));
+            }
+        }
+
+        SimulationReport execute() {
+            for (ShipmentArrival arrival : arrivals) {
+                schedule(arrival.getArrivalMillis(), EventType.ARRIVAL, arrival, null);
+            }
+            long firstArrival = arrivals.isEmpty() ? 0 : arrivals.get(0).getArrivalMillis();
+
+            while (!events.isEmpty()) {
+                Event event = events.poll();
+                now = event.time;
+                handle(event);
+                if (events.isEmpty() || events.peek().time > now) {
+                    strategy.dispatch(context);
+                }
+            }
+
+            return new SimulationReport(strategy.getName(), arrivals.size(), delivered, trips,
+                Math.max(0, lastDelivery - firstArrival), pickupWaits, totalDistance, busyMillis, fleet.trucks);
+        }
+
+        private void handle(Event event) {
+            switch (event.type) {
+                case ARRIVAL -> waiting.put(event.shipment.getId(), event.shipment);
+                case AT_WAREHOUSE -> load(event.trip);
+                case TRIP_DONE -> {
+                    event.trip.truck.busy = false;
+                    busyMillis += now - event.trip.startedAt;
+                }
+                case WAKE_UP -> {
+                    // Nothing to do, the strategy runs after this instant
+                }
+            }
+        }
+
+        private void load(Trip trip) {
+            openTrips.remove(trip);
+            trip.loaded = true;
+            for (ShipmentArrival shipment : trip.shipments) {
+                pickupWaits.add(now - shipment.getArrivalMillis());
+            }
+
+            // Deliver in nearest-neighbour order starting from the warehouse
+            long time = now + fleet.loadMillisPerShipment * trip.shipments.size();
+            int x = trip.warehouseX;
+            int y = trip.warehouseY;
+            List<ShipmentArrival> remaining = new ArrayList<>(trip.shipments);
+            while (!remaining.isEmpty()) {
+                ShipmentArrival next = null;
+                int best = Integer.MAX_VALUE;
+                for (ShipmentArrival candidate : remaining) {
+                    int d = Math.abs(candidate.getDestX() - x) + Math.abs(candidate.getDestY() - y);
+                    if (d < best) {
+                        best = d;
+                        next = candidate;
+                    }
+                }
+                remaining.remove(next);
+                totalDistance += best;
+                time += travelMillis(best);
+                x = next.getDestX();
+                y = next.getDestY();
+                delivered++;
+                lastDelivery = Math.max(lastDelivery, time);
+            }
+
+            trip.truck.x = x;
+            trip.truck.y = y;
+            schedule(time, EventType.TRIP_DONE, null, trip);
+        }
+
+        Trip startTrip(SimTruck truck, List<ShipmentArrival> shipments) {
+            if (truck.busy) {
+                throw new IllegalStateException("Truck " + truck.id + " is already on a trip");
+            }
+            if (shipments.isEmpty()) {
+                throw new IllegalArgumentException("A trip needs at least one shipment");
+            }
+            ShipmentArrival first = shipments.get(0);
+            Trip trip = new Trip(truck, first.getWarehouseId(), first.getWarehouseX(), first.getWarehouseY(), now);
+            for (ShipmentArrival shipment : shipments) {
+                if (!shipment.getWarehouseId().equals(trip.warehouseId)) {
+                    throw new IllegalArgumentException("All shipments of a trip must share a warehouse");
+                }
+                take(shipment);
+                trip.shipments.add(shipment);
+                trip.load += shipment.getWeight();
+            }
+
+            truck.busy = true;
+            trips++;
+            int distance = distance(truck, trip.warehouseX, trip.warehouseY);
+            totalDistance += distance;
+            trip.arrivesAt = now + travelMillis(distance);
+            openTrips.add(trip);
+            schedule(trip.arrivesAt, EventType.AT_WAREHOUSE, null, trip);
+            return trip;
+        }
+
+        boolean addToTrip(Trip trip, ShipmentArrival shipment) {
+            if (trip.loaded || !trip.warehouseId.equals(shipment.getWarehouseId())
+                || trip.load + shipment.getWeight() > trip.truck.capacity) {
+                return false;
+            }
+            take(shipment);
+            trip.shipments.add(shipment);
+            trip.load += shipment.getWeight();
+            return true;
+        }
+
+        private void take(ShipmentArrival shipment) {
+            if (waiting.remove(shipment.getId()) == null) {
+                throw new IllegalStateException("Shipment " + shipment.getId() + " is not waiting");
+            }
+        }
+
+        private long travelMillis(int distance) {
+            return Math.round(distance / fleet.unitsPerSecond * 1000.0);
+        }
+
+        private void schedule(long time, EventType type, ShipmentArrival shipment, Trip trip) {
+            events.add(new Event(time, sequence++, type, shipment, trip));
+        }
+    }
+
+    /**
+     * View of the simulation handed to strategies
+     */
+    public static class Context {
+        private final Run run;
+
+        private Context(Run run) {
+            this.run = run;
+        }
+
+        /**
+         * @return Current simulated time in milliseconds
+         */
+        public long now() {
+            return run.now;
+        }
+
+        /**
+         * @return Shipments waiting for a truck, oldest first
+         */
+        public List<ShipmentArrival> waiting() {
+            return new ArrayList<>(run.waiting.values());
+        }
+
+        public List<SimTruck> idleTrucks() {
+            List<SimTruck> idle = new ArrayList<>();
+            for (SimTruck truck : run.trucks) {
+                if (!truck.busy) {
+                    idle.add(truck);
+                }
+            }
+            return idle;
+        }
+
+        /**
+         * @return Trips still driving to the given warehouse that can take more shipments
+         */
+        public List<Trip> openTrips(String warehouseId) {
+            List<Trip> open = new ArrayList<>();
+            for (Trip trip : run.openTrips) {
+                if (trip.warehouseId.equals(warehouseId)) {
+                    open.add(trip);
+                }
+            }
+            return open;
+        }
+
+        /**
+         * Send an idle truck to pick up shipments from one warehouse
+         */
+        public Trip startTrip(SimTruck truck, List<ShipmentArrival> shipments) {
+            return run.startTrip(truck, shipments);
+        }
+
+        /**
+         * Add a shipment to a trip that has not reached its warehouse yet
+         *
+         * @return false if the trip is loaded, goes elsewhere or has no capacity left
+         */
+        public boolean addToTrip(Trip trip, ShipmentArrival shipment) {
+            return run.addToTrip(trip, shipment);
+        }
+
+        /**
+         * Ask to be called again at the given simulated time
+         */
+        public void wakeUpAt(long millis) {
+            if (millis > run.now) {
+                run.schedule(millis, EventType.WAKE_UP, null, null);
+            }
+        }
+
+        public int distance(SimTruck truck, int x, int y) {
+            return DispatchSimulator.distance(truck, x, y);
+        }
+    }
+
+    /**
+     * Fleet parameters shared by all strategies in a comparison
+     */
+    public static class Fleet {
+        private final int trucks;
+        private final int capacity;
+        private final double unitsPerSecond;
+        private final long loadMillisPerShipment;
+        private final int gridSize;
+        private final long seed;
+
+        /**
+         * @param trucks Fleet size
+         * @param capacity Capacity of each truck, in shipment weight units
+         * @param unitsPerSecond Driving speed in grid units per simulated second
+         * @param loadMillisPerShipment Loading time at the warehouse per shipment
+         * @param gridSize Trucks start uniformly over [0, gridSize) in both axes
+         * @param seed Seed for start positions
+         */
+        public Fleet(int trucks, int capacity, double unitsPerSecond, long loadMillisPerShipment,
+                     int gridSize, long seed) {
+            if (trucks <= 0 || capacity <= 0 || unitsPerSecond <= 0) {
+                throw new IllegalArgumentException("Fleet size, capacity and speed must be positive");
+            }
+            this.trucks = trucks;
+            this.capacity = capacity;
+            this.unitsPerSecond = unitsPerSecond;
+            this.loadMillisPerShipment = loadMillisPerShipment;
+            this.gridSize = gridSize;
+            this.seed = seed;
+        }
+    }
+
+    /**
+     * Simulated truck
+     */
+    public static class SimTruck {
+        private final int id;
+        private final int capacity;
+        private int x;
+        private int y;
+        private boolean busy;
+
+        SimTruck(int id, int x, int y, int capacity) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.capacity = capacity;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+    }
+
+    /**
+     * One truck trip: warehouse pickup followed by deliveries
+     */
+    public static class Trip {
+        private final SimTruck truck;
+        private final String warehouseId;
+        private final int warehouseX;
+        private final int warehouseY;
+        private final long startedAt;
+        private final List<ShipmentArrival> shipments = new ArrayList<>();
+        private double load;
+        private long arrivesAt;
+        private boolean loaded;
+
+        Trip(SimTruck truck, String warehouseId, int warehouseX, int warehouseY, long startedAt) {
+            this.truck = truck;
+            this.warehouseId = warehouseId;
+            this.warehouseX = warehouseX;
+            this.warehouseY = warehouseY;
+            this.startedAt = startedAt;
+        }
+
+        public SimTruck getTruck() {
+            return truck;
+        }
+
+        public String getWarehouseId() {
+            return warehouseId;
+        }
+
+        public double getRemainingCapacity() {
+            return truck.capacity - load;
+        }
+
+        public long getArrivesAt() {
+            return arrivesAt;
+        }
+    }
+
+    private static int distance(SimTruck truck, int x, int y) {
+        return Math.abs(truck.x - x) + Math.abs(truck.y - y);
+    }
+
+    private enum EventType {
+        ARRIVAL, AT_WAREHOUSE, TRIP_DONE, WAKE_UP
+    }
+
+    private static class Event implements Comparable<Event> {
+        private final long time;
+        private final long sequence;
+        private final EventType type;
+        private final ShipmentArrival shipment;
+        private final Trip trip;
+
+        Event(long time, long sequence, EventType type, ShipmentArrival shipment, Trip trip) {
+            this.time = time;
+            this.sequence = sequence;
+            this.type = type;
+            this.shipment = shipment;
+            this.trip = trip;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            int byTime = Long.compare(time, other.time);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * Dispatch Strategy
+ *
+ * Pluggable truck dispatch strategy for the offline simulator.
+ *
+ * The simulator calls {@link #dispatch} after every batch of events at the same
+ * simulated instant. A strategy inspects waiting shipments, idle trucks and trips
+ * still heading to a warehouse, then starts or extends trips through the context.
+ * Strategies that want to decide later (e.g. at the end of a batching window)
+ * ask the context to wake them up.
+ *
+ *
+
+ */
+package com.miniups.simulation;
+
+public interface DispatchStrategy {
+
+    /**
+     * @return Short name used in simulation reports
+     */
+    String getName();
+
+    /**
+     * Make dispatch decisions at the current simulated time
+     */
+    void dispatch(DispatchSimulator.Context context);
+
+    /**
+     * Clear any per-run state before a new simulation starts
+     */
+    default void reset() {
+    }
+}
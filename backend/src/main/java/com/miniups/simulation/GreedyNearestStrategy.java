@@ -0,0 +1,43 @@
+/**
+ * Greedy Nearest Strategy
+ *
+ * Greedy nearest-truck dispatch, the behaviour of TruckManagementService.assignOptimalTruck.
+ *
+ * Waiting shipments are served oldest first; each takes the nearest idle truck
+ * and rides alone.
+ *
+ *
+
+ */
+package com.miniups.simulation;
+
+import java.util.List;
+
+public class GreedyNearestStrategy implements DispatchStrategy {
+
+    @Override
+    public String getName() {
+        return "greedy-nearest";
+    }
+
+    @Override
+    public void dispatch(DispatchSimulator.Context context) {
+        List<DispatchSimulator.SimTruck> idle = context.idleTrucks();
+        for (ShipmentArrival shipment : context.waiting()) {
+            if (idle.isEmpty()) {
+                return;
+            }
+            DispatchSimulator.SimTruck nearest = null;
+            int best = Integer.MAX_VALUE;
+            for (DispatchSimulator.SimTruck truck : idle) {
+                int distance = context.distance(truck, shipment.getWarehouseX(), shipment.getWarehouseY());
+                if (distance < best) {
+                    best = distance;
+                    nearest = truck;
+                }
+            }
+            idle.remove(nearest);
+            context.startTrip(nearest, List.of(shipment));
+        }
+    }
+}
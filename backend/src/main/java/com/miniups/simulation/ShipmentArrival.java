@@ -0,0 +1,145 @@
+/**
+ * Shipment Arrival
+ *
+ * One shipment entering the dispatch simulator, plus factories for arrival streams:
+ * - Synthetic: Poisson arrivals over a set of warehouses with skewed demand
+ * - Exported: CSV with header
+ *   arrival_ms,warehouse_id,warehouse_x,warehouse_y,dest_x,dest_y,weight
+ *
+ *
+
+ */
+package com.miniups.simulation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class ShipmentArrival {
+
+    private final int id;
+    private final long arrivalMillis;
+    private final String warehouseId;
+    private final int warehouseX;
+    private final int warehouseY;
+    private final int destX;
+    private final int destY;
+    private final double weight;
+
+    public ShipmentArrival(int id, long arrivalMillis, String warehouseId, int warehouseX, int warehouseY,
+                           int destX, int destY, double weight) {
+        this.id = id;
+        this.arrivalMillis = arrivalMillis;
+        this.warehouseId = warehouseId;
+        this.warehouseX = warehouseX;
+        this.warehouseY = warehouseY;
+        this.destX = destX;
+        this.destY = destY;
+        this.weight = weight;
+    }
+
+    /**
+     * Generate a synthetic arrival stream
+     *
+     * @param seed Random seed, the same seed always yields the same stream
+     * @param count Number of shipments
+     * @param perSecond Mean arrival rate
+     * @param warehouses Warehouse coordinates as {x, y}; ids are 1-based positions in this array
+     * @param demandShare Relative demand per warehouse, same length as warehouses
+     * @param gridSize Destinations are uniform over [0, gridSize) in both axes
+     * @param maxWeight Weights are uniform over [1, maxWeight]
+     * @return Arrivals ordered by time
+     */
+    public static List<ShipmentArrival> synthetic(long seed, int count, double perSecond, int[][] warehouses,
+                                                  double[] demandShare, int gridSize, int maxWeight) {
+        if (warehouses.length == 0 || warehouses.length != demandShare.length) {
+            throw new IllegalArgumentException("Each warehouse needs a demand share");
+        }
+        double totalShare = 0;
+        for (double share : demandShare) {
+            totalShare += share;
+        }
+
+        Random random = new Random(seed);
+        List<ShipmentArrival> arrivals = new ArrayList<>(count);
+        double clock = 0;
+        for (int i = 0; i < count; i++) {
+            // Exponential inter-arrival times give a Poisson process
+            clock += -Math.log(1.0 - random.nextDouble()) / perSecond * 1000.0;
+
+            double pick = random.nextDouble() * totalShare;
+            int w = 0;
+            while (w < demandShare.length - 1 && (pick -= demandShare[w]) >= 0) {
+                w++;
+            }
+            arrivals.add(new ShipmentArrival(i, (long) clock, String.valueOf(w + 1),
+                warehouses[w][0], warehouses[w][1], random.nextInt(gridSize), random.nextInt(gridSize),
+                1 + random.nextInt(Math.max(1, maxWeight))));
+        }
+        return arrivals;
+    }
+
+    /**
+     * Read an exported arrival stream
+     *
+     * @param reader CSV with a header line, see class comment for columns
+     * @return Arrivals ordered by time
+     */
+    public static List<ShipmentArrival> fromCsv(Reader reader) throws IOException {
+        List<ShipmentArrival> arrivals = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line = lines.readLine();
+        int id = 0;
+        while ((line = lines.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] columns = line.split(",");
+            if (columns.length < 7) {
+                throw new IllegalArgumentException("Expected 7 columns in line: " + line);
+            }
+            arrivals.add(new ShipmentArrival(id++, Long.parseLong(columns[0].trim()), columns[1].trim(),
+                Integer.parseInt(columns[2].trim()), Integer.parseInt(columns[3].trim()),
+                Integer.parseInt(columns[4].trim()), Integer.parseInt(columns[5].trim()),
+                Double.parseDouble(columns[6].trim())));
+        }
+        arrivals.sort(Comparator.comparingLong(ShipmentArrival::getArrivalMillis));
+        return arrivals;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public long getArrivalMillis() {
+        return arrivalMillis;
+    }
+
+    public String getWarehouseId() {
+        return warehouseId;
+    }
+
+    public int getWarehouseX() {
+        return warehouseX;
+    }
+
+    public int getWarehouseY() {
+        return warehouseY;
+    }
+
+    public int getDestX() {
+        return destX;
+    }
+
+    public int getDestY() {
+        return destY;
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+}
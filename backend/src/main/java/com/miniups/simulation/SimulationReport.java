@@ -0,0 +1,120 @@
+/**
+ * Simulation Report
+ *
+ * Result of one dispatch simulation run.
+ *
+ * Times are simulated milliseconds. Throughput is delivered shipments per simulated
+ * minute over the span from the first arrival to the last delivery; utilisation is the
+ * share of that span trucks spent on trips.
+ *
+ *
+
+ */
+package com.miniups.simulation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class SimulationReport {
+
+    private final String strategy;
+    private final int shipments;
+    private final int delivered;
+    private final int trips;
+    private final long makespanMillis;
+    private final double meanPickupWaitMillis;
+    private final long p99PickupWaitMillis;
+    private final long totalDistance;
+    private final double utilisation;
+
+    public SimulationReport(String strategy, int shipments, int delivered, int trips, long makespanMillis,
+                            List<Long> pickupWaits, long totalDistance, long busyMillis, int fleetSize) {
+        this.strategy = strategy;
+        this.shipments = shipments;
+        this.delivered = delivered;
+        this.trips = trips;
+        this.makespanMillis = makespanMillis;
+        this.totalDistance = totalDistance;
+
+        List<Long> sorted = new ArrayList<>(pickupWaits);
+        Collections.sort(sorted);
+        long sum = 0;
+        for (long wait : sorted) {
+            sum += wait;
+        }
+        this.meanPickupWaitMillis = sorted.isEmpty() ? 0.0 : (double) sum / sorted.size();
+        this.p99PickupWaitMillis = sorted.isEmpty() ? 0L
+            : sorted.get(Math.min(sorted.size() - 1, (int) Math.ceil(sorted.size() * 0.99) - 1));
+        this.utilisation = makespanMillis > 0 && fleetSize > 0
+            ? Math.min(1.0, (double) busyMillis / ((double) makespanMillis * fleetSize)) : 0.0;
+    }
+
+    /**
+     * Format reports as an aligned comparison table
+     */
+    public static String formatTable(List<SimulationReport> reports) {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-18s %9s %7s %12s %14s %13s %10s %11s%n",
+            "strategy", "delivered", "trips", "ship/min", "mean wait(s)", "p99 wait(s)", "distance", "utilisation"));
+        for (SimulationReport report : reports) {
+            table.append(String.format("%-18s %9d %7d %12.2f %14.2f %13.2f %10d %10.1f%%%n",
+                report.strategy, report.delivered, report.trips, report.getThroughputPerMinute(),
+                report.meanPickupWaitMillis / 1000.0, report.p99PickupWaitMillis / 1000.0,
+                report.totalDistance, report.utilisation * 100.0));
+        }
+        return table.toString();
+    }
+
+    public String getStrategy() {
+        return strategy;
+    }
+
+    public int getShipments() {
+        return shipments;
+    }
+
+    public int getDelivered() {
+        return delivered;
+    }
+
+    public int getTrips() {
+        return trips;
+    }
+
+    public long getMakespanMillis() {
+        return makespanMillis;
+    }
+
+    public double getThroughputPerMinute() {
+        return makespanMillis > 0 ? delivered * 60_000.0 / makespanMillis : 0.0;
+    }
+
+    public double getMeanPickupWaitMillis() {
+        return meanPickupWaitMillis;
+    }
+
+    public long getP99PickupWaitMillis() {
+        return p99PickupWaitMillis;
+    }
+
+    public long getTotalDistance() {
+        return totalDistance;
+    }
+
+    public double getUtilisation() {
+        return utilisation;
+    }
+
+    public double getShipmentsPerTrip() {
+        return trips > 0 ? (double) delivered / trips : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SimulationReport{strategy=%s, delivered=%d/%d, trips=%d, throughput=%.2f/min, " +
+                             "meanWait=%.0fms, p99Wait=%dms, distance=%d, utilisation=%.3f}",
+            strategy, delivered, shipments, trips, getThroughputPerMinute(), meanPickupWaitMillis,
+            p99PickupWaitMillis, totalDistance, utilisation);
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Windowed Batch Strategy
+ *
+ * Shipments are collected for a fixed window, then matched to idle trucks jointly:
+ * all (shipment, truck) pairs are taken in order of increasing distance, which avoids
+ * the greedy strategy's habit of spending a close truck on an early shipment that
+ * another truck could have served almost as well. Each shipment rides alone.
+ *
+ *
+
+ */
+package com.miniups.simulation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class WindowedBatchStrategy implements DispatchStrategy {
+
+    private final long windowMillis;
+    private long windowEnd = -1;
+
+    /**
+     * @param windowMillis Batching window in simulated milliseconds
+     */
+    public WindowedBatchStrategy(long windowMillis) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("Window must be positive");
+        }
+        this.windowMillis = windowMillis;
+    }
+
+    @Override
+    public String getName() {
+        return "windowed-batch";
+    }
+
+    @Override
+    public void reset() {
+        windowEnd = -1;
+    }
+
+    @Override
+    public void dispatch(DispatchSimulator.Context context) {
+        List<ShipmentArrival> waiting = context.waiting();
+        if (waiting.isEmpty()) {
+            windowEnd = -1;
+            return;
+        }
+        if (windowEnd < 0) {
+            windowEnd = context.now() + windowMillis;
+            context.wakeUpAt(windowEnd);
+            return;
+        }
+        if (context.now() < windowEnd) {
+            return;
+        }
+
+        List<DispatchSimulator.SimTruck> idle = context.idleTrucks();
+        List<long[]> pairs = new ArrayList<>();
+        for (int s = 0; s < waiting.size(); s++) {
+            ShipmentArrival shipment = waiting.get(s);
+            for (int t = 0; t < idle.size(); t++) {
+                int distance = context.distance(idle.get(t), shipment.getWarehouseX(), shipment.getWarehouseY());
+                pairs.add(new long[]{distance, s, t});
+            }
+        }
+        pairs.sort(Comparator.<long[]>comparingLong(p -> p[0]).thenComparingLong(p -> p[1]));
+
+        Set<Integer> matchedShipments = new HashSet<>();
+        Set<Integer> matchedTrucks = new HashSet<>();
+        for (long[] pair : pairs) {
+            int s = (int) pair[1];
+            int t = (int) pair[2];
+            if (matchedShipments.contains(s) || matchedTrucks.contains(t)) {
+                continue;
+            }
+            matchedShipments.add(s);
+            matchedTrucks.add(t);
+            context.startTrip(idle.get(t), List.of(waiting.get(s)));
+        }
+
+        // Leftovers open the next window
+        windowEnd = -1;
+        if (matchedShipments.size() < waiting.size()) {
+            windowEnd = context.now() + windowMillis;
+            context.wakeUpAt(windowEnd);
+        }
+    }
+}
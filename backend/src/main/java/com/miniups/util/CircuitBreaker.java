@@ -0,0 +1,174 @@
+/**
+ * Circuit Breaker
+ *
+ * Purpose:
+ * - Stops calling a dependency that is failing or slow, instead of making every
+ *   caller wait for its timeout
+ *
+ * States:
+ * - CLOSED: calls pass; outcomes of the last window-size calls are kept in a ring
+ * - OPEN: entered when, with at least minimum-calls recorded, the failure rate or the
+ *   slow-call rate reaches its threshold; calls are rejected for open-duration
+ * - HALF_OPEN: after open-duration a fixed number of trial calls pass; if their
+ *   rates are under the thresholds the circuit closes, otherwise it opens again
+ *
+ * A call is slow when it takes at least slow-call-duration, whether it failed or not.
+ * Every caller that is granted a call must report its outcome exactly once.
+ *
+ *
+
+ */
+package com.miniups.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final LongSupplier clock;
+    private final BiConsumer<State, State> listener;
+
+    // Guarded by this
+    private State state = State.CLOSED;
+    private final byte[] window;
+    private int next;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+    private long openedAt;
+    private int halfOpenPermitted;
+
+    public CircuitBreaker(int windowSize, int minimumCalls, float failureRateThreshold, float slowCallRateThreshold,
+                          long slowCallDurationMs, long openDurationMs, int halfOpenCalls,
+                          LongSupplier clock, BiConsumer<State, State> listener) {
+        if (windowSize < 1 || halfOpenCalls < 1) {
+            throw new IllegalArgumentException("Window size and half-open calls must be positive");
+        }
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallDurationMs);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMs);
+        this.halfOpenCalls = halfOpenCalls;
+        this.clock = clock != null ? clock : System::nanoTime;
+        this.listener = listener;
+        this.window = new byte[Math.max(windowSize, halfOpenCalls)];
+    }
+
+    /**
+     * Ask to make a call
+     *
+     * @return true if the call may go ahead; its outcome must then be reported
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openNanos) {
+                return false;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermitted >= halfOpenCalls) {
+                return false;
+            }
+            halfOpenPermitted++;
+        }
+        return true;
+    }
+
+    /**
+     * Report the outcome of a call that was granted by {@link #tryAcquire()}
+     */
+    public synchronized void onResult(boolean failed, long durationNanos) {
+        if (state == State.OPEN) {
+            // Late result of a call made before the circuit opened
+            return;
+        }
+        byte outcome = (byte) ((failed ? FAILED : 0) | (durationNanos >= slowCallNanos ? SLOW : 0));
+        record(outcome, state == State.HALF_OPEN ? halfOpenCalls : windowSize);
+
+        if (state == State.HALF_OPEN) {
+            if (recorded >= halfOpenCalls) {
+                transition(overThreshold() ? State.OPEN : State.CLOSED);
+            }
+        } else if (recorded >= minimumCalls && overThreshold()) {
+            transition(State.OPEN);
+        }
+    }
+
+    /**
+     * Give back a permit that was granted but never used for a call
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && halfOpenPermitted > recorded) {
+            halfOpenPermitted--;
+        }
+    }
+
+    public synchronized State getState() {
+        // An expired open period shows as half-open even before the next call arrives
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public synchronized float getFailureRate() {
+        return recorded == 0 ? 0f : 100f * failures / recorded;
+    }
+
+    public synchronized float getSlowCallRate() {
+        return recorded == 0 ? 0f : 100f * slowCalls / recorded;
+    }
+
+    // Private helper methods
+
+    private void record(byte outcome, int size) {
+        if (recorded == size) {
+            // Full window: the oldest outcome drops out
+            int oldest = window[next];
+            failures -= oldest & FAILED;
+            slowCalls -= (oldest & SLOW) >> 1;
+        } else {
+            recorded++;
+        }
+        window[next] = outcome;
+        failures += outcome & FAILED;
+        slowCalls += (outcome & SLOW) >> 1;
+        next = (next + 1) % size;
+    }
+
+    private boolean overThreshold() {
+        return getFailureRate() >= failureRateThreshold || getSlowCallRate() >= slowCallRateThreshold;
+    }
+
+    private void transition(State to) {
+        State from = state;
+        state = to;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+        halfOpenPermitted = 0;
+        if (to == State.OPEN) {
+            openedAt = clock.getAsLong();
+        }
+        if (listener != null) {
+            listener.accept(from, to);
+        }
+    }
+}
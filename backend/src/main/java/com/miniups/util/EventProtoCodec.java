@@ -0,0 +1,452 @@
+/**
+ * Event Proto Codec
+ *
+ * Function Description:
+ * - Encodes BusinessEvent messages to the binary EventEnvelope of ups_events.proto and
+ *   decodes them back, for events sent on RabbitMQ as application/x-protobuf
+ *
+ * Payloads:
+ * - ShipmentCreationPayload, NotificationPayload and AuditLogPayload map field by field
+ *   onto typed messages, so field names are not repeated in every message
+ * - Any other payload, and the Map<String, Object> fields of the typed ones, are written
+ *   as Jackson would write them (plain maps, lists and scalars directly, anything else
+ *   through its JSON tree) and come back as the Maps, Lists, Strings, numbers and
+ *   booleans Jackson would read from the same JSON
+ * - decode can adapt the payload to the type a listener expects, as the JSON
+ *   converter does from the listener's argument type
+ *
+ *
+
+ */
+package com.miniups.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.miniups.model.event.AuditLogPayload;
+import com.miniups.model.event.BusinessEvent;
+import com.miniups.model.event.NotificationPayload;
+import com.miniups.model.event.ShipmentCreationPayload;
+import com.miniups.proto.UpsEventsProto.AuditLog;
+import com.miniups.proto.UpsEventsProto.EventEnvelope;
+import com.miniups.proto.UpsEventsProto.Notification;
+import com.miniups.proto.UpsEventsProto.ShipmentCreation;
+import com.miniups.proto.UpsEventsProto.Time;
+import com.miniups.proto.UpsEventsProto.Value;
+import com.miniups.proto.UpsEventsProto.ValueList;
+import com.miniups.proto.UpsEventsProto.ValueMap;
+
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public final class EventProtoCodec {
+
+    // Prevent instantiation
+    private EventProtoCodec() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * Encode an event
+     *
+     * @param event Event to encode
+     * @param objectMapper Mapper that writes untyped payloads and Map fields, as for JSON
+     * @return EventEnvelope bytes
+     */
+    public static byte[] encode(BusinessEvent<?> event, ObjectMapper objectMapper) {
+        EventEnvelope.Builder envelope = EventEnvelope.newBuilder();
+        setIfPresent(event.getEventId(), envelope::setEventId);
+        setIfPresent(event.getEventType(), envelope::setEventType);
+        setIfPresent(toTime(event.getEventTime()), envelope::setEventTime);
+        setIfPresent(event.getSourceService(), envelope::setSourceService);
+        setIfPresent(event.getCorrelationId(), envelope::setCorrelationId);
+        setIfPresent(event.getVersion(), envelope::setVersion);
+
+        Object payload = event.getPayload();
+        if (payload instanceof ShipmentCreationPayload shipment) {
+            envelope.setShipmentCreation(toProto(shipment));
+        } else if (payload instanceof NotificationPayload notification) {
+            envelope.setNotification(toProto(notification, objectMapper));
+        } else if (payload instanceof AuditLogPayload auditLog) {
+            envelope.setAuditLog(toProto(auditLog, objectMapper));
+        } else if (payload != null) {
+            envelope.setValue(toValue(payload, objectMapper));
+        }
+        return envelope.build().toByteArray();
+    }
+
+    /**
+     * Decode an event with the payload type it was encoded with
+     *
+     * @throws InvalidProtocolBufferException if the body is not a valid EventEnvelope
+     */
+    public static BusinessEvent<Object> decode(byte[] body) throws InvalidProtocolBufferException {
+        EventEnvelope envelope = EventEnvelope.parseFrom(body);
+        Object payload = switch (envelope.getPayloadCase()) {
+            case SHIPMENT_CREATION -> fromProto(envelope.getShipmentCreation());
+            case NOTIFICATION -> fromProto(envelope.getNotification());
+            case AUDIT_LOG -> fromProto(envelope.getAuditLog());
+            case VALUE -> fromValue(envelope.getValue());
+            case PAYLOAD_NOT_SET -> null;
+        };
+        return new BusinessEvent<>(
+            envelope.hasEventId() ? envelope.getEventId() : null,
+            envelope.hasEventType() ? envelope.getEventType() : null,
+            envelope.hasEventTime() ? fromTime(envelope.getEventTime()) : null,
+            envelope.hasSourceService() ? envelope.getSourceService() : null,
+            envelope.hasCorrelationId() ? envelope.getCorrelationId() : null,
+            payload,
+            envelope.hasVersion() ? envelope.getVersion() : null);
+    }
+
+    /**
+     * Decode an event and convert its payload to the expected type where it differs
+     *
+     * @throws InvalidProtocolBufferException if the body is not a valid EventEnvelope
+     * @throws IllegalArgumentException if the payload cannot be converted
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> BusinessEvent<T> decode(byte[] body, Class<T> payloadType, ObjectMapper objectMapper)
+            throws InvalidProtocolBufferException {
+        BusinessEvent<Object> event = decode(body);
+        Object payload = event.getPayload();
+        if (payload != null && !payloadType.isInstance(payload)) {
+            event.setPayload(objectMapper.convertValue(payload, payloadType));
+        }
+        return (BusinessEvent<T>) event;
+    }
+
+    // Typed payloads
+
+    private static ShipmentCreation toProto(ShipmentCreationPayload payload) {
+        ShipmentCreation.Builder builder = ShipmentCreation.newBuilder();
+        setIfPresent(payload.getAmazonShipmentId(), builder::setAmazonShipmentId);
+        setIfPresent(payload.getWarehouseId(), builder::setWarehouseId);
+        setIfPresent(payload.getDestX(), builder::setDestX);
+        setIfPresent(payload.getDestY(), builder::setDestY);
+        setIfPresent(payload.getUserId(), builder::setUserId);
+        setIfPresent(payload.getPackageDescription(), builder::setPackageDescription);
+        setIfPresent(payload.getPackageWeight(), builder::setPackageWeight);
+        setIfPresent(payload.getPackageLength(), builder::setPackageLength);
+        setIfPresent(payload.getPackageWidth(), builder::setPackageWidth);
+        setIfPresent(payload.getPackageHeight(), builder::setPackageHeight);
+        setIfPresent(payload.getSpecialInstructions(), builder::setSpecialInstructions);
+        setIfPresent(payload.getPriority(), builder::setPriority);
+        setIfPresent(payload.getDeliveryTimeframe(), builder::setDeliveryTimeframe);
+        return builder.build();
+    }
+
+    private static ShipmentCreationPayload fromProto(ShipmentCreation proto) {
+        ShipmentCreationPayload payload = new ShipmentCreationPayload();
+        payload.setAmazonShipmentId(proto.hasAmazonShipmentId() ? proto.getAmazonShipmentId() : null);
+        payload.setWarehouseId(proto.hasWarehouseId() ? proto.getWarehouseId() : null);
+        payload.setDestX(proto.hasDestX() ? proto.getDestX() : null);
+        payload.setDestY(proto.hasDestY() ? proto.getDestY() : null);
+        payload.setUserId(proto.hasUserId() ? proto.getUserId() : null);
+        payload.setPackageDescription(proto.hasPackageDescription() ? proto.getPackageDescription() : null);
+        payload.setPackageWeight(proto.hasPackageWeight() ? proto.getPackageWeight() : null);
+        payload.setPackageLength(proto.hasPackageLength() ? proto.getPackageLength() : null);
+        payload.setPackageWidth(proto.hasPackageWidth() ? proto.getPackageWidth() : null);
+        payload.setPackageHeight(proto.hasPackageHeight() ? proto.getPackageHeight() : null);
+        payload.setSpecialInstructions(proto.hasSpecialInstructions() ? proto.getSpecialInstructions() : null);
+        payload.setPriority(proto.hasPriority() ? proto.getPriority() : null);
+        payload.setDeliveryTimeframe(proto.hasDeliveryTimeframe() ? proto.getDeliveryTimeframe() : null);
+        return payload;
+    }
+
+    private static Notification toProto(NotificationPayload payload, ObjectMapper objectMapper) {
+        Notification.Builder builder = Notification.newBuilder();
+        setIfPresent(payload.getNotificationId(), builder::setNotificationId);
+        setIfPresent(payload.getRecipientUserId(), builder::setRecipientUserId);
+        setIfPresent(payload.getRecipientEmail(), builder::setRecipientEmail);
+        setIfPresent(payload.getRecipientPhone(), builder::setRecipientPhone);
+        setIfPresent(payload.getDeviceToken(), builder::setDeviceToken);
+        if (payload.getNotificationTypes() != null) {
+            for (NotificationPayload.NotificationType type : payload.getNotificationTypes()) {
+                builder.addNotificationTypes(Notification.Type.valueOf(type.name()));
+            }
+        }
+        setIfPresent(payload.getSubject(), builder::setSubject);
+        setIfPresent(payload.getMessage(), builder::setMessage);
+        setIfPresent(payload.getHtmlContent(), builder::setHtmlContent);
+        setIfPresent(payload.getTemplateId(), builder::setTemplateId);
+        setIfPresent(toValueMap(payload.getTemplateVariables(), objectMapper), builder::setTemplateVariables);
+        if (payload.getPriority() != null) {
+            builder.setPriority(Notification.Priority.valueOf(payload.getPriority().name()));
+        }
+        setIfPresent(toTime(payload.getScheduledDeliveryTime()), builder::setScheduledDeliveryTime);
+        setIfPresent(toTime(payload.getExpirationTime()), builder::setExpirationTime);
+        setIfPresent(payload.getMaxRetryAttempts(), builder::setMaxRetryAttempts);
+        setIfPresent(payload.getCurrentAttempt(), builder::setCurrentAttempt);
+        setIfPresent(payload.getCategory(), builder::setCategory);
+        setIfPresent(payload.getRelatedEntityId(), builder::setRelatedEntityId);
+        setIfPresent(payload.getRelatedEntityType(), builder::setRelatedEntityType);
+        setIfPresent(payload.getDeepLinkUrl(), builder::setDeepLinkUrl);
+        if (payload.getActions() != null) {
+            for (NotificationPayload.NotificationAction action : payload.getActions()) {
+                Notification.Action.Builder actionBuilder = Notification.Action.newBuilder();
+                setIfPresent(action.getActionId(), actionBuilder::setActionId);
+                setIfPresent(action.getLabel(), actionBuilder::setLabel);
+                setIfPresent(action.getUrl(), actionBuilder::setUrl);
+                setIfPresent(action.getActionType(), actionBuilder::setActionType);
+                builder.addActions(actionBuilder);
+            }
+        }
+        setIfPresent(toValueMap(payload.getMetadata(), objectMapper), builder::setMetadata);
+        return builder.build();
+    }
+
+    private static NotificationPayload fromProto(Notification proto) {
+        NotificationPayload payload = new NotificationPayload();
+        payload.setNotificationId(proto.hasNotificationId() ? proto.getNotificationId() : null);
+        payload.setRecipientUserId(proto.hasRecipientUserId() ? proto.getRecipientUserId() : null);
+        payload.setRecipientEmail(proto.hasRecipientEmail() ? proto.getRecipientEmail() : null);
+        payload.setRecipientPhone(proto.hasRecipientPhone() ? proto.getRecipientPhone() : null);
+        payload.setDeviceToken(proto.hasDeviceToken() ? proto.getDeviceToken() : null);
+        if (proto.getNotificationTypesCount() > 0) {
+            List<NotificationPayload.NotificationType> types = new ArrayList<>(proto.getNotificationTypesCount());
+            for (Notification.Type type : proto.getNotificationTypesList()) {
+                types.add(NotificationPayload.NotificationType.valueOf(type.name()));
+            }
+            payload.setNotificationTypes(types);
+        }
+        payload.setSubject(proto.hasSubject() ? proto.getSubject() : null);
+        payload.setMessage(proto.hasMessage() ? proto.getMessage() : null);
+        payload.setHtmlContent(proto.hasHtmlContent() ? proto.getHtmlContent() : null);
+        payload.setTemplateId(proto.hasTemplateId() ? proto.getTemplateId() : null);
+        payload.setTemplateVariables(proto.hasTemplateVariables() ? fromValueMap(proto.getTemplateVariables()) : null);
+        payload.setPriority(proto.hasPriority()
+            ? NotificationPayload.Priority.valueOf(proto.getPriority().name()) : null);
+        payload.setScheduledDeliveryTime(proto.hasScheduledDeliveryTime()
+            ? fromTime(proto.getScheduledDeliveryTime()) : null);
+        payload.setExpirationTime(proto.hasExpirationTime() ? fromTime(proto.getExpirationTime()) : null);
+        payload.setMaxRetryAttempts(proto.hasMaxRetryAttempts() ? proto.getMaxRetryAttempts() : null);
+        payload.setCurrentAttempt(proto.hasCurrentAttempt() ? proto.getCurrentAttempt() : null);
+        payload.setCategory(proto.hasCategory() ? proto.getCategory() : null);
+        payload.setRelatedEntityId(proto.hasRelatedEntityId() ? proto.getRelatedEntityId() : null);
+        payload.setRelatedEntityType(proto.hasRelatedEntityType() ? proto.getRelatedEntityType() : null);
+        payload.setDeepLinkUrl(proto.hasDeepLinkUrl() ? proto.getDeepLinkUrl() : null);
+        if (proto.getActionsCount() > 0) {
+            List<NotificationPayload.NotificationAction> actions = new ArrayList<>(proto.getActionsCount());
+            for (Notification.Action action : proto.getActionsList()) {
+                actions.add(new NotificationPayload.NotificationAction(
+                    action.hasActionId() ? action.getActionId() : null,
+                    action.hasLabel() ? action.getLabel() : null,
+                    action.hasUrl() ? action.getUrl() : null,
+                    action.hasActionType() ? action.getActionType() : null));
+            }
+            payload.setActions(actions);
+        }
+        payload.setMetadata(proto.hasMetadata() ? fromValueMap(proto.getMetadata()) : null);
+        return payload;
+    }
+
+    private static AuditLog toProto(AuditLogPayload payload, ObjectMapper objectMapper) {
+        AuditLog.Builder builder = AuditLog.newBuilder();
+        setIfPresent(payload.getOperationType(), builder::setOperationType);
+        setIfPresent(payload.getUserId(), builder::setUserId);
+        setIfPresent(payload.getUsername(), builder::setUsername);
+        setIfPresent(payload.getSessionId(), builder::setSessionId);
+        setIfPresent(payload.getIpAddress(), builder::setIpAddress);
+        setIfPresent(payload.getUserAgent(), builder::setUserAgent);
+        setIfPresent(payload.getEntityId(), builder::setEntityId);
+        setIfPresent(payload.getEntityType(), builder::setEntityType);
+        setIfPresent(payload.getOperationDescription(), builder::setOperationDescription);
+        setIfPresent(payload.getOperationResult(), builder::setOperationResult);
+        setIfPresent(payload.getResultCode(), builder::setResultCode);
+        setIfPresent(payload.getErrorMessage(), builder::setErrorMessage);
+        setIfPresent(payload.getOperationDurationMs(), builder::setOperationDurationMs);
+        setIfPresent(toValueMap(payload.getAdditionalData(), objectMapper), builder::setAdditionalData);
+        setIfPresent(toTime(payload.getOperationTimestamp()), builder::setOperationTimestamp);
+        setIfPresent(payload.getEndpoint(), builder::setEndpoint);
+        setIfPresent(payload.getHttpMethod(), builder::setHttpMethod);
+        setIfPresent(payload.getRequestSize(), builder::setRequestSize);
+        setIfPresent(payload.getResponseSize(), builder::setResponseSize);
+        return builder.build();
+    }
+
+    private static AuditLogPayload fromProto(AuditLog proto) {
+        AuditLogPayload payload = new AuditLogPayload();
+        payload.setOperationType(proto.hasOperationType() ? proto.getOperationType() : null);
+        payload.setUserId(proto.hasUserId() ? proto.getUserId() : null);
+        payload.setUsername(proto.hasUsername() ? proto.getUsername() : null);
+        payload.setSessionId(proto.hasSessionId() ? proto.getSessionId() : null);
+        payload.setIpAddress(proto.hasIpAddress() ? proto.getIpAddress() : null);
+        payload.setUserAgent(proto.hasUserAgent() ? proto.getUserAgent() : null);
+        payload.setEntityId(proto.hasEntityId() ? proto.getEntityId() : null);
+        payload.setEntityType(proto.hasEntityType() ? proto.getEntityType() : null);
+        payload.setOperationDescription(proto.hasOperationDescription() ? proto.getOperationDescription() : null);
+        payload.setOperationResult(proto.hasOperationResult() ? proto.getOperationResult() : null);
+        payload.setResultCode(proto.hasResultCode() ? proto.getResultCode() : null);
+        payload.setErrorMessage(proto.hasErrorMessage() ? proto.getErrorMessage() : null);
+        payload.setOperationDurationMs(proto.hasOperationDurationMs() ? proto.getOperationDurationMs() : null);
+        payload.setAdditionalData(proto.hasAdditionalData() ? fromValueMap(proto.getAdditionalData()) : null);
+        payload.setOperationTimestamp(proto.hasOperationTimestamp() ? fromTime(proto.getOperationTimestamp()) : null);
+        payload.setEndpoint(proto.hasEndpoint() ? proto.getEndpoint() : null);
+        payload.setHttpMethod(proto.hasHttpMethod() ? proto.getHttpMethod() : null);
+        payload.setRequestSize(proto.hasRequestSize() ? proto.getRequestSize() : null);
+        payload.setResponseSize(proto.hasResponseSize() ? proto.getResponseSize() : null);
+        return payload;
+    }
+
+    // Free-form values
+
+    private static ValueMap toValueMap(Map<String, Object> map, ObjectMapper objectMapper) {
+        return map != null ? toValue(map, objectMapper).getMapValue() : null;
+    }
+
+    /**
+     * Plain values, maps and lists directly; anything else (dates, enums, objects)
+     * through the tree Jackson writes for it
+     */
+    private static Value toValue(Object object, ObjectMapper objectMapper) {
+        Value.Builder value = Value.newBuilder();
+        if (object == null) {
+            value.setNullValue(true);
+        } else if (object instanceof String string) {
+            value.setStringValue(string);
+        } else if (object instanceof Boolean bool) {
+            value.setBoolValue(bool);
+        } else if (object instanceof Integer || object instanceof Long
+                || object instanceof Short || object instanceof Byte) {
+            value.setIntValue(((Number) object).longValue());
+        } else if (object instanceof Double number) {
+            value.setDoubleValue(number);
+        } else if (object instanceof Map<?, ?> map && allStringKeys(map)) {
+            ValueMap.Builder entries = ValueMap.newBuilder();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                entries.addEntries(ValueMap.Entry.newBuilder()
+                    .setKey((String) entry.getKey())
+                    .setValue(toValue(entry.getValue(), objectMapper)));
+            }
+            value.setMapValue(entries);
+        } else if (object instanceof List<?> list) {
+            ValueList.Builder values = ValueList.newBuilder();
+            for (Object element : list) {
+                values.addValues(toValue(element, objectMapper));
+            }
+            value.setListValue(values);
+        } else {
+            return toValue(objectMapper.valueToTree(object));
+        }
+        return value.build();
+    }
+
+    private static boolean allStringKeys(Map<?, ?> map) {
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Map<String, Object> fromValueMap(ValueMap map) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (ValueMap.Entry entry : map.getEntriesList()) {
+            values.put(entry.getKey(), fromValue(entry.getValue()));
+        }
+        return values;
+    }
+
+    private static Value toValue(JsonNode node) {
+        Value.Builder value = Value.newBuilder();
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            value.setNullValue(true);
+        } else if (node.isBoolean()) {
+            value.setBoolValue(node.booleanValue());
+        } else if (node.isIntegralNumber()) {
+            if (node.canConvertToLong()) {
+                value.setIntValue(node.longValue());
+            } else {
+                value.setDecimalValue(node.bigIntegerValue().toString());
+            }
+        } else if (node.isBigDecimal()) {
+            value.setDecimalValue(node.decimalValue().toString());
+        } else if (node.isNumber()) {
+            value.setDoubleValue(node.doubleValue());
+        } else if (node.isArray()) {
+            ValueList.Builder list = ValueList.newBuilder();
+            for (JsonNode element : node) {
+                list.addValues(toValue(element));
+            }
+            value.setListValue(list);
+        } else if (node.isObject()) {
+            ValueMap.Builder map = ValueMap.newBuilder();
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                map.addEntries(ValueMap.Entry.newBuilder().setKey(field.getKey()).setValue(toValue(field.getValue())));
+            }
+            value.setMapValue(map);
+        } else {
+            // Text, and binary as the base64 text JSON would carry
+            value.setStringValue(node.asText());
+        }
+        return value.build();
+    }
+
+    private static Object fromValue(Value value) {
+        return switch (value.getKindCase()) {
+            case BOOL_VALUE -> value.getBoolValue();
+            case INT_VALUE -> {
+                long number = value.getIntValue();
+                // Integer where it fits, as Jackson reads untyped JSON numbers
+                if (number == (int) number) {
+                    yield Integer.valueOf((int) number);
+                }
+                yield Long.valueOf(number);
+            }
+            case DOUBLE_VALUE -> value.getDoubleValue();
+            case STRING_VALUE -> value.getStringValue();
+            case DECIMAL_VALUE -> fromDecimal(value.getDecimalValue());
+            case LIST_VALUE -> {
+                List<Object> list = new ArrayList<>(value.getListValue().getValuesCount());
+                for (Value element : value.getListValue().getValuesList()) {
+                    list.add(fromValue(element));
+                }
+                yield list;
+            }
+            case MAP_VALUE -> fromValueMap(value.getMapValue());
+            case NULL_VALUE, KIND_NOT_SET -> null;
+        };
+    }
+
+    private static Object fromDecimal(String decimal) {
+        try {
+            return new BigInteger(decimal);
+        } catch (NumberFormatException e) {
+            // Jackson reads untyped fractions as Double
+            return Double.valueOf(decimal);
+        }
+    }
+
+    // Helpers
+
+    private static Time toTime(Instant instant) {
+        if (instant == null) {
+            return null;
+        }
+        Time.Builder time = Time.newBuilder().setSeconds(instant.getEpochSecond());
+        if (instant.getNano() != 0) {
+            time.setNanos(instant.getNano());
+        }
+        return time.build();
+    }
+
+    private static Instant fromTime(Time time) {
+        return Instant.ofEpochSecond(time.getSeconds(), time.getNanos());
+    }
+
+    private static <V> void setIfPresent(V value, Consumer<V> setter) {
+        if (value != null) {
+            setter.accept(value);
+        }
+    }
+}
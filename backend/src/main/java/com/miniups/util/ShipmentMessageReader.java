@@ -0,0 +1,372 @@
+/**
+ * Shipment Message Reader
+ *
+ * Function Description:
+ * - Reads Amazon ShipmentCreated requests straight from the request bytes with a
+ *   streaming Jackson parser, filling a ShipmentCreatedMessage in one pass
+ * - No intermediate Map or JsonNode tree, and unknown fields are skipped without
+ *   being materialised
+ *
+ * Supported Shapes:
+ * - Legacy message: {"message_type": "ShipmentCreated", "timestamp": ..., "payload": {...}}
+ * - Bare payload: {"shipment_id": ..., "email": ..., ...}
+ * - Batch: a JSON array of messages or payloads, or {"shipments": [...]}
+ *
+ * Validation:
+ * - Field type problems and missing required fields are collected on the message,
+ *   never thrown; only malformed JSON raises an exception
+ * - Numbers sent as strings are accepted, as Amazon is not consistent about it
+ *
+ *
+
+ */
+package com.miniups.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.miniups.model.dto.ShipmentCreatedMessage;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class ShipmentMessageReader {
+
+    // Thread-safe once configured; parsers are cheap, the factory is not
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // Prevent instantiation
+    private ShipmentMessageReader() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * Read a single ShipmentCreated message, in legacy or bare payload shape
+     *
+     * @param json Request body
+     * @return Parsed message; check {@link ShipmentCreatedMessage#isValid()} for field errors
+     * @throws IOException if the body is not well-formed JSON
+     */
+    public static ShipmentCreatedMessage read(byte[] json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            ShipmentCreatedMessage.Builder builder = ShipmentCreatedMessage.builder();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return builder.error("message must be a JSON object").build();
+            }
+            readObject(parser, builder);
+            return builder.build();
+        }
+    }
+
+    /**
+     * Read a batch of ShipmentCreated messages
+     *
+     * @param json Request body: an array, or an object with a "shipments" array
+     * @return One entry per element in request order, null for elements that are not
+     *         JSON objects; or null if the body has neither shape
+     * @throws IOException if the body is not well-formed JSON
+     */
+    public static List<ShipmentCreatedMessage> readBatch(byte[] json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                return readArray(parser);
+            }
+            if (token != JsonToken.START_OBJECT) {
+                return null;
+            }
+            List<ShipmentCreatedMessage> messages = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (messages == null && "shipments".equals(name) && value == JsonToken.START_ARRAY) {
+                    messages = readArray(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return messages;
+        }
+    }
+
+    // Private helper methods
+
+    private static List<ShipmentCreatedMessage> readArray(JsonParser parser) throws IOException {
+        List<ShipmentCreatedMessage> messages = new ArrayList<>();
+        ShipmentCreatedMessage.Builder builder = ShipmentCreatedMessage.builder();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.START_OBJECT) {
+                readObject(parser, builder.reset());
+                messages.add(builder.build());
+            } else {
+                parser.skipChildren();
+                messages.add(null);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Read the fields of the object the parser is positioned at, up to its END_OBJECT
+     *
+     * Message envelope fields and payload fields are accepted at the same level, so the
+     * legacy shape and a bare payload go through the same loop.
+     */
+    private static void readObject(JsonParser parser, ShipmentCreatedMessage.Builder builder) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (name) {
+                case "message_type", "messageType" -> builder.messageType(readText(parser, token, name, builder));
+                case "timestamp" -> builder.timestamp(readTimestamp(parser, token));
+                case "payload" -> {
+                    if (token == JsonToken.START_OBJECT) {
+                        readObject(parser, builder);
+                    } else if (token != JsonToken.VALUE_NULL) {
+                        builder.error("payload must be a JSON object");
+                        parser.skipChildren();
+                    }
+                }
+                case "shipment_id" -> builder.shipmentId(readText(parser, token, name, builder));
+                case "email" -> builder.email(readText(parser, token, name, builder));
+                case "ups_account" -> builder.upsAccount(readText(parser, token, name, builder));
+                case "user_id" -> builder.userId(readLong(parser, token, name, builder));
+                case "warehouse_id" -> builder.warehouseId(readLong(parser, token, name, builder));
+                case "destination_x" -> builder.destinationX(readInt(parser, token, name, builder));
+                case "destination_y" -> builder.destinationY(readInt(parser, token, name, builder));
+                case "weight" -> builder.weight(readDecimal(parser, token, name, builder));
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private static String readText(JsonParser parser, JsonToken token, String field,
+                                   ShipmentCreatedMessage.Builder builder) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token.isScalarValue()) {
+            return parser.getText();
+        }
+        builder.error(field + " must be a string or number");
+        parser.skipChildren();
+        return null;
+    }
+
+    private static Long readLong(JsonParser parser, JsonToken token, String field,
+                                 ShipmentCreatedMessage.Builder builder) throws IOException {
+        switch (token) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_NUMBER_INT:
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    builder.error(field + " is out of range");
+                    return null;
+                }
+                return parser.getLongValue();
+            case VALUE_NUMBER_FLOAT:
+                // Same truncation as Number.longValue() on the old Map path
+                return (long) parser.getDoubleValue();
+            case VALUE_STRING:
+                Long value = parseLong(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                if (value == null) {
+                    builder.error(field + " must be a number");
+                }
+                return value;
+            default:
+                builder.error(field + " must be a number");
+                parser.skipChildren();
+                return null;
+        }
+    }
+
+    private static Integer readInt(JsonParser parser, JsonToken token, String field,
+                                   ShipmentCreatedMessage.Builder builder) throws IOException {
+        Long value = readLong(parser, token, field, builder);
+        if (value == null) {
+            return null;
+        }
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            builder.error(field + " is out of range");
+            return null;
+        }
+        return value.intValue();
+    }
+
+    private static BigDecimal readDecimal(JsonParser parser, JsonToken token, String field,
+                                          ShipmentCreatedMessage.Builder builder) throws IOException {
+        switch (token) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDecimalValue();
+            case VALUE_STRING:
+                char[] chars = parser.getTextCharacters();
+                int offset = parser.getTextOffset();
+                int length = parser.getTextLength();
+                if (isBlank(chars, offset, length)) {
+                    return null;
+                }
+                if (!isDecimal(chars, offset, length)) {
+                    builder.error(field + " must be a number");
+                    return null;
+                }
+                return new BigDecimal(chars, offset, length);
+            default:
+                builder.error(field + " must be a number");
+                parser.skipChildren();
+                return null;
+        }
+    }
+
+    /**
+     * The timestamp is informational; an unreadable one is dropped rather than reported
+     */
+    private static LocalDateTime readTimestamp(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.VALUE_STRING) {
+            parser.skipChildren();
+            return null;
+        }
+        return parseTimestamp(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+    }
+
+    /**
+     * Parse yyyy-MM-ddTHH:mm:ss with an optional fraction of up to nine digits, as Amazon
+     * sends it; DateTimeFormatter allocates more than the rest of the message put together
+     *
+     * @return Timestamp, or null if the text is not in that form or not a valid date
+     */
+    static LocalDateTime parseTimestamp(char[] chars, int offset, int length) {
+        if (length < 19 || chars[offset + 4] != '-' || chars[offset + 7] != '-' || chars[offset + 10] != 'T'
+                || chars[offset + 13] != ':' || chars[offset + 16] != ':') {
+            return null;
+        }
+        int year = digits(chars, offset, 4);
+        int month = digits(chars, offset + 5, 2);
+        int day = digits(chars, offset + 8, 2);
+        int hour = digits(chars, offset + 11, 2);
+        int minute = digits(chars, offset + 14, 2);
+        int second = digits(chars, offset + 17, 2);
+        int nanos = 0;
+        if (length > 19) {
+            int fractionDigits = length - 20;
+            if (chars[offset + 19] != '.' || fractionDigits < 1 || fractionDigits > 9) {
+                return null;
+            }
+            nanos = digits(chars, offset + 20, fractionDigits);
+            for (int i = fractionDigits; i < 9 && nanos >= 0; i++) {
+                nanos *= 10;
+            }
+        }
+        if (year < 0 || month < 1 || month > 12 || day < 1 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59 || nanos < 0
+                || day > Month.of(month).length(Year.isLeap(year))) {
+            return null;
+        }
+        return LocalDateTime.of(year, month, day, hour, minute, second, nanos);
+    }
+
+    /**
+     * @return Value of a run of ASCII digits, or -1 if any character is not a digit
+     */
+    private static int digits(char[] chars, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            if (!isDigit(chars[i])) {
+                return -1;
+            }
+            value = value * 10 + (chars[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Parse an optionally signed decimal integer
+     *
+     * @return Value, or null if the text is not an integer or does not fit in a long
+     */
+    static Long parseLong(char[] chars, int offset, int length) {
+        if (length == 0) {
+            return null;
+        }
+        int i = offset;
+        int end = offset + length;
+        boolean negative = false;
+        if (chars[i] == '-' || chars[i] == '+') {
+            negative = chars[i] == '-';
+            if (++i == end) {
+                return null;
+            }
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) {
+                return null;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Check for [+-]digits[.digits][(e|E)[+-]digits] with at least one mantissa digit
+     */
+    static boolean isDecimal(char[] chars, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            i++;
+        }
+        int digits = 0;
+        while (i < end && isDigit(chars[i])) {
+            i++;
+            digits++;
+        }
+        if (i < end && chars[i] == '.') {
+            i++;
+            while (i < end && isDigit(chars[i])) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < end && (chars[i] == 'e' || chars[i] == 'E')) {
+            i++;
+            if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+                i++;
+            }
+            int exponentDigits = 0;
+            while (i < end && isDigit(chars[i])) {
+                i++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return false;
+            }
+        }
+        return i == end;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isBlank(char[] chars, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (!Character.isWhitespace(chars[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
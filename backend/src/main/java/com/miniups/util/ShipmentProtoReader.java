@@ -0,0 +1,170 @@
+/**
+ * Shipment Proto Reader
+ *
+ * Function Description:
+ * - Reads Amazon ShipmentCreated requests sent as application/x-protobuf (amazon_ups.proto)
+ *   into the same ShipmentCreatedMessage the JSON reader produces, so both formats share
+ *   validation and the ingest pipeline without a detour through JSON
+ *
+ * Supported Shapes:
+ * - Single AShipmentCreated
+ * - AShipmentBatch with repeated shipments
+ * - Stream of length-delimited AShipmentCreated messages (writeDelimitedTo), handed
+ *   over in chunks while the body is still being read
+ *
+ * Validation:
+ * - Missing required fields and bad weights are collected on the message, never thrown;
+ *   only a malformed protobuf body raises an exception
+ *
+ *
+
+ */
+package com.miniups.util;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.miniups.model.dto.ShipmentCreatedMessage;
+import com.miniups.proto.AmazonUpsProto.AShipmentBatch;
+import com.miniups.proto.AmazonUpsProto.AShipmentCreated;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+public final class ShipmentProtoReader {
+
+    // A shipment is a few hundred bytes; anything far larger is a corrupt length prefix
+    static final int MAX_MESSAGE_BYTES = 64 * 1024;
+
+    // Prevent instantiation
+    private ShipmentProtoReader() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * Read a single AShipmentCreated message
+     *
+     * @param body Request body
+     * @return Parsed message; check {@link ShipmentCreatedMessage#isValid()} for field errors
+     * @throws InvalidProtocolBufferException if the body is not a valid AShipmentCreated
+     */
+    public static ShipmentCreatedMessage read(byte[] body) throws InvalidProtocolBufferException {
+        return toMessage(AShipmentCreated.parseFrom(body), ShipmentCreatedMessage.builder());
+    }
+
+    /**
+     * Read an AShipmentBatch
+     *
+     * @param body Request body
+     * @return One entry per shipment in request order
+     * @throws InvalidProtocolBufferException if the body is not a valid AShipmentBatch
+     */
+    public static List<ShipmentCreatedMessage> readBatch(byte[] body) throws InvalidProtocolBufferException {
+        AShipmentBatch batch = AShipmentBatch.parseFrom(body);
+        List<ShipmentCreatedMessage> messages = new ArrayList<>(batch.getShipmentsCount());
+        ShipmentCreatedMessage.Builder builder = ShipmentCreatedMessage.builder();
+        for (AShipmentCreated shipment : batch.getShipmentsList()) {
+            messages.add(toMessage(shipment, builder.reset()));
+        }
+        return messages;
+    }
+
+    /**
+     * Read length-delimited AShipmentCreated messages until the end of the stream
+     *
+     * Chunks are handed to the handler as soon as they fill up, so a long stream is
+     * ingested while it is still arriving and never held in memory as a whole.
+     *
+     * @param in Request body stream
+     * @param chunkSize Messages per chunk; the last chunk may be smaller
+     * @param handler Called with each chunk, in stream order
+     * @return Number of messages read
+     * @throws IOException if the stream cannot be read or a message is malformed; chunks
+     *         handed over before the bad message stay processed
+     */
+    public static int readDelimited(InputStream in, int chunkSize,
+                                    Consumer<List<ShipmentCreatedMessage>> handler) throws IOException {
+        CodedInputStream coded = CodedInputStream.newInstance(in);
+        ShipmentCreatedMessage.Builder builder = ShipmentCreatedMessage.builder();
+        List<ShipmentCreatedMessage> chunk = new ArrayList<>(chunkSize);
+        int count = 0;
+        while (!coded.isAtEnd()) {
+            // The 64 MB total size limit is meant for one message, not a whole stream
+            coded.resetSizeCounter();
+            int length = coded.readRawVarint32();
+            if (length < 0 || length > MAX_MESSAGE_BYTES) {
+                throw new InvalidProtocolBufferException("Message " + count + " has invalid length " + length);
+            }
+            int limit = coded.pushLimit(length);
+            AShipmentCreated shipment = AShipmentCreated.parseFrom(coded);
+            coded.popLimit(limit);
+
+            chunk.add(toMessage(shipment, builder.reset()));
+            count++;
+            if (chunk.size() == chunkSize) {
+                handler.accept(chunk);
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            handler.accept(chunk);
+        }
+        return count;
+    }
+
+    /**
+     * Map one protobuf shipment onto a (reset) builder and build the message
+     */
+    static ShipmentCreatedMessage toMessage(AShipmentCreated shipment, ShipmentCreatedMessage.Builder builder) {
+        builder.messageType("ShipmentCreated");
+        if (shipment.hasTimestamp()) {
+            builder.timestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(shipment.getTimestamp()), ZoneId.systemDefault()));
+        }
+        if (shipment.hasShipmentId()) {
+            builder.shipmentId(shipment.getShipmentId());
+        }
+        if (shipment.hasEmail()) {
+            builder.email(shipment.getEmail());
+        }
+        if (shipment.hasWarehouseId()) {
+            builder.warehouseId(shipment.getWarehouseId());
+        }
+        if (shipment.hasDestinationX()) {
+            builder.destinationX(shipment.getDestinationX());
+        }
+        if (shipment.hasDestinationY()) {
+            builder.destinationY(shipment.getDestinationY());
+        }
+        if (shipment.hasUserId()) {
+            builder.userId(shipment.getUserId());
+        }
+        if (shipment.hasUpsAccount()) {
+            builder.upsAccount(shipment.getUpsAccount());
+        }
+        if (shipment.hasWeight()) {
+            builder.weight(readWeight(shipment.getWeight(), builder));
+        }
+        return builder.build();
+    }
+
+    // Private helper methods
+
+    private static BigDecimal readWeight(String weight, ShipmentCreatedMessage.Builder builder) {
+        String text = weight.trim();
+        if (text.isEmpty()) {
+            return null;
+        }
+        char[] chars = text.toCharArray();
+        if (!ShipmentMessageReader.isDecimal(chars, 0, chars.length)) {
+            builder.error("weight must be a number");
+            return null;
+        }
+        return new BigDecimal(chars);
+    }
+}
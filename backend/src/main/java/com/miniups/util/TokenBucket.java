@@ -0,0 +1,105 @@
+/**
+ * Token Bucket
+ *
+ * Purpose:
+ * - Limits the rate of calls to a dependency: up to permits-per-second on average,
+ *   with bursts of up to capacity
+ *
+ * Behaviour:
+ * - Tokens refill continuously; a caller takes one per call
+ * - acquire waits for the next token when it will be available within the given wait,
+ *   and returns false at once when it will not; waiting callers are served in the
+ *   order they reserved, so a burst of callers is spread over time rather than stampeding
+ *
+ *
+
+ */
+package com.miniups.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+public class TokenBucket {
+
+    private final double capacity;
+    private final double nanosPerToken;
+    private final LongSupplier clock;
+
+    // Guarded by this
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(double permitsPerSecond, int capacity, LongSupplier clock) {
+        if (permitsPerSecond <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("Rate and capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.clock = clock != null ? clock : System::nanoTime;
+        this.tokens = capacity;
+        this.refilledAt = this.clock.getAsLong();
+    }
+
+    /**
+     * Take a token without waiting
+     *
+     * @return true if a token was available
+     */
+    public boolean tryAcquire() {
+        return reserve(0) == 0;
+    }
+
+    /**
+     * Take a token, waiting for it up to maxWait
+     *
+     * @return true if a token was taken, false if it would not be available in time
+     */
+    public boolean acquire(long maxWait, TimeUnit unit) throws InterruptedException {
+        long waitNanos = reserve(unit.toNanos(maxWait));
+        if (waitNanos < 0) {
+            return false;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return true;
+    }
+
+    /**
+     * Tokens available now, including fractions
+     */
+    public synchronized double getAvailable() {
+        refill(clock.getAsLong());
+        return tokens;
+    }
+
+    // Private helper methods
+
+    /**
+     * Reserve the next token if it is due within maxWaitNanos
+     *
+     * @return nanoseconds until the reserved token is due, or -1 if none was reserved
+     */
+    private synchronized long reserve(long maxWaitNanos) {
+        refill(clock.getAsLong());
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        long waitNanos = (long) Math.ceil((1 - tokens) * nanosPerToken);
+        if (waitNanos > maxWaitNanos) {
+            return -1;
+        }
+        // Borrowed against the refill, so later callers queue behind this one
+        tokens -= 1;
+        return waitNanos;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - refilledAt;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed / nanosPerToken);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.miniups.concurrency;
+
+import com.miniups.model.entity.Shipment;
+import com.miniups.model.entity.Truck;
+import com.miniups.model.entity.User;
+import com.miniups.model.enums.ShipmentStatus;
+import com.miniups.repository.ShipmentRepository;
+import com.miniups.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Concurrency tests for the native shipment and user upserts used by Amazon ingest.
+ * Duplicates are fired in parallel, each in its own transaction as in the ingest path,
+ * and must resolve to one row without constraint-violation failures.
+ */
+@DisplayName("Concurrent Shipment Upsert Tests")
+public class ConcurrentShipmentUpsertTest extends ConcurrencyTestBase {
+
+    @Autowired
+    private ShipmentRepository shipmentRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM shipments WHERE shipment_id LIKE 'UPSERT-%'");
+        jdbcTemplate.update("DELETE FROM users WHERE email LIKE '%@upsert.test'");
+    }
+
+    @Test
+    @DisplayName("Parallel duplicates of one shipment create it once and report the rest as duplicates")
+    void testDuplicateShipment_CreatedOnce() {
+        // Given
+        String shipmentId = "UPSERT-" + System.nanoTime();
+        Truck truck = truckRepository.findAll().get(0);
+        AtomicInteger duplicates = new AtomicInteger();
+
+        // When
+        ConcurrencyTestResult result = executeConcurrencyTest(() -> {
+            Long id = ingest(shipmentId, "dup@upsert.test", truck);
+            if (id == null) {
+                duplicates.incrementAndGet();
+            }
+            return id != null;
+        }, 20, 2, 60);
+
+        // Then
+        printConcurrencyTestResult(result, "Duplicate shipment ingest");
+        assertThat(result.getExceptions()).isEmpty();
+        assertThat(result.getSuccessCount()).isEqualTo(1);
+        assertThat(duplicates.get()).isEqualTo(39);
+        assertThat(count("SELECT COUNT(*) FROM shipments WHERE shipment_id = ?", shipmentId)).isEqualTo(1);
+        assertThat(count("SELECT COUNT(*) FROM users WHERE email = ?", "dup@upsert.test")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Parallel shipments of one new customer share a single user")
+    void testDuplicateUser_SharedByAllShipments() {
+        // Given
+        String prefix = "UPSERT-" + System.nanoTime() + "-";
+        List<Truck> trucks = truckRepository.findAll();
+        AtomicInteger sequence = new AtomicInteger();
+
+        // When
+        ConcurrencyTestResult result = executeConcurrencyTest(() -> {
+            int n = sequence.incrementAndGet();
+            return ingest(prefix + n, "shared@upsert.test", trucks.get(n % trucks.size())) != null;
+        }, 20, 2, 60);
+
+        // Then
+        printConcurrencyTestResult(result, "Same-customer shipment ingest");
+        assertThat(result.getExceptions()).isEmpty();
+        assertThat(result.getSuccessCount()).isEqualTo(40);
+        assertThat(count("SELECT COUNT(*) FROM users WHERE email = ?", "shared@upsert.test")).isEqualTo(1);
+        assertThat(count("SELECT COUNT(DISTINCT user_id) FROM shipments WHERE shipment_id LIKE ?", prefix + "%"))
+            .isEqualTo(1);
+    }
+
+    // Helper methods
+
+    /**
+     * Upsert the customer and insert the shipment in one transaction, as Amazon ingest does
+     *
+     * @return Shipment ID, or null for a duplicate
+     */
+    private Long ingest(String shipmentId, String email, Truck truck) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            User user = new User();
+            user.setUsername("amazon_user_" + email);
+            user.setEmail(email);
+            user.setPassword("temp_password");
+            user.setFirstName("Amazon User");
+            user.setLastName("Customer");
+            Long userId = userRepository.upsertByEmail(user);
+
+            Shipment shipment = new Shipment(shipmentId, 0, 0, 10, 10);
+            shipment.setWarehouseId("1");
+            shipment.setStatus(ShipmentStatus.CREATED);
+            shipment.setWeight(BigDecimal.ONE);
+            shipment.setUser(userRepository.getReferenceById(userId));
+            shipment.setTruck(truck);
+            return shipmentRepository.insertIfAbsent(shipment);
+        });
+    }
+
+    private long count(String sql, String arg) {
+        return jdbcTemplate.queryForObject(sql, Long.class, arg);
+    }
+}
@@ -0,0 +1,213 @@
+package com.miniups.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.miniups.model.event.BusinessEvent;
+import com.miniups.model.event.NotificationPayload;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for EventMessageConverter as registered by RabbitMQConfig.
+ * Tests binary events read into the listener's argument type, JSON messages still
+ * read by the same converter, rejection of non-events, routing-key selection, and
+ * end-to-end throughput over a loopback socket standing in for the broker.
+ */
+@DisplayName("EventMessageConverter Unit Tests")
+class EventMessageConverterTest {
+
+    private static final Type NOTIFICATION_EVENT =
+        new ParameterizedTypeReference<BusinessEvent<NotificationPayload>>() { }.getType();
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+        .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+        .build();
+
+    private MessageConverter converter;
+    private EventContentTypes contentTypes;
+
+    @BeforeEach
+    void setUp() {
+        converter = new RabbitMQConfig().jsonMessageConverter(objectMapper);
+        contentTypes = new EventContentTypes();
+    }
+
+    @Test
+    @DisplayName("Should send a binary event and read it into the listener's argument type")
+    void testBinary_ReadIntoArgumentType() {
+        // Given
+        BusinessEvent<NotificationPayload> event = event();
+
+        // When
+        Message message = converter.toMessage(event, properties(EventMessageConverter.CONTENT_TYPE_PROTOBUF));
+        Object read = converter.fromMessage(inferred(message, NOTIFICATION_EVENT));
+
+        // Then
+        assertThat(message.getMessageProperties().getContentType()).isEqualTo(EventMessageConverter.CONTENT_TYPE_PROTOBUF);
+        assertThat(message.getMessageProperties().getMessageId()).isNotNull();
+        assertThat(read).usingRecursiveComparison().isEqualTo(event);
+    }
+
+    @Test
+    @DisplayName("Should still read JSON events, including those without a content type")
+    void testJson_StillRead() {
+        // Given
+        BusinessEvent<NotificationPayload> event = event();
+        Message json = converter.toMessage(event, new MessageProperties());
+        Message untyped = new Message(json.getBody(), new MessageProperties());
+        untyped.getMessageProperties().setContentType(null);
+
+        // When / Then
+        assertThat(json.getMessageProperties().getContentType()).isEqualTo(MessageProperties.CONTENT_TYPE_JSON);
+        assertThat(converter.fromMessage(inferred(json, NOTIFICATION_EVENT))).usingRecursiveComparison().isEqualTo(event);
+        assertThat(converter.fromMessage(inferred(untyped, NOTIFICATION_EVENT))).usingRecursiveComparison()
+            .isEqualTo(event);
+    }
+
+    @Test
+    @DisplayName("Should refuse to send anything but an event as binary, and fail on a bad body")
+    void testNonEventAndBadBody_Rejected() {
+        assertThatThrownBy(() -> converter.toMessage(Map.of("a", 1),
+                properties(EventMessageConverter.CONTENT_TYPE_PROTOBUF)))
+            .isInstanceOf(MessageConversionException.class);
+
+        Message bad = new Message(new byte[] {(byte) 0xFF, 0x01}, properties(EventMessageConverter.CONTENT_TYPE_PROTOBUF));
+        assertThatThrownBy(() -> converter.fromMessage(bad)).isInstanceOf(MessageConversionException.class);
+    }
+
+    @Test
+    @DisplayName("Should choose binary by routing-key pattern, for events only")
+    void testContentTypes_ByRoutingKey() {
+        // Default patterns: shipment.create.*, notification.#, audit.log.*
+        assertThat(List.of("shipment.create.request", "notification.high.delivery", "notification", "audit.log.created"))
+            .allSatisfy(key -> assertThat(contentTypes.contentTypeFor(key, event()))
+                .isEqualTo(EventMessageConverter.CONTENT_TYPE_PROTOBUF));
+        assertThat(List.of("shipment.status.updated", "shipment.create", "user.registered", "audit.log.created.x"))
+            .allSatisfy(key -> assertThat(contentTypes.contentTypeFor(key, event()))
+                .isEqualTo(MessageProperties.CONTENT_TYPE_JSON));
+        assertThat(contentTypes.contentTypeFor("audit.log.created", Map.of()))
+            .isEqualTo(MessageProperties.CONTENT_TYPE_JSON);
+
+        ReflectionTestUtils.setField(contentTypes, "enabled", false);
+        assertThat(contentTypes.contentTypeFor("audit.log.created", event()))
+            .isEqualTo(MessageProperties.CONTENT_TYPE_JSON);
+    }
+
+    @Test
+    @DisplayName("Benchmark: 50k notification events through a loopback socket, JSON vs protobuf")
+    void benchmarkThroughLoopback() throws Exception {
+        int events = 50_000;
+        // Warm both paths
+        transfer(5_000, MessageProperties.CONTENT_TYPE_JSON);
+        transfer(5_000, EventMessageConverter.CONTENT_TYPE_PROTOBUF);
+
+        long[] json = transfer(events, MessageProperties.CONTENT_TYPE_JSON);
+        long[] binary = transfer(events, EventMessageConverter.CONTENT_TYPE_PROTOBUF);
+
+        System.out.printf("json:     %.0f events/s, %.1f MB on the wire%n", events / (json[0] / 1e9), json[1] / 1e6);
+        System.out.printf("protobuf: %.0f events/s, %.1f MB on the wire%n",
+            events / (binary[0] / 1e9), binary[1] / 1e6);
+
+        assertThat(binary[1]).isLessThan(json[1] / 2);
+        assertThat(binary[0]).isLessThan(json[0]);
+    }
+
+    // Helper methods
+
+    /**
+     * Convert events on one thread, frame them over a loopback socket, and convert them
+     * back into the listener argument type on another
+     *
+     * @return elapsed nanoseconds and bytes sent
+     */
+    private long[] transfer(int events, String contentType) throws Exception {
+        BusinessEvent<NotificationPayload> event = event();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long bytes = 0;
+        long start = System.nanoTime();
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread consumer = new Thread(() -> {
+                try (Socket socket = server.accept();
+                     DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+                    String receivedType = in.readUTF();
+                    for (int i = 0; i < events; i++) {
+                        byte[] body = new byte[in.readInt()];
+                        in.readFully(body);
+                        MessageProperties properties = properties(receivedType);
+                        properties.setInferredArgumentType(NOTIFICATION_EVENT);
+                        converter.fromMessage(new Message(body, properties));
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            consumer.start();
+            try (Socket socket = new Socket(server.getInetAddress(), server.getLocalPort());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+                out.writeUTF(contentType);
+                for (int i = 0; i < events; i++) {
+                    byte[] body = converter.toMessage(event, properties(contentType)).getBody();
+                    out.writeInt(body.length);
+                    out.write(body);
+                    bytes += body.length;
+                }
+            }
+            consumer.join();
+        }
+        assertThat(failure.get()).isNull();
+        return new long[] {System.nanoTime() - start, bytes};
+    }
+
+    private static MessageProperties properties(String contentType) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(contentType);
+        return properties;
+    }
+
+    private static Message inferred(Message message, Type type) {
+        message.getMessageProperties().setInferredArgumentType(type);
+        return message;
+    }
+
+    private static BusinessEvent<NotificationPayload> event() {
+        NotificationPayload payload = new NotificationPayload();
+        payload.setNotificationId("notif-7f3a9c2e");
+        payload.setRecipientUserId(1042L);
+        payload.setRecipientEmail("customer@example.com");
+        payload.setNotificationTypes(List.of(NotificationPayload.NotificationType.EMAIL,
+            NotificationPayload.NotificationType.IN_APP_NOTIFICATION));
+        payload.setSubject("Your package is out for delivery");
+        payload.setMessage("Shipment 1001 is on truck 7 and will arrive today.");
+        payload.setPriority(NotificationPayload.Priority.HIGH);
+        payload.setScheduledDeliveryTime(Instant.parse("2026-10-19T08:30:00.123456Z"));
+        payload.setMaxRetryAttempts(5);
+        payload.setCategory("delivery");
+        payload.addMetadata("truckId", 7);
+        return new BusinessEvent<>("evt-3b1f", "notification.high.delivery", Instant.parse("2026-10-19T08:00:00.5Z"),
+            "mini-ups-backend", "corr-8842", payload, "1.0");
+    }
+}
@@ -0,0 +1,155 @@
+package com.miniups.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniups.service.IdempotencyStore;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for IdempotencyFilter.
+ * Tests that duplicate Amazon requests are processed once and answered with the
+ * original response, that failures are not stored, and key selection.
+ */
+@DisplayName("IdempotencyFilter Unit Tests")
+class IdempotencyFilterTest {
+
+    private static final String BODY = "{\"message_type\":\"ShipmentCreated\",\"payload\":{\"shipment_id\":42}}";
+
+    private IdempotencyFilter filter;
+    private final AtomicInteger processed = new AtomicInteger();
+    private volatile int responseStatus = 200;
+
+    @BeforeEach
+    void setUp() {
+        filter = new IdempotencyFilter();
+        ReflectionTestUtils.setField(filter, "idempotencyStore", new IdempotencyStore(null, new ObjectMapper(), null));
+        ReflectionTestUtils.setField(filter, "paths", List.of("/api/shipment", "/api/webhooks/**"));
+    }
+
+    @Test
+    @DisplayName("Should process concurrent duplicates once and replay the response to the rest")
+    void testConcurrentRetries_ProcessedOnce() throws Exception {
+        // Given
+        ExecutorService clients = Executors.newFixedThreadPool(6);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // When - Amazon retries the same shipment six times at once
+        List<Future<MockHttpServletResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            responses.add(clients.submit(() -> {
+                start.await();
+                return send(post("/api/shipment", BODY), 100);
+            }));
+        }
+        start.countDown();
+
+        // Then
+        int replayed = 0;
+        for (Future<MockHttpServletResponse> future : responses) {
+            MockHttpServletResponse response = future.get(5, TimeUnit.SECONDS);
+            assertThat(response.getStatus()).isEqualTo(200);
+            assertThat(response.getContentAsString()).isEqualTo("created:" + BODY);
+            if ("true".equals(response.getHeader(IdempotencyFilter.REPLAYED_HEADER))) {
+                replayed++;
+            }
+        }
+        clients.shutdown();
+        assertThat(processed.get()).isEqualTo(1);
+        assertThat(replayed).isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("Should not store a failed response, so the retry is processed")
+    void testServerError_NotStored() throws Exception {
+        // Given
+        responseStatus = 500;
+        send(post("/api/shipment", BODY), 0);
+
+        // When
+        responseStatus = 200;
+        MockHttpServletResponse retry = send(post("/api/shipment", BODY), 0);
+
+        // Then
+        assertThat(processed.get()).isEqualTo(2);
+        assertThat(retry.getHeader(IdempotencyFilter.REPLAYED_HEADER)).isNull();
+    }
+
+    @Test
+    @DisplayName("Should key on the Idempotency-Key header when present")
+    void testIdempotencyKeyHeader_UsedAsKey() throws Exception {
+        // Given - same key, different bodies
+        MockHttpServletRequest first = post("/api/webhooks/truck", "{\"a\":1}");
+        first.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, "abc");
+        MockHttpServletRequest second = post("/api/webhooks/truck", "{\"a\":2}");
+        second.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, "abc");
+        MockHttpServletRequest third = post("/api/webhooks/truck", "{\"a\":1}");
+        third.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, "def");
+
+        // When
+        send(first, 0);
+        MockHttpServletResponse duplicate = send(second, 0);
+        send(third, 0);
+
+        // Then
+        assertThat(duplicate.getContentAsString()).isEqualTo("created:{\"a\":1}");
+        assertThat(processed.get()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should leave other endpoints and read-only requests alone")
+    void testOtherRequests_NotFiltered() throws Exception {
+        // When
+        send(post("/api/shipment_status", BODY), 0);
+        send(post("/api/shipment_status", BODY), 0);
+        MockHttpServletRequest get = new MockHttpServletRequest("GET", "/api/shipment");
+        send(get, 0);
+        send(get, 0);
+
+        // Then
+        assertThat(processed.get()).isEqualTo(4);
+    }
+
+    // Helper methods
+
+    private MockHttpServletRequest post(String path, String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setContentType("application/json");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private MockHttpServletResponse send(MockHttpServletRequest request, long workMillis) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, res) -> {
+            processed.incrementAndGet();
+            // The controller must still be able to read the body
+            String body = StreamUtils.copyToString(req.getInputStream(), StandardCharsets.UTF_8);
+            try {
+                Thread.sleep(workMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            HttpServletResponse http = (HttpServletResponse) res;
+            http.setStatus(responseStatus);
+            http.setContentType("application/json");
+            http.getWriter().write("created:" + body);
+        };
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
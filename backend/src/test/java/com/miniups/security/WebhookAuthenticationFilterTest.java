@@ -0,0 +1,273 @@
+package com.miniups.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.util.ContentCachingRequestWrapper;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for WebhookAuthenticationFilter.
+ * Tests signature verification over the streamed body, that downstream code sees the
+ * same body, rejection of missing, invalid and oversized requests, and per-request allocation.
+ */
+@DisplayName("WebhookAuthenticationFilter Unit Tests")
+class WebhookAuthenticationFilterTest {
+
+    private static final String SECRET = "test-webhook-secret";
+    private static final String HEADER = "X-Amazon-Signature";
+    private static final String BODY = "{\"message_type\":\"ShipmentCreated\",\"payload\":{\"shipment_id\":42,"
+        + "\"email\":\"buyer@example.com\",\"warehouse_id\":3,\"destination_x\":10,\"destination_y\":20}}";
+
+    private WebhookAuthenticationFilter filter;
+    private final HmacSignatureVerifier signer = new HmacSignatureVerifier(SECRET);
+
+    @BeforeEach
+    void setUp() {
+        filter = new WebhookAuthenticationFilter();
+        ReflectionTestUtils.setField(filter, "webhookSecret", SECRET);
+        ReflectionTestUtils.setField(filter, "signatureHeader", HEADER);
+        ReflectionTestUtils.setField(filter, "webhookAuthEnabled", true);
+    }
+
+    @Test
+    @DisplayName("Should pass a correctly signed request on with its body intact")
+    void testValidSignature_BodyAvailableDownstream() throws Exception {
+        // Given
+        AtomicReference<String> seen = new AtomicReference<>();
+        MockHttpServletRequest request = post(BODY, signer.sign(bytes(BODY)));
+
+        // When
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, (req, res) ->
+            seen.set(StreamUtils.copyToString(req.getInputStream(), StandardCharsets.UTF_8)));
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(seen.get()).isEqualTo(BODY);
+    }
+
+    @Test
+    @DisplayName("Should match the signature a sender computes with a fresh Mac")
+    void testSignature_MatchesStandardHmac() throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(bytes(SECRET), "HmacSHA256"));
+        String expected = Base64.getEncoder().encodeToString(mac.doFinal(bytes(BODY)));
+
+        assertThat(signer.sign(bytes(BODY))).isEqualTo(expected);
+        assertThat(signer.verify(bytes(BODY), expected)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should reject missing, malformed and mismatched signatures")
+    void testBadSignatures_Rejected() throws Exception {
+        String tampered = BODY.replace("42", "43");
+
+        assertThat(send(post(BODY, null)).getContentAsString()).contains("Missing signature header");
+        assertThat(send(post(BODY, "not base64!")).getStatus()).isEqualTo(HttpServletResponse.SC_UNAUTHORIZED);
+        assertThat(send(post(tampered, signer.sign(bytes(BODY)))).getContentAsString()).contains("Invalid signature");
+        assertThat(send(post(BODY, new HmacSignatureVerifier("other").sign(bytes(BODY)))).getStatus())
+            .isEqualTo(HttpServletResponse.SC_UNAUTHORIZED);
+    }
+
+    @Test
+    @DisplayName("Should reject a body over the size limit, declared or chunked")
+    void testOversizedBody_Rejected() throws Exception {
+        ReflectionTestUtils.setField(filter, "maxBodyBytes", 64);
+        MockHttpServletRequest declared = post(BODY, signer.sign(bytes(BODY)));
+
+        // A chunked request has no Content-Length, so the limit applies while reading
+        MockHttpServletRequest unknownLength = new MockHttpServletRequest("POST", "/api/shipment") {
+            @Override
+            public long getContentLengthLong() {
+                return -1;
+            }
+        };
+        unknownLength.addHeader(HEADER, signer.sign(bytes(BODY)));
+        unknownLength.setContent(bytes(BODY));
+
+        assertThat(send(declared).getStatus()).isEqualTo(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        assertThat(send(unknownLength).getStatus()).isEqualTo(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+    }
+
+    @Test
+    @DisplayName("Should not allocate an unverified Content-Length up front")
+    void testDeclaredLength_NotPreallocated() throws Exception {
+        // Given - claims 5 MB, sends the usual small body
+        Action sendLying = () -> {
+            MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/shipment") {
+                @Override
+                public long getContentLengthLong() {
+                    return 5_000_000;
+                }
+            };
+            request.addHeader(HEADER, signer.sign(bytes(BODY)));
+            request.setContent(bytes(BODY));
+            assertThat(send(request).getStatus()).isEqualTo(200);
+        };
+
+        // When
+        long allocated = measureAllocation(20, sendLying);
+
+        // Then
+        assertThat(allocated / 20).isLessThan(1_000_000);
+    }
+
+    @Test
+    @DisplayName("Should notify a read listener at once, the body being cached")
+    void testReadListener_CalledWithCachedBody() throws Exception {
+        // Given
+        List<String> events = new ArrayList<>();
+        AtomicReference<String> seen = new AtomicReference<>();
+        MockHttpServletRequest request = post(BODY, signer.sign(bytes(BODY)));
+
+        // When
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            ServletInputStream in = req.getInputStream();
+            in.setReadListener(new ReadListener() {
+                @Override
+                public void onDataAvailable() throws IOException {
+                    events.add("data");
+                    seen.set(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                }
+
+                @Override
+                public void onAllDataRead() {
+                    events.add("done");
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    events.add("error");
+                }
+            });
+        });
+
+        // Then
+        assertThat(events).containsExactly("data", "done");
+        assertThat(seen.get()).isEqualTo(BODY);
+    }
+
+    @Test
+    @DisplayName("Should verify correctly when many threads share the filter")
+    void testConcurrentRequests_EachVerified() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            int n = i;
+            results.add(clients.submit(() -> {
+                String body = BODY.replace("42", String.valueOf(n));
+                // Every third request is signed for a different body
+                String signature = signer.sign(bytes(n % 3 == 0 ? BODY : body));
+                boolean expectValid = n % 3 != 0 || body.equals(BODY);
+                return (send(post(body, signature)).getStatus() == 200) == expectValid;
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            assertThat(result.get(10, TimeUnit.SECONDS)).isTrue();
+        }
+        clients.shutdown();
+    }
+
+    @Test
+    @DisplayName("Benchmark: bytes allocated per verified request")
+    void benchmarkAllocationPerRequest() throws Exception {
+        byte[] body = bytes(BODY.repeat(8));
+        String signature = signer.sign(body);
+        int requests = 20_000;
+
+        // Previous approach: new Mac and key per request, ContentCachingRequestWrapper, String round trips
+        long legacyBytes = measureAllocation(requests, () -> {
+            MockHttpServletRequest request = post(body, signature);
+            ContentCachingRequestWrapper wrapped = new ContentCachingRequestWrapper(request);
+            wrapped.getInputStream().readAllBytes();
+            String text = new String(wrapped.getContentAsByteArray(), StandardCharsets.UTF_8);
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(bytes(SECRET), "HmacSHA256"));
+            String expected = Base64.getEncoder().encodeToString(mac.doFinal(bytes(text)));
+            assertThat(expected).isEqualTo(signature);
+        });
+
+        // Streaming verifier inside the filter
+        FilterChain chain = (req, res) -> { };
+        long streamingBytes = measureAllocation(requests, () -> {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(post(body, signature), response, chain);
+            assertThat(response.getStatus()).isEqualTo(200);
+        });
+
+        // Mock request and response objects are allocated by both sides
+        long baselineBytes = measureAllocation(requests, () -> {
+            post(body, signature);
+            new MockHttpServletResponse();
+        });
+
+        System.out.printf("body %d bytes, %d requests%n", body.length, requests);
+        System.out.printf("legacy verification:    %,d bytes/request%n", (legacyBytes - baselineBytes) / requests);
+        System.out.printf("streaming verification: %,d bytes/request%n", (streamingBytes - baselineBytes) / requests);
+
+        assertThat(streamingBytes).isLessThan(legacyBytes);
+    }
+
+    // Helper methods
+
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    private static long measureAllocation(int iterations, Action action) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < iterations / 4; i++) {
+            action.run();
+        }
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < iterations; i++) {
+            action.run();
+        }
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+    }
+
+    private MockHttpServletResponse send(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, (req, res) -> StreamUtils.drain(req.getInputStream()));
+        return response;
+    }
+
+    private static MockHttpServletRequest post(String body, String signature) {
+        return post(bytes(body), signature);
+    }
+
+    private static MockHttpServletRequest post(byte[] body, String signature) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/shipment");
+        request.setContentType("application/json");
+        request.setContent(body);
+        if (signature != null) {
+            request.addHeader(HEADER, signature);
+        }
+        return request;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,217 @@
+package com.miniups.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for AmazonAsyncClient against a local stub HTTP server.
+ * Tests responses and timeouts, the per-route connection limit, and threads and
+ * throughput at 1k concurrent notifications against the blocking RestTemplate.
+ */
+@DisplayName("AmazonAsyncClient Tests")
+class AmazonAsyncClientTest {
+
+    private static final String ENDPOINT = "/api/webhooks/truck-arrived";
+    private static final long STUB_DELAY_MS = 50;
+
+    private HttpServer stub;
+    private ScheduledExecutorService stubResponder;
+    private final AtomicInteger stubActive = new AtomicInteger();
+    private final AtomicInteger stubPeak = new AtomicInteger();
+    private volatile long stubDelayMs = STUB_DELAY_MS;
+
+    private AmazonAsyncClient client;
+    private String baseUrl;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // The stub answers after a delay without holding a thread per request
+        stubResponder = Executors.newScheduledThreadPool(2);
+        stub = HttpServer.create(new InetSocketAddress("localhost", 0), 2048);
+        stub.createContext("/", exchange -> {
+            stubPeak.accumulateAndGet(stubActive.incrementAndGet(), Math::max);
+            exchange.getRequestBody().readAllBytes();
+            stubResponder.schedule(() -> respond(exchange), stubDelayMs, TimeUnit.MILLISECONDS);
+        });
+        stub.start();
+        baseUrl = "http://localhost:" + stub.getAddress().getPort();
+
+        client = new AmazonAsyncClient(new ObjectMapper(), null);
+        ReflectionTestUtils.setField(client, "amazonBaseUrl", baseUrl);
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.stop();
+        stub.stop(0);
+        stubResponder.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Should complete with the response status and body")
+    void testNotification_Completes() throws Exception {
+        client.start();
+
+        AmazonAsyncClient.Response response = client.sendNotification(ENDPOINT, notification(1)).get(5, TimeUnit.SECONDS);
+
+        assertThat(response.isSuccessful()).isTrue();
+        assertThat(response.getBody()).isEqualTo("{\"status\":\"ok\"}");
+        assertThat(client.getStatistics()).containsEntry("completed", 1L).containsEntry("in_flight", 0L);
+    }
+
+    @Test
+    @DisplayName("Should fail the future when the response timeout passes")
+    void testSlowResponse_TimesOut() {
+        stubDelayMs = 2000;
+        ReflectionTestUtils.setField(client, "responseTimeoutMs", 200L);
+        client.start();
+
+        CompletableFuture<AmazonAsyncClient.Response> future = client.sendNotification(ENDPOINT, notification(1));
+
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        assertThat(client.getStatistics()).containsEntry("failed", 1L);
+    }
+
+    @Test
+    @DisplayName("Should hold no more connections to Amazon than the per-route limit")
+    void testPerRouteLimit_Respected() throws Exception {
+        ReflectionTestUtils.setField(client, "amazonMaxPerRoute", 10);
+        client.start();
+
+        List<CompletableFuture<AmazonAsyncClient.Response>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(client.sendNotification(ENDPOINT, notification(i)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+        assertThat(stubPeak.get()).isLessThanOrEqualTo(10);
+        assertThat(futures).allMatch(f -> f.join().isSuccessful());
+    }
+
+    @Test
+    @DisplayName("Load test: threads and throughput at 1k concurrent notifications")
+    void benchmarkConcurrentNotifications() throws Exception {
+        int notifications = 1000;
+        int connections = 200;
+        ReflectionTestUtils.setField(client, "amazonMaxPerRoute", connections);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        // Blocking: each in-flight notification holds a thread for the round trip
+        PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager();
+        pool.setMaxTotal(connections);
+        pool.setDefaultMaxPerRoute(connections);
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(
+            HttpClients.custom().setConnectionManager(pool).build()));
+        ExecutorService callers = Executors.newFixedThreadPool(connections);
+        int threadsBefore = threads.getThreadCount();
+        PeakSampler blockingPeak = new PeakSampler(threads);
+        long start = System.nanoTime();
+        List<Future<Integer>> blocking = new ArrayList<>();
+        for (int i = 0; i < notifications; i++) {
+            Map<String, Object> payload = notification(i);
+            blocking.add(callers.submit(() ->
+                restTemplate.postForEntity(baseUrl + ENDPOINT, payload, String.class).getStatusCode().value()));
+        }
+        for (Future<Integer> status : blocking) {
+            assertThat(status.get(30, TimeUnit.SECONDS)).isEqualTo(200);
+        }
+        double blockingSeconds = (System.nanoTime() - start) / 1e9;
+        int blockingThreads = blockingPeak.stop() - threadsBefore;
+        callers.shutdown();
+        callers.awaitTermination(5, TimeUnit.SECONDS);
+        pool.close();
+
+        // Non-blocking: one caller thread, the client's I/O threads do the rest
+        threadsBefore = threads.getThreadCount();
+        PeakSampler asyncPeak = new PeakSampler(threads);
+        client.start();
+        start = System.nanoTime();
+        List<CompletableFuture<AmazonAsyncClient.Response>> futures = new ArrayList<>();
+        for (int i = 0; i < notifications; i++) {
+            futures.add(client.sendNotification(ENDPOINT, notification(i)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        double asyncSeconds = (System.nanoTime() - start) / 1e9;
+        int asyncThreads = asyncPeak.stop() - threadsBefore;
+
+        System.out.printf("%d notifications, %d connections, %d ms stub latency%n", notifications, connections, STUB_DELAY_MS);
+        System.out.printf("blocking RestTemplate: %6.0f req/s, %3d extra threads%n", notifications / blockingSeconds, blockingThreads);
+        System.out.printf("async client:          %6.0f req/s, %3d extra threads%n", notifications / asyncSeconds, asyncThreads);
+
+        assertThat(futures).allMatch(f -> f.join().isSuccessful());
+        assertThat(asyncThreads).isLessThan(blockingThreads);
+    }
+
+    // Helper methods
+
+    private void respond(HttpExchange exchange) {
+        try {
+            byte[] body = "{\"status\":\"ok\"}".getBytes();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        } catch (IOException e) {
+            // Client gave up
+        } finally {
+            stubActive.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private static Map<String, Object> notification(int i) {
+        return Map.of("message_type", "TruckArrived", "truck_id", i, "shipment_id", "SHIP" + i);
+    }
+
+    /**
+     * Samples the live thread count until stopped
+     */
+    private static class PeakSampler {
+        private final AtomicInteger peak = new AtomicInteger();
+        private final Thread sampler;
+
+        PeakSampler(ThreadMXBean threads) {
+            peak.set(threads.getThreadCount());
+            sampler = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    peak.accumulateAndGet(threads.getThreadCount(), Math::max);
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            sampler.setDaemon(true);
+            sampler.start();
+        }
+
+        int stop() throws InterruptedException {
+            sampler.interrupt();
+            sampler.join();
+            // The sampler itself is not part of either client
+            return peak.get() - 1;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.miniups.service;
 
 import com.miniups.model.dto.AmazonMessageDto;
+import com.miniups.model.dto.ShipmentCreatedMessage;
 import com.miniups.model.dto.UpsResponseDto;
 import com.miniups.model.entity.CommunicationLog;
 import com.miniups.model.entity.Shipment;
@@ -9,6 +10,7 @@ import com.miniups.model.entity.User;
 import com.miniups.model.enums.ShipmentStatus;
 import com.miniups.model.enums.TruckStatus;
 import com.miniups.model.enums.UserRole;
+import com.miniups.proto.AmazonUpsProto;
 import com.miniups.repository.ShipmentRepository;
 import com.miniups.repository.UserRepository;
 import com.github.tomakehurst.wiremock.WireMockServer;
@@ -26,8 +28,12 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -122,11 +128,11 @@ class AmazonIntegrationServiceTest {
     void testHandleShipmentCreated_Success() {
         // Given
         AmazonMessageDto messageDto = createAmazonMessageDto();
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(userRepository.upsertByEmail(any(User.class))).thenReturn(1L);
+        when(userRepository.getReferenceById(1L)).thenReturn(testUser);
         when(trackingService.generateTrackingNumber()).thenReturn("UPS123456789");
-        when(shipmentRepository.findByShipmentId("AMZ123456")).thenReturn(Optional.empty());
-        when(shipmentRepository.save(any(Shipment.class))).thenReturn(testShipment);
-        when(truckManagementService.assignAnyAvailableTruck()).thenReturn(testTruck);
+        when(shipmentRepository.insertIfAbsent(any(Shipment.class))).thenReturn(1L);
+        when(truckManagementService.assignTruckForWarehouse(anyString())).thenReturn(testTruck);
         when(worldSimulatorService.isConnected()).thenReturn(false); // Simplify by assuming not connected
 
         // When
@@ -135,10 +141,13 @@ class AmazonIntegrationServiceTest {
         // Then
         assertThat(result).isNotNull();
         assertThat(result.isSuccess()).isTrue();
-        verify(userRepository).findByEmail("test@example.com");
+        verify(userRepository).upsertByEmail(argThat(user -> "test@example.com".equals(user.getEmail())));
         verify(trackingService).generateTrackingNumber();
-        verify(shipmentRepository).save(any(Shipment.class));
-        verify(truckManagementService).assignAnyAvailableTruck();
+        verify(shipmentRepository).insertIfAbsent(argThat(shipment ->
+            "AMZ123456".equals(shipment.getShipmentId()) && shipment.getUser() == testUser
+                && shipment.getTruck() == testTruck && "UPS123456789".equals(shipment.getUpsTrackingId())));
+        verify(shipmentRepository, never()).findByShipmentId(anyString());
+        verify(truckManagementService).assignTruckForWarehouse(anyString());
     }
 
     @Test
@@ -146,12 +155,11 @@ class AmazonIntegrationServiceTest {
     void testHandleShipmentCreated_NewUser() {
         // Given
         AmazonMessageDto messageDto = createAmazonMessageDto();
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.empty());
-        when(userRepository.save(any(User.class))).thenReturn(testUser);
+        when(userRepository.upsertByEmail(any(User.class))).thenReturn(1L);
+        when(userRepository.getReferenceById(1L)).thenReturn(testUser);
         when(trackingService.generateTrackingNumber()).thenReturn("UPS123456789");
-        when(shipmentRepository.findByShipmentId("AMZ123456")).thenReturn(Optional.empty());
-        when(shipmentRepository.save(any(Shipment.class))).thenReturn(testShipment);
-        when(truckManagementService.assignAnyAvailableTruck()).thenReturn(testTruck);
+        when(shipmentRepository.insertIfAbsent(any(Shipment.class))).thenReturn(1L);
+        when(truckManagementService.assignTruckForWarehouse(anyString())).thenReturn(testTruck);
         when(worldSimulatorService.isConnected()).thenReturn(false); // Simplify by assuming not connected
 
         // When
@@ -160,11 +168,50 @@ class AmazonIntegrationServiceTest {
         // Then
         assertThat(result).isNotNull();
         assertThat(result.isSuccess()).isTrue();
-        verify(userRepository).findByEmail("test@example.com");
-        verify(userRepository).save(any(User.class));
+        verify(userRepository).upsertByEmail(argThat(user -> "test@example.com".equals(user.getEmail())
+            && user.getUsername().startsWith("amazon_user_") && user.getRole() == UserRole.USER));
+        verify(userRepository, never()).save(any(User.class));
         verify(trackingService).generateTrackingNumber();
-        verify(shipmentRepository).save(any(Shipment.class));
-        verify(truckManagementService).assignAnyAvailableTruck();
+        verify(shipmentRepository).insertIfAbsent(any(Shipment.class));
+        verify(truckManagementService).assignTruckForWarehouse(anyString());
+    }
+
+    @Test
+    @DisplayName("Should report a duplicate shipment when the insert finds the shipment ID taken")
+    void testHandleShipmentCreated_Duplicate() {
+        // Given
+        AmazonMessageDto messageDto = createAmazonMessageDto();
+        when(userRepository.upsertByEmail(any(User.class))).thenReturn(1L);
+        when(userRepository.getReferenceById(1L)).thenReturn(testUser);
+        when(trackingService.generateTrackingNumber()).thenReturn("UPS123456789");
+        when(shipmentRepository.insertIfAbsent(any(Shipment.class))).thenReturn(null);
+        when(truckManagementService.assignTruckForWarehouse(anyString())).thenReturn(testTruck);
+
+        // When
+        var result = amazonIntegrationService.handleShipmentCreated(messageDto);
+
+        // Then
+        assertThat(result.isSuccess()).isFalse();
+        assertThat(result.getCode()).isEqualTo(1002);
+        verify(worldSimulatorService, never()).isConnected();
+        verify(truckManagementService).releaseTruck(testTruck.getTruckId());
+    }
+
+    @Test
+    @DisplayName("Should reject a known duplicate before assigning a truck")
+    void testHandleShipmentCreated_KnownDuplicate() {
+        // Given
+        AmazonMessageDto messageDto = createAmazonMessageDto();
+        when(shipmentRepository.existsByShipmentId("AMZ123456")).thenReturn(true);
+
+        // When
+        var result = amazonIntegrationService.handleShipmentCreated(messageDto);
+
+        // Then
+        assertThat(result.getCode()).isEqualTo(1002);
+        verify(truckManagementService, never()).assignTruckForWarehouse(anyString());
+        verify(trackingService, never()).generateTrackingNumber();
+        verify(shipmentRepository, never()).insertIfAbsent(any(Shipment.class));
     }
 
     @Test
@@ -249,6 +296,45 @@ class AmazonIntegrationServiceTest {
         assertThat(testShipment.getDestY()).isEqualTo(26);
     }
 
+    @Test
+    @DisplayName("Should re-issue one UGoDeliver with the re-planned route for an in-flight truck")
+    @SuppressWarnings("unchecked")
+    void testHandleAddressChange_ReroutesTruck() {
+        // Given - truck at (10, 20) out for delivery with two packages
+        DeliveryRouteService routeService = new DeliveryRouteService(shipmentRepository, null);
+        ReflectionTestUtils.setField(amazonIntegrationService, "deliveryRouteService", routeService);
+        testShipment.setShipmentId("1001");
+        testShipment.setStatus(ShipmentStatus.IN_TRANSIT);
+        testShipment.setTruck(testTruck);
+        Shipment other = createTestShipment();
+        other.setShipmentId("1002");
+        other.setStatus(ShipmentStatus.IN_TRANSIT);
+        other.setDestX(30);
+        other.setDestY(20);
+        other.setTruck(testTruck);
+        routeService.planRoute(testTruck, List.of(testShipment, other));
+
+        when(shipmentRepository.findByShipmentId("1001")).thenReturn(Optional.of(testShipment));
+        when(shipmentRepository.save(any(Shipment.class))).thenReturn(testShipment);
+        when(worldSimulatorService.isConnected()).thenReturn(true);
+        when(worldSimulatorService.sendTruckToDeliver(eq(1), anyMap()))
+            .thenReturn(java.util.concurrent.CompletableFuture.completedFuture(true));
+
+        // When - the first stop moves past the second one
+        AmazonMessageDto message = createAddressChangeMessage("1001");
+        message.getPayload().put("destination_x", 40);
+        message.getPayload().put("destination_y", 20);
+        UpsResponseDto result = amazonIntegrationService.handleAddressChange(message);
+
+        // Then
+        assertThat(result.isSuccess()).isTrue();
+        org.mockito.ArgumentCaptor<Map<Long, int[]>> route = org.mockito.ArgumentCaptor.forClass(Map.class);
+        verify(worldSimulatorService, times(1)).sendTruckToDeliver(eq(1), route.capture());
+        assertThat(route.getValue().keySet()).containsExactly(1002L, 1001L);
+        assertThat(route.getValue().get(1001L)).containsExactly(40, 20);
+        assertThat(routeService.getStatistics()).containsEntry("reroutes", 1L);
+    }
+
     @Test
     @DisplayName("Should send truck dispatched notification to Amazon")
     void testNotifyTruckDispatched_Success() {
@@ -386,6 +472,48 @@ class AmazonIntegrationServiceTest {
         assertThat(result.isSuccess()).isFalse();
     }
 
+    @Test
+    @DisplayName("Should ingest a protobuf stream in batch-sized chunks and report stream-wide indexes")
+    @SuppressWarnings("unchecked")
+    void testHandleShipmentStream_Chunked() throws Exception {
+        // Given
+        ShipmentBatchService batchService = mock(ShipmentBatchService.class);
+        ReflectionTestUtils.setField(amazonIntegrationService, "shipmentBatchService", batchService);
+        when(batchService.getMaxBatchSize()).thenReturn(2);
+        when(batchService.ingest(anyList(), anyBoolean())).thenAnswer(invocation -> {
+            List<ShipmentCreatedMessage> chunk = invocation.getArgument(0);
+            List<ShipmentBatchService.ItemResult> items = new ArrayList<>();
+            for (int i = 0; i < chunk.size(); i++) {
+                ShipmentCreatedMessage item = chunk.get(i);
+                items.add(item.isValid()
+                    ? ShipmentBatchService.ItemResult.created(i, item.getShipmentId(), "UPS" + i, 1)
+                    : ShipmentBatchService.ItemResult.error(i, item.getShipmentId(), 1001, "Invalid fields"));
+            }
+            return new ShipmentBatchService.BatchResult(items, List.of());
+        });
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (int i = 0; i < 5; i++) {
+            AmazonUpsProto.AShipmentCreated.Builder shipment = AmazonUpsProto.AShipmentCreated.newBuilder()
+                .setShipmentId("S-" + i);
+            if (i != 3) {
+                shipment.setEmail("a@example.com").setWarehouseId(1).setDestinationX(1).setDestinationY(1);
+            }
+            shipment.build().writeDelimitedTo(body);
+        }
+
+        // When
+        UpsResponseDto result = amazonIntegrationService.handleShipmentStream(
+            new ByteArrayInputStream(body.toByteArray()));
+
+        // Then
+        verify(batchService, times(3)).ingest(anyList(), anyBoolean());
+        assertThat(result.isError()).isFalse();
+        assertThat(result.getPayload()).containsEntry("total", 5).containsEntry("created", 4).containsEntry("rejected", 1);
+        List<Map<String, Object>> results = (List<Map<String, Object>>) result.getPayload().get("results");
+        assertThat(results).extracting(item -> item.get("index")).containsExactly(0, 1, 2, 3, 4);
+        assertThat(results.get(3)).containsEntry("shipment_id", "S-3").containsEntry("status", "REJECTED");
+    }
+
     @Test
     @DisplayName("Should handle concurrent shipment operations")
     void testConcurrentOperations() {
@@ -0,0 +1,443 @@
+package com.miniups.service;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.miniups.model.dto.UpsResponseDto;
+import com.miniups.model.entity.DeferredAmazonCall;
+import com.miniups.repository.DeferredAmazonCallRepository;
+import com.miniups.util.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for AmazonWebhookDispatcher against a local stub HTTP server.
+ * Tests batching, retry with backoff, failure persistence and caller isolation.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("AmazonWebhookDispatcher Tests")
+class AmazonWebhookDispatcherTest {
+
+    private static final String ENDPOINT = "/api/webhooks/truck-arrived";
+
+    @Mock
+    private CommunicationLogService communicationLogService;
+
+    private WireMockServer wireMockServer;
+    private AmazonWebhookDispatcher dispatcher;
+    private String baseUrl;
+
+    @BeforeEach
+    void setUp() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort());
+        wireMockServer.start();
+        WireMock.configureFor("localhost", wireMockServer.port());
+        baseUrl = "http://localhost:" + wireMockServer.port();
+
+        dispatcher = new AmazonWebhookDispatcher(new RestTemplate(), communicationLogService, null);
+        ReflectionTestUtils.setField(dispatcher, "enabled", true);
+        ReflectionTestUtils.setField(dispatcher, "lingerMs", 100L);
+        ReflectionTestUtils.setField(dispatcher, "initialBackoffMs", 10L);
+        ReflectionTestUtils.setField(dispatcher, "maxBackoffMs", 50L);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.stop();
+        wireMockServer.stop();
+    }
+
+    @Test
+    @DisplayName("Should coalesce a burst of notifications into one batch request")
+    void testBurst_CoalescedIntoBatch() throws Exception {
+        // Given
+        stubFor(post(urlEqualTo(ENDPOINT)).willReturn(aResponse().withStatus(200)));
+        dispatcher.start();
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            dispatcher.submit(baseUrl, ENDPOINT, "TruckArrived", notification(i));
+        }
+
+        // Then
+        assertThat(dispatcher.awaitIdle(5000)).isTrue();
+        verify(1, postRequestedFor(urlEqualTo(ENDPOINT)).withRequestBody(matchingJsonPath("$[9]")));
+        assertThat(dispatcher.getStatistics()).containsEntry("delivered", 10L).containsEntry("batches", 1L);
+        verifyNoInteractions(communicationLogService);
+    }
+
+    @Test
+    @DisplayName("Should retry a failing endpoint and persist nothing once it recovers")
+    void testTransientFailure_RetriedWithBackoff() throws Exception {
+        // Given - two 503s, then success
+        stubFor(post(urlEqualTo(ENDPOINT)).inScenario("flaky").whenScenarioStateIs(Scenario.STARTED)
+            .willReturn(aResponse().withStatus(503)).willSetStateTo("second"));
+        stubFor(post(urlEqualTo(ENDPOINT)).inScenario("flaky").whenScenarioStateIs("second")
+            .willReturn(aResponse().withStatus(503)).willSetStateTo("up"));
+        stubFor(post(urlEqualTo(ENDPOINT)).inScenario("flaky").whenScenarioStateIs("up")
+            .willReturn(aResponse().withStatus(200)));
+        dispatcher.start();
+
+        // When
+        dispatcher.submit(baseUrl, ENDPOINT, "TruckArrived", notification(1));
+
+        // Then
+        assertThat(dispatcher.awaitIdle(5000)).isTrue();
+        verify(3, postRequestedFor(urlEqualTo(ENDPOINT)));
+        assertThat(dispatcher.getStatistics()).containsEntry("delivered", 1L).containsEntry("retries", 2L);
+        verifyNoInteractions(communicationLogService);
+    }
+
+    @Test
+    @DisplayName("Should persist a notification once all attempts have failed")
+    void testPermanentOutage_FailurePersisted() throws Exception {
+        // Given
+        stubFor(post(urlEqualTo(ENDPOINT)).willReturn(aResponse().withStatus(500)));
+        dispatcher.start();
+
+        // When
+        dispatcher.submit(baseUrl, ENDPOINT, "TruckArrived", notification(1));
+
+        // Then
+        assertThat(dispatcher.awaitIdle(5000)).isTrue();
+        verify(4, postRequestedFor(urlEqualTo(ENDPOINT)));
+        verify(communicationLogService, times(1))
+            .logFailedOutgoingMessage(eq("TruckArrived"), eq(ENDPOINT), any(), eq(500), anyString(), anyLong());
+        assertThat(dispatcher.getStatistics()).containsEntry("failed", 1L);
+    }
+
+    @Test
+    @DisplayName("Should not retry a client error")
+    void testClientError_NotRetried() throws Exception {
+        // Given
+        stubFor(post(urlEqualTo(ENDPOINT)).willReturn(aResponse().withStatus(403)));
+        dispatcher.start();
+
+        // When
+        dispatcher.submit(baseUrl, ENDPOINT, "TruckArrived", notification(1));
+
+        // Then
+        assertThat(dispatcher.awaitIdle(5000)).isTrue();
+        verify(1, postRequestedFor(urlEqualTo(ENDPOINT)));
+        verify(communicationLogService, times(1))
+            .logFailedOutgoingMessage(eq("TruckArrived"), eq(ENDPOINT), any(), eq(403), anyString(), anyLong());
+    }
+
+    @Test
+    @DisplayName("Should fall back to single requests when the endpoint rejects batches")
+    void testBatchRejected_SentOneByOne() throws Exception {
+        // Given - arrays are rejected, objects accepted
+        stubFor(post(urlEqualTo(ENDPOINT)).withRequestBody(matching("^\\[.*"))
+            .willReturn(aResponse().withStatus(400)));
+        stubFor(post(urlEqualTo(ENDPOINT)).withRequestBody(matching("^\\{.*"))
+            .willReturn(aResponse().withStatus(200)));
+        dispatcher.start();
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            dispatcher.submit(baseUrl, ENDPOINT, "TruckArrived", notification(i));
+        }
+
+        // Then
+        assertThat(dispatcher.awaitIdle(5000)).isTrue();
+        verify(1, postRequestedFor(urlEqualTo(ENDPOINT)).withRequestBody(matching("^\\[.*")));
+        verify(3, postRequestedFor(urlEqualTo(ENDPOINT)).withRequestBody(matching("^\\{.*")));
+        Map<String, Object> stats = dispatcher.getStatistics();
+        assertThat(stats).containsEntry("delivered", 3L);
+        assertThat(stats.get("batch_unsupported_endpoints")).isEqualTo(java.util.List.of(baseUrl + ENDPOINT));
+    }
+
+    @Test
+    @DisplayName("Should never block the caller on a slow endpoint")
+    void testSlowEndpoint_CallerNotBlocked() throws Exception {
+        // Given - Amazon takes a second per request
+        stubFor(post(urlEqualTo(ENDPOINT)).willReturn(aResponse().withStatus(200).withFixedDelay(1000)));
+        dispatcher.start();
+
+        // When
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            dispatcher.submit(baseUrl, ENDPOINT, "TruckArrived", notification(i));
+        }
+        long submitMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Then
+        assertThat(submitMillis).isLessThan(500);
+        assertThat(dispatcher.awaitIdle(10_000)).isTrue();
+        assertThat(dispatcher.getStatistics()).containsEntry("delivered", 100L);
+    }
+
+    @Test
+    @DisplayName("Should retry and deliver through the async client without holding sender threads")
+    void testAsyncClient_RetriedAndDelivered() throws Exception {
+        // Given - one 503, then success; a single sender
+        stubFor(post(urlEqualTo(ENDPOINT)).inScenario("flaky").whenScenarioStateIs(Scenario.STARTED)
+            .willReturn(aResponse().withStatus(503)).willSetStateTo("up"));
+        stubFor(post(urlEqualTo(ENDPOINT)).inScenario("flaky").whenScenarioStateIs("up")
+            .willReturn(aResponse().withStatus(200).withFixedDelay(300)));
+        AmazonAsyncClient asyncClient = new AmazonAsyncClient(new com.fasterxml.jackson.databind.ObjectMapper(), null);
+        asyncClient.start();
+        ReflectionTestUtils.setField(dispatcher, "asyncClient", asyncClient);
+        ReflectionTestUtils.setField(dispatcher, "senders", 1);
+        ReflectionTestUtils.setField(dispatcher, "maxBatchSize", 1);
+        ReflectionTestUtils.setField(dispatcher, "lingerMs", 0L);
+        dispatcher.start();
+
+        try {
+            // When - with blocking sends, one sender would need 20 x 300 ms
+            dispatcher.submit(baseUrl, ENDPOINT, "TruckArrived", notification(0));
+            // WireMock scenario transitions are not atomic, so let the 503 settle first
+            long deadline = System.currentTimeMillis() + 2000;
+            while ((Long) dispatcher.getStatistics().get("retries") == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            for (int i = 1; i < 20; i++) {
+                dispatcher.submit(baseUrl, ENDPOINT, "TruckArrived", notification(i));
+            }
+
+            // Then
+            assertThat(dispatcher.awaitIdle(3000)).isTrue();
+            assertThat(dispatcher.getStatistics()).containsEntry("delivered", 20L).containsEntry("retries", 1L);
+            verifyNoInteractions(communicationLogService);
+        } finally {
+            asyncClient.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Should open the circuit on injected faults, defer while open and replay after recovery")
+    void testCircuitOpen_DeferredAndReplayed() throws Exception {
+        // Given - Amazon resets every connection
+        stubFor(post(urlEqualTo(ENDPOINT)).willReturn(aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AmazonCallGuard guard = guard(registry, 1000);
+        List<DeferredAmazonCall> stored = new CopyOnWriteArrayList<>();
+        ReflectionTestUtils.setField(dispatcher, "callGuard", guard);
+        ReflectionTestUtils.setField(dispatcher, "deferredStore", inMemoryStore(stored));
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 1);
+        ReflectionTestUtils.setField(dispatcher, "maxBatchSize", 1);
+        dispatcher.start();
+
+        // When - four failures open the circuit; the next notifications are not sent
+        for (int i = 0; i < 4; i++) {
+            dispatcher.submit(baseUrl, ENDPOINT, "TruckArrived", notification(i));
+            assertThat(dispatcher.awaitIdle(5000)).isTrue();
+        }
+        for (int i = 4; i < 10; i++) {
+            dispatcher.submit(baseUrl, ENDPOINT, "TruckArrived", notification(i));
+        }
+        assertThat(dispatcher.awaitIdle(5000)).isTrue();
+
+        // Then
+        assertThat(guard.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        verify(4, postRequestedFor(urlEqualTo(ENDPOINT)));
+        assertThat(stored).hasSize(6);
+        assertThat(dispatcher.getStatistics()).containsEntry("deferred", 6L).containsEntry("failed", 4L);
+
+        // When - Amazon recovers and the open period ends
+        wireMockServer.resetAll();
+        stubFor(post(urlEqualTo(ENDPOINT)).willReturn(aResponse().withStatus(200)));
+        Thread.sleep(1100);
+        dispatcher.replayDeferred();
+        assertThat(dispatcher.awaitIdle(5000)).isTrue();
+        assertThat(guard.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        dispatcher.replayDeferred();
+        assertThat(dispatcher.awaitIdle(5000)).isTrue();
+
+        // Then - one half-open probe, then the rest; bodies unchanged
+        assertThat(stored).isEmpty();
+        assertThat(dispatcher.getStatistics()).containsEntry("delivered", 6L);
+        verify(6, postRequestedFor(urlEqualTo(ENDPOINT)).withRequestBody(matchingJsonPath("$.payload.truck_id")));
+        assertThat(registry.get("ups.amazon.circuit.transitions").tags("from", "closed", "to", "open").counter().count()).isEqualTo(1);
+        assertThat(registry.get("ups.amazon.circuit.transitions").tags("from", "half_open", "to", "closed").counter().count()).isEqualTo(1);
+        assertThat(registry.get("ups.amazon.circuit.state").gauge().value()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should keep a replayed notification stored until Amazon accepts it")
+    void testReplay_KeepsRowUntilDelivered() throws Exception {
+        // Given - one stored notification and Amazon still failing
+        stubFor(post(urlEqualTo(ENDPOINT)).willReturn(aResponse().withStatus(503)));
+        List<DeferredAmazonCall> stored = new CopyOnWriteArrayList<>();
+        DeferredAmazonCallStore store = inMemoryStore(stored);
+        store.defer(baseUrl, ENDPOINT, "TruckArrived", notification(1), "CIRCUIT_OPEN");
+        ReflectionTestUtils.setField(dispatcher, "callGuard", guard(new SimpleMeterRegistry(), 1000));
+        ReflectionTestUtils.setField(dispatcher, "deferredStore", store);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 1);
+        dispatcher.start();
+
+        // When
+        dispatcher.replayDeferred();
+        assertThat(dispatcher.awaitIdle(5000)).isTrue();
+
+        // Then - put back for a later replay, not dropped
+        assertThat(stored).hasSize(1);
+        assertThat(stored.get(0).getReason()).isEqualTo("RETRIES_EXHAUSTED");
+        assertThat(stored.get(0).getNextAttemptAt()).isAfter(LocalDateTime.now());
+        assertThat(dispatcher.getStatistics()).containsEntry("failed", 0L);
+
+        // When - Amazon recovers and the row is due again
+        wireMockServer.resetAll();
+        stubFor(post(urlEqualTo(ENDPOINT)).willReturn(aResponse().withStatus(200)));
+        stored.get(0).setNextAttemptAt(LocalDateTime.now());
+        dispatcher.replayDeferred();
+        assertThat(dispatcher.awaitIdle(5000)).isTrue();
+
+        // Then - removed only after delivery
+        assertThat(stored).isEmpty();
+        assertThat(store.getReplayedCount()).isEqualTo(1);
+        assertThat(dispatcher.getStatistics()).containsEntry("delivered", 1L);
+    }
+
+    @Test
+    @DisplayName("Should defer notifications waiting for a retry when stopped")
+    void testStop_DefersPendingRetries() throws Exception {
+        // Given - Amazon fails and the next attempt is a minute away
+        stubFor(post(urlEqualTo(ENDPOINT)).willReturn(aResponse().withStatus(503)));
+        List<DeferredAmazonCall> stored = new CopyOnWriteArrayList<>();
+        ReflectionTestUtils.setField(dispatcher, "deferredStore", inMemoryStore(stored));
+        ReflectionTestUtils.setField(dispatcher, "initialBackoffMs", 60000L);
+        ReflectionTestUtils.setField(dispatcher, "maxBackoffMs", 60000L);
+        dispatcher.start();
+        dispatcher.submit(baseUrl, ENDPOINT, "TruckArrived", notification(1));
+        dispatcher.submit(baseUrl, ENDPOINT, "TruckArrived", notification(2));
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((Long) dispatcher.getStatistics().get("retries") < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // When
+        dispatcher.stop();
+
+        // Then - kept for the next start instead of dropped or logged as failed
+        assertThat(stored).hasSize(2).allMatch(call -> call.getReason().equals("SHUTDOWN"));
+        assertThat(dispatcher.getStatistics()).containsEntry("in_flight", 0L).containsEntry("failed", 0L);
+        verify(communicationLogService, never())
+            .logFailedOutgoingMessage(any(), any(), any(), any(), any(), anyLong());
+    }
+
+    @Test
+    @DisplayName("Should open the circuit on slow responses even when they succeed")
+    void testSlowResponses_OpenCircuit() throws Exception {
+        // Given - every response takes 300 ms, slow calls are 200 ms and up
+        stubFor(post(urlEqualTo(ENDPOINT)).willReturn(aResponse().withStatus(200).withFixedDelay(300)));
+        AmazonCallGuard guard = guard(null, 60_000);
+        ReflectionTestUtils.setField(dispatcher, "callGuard", guard);
+        ReflectionTestUtils.setField(dispatcher, "maxBatchSize", 1);
+        dispatcher.start();
+
+        // When
+        for (int i = 0; i < 4; i++) {
+            dispatcher.submit(baseUrl, ENDPOINT, "TruckArrived", notification(i));
+        }
+        assertThat(dispatcher.awaitIdle(5000)).isTrue();
+
+        // Then - delivered, but the circuit is open for the next caller
+        assertThat(dispatcher.getStatistics()).containsEntry("delivered", 4L);
+        assertThat(guard.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(guard.acquire().getRejection()).isEqualTo(AmazonCallGuard.Rejection.CIRCUIT_OPEN);
+    }
+
+    @Test
+    @DisplayName("Should limit concurrent Amazon calls with the bulkhead")
+    void testBulkhead_LimitsConcurrentCalls() {
+        AmazonCallGuard guard = new AmazonCallGuard(null);
+        ReflectionTestUtils.setField(guard, "maxConcurrent", 2);
+        guard.init();
+
+        AmazonCallGuard.Permit first = guard.acquire();
+        AmazonCallGuard.Permit second = guard.acquire();
+        AmazonCallGuard.Permit third = guard.acquire();
+        first.onResponse(200);
+        first.onResponse(200);
+        AmazonCallGuard.Permit fourth = guard.acquire();
+
+        assertThat(first.isGranted()).isTrue();
+        assertThat(second.isGranted()).isTrue();
+        assertThat(third.getRejection()).isEqualTo(AmazonCallGuard.Rejection.BULKHEAD_FULL);
+        assertThat(fourth.isGranted()).as("completing a permit twice frees one slot").isTrue();
+        assertThat(guard.acquire().isGranted()).isFalse();
+        assertThat(guard.getStatistics()).containsEntry("rejected_bulkhead_full", 2L);
+    }
+
+    @Test
+    @DisplayName("Should reject and persist when the queue is full")
+    void testQueueFull_RejectedAndPersisted() {
+        // Given - a queue of two that is never drained
+        ReflectionTestUtils.setField(dispatcher, "queueCapacity", 2);
+        ReflectionTestUtils.setField(dispatcher, "queue", new java.util.concurrent.LinkedBlockingQueue<>(2));
+        ReflectionTestUtils.setField(dispatcher, "running", true);
+
+        // When
+        boolean first = dispatcher.submit(baseUrl, ENDPOINT, "TruckArrived", notification(1));
+        boolean second = dispatcher.submit(baseUrl, ENDPOINT, "TruckArrived", notification(2));
+        boolean third = dispatcher.submit(baseUrl, ENDPOINT, "TruckArrived", notification(3));
+        ReflectionTestUtils.setField(dispatcher, "running", false);
+
+        // Then
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        assertThat(third).isFalse();
+        verify(communicationLogService, times(1))
+            .logFailedOutgoingMessage(eq("TruckArrived"), eq(ENDPOINT), any(), isNull(), eq("Webhook queue full"), anyLong());
+    }
+
+    private AmazonCallGuard guard(SimpleMeterRegistry registry, long openDurationMs) {
+        AmazonCallGuard guard = new AmazonCallGuard(registry);
+        ReflectionTestUtils.setField(guard, "windowSize", 4);
+        ReflectionTestUtils.setField(guard, "minimumCalls", 4);
+        ReflectionTestUtils.setField(guard, "slowCallDurationMs", 200L);
+        ReflectionTestUtils.setField(guard, "openDurationMs", openDurationMs);
+        ReflectionTestUtils.setField(guard, "halfOpenCalls", 1);
+        guard.init();
+        return guard;
+    }
+
+    private DeferredAmazonCallStore inMemoryStore(List<DeferredAmazonCall> stored) {
+        DeferredAmazonCallRepository repository = mock(DeferredAmazonCallRepository.class);
+        lenient().when(repository.save(any())).thenAnswer(invocation -> {
+            DeferredAmazonCall call = invocation.getArgument(0);
+            if (stored.stream().noneMatch(existing -> existing == call)) {
+                stored.add(call);
+            }
+            return call;
+        });
+        lenient().when(repository.findByNextAttemptAtLessThanEqualOrderByIdAsc(any(), any())).thenAnswer(invocation -> {
+            LocalDateTime now = invocation.getArgument(0);
+            Pageable page = invocation.getArgument(1);
+            return stored.stream().filter(call -> !call.getNextAttemptAt().isAfter(now))
+                .limit(page.getPageSize()).collect(Collectors.toCollection(ArrayList::new));
+        });
+        lenient().doAnswer(invocation -> stored.remove(invocation.<DeferredAmazonCall>getArgument(0)))
+            .when(repository).delete(any());
+        return new DeferredAmazonCallStore(repository, new com.fasterxml.jackson.databind.ObjectMapper(), null);
+    }
+
+    private UpsResponseDto notification(int i) {
+        return UpsResponseDto.truckArrived(String.valueOf(i), "1", "SH" + i);
+    }
+}
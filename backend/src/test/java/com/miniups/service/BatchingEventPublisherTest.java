@@ -0,0 +1,356 @@
+package com.miniups.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.miniups.config.RabbitMQConfig;
+import com.miniups.model.event.BusinessEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for BatchingEventPublisher.
+ * Tests flushing on size and on linger time, republishing of nacked, returned and
+ * unconfirmed messages, the pending bound, and throughput against one send per event.
+ * The broker is a RabbitTemplate stub that confirms on a separate thread.
+ */
+@DisplayName("BatchingEventPublisher Unit Tests")
+class BatchingEventPublisherTest {
+
+    private enum Outcome { ACK, NACK, RETURN, SILENT }
+
+    private final List<Message> published = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> correlationIds = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> routingKeys = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger invocations = new AtomicInteger();
+    private final AtomicInteger directSent = new AtomicInteger();
+    private final Deque<Outcome> outcomes = new ConcurrentLinkedDeque<>();
+    private final ExecutorService broker = Executors.newSingleThreadExecutor();
+    private volatile long channelCostNanos = 0;
+    private volatile long publishCostNanos = 0;
+
+    private BrokerStub rabbitTemplate;
+    private BatchingEventPublisher publisher;
+
+    @BeforeEach
+    void setUp() {
+        rabbitTemplate = new BrokerStub();
+        rabbitTemplate.setMessageConverter(
+            new Jackson2JsonMessageConverter(new ObjectMapper().registerModule(new JavaTimeModule())));
+        publisher = newPublisher(10, 20);
+    }
+
+    @AfterEach
+    void tearDown() {
+        publisher.stop();
+        broker.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Should publish a full buffer at once on one channel and keep event ids as message ids")
+    void testFullBuffer_FlushedTogether() {
+        // Given - linger long enough that only the size triggers a flush
+        publisher.stop();
+        publisher = newPublisher(10, 60_000);
+
+        // When - two full buffers, the second once the first is out
+        List<String> ids = new ArrayList<>();
+        for (int round = 1; round <= 2; round++) {
+            for (int i = 0; i < 10; i++) {
+                ids.add(publish(RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY));
+            }
+            awaitConfirmed(round * 10);
+        }
+
+        // Then
+        assertThat(invocations).hasValue(2);
+        assertThat(published).extracting(message -> message.getMessageProperties().getMessageId())
+            .containsExactlyElementsOf(ids);
+        assertThat(publisher.getPendingCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should flush a partial buffer once its oldest event has lingered")
+    void testPartialBuffer_FlushedAfterLinger() {
+        // When
+        publish(RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY);
+        publish(RabbitMQConfig.TRUCK_DISPATCH_ROUTING_KEY);
+
+        // Then - one flush per routing key
+        awaitConfirmed(2);
+        assertThat(invocations).hasValue(2);
+        assertThat(routingKeys).containsExactlyInAnyOrder(RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY,
+            RabbitMQConfig.TRUCK_DISPATCH_ROUTING_KEY);
+    }
+
+    @Test
+    @DisplayName("Should republish nacked and returned messages with the same message id")
+    void testNackedAndReturned_Republished() {
+        // Given
+        outcomes.add(Outcome.NACK);
+        outcomes.add(Outcome.RETURN);
+
+        // When
+        String first = publish(RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY);
+        String second = publish(RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY);
+
+        // Then
+        awaitConfirmed(2);
+        assertThat(published).hasSize(4);
+        assertThat(published).extracting(message -> message.getMessageProperties().getMessageId())
+            .containsOnly(first, second);
+        assertThat(correlationIds).contains(first + "#1", first + "#2", second + "#1", second + "#2");
+        assertThat(publisher.getStatistics()).containsEntry("retried", 2L).containsEntry("dropped", 0L);
+    }
+
+    @Test
+    @DisplayName("Should republish a nacked message ahead of events enqueued after it")
+    void testNacked_KeepsRoutingKeyOrder() throws Exception {
+        // Given - confirms held back until newer events are buffered
+        publisher.stop();
+        publisher = newPublisher(3, 60_000);
+        CountDownLatch confirmsHeld = new CountDownLatch(1);
+        broker.execute(() -> {
+            try {
+                confirmsHeld.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        outcomes.add(Outcome.NACK);
+        String first = publish(RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY);
+        String second = publish(RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY);
+        String third = publish(RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY);
+        await(() -> published.size() == 3);
+        String fourth = publish(RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY);
+        String fifth = publish(RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY);
+
+        // When
+        confirmsHeld.countDown();
+
+        // Then
+        awaitConfirmed(5);
+        assertThat(published).extracting(message -> message.getMessageProperties().getMessageId())
+            .containsExactly(first, second, third, first, fourth, fifth);
+    }
+
+    @Test
+    @DisplayName("Should drop a message after max attempts and free its slot")
+    void testAlwaysNacked_DroppedAfterMaxAttempts() {
+        // Given
+        outcomes.addAll(List.of(Outcome.NACK, Outcome.NACK, Outcome.NACK));
+
+        // When
+        publish(RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY);
+
+        // Then
+        await(() -> (Long) publisher.getStatistics().get("dropped") == 1L);
+        assertThat(published).hasSize(3);
+        assertThat(publisher.getPendingCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should republish a message whose confirm never arrives")
+    void testNoConfirm_RetriedAfterTimeout() {
+        // Given
+        ReflectionTestUtils.setField(publisher, "confirmTimeoutMs", 50L);
+        outcomes.add(Outcome.SILENT);
+
+        // When
+        String id = publish(RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY);
+
+        // Then
+        awaitConfirmed(1);
+        assertThat(correlationIds).containsExactly(id + "#1", id + "#2");
+    }
+
+    @Test
+    @DisplayName("Should refuse events when max pending is reached, so the caller publishes directly")
+    void testFull_Refused() {
+        // Given
+        publisher.stop();
+        publisher = new BatchingEventPublisher(rabbitTemplate, null);
+        ReflectionTestUtils.setField(publisher, "lingerMs", 60_000L);
+        ReflectionTestUtils.setField(publisher, "maxPending", 5);
+        ReflectionTestUtils.setField(publisher, "enqueueTimeoutMs", 0L);
+        publisher.start();
+
+        // When
+        int accepted = 0;
+        for (int i = 0; i < 8; i++) {
+            accepted += publisher.publish(RabbitMQConfig.TOPIC_EXCHANGE_NAME, RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY,
+                event(), null) ? 1 : 0;
+        }
+
+        // Then
+        assertThat(accepted).isEqualTo(5);
+        assertThat(publisher.getStatistics()).containsEntry("rejected_full", 3L);
+        publisher.flush();
+        awaitConfirmed(5);
+        assertThat(publisher.publish(RabbitMQConfig.TOPIC_EXCHANGE_NAME, RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY,
+            event(), null)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Benchmark: batched publishing vs one convertAndSend per event")
+    void benchmarkBatchedVsDirect() throws Exception {
+        // Modelled broker costs: taking a channel per template call, and writing one publish
+        channelCostNanos = 40_000;
+        publishCostNanos = 5_000;
+        int events = 4_000;
+        int producers = 4;
+        publisher.stop();
+        publisher = newPublisher(100, 5);
+
+        // Current path: every producer thread sends each event itself
+        long directStart = System.nanoTime();
+        runProducers(producers, events / producers, () -> rabbitTemplate.convertAndSend(
+            RabbitMQConfig.TOPIC_EXCHANGE_NAME, RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY, event()));
+        double directSeconds = (System.nanoTime() - directStart) / 1e9;
+        assertThat(directSent).hasValue(events);
+
+        // Batched: producers only buffer; measure until every event is confirmed
+        long batchedStart = System.nanoTime();
+        runProducers(producers, events / producers, () -> assertThat(publisher.publish(RabbitMQConfig.TOPIC_EXCHANGE_NAME,
+            RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY, event(), null)).isTrue());
+        double enqueueSeconds = (System.nanoTime() - batchedStart) / 1e9;
+        awaitConfirmed(events);
+        double batchedSeconds = (System.nanoTime() - batchedStart) / 1e9;
+
+        System.out.printf("direct:  %.0f events/s (producer threads blocked for every publish)%n", events / directSeconds);
+        System.out.printf("batched: %.0f events/s confirmed, producers done in %.1f ms, %d flushes%n",
+            events / batchedSeconds, enqueueSeconds * 1000, invocations.get());
+
+        assertThat(events / batchedSeconds).isGreaterThan(events / directSeconds);
+    }
+
+    // Helper methods
+
+    private BatchingEventPublisher newPublisher(int batchSize, long lingerMs) {
+        BatchingEventPublisher instance = new BatchingEventPublisher(rabbitTemplate, null);
+        ReflectionTestUtils.setField(instance, "batchSize", batchSize);
+        ReflectionTestUtils.setField(instance, "lingerMs", lingerMs);
+        instance.start();
+        return instance;
+    }
+
+    private String publish(String routingKey) {
+        BusinessEvent<Object> event = event();
+        assertThat(publisher.publish(RabbitMQConfig.TOPIC_EXCHANGE_NAME, routingKey, event, event.getEventId())).isTrue();
+        return event.getEventId();
+    }
+
+    private static BusinessEvent<Object> event() {
+        return BusinessEvent.create(RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY, "mini-ups-test",
+            Map.of("shipmentId", 42, "newStatus", "DELIVERED"), "corr");
+    }
+
+    private void awaitConfirmed(long count) {
+        await(() -> (Long) publisher.getStatistics().get("confirmed") >= count);
+    }
+
+    private static void await(java.util.function.BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    private static void runProducers(int producers, int eventsEach, Runnable send) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                runs.add(executor.submit(() -> {
+                    for (int i = 0; i < eventsEach; i++) {
+                        send.run();
+                    }
+                }));
+            }
+            for (Future<?> run : runs) {
+                run.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Busy-wait, as a channel write keeps its thread busy
+     */
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * A RabbitTemplate that confirms asynchronously as told by outcomes, instead of a mock,
+     * whose per-call bookkeeping would swamp the benchmark
+     */
+    private class BrokerStub extends RabbitTemplate {
+
+        private final ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+
+        BrokerStub() {
+            when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+        }
+
+        @Override
+        public ConnectionFactory getConnectionFactory() {
+            return connectionFactory;
+        }
+
+        @Override
+        public <T> T invoke(OperationsCallback<T> action) {
+            invocations.incrementAndGet();
+            spin(channelCostNanos);
+            return action.doInRabbit(this);
+        }
+
+        @Override
+        public void send(String exchange, String routingKey, Message message, CorrelationData correlation) {
+            spin(publishCostNanos);
+            published.add(message);
+            correlationIds.add(correlation.getId());
+            routingKeys.add(routingKey);
+            Outcome outcome = Optional.ofNullable(outcomes.poll()).orElse(Outcome.ACK);
+            broker.execute(() -> {
+                if (outcome == Outcome.RETURN) {
+                    correlation.setReturned(new ReturnedMessage(message, 312, "NO_ROUTE", exchange, routingKey));
+                }
+                if (outcome != Outcome.SILENT) {
+                    correlation.getFuture().complete(new CorrelationData.Confirm(outcome != Outcome.NACK,
+                        outcome == Outcome.NACK ? "nack" : null));
+                }
+            });
+        }
+
+        @Override
+        public void convertAndSend(String exchange, String routingKey, Object object) {
+            spin(channelCostNanos + publishCostNanos);
+            getMessageConverter().toMessage(object, new MessageProperties());
+            directSent.incrementAndGet();
+        }
+    }
+}
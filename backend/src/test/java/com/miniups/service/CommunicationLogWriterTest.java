@@ -0,0 +1,226 @@
+package com.miniups.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniups.config.TestConfig;
+import com.miniups.model.entity.CommunicationLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Integration tests for CommunicationLogWriter against the H2 test database.
+ * Tests one row per exchange, truncation and compression, the open timeout,
+ * each backpressure mode, and the request-thread cost against synchronous saves.
+ */
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.NONE,
+    properties = "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.amqp.RabbitAutoConfiguration"
+)
+@ActiveProfiles("test")
+@Import(TestConfig.class)
+@DisplayName("CommunicationLogWriter Integration Tests")
+class CommunicationLogWriterTest {
+
+    @Autowired
+    private CommunicationLogService communicationLogService;
+
+    @Autowired
+    private CommunicationLogWriter writer;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        writer.flush();
+        jdbcTemplate.update("DELETE FROM communication_logs");
+    }
+
+    @Test
+    @DisplayName("Should write an exchange once, with its response, when it completes")
+    void testExchange_SingleRow() {
+        // Given
+        CommunicationLog log = communicationLogService.logIncomingMessage("ShipmentLoaded", "/api/shipment_loaded",
+            Map.of("payload", Map.of("shipment_id", 77, "truck_id", 5)));
+        writer.flush();
+        assertThat(rowCount()).isZero();
+
+        // When
+        communicationLogService.updateLogWithResponse(log, Map.of("status", "ok"), 200, 12);
+        writer.flush();
+
+        // Then
+        Map<String, Object> row = jdbcTemplate.queryForMap("SELECT * FROM communication_logs");
+        assertThat(row.get("SHIPMENT_ID")).isEqualTo("77");
+        assertThat(row.get("TRUCK_ID")).isEqualTo(5);
+        assertThat(row.get("PAYLOAD")).asString().contains("\"shipment_id\":77");
+        assertThat(row.get("RESPONSE")).isEqualTo("{\"status\":\"ok\"}");
+        assertThat(row.get("STATUS_CODE")).isEqualTo(200);
+        assertThat(row.get("SUCCESS")).isEqualTo(true);
+        assertThat(communicationLogService.getLogsForShipment("77")).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("Should truncate and compress large payloads and decode them on read")
+    void testLargePayload_TruncatedAndCompressed() {
+        // Given
+        ReflectionTestUtils.setField(writer, "maxPayloadChars", 10_000);
+        ReflectionTestUtils.setField(writer, "compressionEnabled", true);
+        try {
+            String big = "x".repeat(50_000);
+            CommunicationLog log = communicationLogService.logOutgoingMessage("TruckArrived", "/api/webhooks/truck",
+                Map.of("shipment_id", "big", "notes", big));
+
+            // When
+            communicationLogService.markLogAsError(log, "timeout", 504);
+            writer.flush();
+
+            // Then
+            String stored = jdbcTemplate.queryForObject("SELECT payload FROM communication_logs", String.class);
+            assertThat(stored).startsWith(CommunicationLogWriter.COMPRESSED_PREFIX).hasSizeLessThan(1_000);
+            String decoded = communicationLogService.getRecentLogs(10).get(0).getPayload();
+            assertThat(decoded).hasSizeLessThan(10_100).matches("(?s)x*.*\\.\\.\\.\\[truncated \\d+ chars]");
+        } finally {
+            ReflectionTestUtils.setField(writer, "maxPayloadChars", 65536);
+            ReflectionTestUtils.setField(writer, "compressionEnabled", false);
+        }
+    }
+
+    @Test
+    @DisplayName("Should write an exchange that is never completed after the open timeout")
+    void testAbandonedExchange_WrittenBySweep() {
+        // Given
+        communicationLogService.logIncomingMessage("AddressChange", "/api/address_change", Map.of("shipment_id", 9));
+        ReflectionTestUtils.setField(writer, "openTimeoutMs", -1L);
+        try {
+            // When
+            writer.sweepAbandoned();
+            writer.flush();
+        } finally {
+            ReflectionTestUtils.setField(writer, "openTimeoutMs", 60000L);
+        }
+
+        // Then
+        assertThat(rowCount()).isEqualTo(1);
+        assertThat(writer.getStatistics()).containsEntry("open_records", 0);
+    }
+
+    @Test
+    @DisplayName("Should write the oldest open exchanges as-is when too many are open")
+    void testOpenExchanges_Capped() {
+        // Given
+        CommunicationLogWriter capped = unstartedWriter(CommunicationLogWriter.Backpressure.DROP, 100);
+        ReflectionTestUtils.setField(capped, "maxOpen", 10);
+
+        // When
+        for (int i = 0; i < 11; i++) {
+            capped.open(failedLog(i), null);
+        }
+
+        // Then - the overflow and a tenth of the cap went to the buffer
+        assertThat(capped.getStatistics())
+            .containsEntry("open_records", 9)
+            .containsEntry("open_evicted", 2L)
+            .containsEntry("buffer_depth", 2);
+    }
+
+    @Test
+    @DisplayName("Should drop, sample or block according to the backpressure mode")
+    void testBackpressureModes() {
+        // DROP: a full buffer rejects immediately
+        CommunicationLogWriter drop = unstartedWriter(CommunicationLogWriter.Backpressure.DROP, 4);
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            accepted += drop.write(failedLog(i), null) ? 1 : 0;
+        }
+        assertThat(accepted).isEqualTo(4);
+        assertThat(drop.getStatistics()).containsEntry("dropped", 6L);
+
+        // SAMPLE: above half full, 1 in 10 successful records and every failure
+        CommunicationLogWriter sample = unstartedWriter(CommunicationLogWriter.Backpressure.SAMPLE, 100);
+        for (int i = 0; i < 250; i++) {
+            sample.write(i % 50 == 0 ? failedLog(i) : CommunicationLog.incoming("ShipmentCreated", "/api/shipment"), null);
+        }
+        assertThat((long) (int) sample.getStatistics().get("buffer_depth")).isBetween(60L, 80L);
+        assertThat((Long) sample.getStatistics().get("sampled_out")).isGreaterThan(150L);
+
+        // BLOCK: waits for room, then gives up after the timeout
+        CommunicationLogWriter block = unstartedWriter(CommunicationLogWriter.Backpressure.BLOCK, 1);
+        ReflectionTestUtils.setField(block, "blockTimeoutMs", 100L);
+        assertThat(block.write(failedLog(1), null)).isTrue();
+        long start = System.nanoTime();
+        assertThat(block.write(failedLog(2), null)).isFalse();
+        assertThat((System.nanoTime() - start) / 1_000_000).isGreaterThanOrEqualTo(90);
+    }
+
+    @Test
+    @DisplayName("Benchmark: request-thread cost of write-behind vs synchronous saves")
+    void benchmarkWriteBehindVsSynchronous() {
+        int exchanges = 500;
+        Map<String, Object> payload = Map.of("message_type", "ShipmentLoaded",
+            "payload", Map.of("shipment_id", 1, "truck_id", 2, "items", List.of("a", "b", "c")));
+
+        // Synchronous: insert, then update
+        ReflectionTestUtils.setField(communicationLogService, "writer", null);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < exchanges; i++) {
+                CommunicationLog log = communicationLogService.logIncomingMessage("ShipmentLoaded", "/bench", payload);
+                communicationLogService.updateLogWithResponse(log, Map.of("ok", true), 200, 1);
+            }
+        } finally {
+            ReflectionTestUtils.setField(communicationLogService, "writer", writer);
+        }
+        double syncMs = (System.nanoTime() - start) / 1e6;
+
+        // Write-behind: the request thread only hands the record over
+        start = System.nanoTime();
+        for (int i = 0; i < exchanges; i++) {
+            CommunicationLog log = communicationLogService.logIncomingMessage("ShipmentLoaded", "/bench", payload);
+            communicationLogService.updateLogWithResponse(log, Map.of("ok", true), 200, 1);
+        }
+        double asyncMs = (System.nanoTime() - start) / 1e6;
+        writer.flush();
+
+        System.out.printf("synchronous:  %d exchanges in %.1f ms on the request thread%n", exchanges, syncMs);
+        System.out.printf("write-behind: %d exchanges in %.1f ms on the request thread%n", exchanges, asyncMs);
+
+        assertThat(rowCount()).isEqualTo(2L * exchanges);
+        assertThat(asyncMs).isLessThan(syncMs);
+    }
+
+    // Helper methods
+
+    private long rowCount() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM communication_logs", Long.class);
+    }
+
+    private CommunicationLog failedLog(int i) {
+        CommunicationLog log = CommunicationLog.outgoing("TruckArrived", "/api/webhooks/truck");
+        log.markAsError(503, "attempt " + i);
+        return log;
+    }
+
+    private CommunicationLogWriter unstartedWriter(CommunicationLogWriter.Backpressure mode, int capacity) {
+        CommunicationLogWriter unstarted = new CommunicationLogWriter(jdbcTemplate, objectMapper, null);
+        ReflectionTestUtils.setField(unstarted, "backpressure", mode);
+        ReflectionTestUtils.setField(unstarted, "capacity", capacity);
+        ReflectionTestUtils.setField(unstarted, "buffer", new ArrayBlockingQueue<>(capacity));
+        return unstarted;
+    }
+}
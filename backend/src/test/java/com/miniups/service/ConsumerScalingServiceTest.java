@@ -0,0 +1,201 @@
+package com.miniups.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ConsumerScalingService.
+ * Tests the initial limits, scaling up and down with hysteresis and cooldown, the
+ * published metrics, sampling through the listener registry, and the drain time
+ * of a backlog against fixed concurrency.
+ */
+@DisplayName("ConsumerScalingService Unit Tests")
+class ConsumerScalingServiceTest {
+
+    private static final String QUEUE = "q.notifications";
+    private static final long INTERVAL = 5_000;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ConsumerScalingService service;
+    private SimpleMessageListenerContainer container;
+    private long now;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        service = new ConsumerScalingService(meterRegistry);
+        container = mock(SimpleMessageListenerContainer.class);
+        now = 1_000_000;
+    }
+
+    @Test
+    @DisplayName("Should apply the configured minimums when it first sees a queue")
+    void testFirstSample_AppliesMinimums() {
+        // When
+        int decision = scale(0);
+
+        // Then
+        assertThat(decision).isZero();
+        verify(container).setPrefetchCount(1);
+        verify(container).setConcurrentConsumers(1);
+    }
+
+    @Test
+    @DisplayName("Should double consumers and prefetch after consecutive backlogged samples, up to the maximum")
+    void testBacklog_ScalesUpToMaximum() {
+        // Given - one backlogged sample is not enough
+        assertThat(scale(500)).isZero();
+
+        // When
+        int decision = scale(500);
+
+        // Then
+        assertThat(decision).isEqualTo(1);
+        verify(container).setConcurrentConsumers(2);
+        verify(container).setPrefetchCount(2);
+
+        // And the cooldown holds the next change back, then it continues to the cap
+        assertThat(scale(500)).isZero();
+        assertThat(scale(500)).isZero();
+        now += 30_000;
+        int ups = 0;
+        for (int i = 0; i < 30; i++) {
+            ups += Math.max(0, scale(5_000));
+            now += 30_000;
+        }
+        assertThat(ups).isEqualTo(5);
+        assertThat(stats()).containsEntry("consumers", 8).containsEntry("prefetch", 50);
+    }
+
+    @Test
+    @DisplayName("Should not flap on samples that alternate or sit between the thresholds")
+    void testHysteresis_NoFlapping() {
+        // When
+        int changes = 0;
+        long[] depths = {500, 0, 500, 0, 10, 10, 500, 10, 0, 0, 0, 0, 0, 10};
+        for (long depth : depths) {
+            changes += Math.abs(scale(depth));
+        }
+
+        // Then
+        assertThat(changes).isZero();
+        assertThat(meterRegistry.get("ups.rabbitmq.listener.scaling").counters())
+            .allSatisfy(counter -> assertThat(counter.count()).isZero());
+    }
+
+    @Test
+    @DisplayName("Should release capacity one consumer at a time once the queue stays quiet")
+    void testQuiet_ScalesDownGradually() {
+        // Given - scaled up twice
+        for (int i = 0; i < 4; i++) {
+            scale(5_000);
+            now += 30_000;
+        }
+        assertThat(stats()).containsEntry("consumers", 4).containsEntry("prefetch", 4);
+
+        // When - five quiet samples are not enough, the sixth is
+        for (int i = 0; i < 5; i++) {
+            assertThat(scale(0)).isZero();
+        }
+        int decision = scale(0);
+
+        // Then
+        assertThat(decision).isEqualTo(-1);
+        assertThat(stats()).containsEntry("consumers", 3).containsEntry("prefetch", 2);
+        assertThat(meterRegistry.get("ups.rabbitmq.listener.scaling").tag("direction", "down").counter().count())
+            .isEqualTo(1);
+        assertThat(meterRegistry.get("ups.rabbitmq.listener.consumers").tag("queue", QUEUE).gauge().value())
+            .isEqualTo(3);
+        assertThat(meterRegistry.get("ups.rabbitmq.listener.queue_depth").tag("queue", QUEUE).gauge().value())
+            .isZero();
+    }
+
+    @Test
+    @DisplayName("Should sample managed queues of running containers through the admin")
+    void testSample_ThroughRegistryAndAdmin() {
+        // Given
+        RabbitListenerEndpointRegistry registry = mock(RabbitListenerEndpointRegistry.class);
+        AmqpAdmin admin = mock(AmqpAdmin.class);
+        SimpleMessageListenerContainer audit = mock(SimpleMessageListenerContainer.class);
+        when(registry.getListenerContainers()).thenReturn(List.of(container, audit));
+        when(container.isRunning()).thenReturn(true);
+        when(container.getQueueNames()).thenReturn(new String[] {QUEUE});
+        when(audit.isRunning()).thenReturn(true);
+        when(audit.getQueueNames()).thenReturn(new String[] {"q.audit_log"});
+        when(admin.getQueueInfo(QUEUE)).thenReturn(new QueueInformation(QUEUE, 400, 1));
+        ReflectionTestUtils.setField(service, "listenerRegistry", registry);
+        ReflectionTestUtils.setField(service, "amqpAdmin", admin);
+
+        // When
+        service.sample();
+        service.sample();
+
+        // Then
+        verify(container).setConcurrentConsumers(2);
+        verify(admin, never()).getQueueInfo("q.audit_log");
+        verify(audit, never()).setConcurrentConsumers(anyInt());
+        assertThat(service.getStatistics()).containsOnlyKeys("enabled", QUEUE);
+    }
+
+    @Test
+    @DisplayName("Simulation: drain time of a 10k backlog, fixed vs adaptive concurrency")
+    void simulateBacklogDrain() {
+        // Each consumer handles 10 messages per second; 5 s between samples
+        long perConsumerPerSample = 10 * INTERVAL / 1000;
+        long fixedSamples = drain(10_000, perConsumerPerSample, false);
+        long adaptiveSamples = drain(10_000, perConsumerPerSample, true);
+
+        System.out.printf("fixed 1 consumer: drained in %d s%n", fixedSamples * INTERVAL / 1000);
+        System.out.printf("adaptive:         drained in %d s%n", adaptiveSamples * INTERVAL / 1000);
+
+        assertThat(adaptiveSamples).isLessThan(fixedSamples / 3);
+    }
+
+    // Helper methods
+
+    private int scale(long depth) {
+        int decision = service.scale(QUEUE, container, depth, now);
+        now += INTERVAL;
+        return decision;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> stats() {
+        return (Map<String, Object>) service.getStatistics().get(QUEUE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private long drain(long backlog, long perConsumerPerSample, boolean adaptive) {
+        ConsumerScalingService scaling = new ConsumerScalingService(null);
+        ReflectionTestUtils.setField(scaling, "cooldownMs", 10_000L);
+        SimpleMessageListenerContainer simulated = mock(SimpleMessageListenerContainer.class);
+        long depth = backlog;
+        long samples = 0;
+        long time = now;
+        while (depth > 0) {
+            int consumers = 1;
+            if (adaptive) {
+                scaling.scale(QUEUE, simulated, depth, time);
+                consumers = (Integer) ((Map<String, Object>) scaling.getStatistics().get(QUEUE))
+                    .get("consumers");
+            }
+            depth = Math.max(0, depth - consumers * perConsumerPerSample);
+            time += INTERVAL;
+            samples++;
+        }
+        return samples;
+    }
+}
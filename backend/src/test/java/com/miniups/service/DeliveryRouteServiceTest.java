@@ -0,0 +1,155 @@
+package com.miniups.service;
+
+import com.miniups.model.entity.Shipment;
+import com.miniups.model.entity.Truck;
+import com.miniups.model.enums.ShipmentStatus;
+import com.miniups.repository.ShipmentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for DeliveryRouteService.
+ * Tests route ordering, cheapest-insertion re-routing and route bookkeeping.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("DeliveryRouteService Unit Tests")
+class DeliveryRouteServiceTest {
+
+    @Mock
+    private ShipmentRepository shipmentRepository;
+
+    private DeliveryRouteService routeService;
+    private Truck truck;
+
+    @BeforeEach
+    void setUp() {
+        routeService = new DeliveryRouteService(shipmentRepository, null);
+        truck = new Truck();
+        truck.setId(1L);
+        truck.setTruckId(1);
+        truck.setCurrentX(0);
+        truck.setCurrentY(0);
+    }
+
+    @Test
+    @DisplayName("Should order a delivery run nearest-neighbour from the truck")
+    void testPlanRoute_NearestNeighbour() {
+        // When
+        Map<Long, int[]> route = routeService.planRoute(truck, List.of(
+            createShipment("103", 30, 0), createShipment("101", 10, 0), createShipment("102", 20, 0)));
+
+        // Then
+        assertThat(route.keySet()).containsExactly(101L, 102L, 103L);
+        assertThat(routeService.getRoute(1).keySet()).containsExactly(101L, 102L, 103L);
+    }
+
+    @Test
+    @DisplayName("Should splice the new address in at the cheapest position")
+    void testReroute_CheapestInsertion() {
+        // Given - stops along the x axis at 10, 20, 30
+        Shipment moving = createShipment("101", 10, 0);
+        routeService.planRoute(truck, List.of(moving, createShipment("102", 20, 0), createShipment("103", 30, 0)));
+
+        // When - first stop moves between the second and the third
+        Map<Long, int[]> route = routeService.reroute(truck, moving, 25, 0);
+
+        // Then
+        assertThat(route.keySet()).containsExactly(102L, 101L, 103L);
+        assertThat(route.get(101L)).containsExactly(25, 0);
+    }
+
+    @Test
+    @DisplayName("Should append a far-away address at the end of the route")
+    void testReroute_AppendsAtEnd() {
+        // Given
+        Shipment moving = createShipment("102", 20, 0);
+        routeService.planRoute(truck, List.of(createShipment("101", 10, 0), moving));
+
+        // When
+        Map<Long, int[]> route = routeService.reroute(truck, moving, 50, 50);
+
+        // Then
+        assertThat(route.keySet()).containsExactly(101L, 102L);
+        assertThat(route.get(102L)).containsExactly(50, 50);
+    }
+
+    @Test
+    @DisplayName("Should not re-route a package that has already been delivered")
+    void testReroute_DeliveredPackageSkipped() {
+        // Given
+        Shipment delivered = createShipment("101", 10, 0);
+        routeService.planRoute(truck, List.of(delivered, createShipment("102", 20, 0)));
+        routeService.onDelivered(1, 101L);
+
+        // When
+        Map<Long, int[]> route = routeService.reroute(truck, delivered, 5, 5);
+
+        // Then
+        assertThat(route).isEmpty();
+        assertThat(routeService.getRoute(1).keySet()).containsExactly(102L);
+        assertThat(routeService.getStatistics()).containsEntry("skipped_delivered", 1L);
+    }
+
+    @Test
+    @DisplayName("Should rebuild an unknown truck's route from its undelivered shipments")
+    void testReroute_RebuildsFromDatabase() {
+        // Given - no route in memory, e.g. after a restart
+        Shipment moving = createShipment("201", 40, 0);
+        Shipment other = createShipment("202", 10, 0);
+        Shipment done = createShipment("203", 5, 0);
+        done.setStatus(ShipmentStatus.DELIVERED);
+        when(shipmentRepository.findByTruck(truck)).thenReturn(List.of(moving, other, done));
+
+        // When
+        Map<Long, int[]> route = routeService.reroute(truck, moving, 15, 0);
+
+        // Then
+        assertThat(route.keySet()).containsExactly(202L, 201L);
+        verify(shipmentRepository, times(1)).findByTruck(truck);
+    }
+
+    @Test
+    @DisplayName("Should drop a route once its last package is delivered")
+    void testOnDelivered_ClearsFinishedRoute() {
+        // Given
+        routeService.planRoute(truck, List.of(createShipment("101", 10, 0)));
+
+        // When
+        routeService.onDelivered(1, 101L);
+
+        // Then
+        assertThat(routeService.getRoute(1)).isEmpty();
+        assertThat(routeService.getStatistics()).containsEntry("active_routes", 0);
+    }
+
+    @Test
+    @DisplayName("Should record re-route latency")
+    void testRecordRerouteLatency() {
+        // When
+        routeService.recordRerouteLatency(System.nanoTime() - 2_000_000);
+
+        // Then
+        Map<String, Object> stats = routeService.getStatistics();
+        assertThat(stats).containsEntry("reroutes", 1L);
+        assertThat((Double) stats.get("avg_reroute_latency_ms")).isGreaterThanOrEqualTo(2.0);
+    }
+
+    private Shipment createShipment(String shipmentId, int destX, int destY) {
+        Shipment shipment = new Shipment();
+        shipment.setShipmentId(shipmentId);
+        shipment.setDestX(destX);
+        shipment.setDestY(destY);
+        shipment.setStatus(ShipmentStatus.IN_TRANSIT);
+        shipment.setTruck(truck);
+        return shipment;
+    }
+}
@@ -0,0 +1,221 @@
+package com.miniups.service;
+
+import com.miniups.model.entity.Shipment;
+import com.miniups.model.entity.Truck;
+import com.miniups.model.enums.ShipmentStatus;
+import com.miniups.repository.ShipmentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for EtaService.
+ * Tests distance-based estimation, sim speed scaling, online learning and refresh on truck progress.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("EtaService Unit Tests")
+class EtaServiceTest {
+
+    @Mock
+    private ShipmentRepository shipmentRepository;
+
+    private EtaService etaService;
+
+    @BeforeEach
+    void setUp() {
+        // Prior: 100 ms per grid unit at simspeed 1000
+        etaService = new EtaService(shipmentRepository, 1000);
+    }
+
+    @Test
+    @DisplayName("Should estimate from truck -> warehouse -> destination distance")
+    void testEstimate_UsesFullRouteDistance() {
+        // Given - truck at (0,0), warehouse at (10,0), destination (10,10): 20 units
+        Shipment shipment = createShipment("S1", createTruck(1, 0, 0), ShipmentStatus.CREATED);
+
+        // When
+        LocalDateTime eta = etaService.estimate(shipment);
+
+        // Then
+        assertThat(Duration.between(LocalDateTime.now(), eta).toMillis()).isBetween(1500L, 2000L);
+    }
+
+    @Test
+    @DisplayName("Should scale estimates inversely with sim speed")
+    void testEstimate_ScalesWithSimSpeed() {
+        // Given
+        double baseRate = etaService.getMillisPerUnit();
+
+        // When
+        etaService.setSimSpeed(2000);
+
+        // Then
+        assertThat(etaService.getMillisPerUnit()).isCloseTo(baseRate / 2, within(1e-9));
+    }
+
+    @Test
+    @DisplayName("Should learn travel time per unit from pickup and delivery times")
+    void testOnDelivered_LearnsTravelRate() {
+        // Given - warehouse (10,0) to destination (10,10) took 5 seconds: 500 ms per unit
+        LocalDateTime pickup = LocalDateTime.now().minusSeconds(5);
+        for (int i = 0; i < 3; i++) {
+            Shipment delivered = createShipment("D" + i, createTruck(1, 10, 10), ShipmentStatus.DELIVERED);
+            delivered.setCreatedAt(pickup.minusSeconds(5));
+            delivered.setPickupTime(pickup);
+            delivered.setActualDelivery(pickup.plusSeconds(5));
+
+            // When
+            etaService.onDelivered(delivered);
+        }
+
+        // Then
+        assertThat(etaService.getMillisPerUnit()).isCloseTo(500.0, within(1e-6));
+        assertThat(etaService.getAverageDeliveryMillis()).isEqualTo(10_000L);
+        assertThat(etaService.getStatistics()).containsEntry("travel_samples", 3L);
+    }
+
+    @Test
+    @DisplayName("Should normalise a travel sample with the sim speed in effect during the trip")
+    void testOnDelivered_UsesSimSpeedOfTrip() {
+        // Given - delivered in 5 seconds at simspeed 1000, learned after the speed doubled
+        LocalDateTime pickup = LocalDateTime.now().minusSeconds(10);
+        Shipment delivered = createShipment("D1", createTruck(1, 10, 10), ShipmentStatus.DELIVERED);
+        delivered.setPickupTime(pickup);
+        delivered.setActualDelivery(pickup.plusSeconds(5));
+        etaService.setSimSpeed(2000);
+
+        // When
+        etaService.onDelivered(delivered);
+
+        // Then - 500 ms per unit at 1000 is 250 ms per unit at 2000
+        assertThat(etaService.getMillisPerUnit()).isCloseTo(250.0, within(1e-6));
+    }
+
+    @Test
+    @DisplayName("Should refresh ETA as the truck reports progress and after pickup")
+    void testOnTruckProgress_RefreshesEta() {
+        // Given
+        Shipment shipment = createShipment("S1", createTruck(7, 0, 0), ShipmentStatus.TRUCK_DISPATCHED);
+        LocalDateTime initial = etaService.estimate(shipment);
+
+        // When - truck reaches the warehouse, then loads the package
+        etaService.onTruckProgress(7, 10, 0);
+        LocalDateTime atWarehouse = etaService.getEstimatedDelivery("S1");
+        shipment.setStatus(ShipmentStatus.PICKED_UP);
+        etaService.onPickedUp(shipment);
+        etaService.onTruckProgress(7, 10, 8);
+        LocalDateTime nearlyThere = etaService.getEstimatedDelivery("S1");
+
+        // Then
+        assertThat(atWarehouse).isBefore(initial);
+        assertThat(Duration.between(LocalDateTime.now(), nearlyThere).toMillis()).isBetween(0L, 200L);
+    }
+
+    @Test
+    @DisplayName("Should stop tracking delivered shipments and return the actual delivery time")
+    void testEstimate_DeliveredShipment() {
+        // Given
+        Shipment shipment = createShipment("S1", createTruck(1, 0, 0), ShipmentStatus.CREATED);
+        etaService.estimate(shipment);
+        shipment.setStatus(ShipmentStatus.DELIVERED);
+        shipment.setActualDelivery(LocalDateTime.now());
+
+        // When
+        etaService.onDelivered(shipment);
+
+        // Then
+        assertThat(etaService.getEstimatedDelivery("S1")).isNull();
+        assertThat(etaService.estimate(shipment)).isEqualTo(shipment.getActualDelivery());
+    }
+
+    @Test
+    @DisplayName("Should stop tracking cancelled and returned shipments")
+    void testOnClosed_DropsRoute() {
+        // Given
+        Shipment cancelled = createShipment("S1", createTruck(1, 0, 0), ShipmentStatus.CREATED);
+        Shipment returned = createShipment("S2", createTruck(2, 0, 0), ShipmentStatus.IN_TRANSIT);
+        etaService.estimate(cancelled);
+        etaService.estimate(returned);
+        cancelled.setStatus(ShipmentStatus.CANCELLED);
+        returned.setStatus(ShipmentStatus.RETURNED);
+
+        // When
+        etaService.onClosed(cancelled);
+        etaService.estimate(returned);
+
+        // Then
+        assertThat(etaService.getEstimatedDelivery("S1")).isNull();
+        assertThat(etaService.getEstimatedDelivery("S2")).isNull();
+        assertThat(etaService.getStatistics()).containsEntry("tracked_shipments", 0);
+    }
+
+    @Test
+    @DisplayName("Should warm up the model from recent deliveries")
+    void testWarmUp_FromRepository() {
+        // Given
+        LocalDateTime pickup = LocalDateTime.now().minusMinutes(1);
+        Shipment delivered = createShipment("D1", createTruck(1, 10, 10), ShipmentStatus.DELIVERED);
+        delivered.setPickupTime(pickup);
+        delivered.setActualDelivery(pickup.plusSeconds(2));
+        when(shipmentRepository.findByStatusAndActualDeliveryIsNotNullOrderByActualDeliveryDesc(
+            eq(ShipmentStatus.DELIVERED), any())).thenReturn(List.of(delivered));
+
+        // When
+        etaService.warmUp();
+
+        // Then - 2 seconds over 10 units
+        assertThat(etaService.getMillisPerUnit()).isCloseTo(200.0, within(1e-6));
+    }
+
+    @Test
+    @DisplayName("Should produce estimates in microseconds from in-memory state")
+    void testEstimate_Latency() {
+        // Given
+        Truck truck = createTruck(1, 0, 0);
+        Shipment shipment = createShipment("S1", truck, ShipmentStatus.TRUCK_DISPATCHED);
+        for (int i = 0; i < 10_000; i++) {
+            etaService.estimate(shipment);
+        }
+
+        // When
+        int iterations = 100_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            etaService.onTruckProgress(1, i % 10, 0);
+            etaService.getEstimatedDelivery("S1");
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // Then
+        double micros = elapsed / 1000.0 / iterations;
+        System.out.printf("ETA refresh + lookup: %.3f us per update%n", micros);
+        assertThat(micros).isLessThan(100.0);
+    }
+
+    private Truck createTruck(int truckId, int x, int y) {
+        Truck truck = new Truck();
+        truck.setId((long) truckId);
+        truck.setTruckId(truckId);
+        truck.setCurrentX(x);
+        truck.setCurrentY(y);
+        return truck;
+    }
+
+    private Shipment createShipment(String shipmentId, Truck truck, ShipmentStatus status) {
+        Shipment shipment = new Shipment(shipmentId, 10, 0, 10, 10);
+        shipment.setTruck(truck);
+        shipment.setStatus(status);
+        return shipment;
+    }
+}
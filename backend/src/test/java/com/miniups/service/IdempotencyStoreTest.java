@@ -0,0 +1,186 @@
+package com.miniups.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for IdempotencyStore.
+ * Tests single ownership, replay to concurrent duplicates, release on failure,
+ * expiry, and the Redis claim with fallback to the near cache.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("IdempotencyStore Unit Tests")
+class IdempotencyStoreTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    @DisplayName("Should let one caller own a key and replay its response to concurrent duplicates")
+    void testConcurrentDuplicates_OneOwnerRestReplay() throws Exception {
+        // Given
+        IdempotencyStore store = new IdempotencyStore(null, objectMapper, null);
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // When - 8 concurrent requests with the same key
+        List<Future<IdempotencyStore.Claim.Type>> outcomes = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            outcomes.add(clients.submit(() -> {
+                start.await();
+                IdempotencyStore.Claim claim = store.begin("k1");
+                if (claim.getType() == IdempotencyStore.Claim.Type.OWNER) {
+                    Thread.sleep(100);
+                    store.complete("k1", new IdempotencyStore.Snapshot(200, "application/json", "{\"ok\":true}"));
+                } else {
+                    assertThat(claim.getSnapshot().getBody()).isEqualTo("{\"ok\":true}");
+                }
+                return claim.getType();
+            }));
+        }
+        start.countDown();
+
+        // Then
+        int owners = 0;
+        int replays = 0;
+        for (Future<IdempotencyStore.Claim.Type> outcome : outcomes) {
+            IdempotencyStore.Claim.Type type = outcome.get(5, TimeUnit.SECONDS);
+            owners += type == IdempotencyStore.Claim.Type.OWNER ? 1 : 0;
+            replays += type == IdempotencyStore.Claim.Type.REPLAY ? 1 : 0;
+        }
+        clients.shutdown();
+        assertThat(owners).isEqualTo(1);
+        assertThat(replays).isEqualTo(7);
+        assertThat(store.getStatistics()).containsEntry("claims", 1L).containsEntry("near_cache_replays", 7L);
+    }
+
+    @Test
+    @DisplayName("Should hand a released key to the next caller")
+    void testRelease_NextCallerOwns() {
+        // Given
+        IdempotencyStore store = new IdempotencyStore(null, objectMapper, null);
+        assertThat(store.begin("k2").getType()).isEqualTo(IdempotencyStore.Claim.Type.OWNER);
+
+        // When
+        store.release("k2");
+
+        // Then
+        assertThat(store.begin("k2").getType()).isEqualTo(IdempotencyStore.Claim.Type.OWNER);
+    }
+
+    @Test
+    @DisplayName("Should report a conflict when the owner does not finish within the wait timeout")
+    void testSlowOwner_Conflict() {
+        // Given
+        IdempotencyStore store = new IdempotencyStore(null, objectMapper, null);
+        ReflectionTestUtils.setField(store, "waitTimeoutMs", 50L);
+        store.begin("k3");
+
+        // When
+        IdempotencyStore.Claim duplicate = store.begin("k3");
+
+        // Then
+        assertThat(duplicate.getType()).isEqualTo(IdempotencyStore.Claim.Type.IN_PROGRESS);
+        assertThat(store.getStatistics()).containsEntry("in_progress_conflicts", 1L);
+    }
+
+    @Test
+    @DisplayName("Should forget a stored response after its TTL")
+    void testExpiredSnapshot_Reclaimed() {
+        // Given
+        IdempotencyStore store = new IdempotencyStore(null, objectMapper, null);
+        ReflectionTestUtils.setField(store, "ttlSeconds", 0L);
+        store.begin("k4");
+        store.complete("k4", new IdempotencyStore.Snapshot(200, null, "done"));
+
+        // When
+        store.evictExpired();
+
+        // Then
+        assertThat(store.getStatistics()).containsEntry("near_cache_size", 0);
+        assertThat(store.begin("k4").getType()).isEqualTo(IdempotencyStore.Claim.Type.OWNER);
+    }
+
+    @Test
+    @DisplayName("Should replay a response stored in Redis by another instance")
+    void testRedisSnapshot_Replayed() {
+        // Given - another instance already completed this key
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(eq("idempotency:k5"), eq("PENDING"), anyLong(), any()))
+            .thenReturn(false);
+        when(valueOperations.get("idempotency:k5"))
+            .thenReturn("{\"status\":200,\"content_type\":\"application/json\",\"body\":\"{}\"}");
+        IdempotencyStore store = new IdempotencyStore(redisTemplate, objectMapper, null);
+
+        // When
+        IdempotencyStore.Claim claim = store.begin("k5");
+        IdempotencyStore.Claim again = store.begin("k5");
+
+        // Then - the second duplicate is served from the near cache
+        assertThat(claim.getType()).isEqualTo(IdempotencyStore.Claim.Type.REPLAY);
+        assertThat(claim.getSnapshot().getStatus()).isEqualTo(200);
+        assertThat(again.getType()).isEqualTo(IdempotencyStore.Claim.Type.REPLAY);
+        verify(valueOperations, times(1)).get("idempotency:k5");
+        assertThat(store.getStatistics()).containsEntry("redis_replays", 1L).containsEntry("near_cache_replays", 1L);
+    }
+
+    @Test
+    @DisplayName("Should claim in Redis and store the snapshot there on completion")
+    void testRedisClaim_SnapshotWritten() {
+        // Given
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(eq("idempotency:k6"), eq("PENDING"), anyLong(), any())).thenReturn(true);
+        IdempotencyStore store = new IdempotencyStore(redisTemplate, objectMapper, null);
+
+        // When
+        IdempotencyStore.Claim claim = store.begin("k6");
+        store.complete("k6", new IdempotencyStore.Snapshot(201, "application/json", "{}"));
+
+        // Then
+        assertThat(claim.getType()).isEqualTo(IdempotencyStore.Claim.Type.OWNER);
+        verify(valueOperations).set(eq("idempotency:k6"), contains("\"status\":201"), eq(86400L), eq(TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Should fall back to the near cache when Redis is down")
+    void testRedisDown_NearCacheOnly() {
+        // Given
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), anyLong(), any()))
+            .thenThrow(new RedisConnectionFailureException("connection refused"));
+        IdempotencyStore store = new IdempotencyStore(redisTemplate, objectMapper, null);
+
+        // When
+        IdempotencyStore.Claim claim = store.begin("k7");
+        store.complete("k7", new IdempotencyStore.Snapshot(200, null, "done"));
+        IdempotencyStore.Claim duplicate = store.begin("k7");
+
+        // Then - no further Redis calls during the back-off
+        assertThat(claim.getType()).isEqualTo(IdempotencyStore.Claim.Type.OWNER);
+        assertThat(duplicate.getType()).isEqualTo(IdempotencyStore.Claim.Type.REPLAY);
+        verify(valueOperations, times(1)).setIfAbsent(anyString(), anyString(), anyLong(), any());
+        verifyNoMoreInteractions(valueOperations);
+        assertThat(store.getStatistics()).containsEntry("redis_available", false);
+    }
+}
@@ -0,0 +1,229 @@
+package com.miniups.service;
+
+import com.miniups.model.entity.Shipment;
+import com.miniups.model.entity.Truck;
+import com.miniups.model.enums.TruckStatus;
+import com.miniups.repository.TruckRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for LoadPackingService.
+ * Tests first-fit-decreasing packing, online packing onto dispatched trucks and dispatch accounting.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("LoadPackingService Unit Tests")
+class LoadPackingServiceTest {
+
+    @Mock
+    private TruckRepository truckRepository;
+
+    @Mock
+    private TruckManagementService truckManagementService;
+
+    private LoadPackingService loadPackingService;
+
+    @BeforeEach
+    void setUp() {
+        loadPackingService = new LoadPackingService(truckRepository, truckManagementService, null);
+    }
+
+    @Test
+    @DisplayName("Should pack heaviest shipments first without exceeding capacity")
+    void testFirstFitDecreasing_RespectsCapacity() {
+        // Given
+        List<Truck> trucks = List.of(createTruck(1L, 100, 0.0), createTruck(2L, 100, 0.0), createTruck(3L, 100, 0.0));
+        List<Shipment> shipments = List.of(
+            createShipment("S1", 20), createShipment("S2", 70), createShipment("S3", 50),
+            createShipment("S4", 30), createShipment("S5", 30)
+        );
+
+        // When
+        LoadPackingService.PackingPlan plan = loadPackingService.packFirstFitDecreasing(shipments, trucks);
+
+        // Then - 70+30 | 50+30+20
+        assertThat(plan.getUnassigned()).isEmpty();
+        assertThat(plan.getTrucksUsed()).isEqualTo(2);
+        assertThat(plan.getLoads().get(trucks.get(0))).extracting(Shipment::getShipmentId).containsExactly("S2", "S4");
+        assertThat(plan.getLoads().get(trucks.get(1))).extracting(Shipment::getShipmentId).containsExactly("S3", "S5", "S1");
+        plan.getLoads().values().forEach(load ->
+            assertThat(load.stream().mapToDouble(s -> s.getWeight().doubleValue()).sum()).isLessThanOrEqualTo(100.0));
+    }
+
+    @Test
+    @DisplayName("Should account for existing load and report shipments that do not fit")
+    void testFirstFitDecreasing_ExistingLoadAndOverflow() {
+        // Given
+        List<Truck> trucks = List.of(createTruck(1L, 100, 80.0));
+        List<Shipment> shipments = List.of(createShipment("S1", 15), createShipment("S2", 10));
+
+        // When
+        LoadPackingService.PackingPlan plan = loadPackingService.packFirstFitDecreasing(shipments, trucks);
+
+        // Then
+        assertThat(plan.getLoads().get(trucks.get(0))).extracting(Shipment::getShipmentId).containsExactly("S1");
+        assertThat(plan.getUnassigned()).extracting(Shipment::getShipmentId).containsExactly("S2");
+    }
+
+    @Test
+    @DisplayName("Should pack onto a truck already dispatched to the same warehouse")
+    void testAssign_PacksOntoDispatchedTruck() {
+        // Given
+        Truck dispatched = createTruck(1L, 100, 40.0);
+        dispatched.setStatus(TruckStatus.EN_ROUTE);
+        when(truckRepository.findLoadableTrucksForWarehouse("7")).thenReturn(List.of(dispatched));
+        when(truckRepository.tryAddLoad(1L, 25.0)).thenReturn(1);
+
+        // When
+        LoadPackingService.Assignment assignment = loadPackingService.assign("7", BigDecimal.valueOf(25));
+
+        // Then
+        assertThat(assignment.getTruck()).isSameAs(dispatched);
+        assertThat(assignment.isNewDispatch()).isFalse();
+        assertThat(dispatched.getCurrentLoad()).isEqualTo(65.0);
+        verify(truckManagementService, never()).assignTruckForWarehouse(any());
+    }
+
+    @Test
+    @DisplayName("Should claim a new idle truck when the dispatched truck is full")
+    void testAssign_FallsBackToIdleTruckWhenFull() {
+        // Given
+        Truck dispatched = createTruck(1L, 100, 90.0);
+        Truck idle = createTruck(2L, 100, 0.0);
+        when(truckRepository.findLoadableTrucksForWarehouse("7")).thenReturn(List.of(dispatched));
+        when(truckManagementService.assignTruckForWarehouse(any())).thenReturn(idle);
+        when(truckRepository.tryAddLoad(2L, 25.0)).thenReturn(1);
+
+        // When
+        LoadPackingService.Assignment assignment = loadPackingService.assign("7", BigDecimal.valueOf(25));
+
+        // Then
+        assertThat(assignment.getTruck()).isSameAs(idle);
+        assertThat(assignment.isNewDispatch()).isTrue();
+        verify(truckRepository, never()).tryAddLoad(eq(1L), anyDouble());
+    }
+
+    @Test
+    @DisplayName("Should mark the truck of an oversized shipment full so nothing else is packed onto it")
+    void testAssign_OversizedShipmentFillsTruck() {
+        // Given
+        Truck first = createTruck(1L, 100, 0.0);
+        Truck second = createTruck(2L, 100, 0.0);
+        when(truckRepository.findLoadableTrucksForWarehouse("7")).thenReturn(List.of(), List.of(first));
+        when(truckManagementService.assignTruckForWarehouse(any())).thenReturn(first, second);
+        when(truckRepository.tryAddLoad(1L, 150.0)).thenReturn(0);
+        when(truckRepository.fillLoad(1L)).thenReturn(1);
+        when(truckRepository.tryAddLoad(2L, 5.0)).thenReturn(1);
+
+        // When
+        LoadPackingService.Assignment oversized = loadPackingService.assign("7", BigDecimal.valueOf(150));
+        LoadPackingService.Assignment small = loadPackingService.assign("7", BigDecimal.valueOf(5));
+        loadPackingService.releaseLoad(first, BigDecimal.valueOf(150));
+
+        // Then - the small shipment gets its own truck; delivery gives back what was charged
+        assertThat(oversized.getTruck()).isSameAs(first);
+        assertThat(small.getTruck()).isSameAs(second);
+        verify(truckRepository, never()).tryAddLoad(1L, 5.0);
+        verify(truckRepository).releaseLoad(1L, 100.0);
+    }
+
+    @Test
+    @DisplayName("Should lose the race gracefully when another shipment fills the truck first")
+    void testAssign_ConditionalUpdateRejected() {
+        // Given - in-memory load says it fits, but the atomic update finds it full
+        Truck dispatched = createTruck(1L, 100, 50.0);
+        Truck idle = createTruck(2L, 100, 0.0);
+        when(truckRepository.findLoadableTrucksForWarehouse("7")).thenReturn(List.of(dispatched));
+        when(truckRepository.tryAddLoad(1L, 30.0)).thenReturn(0);
+        when(truckManagementService.assignTruckForWarehouse(any())).thenReturn(idle);
+        when(truckRepository.tryAddLoad(2L, 30.0)).thenReturn(1);
+
+        // When
+        LoadPackingService.Assignment assignment = loadPackingService.assign("7", BigDecimal.valueOf(30));
+
+        // Then
+        assertThat(assignment.getTruck()).isSameAs(idle);
+        assertThat(dispatched.getCurrentLoad()).isEqualTo(50.0);
+    }
+
+    @Test
+    @DisplayName("Should release the same default weight it charged for a shipment without one")
+    void testReleaseLoad_MatchesChargedDefaultWeight() {
+        // Given
+        Truck idle = createTruck(2L, 100, 0.0);
+        when(truckRepository.findLoadableTrucksForWarehouse("7")).thenReturn(List.of());
+        when(truckManagementService.assignTruckForWarehouse(any())).thenReturn(idle);
+        when(truckRepository.tryAddLoad(2L, 1.0)).thenReturn(1);
+
+        // When
+        loadPackingService.assign("7", null);
+        loadPackingService.releaseLoad(idle, null);
+
+        // Then
+        verify(truckRepository).tryAddLoad(2L, 1.0);
+        verify(truckRepository).releaseLoad(2L, 1.0);
+    }
+
+    @Test
+    @DisplayName("Should cut truck dispatches per shipment compared to one truck per shipment")
+    void testDispatchesPerShipment_Drop() {
+        // Given - 40 shipments of 25 units from one warehouse, trucks hold 100 units
+        List<Truck> openTrucks = new ArrayList<>();
+        long[] nextId = {1L};
+        when(truckRepository.findLoadableTrucksForWarehouse("1")).thenAnswer(inv -> new ArrayList<>(openTrucks));
+        when(truckManagementService.assignTruckForWarehouse(any())).thenAnswer(inv -> {
+            Truck truck = createTruck(nextId[0]++, 100, 0.0);
+            truck.setStatus(TruckStatus.EN_ROUTE);
+            openTrucks.add(truck);
+            return truck;
+        });
+        when(truckRepository.tryAddLoad(anyLong(), anyDouble())).thenAnswer(inv -> {
+            Truck truck = openTrucks.stream().filter(t -> t.getId().equals(inv.getArgument(0))).findFirst().orElseThrow();
+            double weight = inv.getArgument(1);
+            return truck.getRemainingCapacity() >= weight ? 1 : 0;
+        });
+
+        // When
+        int shipments = 40;
+        for (int i = 0; i < shipments; i++) {
+            assertThat(loadPackingService.assign("1", BigDecimal.valueOf(25))).isNotNull();
+        }
+
+        // Then - baseline is 1.0 dispatch per shipment
+        double dispatchesPerShipment = loadPackingService.getDispatchesPerShipment();
+        System.out.printf("Load packing: %d shipments, %s truck dispatches, %.3f dispatches/shipment (baseline 1.000)%n",
+            shipments, loadPackingService.getDispatchStatistics().get("truck_dispatches"), dispatchesPerShipment);
+        assertThat(dispatchesPerShipment).isEqualTo(0.25);
+        assertThat(loadPackingService.getDispatchStatistics())
+            .containsEntry("shipments_assigned", 40L)
+            .containsEntry("truck_dispatches", 10L);
+    }
+
+    private Truck createTruck(Long id, int capacity, double currentLoad) {
+        Truck truck = new Truck();
+        truck.setId(id);
+        truck.setTruckId(id.intValue());
+        truck.setCapacity(capacity);
+        truck.setCurrentLoad(currentLoad);
+        truck.setStatus(TruckStatus.IDLE);
+        return truck;
+    }
+
+    private Shipment createShipment(String shipmentId, int weight) {
+        Shipment shipment = new Shipment(shipmentId, 0, 0, 10, 10);
+        shipment.setWeight(BigDecimal.valueOf(weight));
+        return shipment;
+    }
+}
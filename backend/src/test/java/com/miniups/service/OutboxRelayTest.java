@@ -0,0 +1,366 @@
+package com.miniups.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniups.config.EventContentTypes;
+import com.miniups.config.EventMessageConverter;
+import com.miniups.config.RabbitMQConfig;
+import com.miniups.config.TestConfig;
+import com.miniups.model.event.BusinessEvent;
+import com.miniups.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.AmqpIllegalStateException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.ConnectException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Integration tests for the transactional outbox against the H2 test database.
+ * Tests staging inside transactions, rollback, direct publishing outside transactions,
+ * retry of nacked events, concurrent relays, and relay throughput and lag.
+ * The broker is a mocked RabbitTemplate that confirms on a separate thread.
+ */
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.NONE,
+    properties = "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.amqp.RabbitAutoConfiguration"
+)
+@ActiveProfiles("test")
+@Import(TestConfig.class)
+@DisplayName("OutboxRelay Integration Tests")
+class OutboxRelayTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private OutboxEventRepository outboxRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final List<Message> published = Collections.synchronizedList(new ArrayList<>());
+    private final ScheduledExecutorService broker = Executors.newSingleThreadScheduledExecutor();
+    private volatile boolean ack = true;
+    private volatile long confirmDelayMicros = 50;
+
+    private RabbitTemplate rabbitTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private OutboxRelay relay;
+    private EventPublisherService publisher;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM outbox_events");
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+        rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.getConnectionFactory()).thenReturn(connectionFactory);
+        doAnswer(invocation -> {
+            published.add(invocation.getArgument(2));
+            CorrelationData correlation = invocation.getArgument(3);
+            boolean confirmed = ack;
+            broker.schedule(() -> correlation.getFuture().complete(
+                new CorrelationData.Confirm(confirmed, confirmed ? null : "nack")), confirmDelayMicros, TimeUnit.MICROSECONDS);
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+        meterRegistry = new SimpleMeterRegistry();
+        relay = new OutboxRelay(jdbcTemplate, transactionManager, rabbitTemplate, meterRegistry);
+        publisher = new EventPublisherService(rabbitTemplate, true);
+        ReflectionTestUtils.setField(publisher, "sourceService", "mini-ups-test");
+        ReflectionTestUtils.setField(publisher, "outboxRepository", outboxRepository);
+        ReflectionTestUtils.setField(publisher, "outboxRelay", relay);
+        ReflectionTestUtils.setField(publisher, "objectMapper", objectMapper);
+    }
+
+    @AfterEach
+    void tearDown() {
+        broker.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Should stage an event in the transaction and publish it with its event id once relayed")
+    void testCommittedEvent_StagedThenRelayed() throws Exception {
+        // Given
+        transactionTemplate.executeWithoutResult(status ->
+            publisher.publishShipmentStatusUpdateEvent(42L, "CREATED", "TRUCK_DISPATCHED", "corr-1"));
+        verify(rabbitTemplate, never()).convertAndSend(anyString(), anyString(), any(Object.class));
+        assertThat(relay.getPendingCount()).isEqualTo(1);
+
+        // When
+        int claimed = relay.relayBatch();
+
+        // Then
+        assertThat(claimed).isEqualTo(1);
+        verify(rabbitTemplate).send(eq(RabbitMQConfig.TOPIC_EXCHANGE_NAME), eq(RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY),
+            any(Message.class), any(CorrelationData.class));
+        Message message = published.get(0);
+        JsonNode event = objectMapper.readTree(message.getBody());
+        assertThat(message.getMessageProperties().getMessageId()).isEqualTo(event.get("eventId").asText());
+        assertThat(message.getMessageProperties().getContentType()).isEqualTo("application/json");
+        assertThat(event.get("correlationId").asText()).isEqualTo("corr-1");
+        assertThat(event.get("payload").get("newStatus").asText()).isEqualTo("TRUCK_DISPATCHED");
+        assertThat(relay.getPendingCount()).isZero();
+        assertThat(relay.getStatistics()).containsEntry("published", 1L);
+    }
+
+    @Test
+    @DisplayName("Should never publish an event whose transaction rolled back")
+    void testRolledBack_NeverPublished() {
+        // When
+        transactionTemplate.executeWithoutResult(status -> {
+            publisher.publishShipmentStatusUpdateEvent(42L, "CREATED", "TRUCK_DISPATCHED", "corr-2");
+            status.setRollbackOnly();
+        });
+
+        // Then
+        assertThat(outboxRepository.count()).isZero();
+        assertThat(relay.relayBatch()).isZero();
+        assertThat(published).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should publish directly when no transaction is active")
+    void testNoTransaction_PublishedDirectly() {
+        // When
+        publisher.publishShipmentStatusUpdateEvent(42L, "CREATED", "TRUCK_DISPATCHED", "corr-3");
+
+        // Then
+        verify(rabbitTemplate).convertAndSend(eq(RabbitMQConfig.TOPIC_EXCHANGE_NAME),
+            eq(RabbitMQConfig.SHIPMENT_STATUS_ROUTING_KEY), any(Object.class));
+        assertThat(outboxRepository.count()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should keep nacked events pending and publish them on the next pass")
+    void testNacked_RetriedNextPass() {
+        // Given
+        stage(3);
+        ack = false;
+
+        // When
+        relay.relayBatch();
+
+        // Then
+        assertThat(relay.getPendingCount()).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForList("SELECT attempts FROM outbox_events", Integer.class)).containsOnly(1);
+
+        ack = true;
+        relay.relayBatch();
+        assertThat(relay.getPendingCount()).isZero();
+        assertThat(published).hasSize(6);
+        assertThat(relay.getStatistics()).containsEntry("failed", 3L).containsEntry("published", 3L);
+    }
+
+    @Test
+    @DisplayName("Should continue past an event that cannot be sent and park it after max attempts")
+    void testPoisonEvent_SkippedThenParked() {
+        // Given - the broker refuses the first event every time
+        stage(3);
+        ReflectionTestUtils.setField(relay, "maxAttempts", 2);
+        Long poisonId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM outbox_events", Long.class);
+        jdbcTemplate.update("UPDATE outbox_events SET routing_key = 'poison' WHERE id = ?", poisonId);
+        doThrow(new AmqpIllegalStateException("refused"))
+            .when(rabbitTemplate).send(anyString(), eq("poison"), any(Message.class), any(CorrelationData.class));
+
+        // When
+        relay.relayBatch();
+
+        // Then - the events behind it are published
+        assertThat(published).hasSize(2);
+        assertThat(relay.getPendingCount()).isEqualTo(1);
+
+        // When - it fails again and reaches max attempts
+        relay.relayBatch();
+
+        // Then - no longer claimed
+        assertThat(relay.getPendingCount()).isZero();
+        assertThat(relay.getParkedCount()).isEqualTo(1);
+        assertThat(relay.relayBatch()).isZero();
+        assertThat(meterRegistry.get("ups.outbox.relay.parked").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should not charge an attempt to events left unsent while the broker is unreachable")
+    void testBrokerDown_NoAttemptCharged() {
+        // Given
+        stage(3);
+        doThrow(new AmqpConnectException(new ConnectException("refused")))
+            .when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+        // When
+        relay.relayBatch();
+
+        // Then
+        assertThat(jdbcTemplate.queryForList("SELECT attempts FROM outbox_events", Integer.class)).containsOnly(0);
+        assertThat(relay.getPendingCount()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Should back off instead of re-claiming full batches while the broker is unreachable")
+    void testBrokerDown_BacksOff() throws Exception {
+        // Given - more rows pending than one batch
+        stage(5);
+        ReflectionTestUtils.setField(relay, "batchSize", 2);
+        ReflectionTestUtils.setField(relay, "pollIntervalMs", 200L);
+        doThrow(new AmqpConnectException(new ConnectException("refused")))
+            .when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+        // When
+        assertThat(relay.relayBatch()).isZero();
+        relay.start();
+        for (int i = 0; i < 20; i++) {
+            relay.wakeUp();
+            Thread.sleep(25);
+        }
+        relay.stop();
+
+        // Then - a handful of passes in half a second, not a busy loop
+        verify(rabbitTemplate, atMost(5)).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    @Test
+    @DisplayName("Should relay events on binary routing keys as protobuf with the same event id")
+    void testBinaryRoutingKey_RelayedAsProtobuf() {
+        // Given
+        EventContentTypes contentTypes = new EventContentTypes();
+        ReflectionTestUtils.setField(contentTypes, "binaryRoutingKeys", List.of("shipment.status.*"));
+        ReflectionTestUtils.setField(relay, "eventContentTypes", contentTypes);
+        ReflectionTestUtils.setField(relay, "objectMapper", objectMapper);
+        stage(1);
+        String eventId = jdbcTemplate.queryForObject("SELECT event_id FROM outbox_events", String.class);
+
+        // When
+        relay.relayBatch();
+
+        // Then
+        Message message = published.get(0);
+        assertThat(message.getMessageProperties().getContentType()).isEqualTo(EventMessageConverter.CONTENT_TYPE_PROTOBUF);
+        assertThat(message.getMessageProperties().getMessageId()).isEqualTo(eventId);
+        BusinessEvent<?> event = (BusinessEvent<?>) new EventMessageConverter(objectMapper).fromMessage(message);
+        assertThat(event.getEventId()).isEqualTo(eventId);
+        assertThat(relay.getPendingCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should let concurrent relays claim disjoint batches")
+    void testConcurrentRelays_NoDoublePublish() throws Exception {
+        // Given
+        int events = 1000;
+        stage(events);
+        ReflectionTestUtils.setField(relay, "batchSize", 50);
+        OutboxRelay second = new OutboxRelay(jdbcTemplate, transactionManager, rabbitTemplate, null);
+        ReflectionTestUtils.setField(second, "batchSize", 50);
+
+        // When
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (OutboxRelay instance : List.of(relay, second)) {
+                runs.add(executor.submit(() -> {
+                    while (instance.relayBatch() > 0) {
+                        // drain
+                    }
+                }));
+            }
+            for (Future<?> run : runs) {
+                run.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Then
+        Set<String> ids = new HashSet<>();
+        synchronized (published) {
+            published.forEach(message -> ids.add(message.getMessageProperties().getMessageId()));
+        }
+        assertThat(relay.getPendingCount()).isZero();
+        assertThat(ids).hasSize(events);
+        assertThat(published).hasSize(events);
+    }
+
+    @Test
+    @DisplayName("Benchmark relay throughput and lag: batched confirms vs one confirm per event")
+    void benchmarkRelayThroughputAndLag() {
+        // A backlog of events, staged up front; lag includes the time spent queued behind it
+        int events = 500;
+        confirmDelayMicros = 500;
+
+        double perEventRate = drain(events, 1);
+        Timer perEventLag = lagTimer();
+        double perEventMeanMs = perEventLag.mean(TimeUnit.MILLISECONDS);
+        double perEventMaxMs = perEventLag.max(TimeUnit.MILLISECONDS);
+
+        meterRegistry = new SimpleMeterRegistry();
+        relay = new OutboxRelay(jdbcTemplate, transactionManager, rabbitTemplate, meterRegistry);
+        double batchedRate = drain(events, 200);
+        Timer batchedLag = lagTimer();
+
+        System.out.printf("per-event confirms: %.0f events/s, lag mean %.1f ms, max %.1f ms%n",
+            perEventRate, perEventMeanMs, perEventMaxMs);
+        System.out.printf("batched confirms:   %.0f events/s, lag mean %.1f ms, max %.1f ms%n",
+            batchedRate, batchedLag.mean(TimeUnit.MILLISECONDS), batchedLag.max(TimeUnit.MILLISECONDS));
+
+        assertThat(published).hasSize(2 * events);
+        assertThat(batchedRate).isGreaterThan(perEventRate);
+    }
+
+    // Helper methods
+
+    private void stage(int events) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < events; i++) {
+                publisher.publishShipmentStatusUpdateEvent((long) i, "CREATED", "TRUCK_DISPATCHED", "corr-" + i);
+            }
+        });
+    }
+
+    /**
+     * Stage events, relay them all with the given batch size and return events per second
+     */
+    private double drain(int events, int batchSize) {
+        stage(events);
+        ReflectionTestUtils.setField(relay, "batchSize", batchSize);
+        long start = System.nanoTime();
+        while (relay.relayBatch() > 0) {
+            // drain
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        assertThat(relay.getPendingCount()).isZero();
+        return events / seconds;
+    }
+
+    private Timer lagTimer() {
+        return meterRegistry.get("ups.outbox.relay.lag").timer();
+    }
+}
@@ -0,0 +1,361 @@
+package com.miniups.service;
+
+import com.miniups.model.entity.Truck;
+import com.miniups.model.enums.TruckStatus;
+import com.miniups.repository.TruckRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for RegionalDispatchService.
+ * Tests region routing, handoff between dispatchers, single ownership under concurrency
+ * and throughput as the number of regions grows.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("RegionalDispatchService Unit Tests")
+class RegionalDispatchServiceTest {
+
+    @Mock
+    private TruckRepository truckRepository;
+
+    private final RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate(0);
+
+    private RegionalDispatchService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.stop();
+        }
+    }
+
+    private RegionalDispatchService start(int rows, int cols, JdbcTemplate jdbc) {
+        RegionalDispatchService started = new RegionalDispatchService(truckRepository, jdbc, null);
+        ReflectionTestUtils.setField(started, "enabled", true);
+        ReflectionTestUtils.setField(started, "rows", rows);
+        ReflectionTestUtils.setField(started, "cols", cols);
+        ReflectionTestUtils.setField(started, "gridSize", 200);
+        started.start();
+        return started;
+    }
+
+    @Test
+    @DisplayName("Should map positions to regions and clamp outside the grid")
+    void testRegionOf() {
+        service = start(2, 2, jdbcTemplate);
+
+        assertThat(service.getRegionCount()).isEqualTo(4);
+        assertThat(service.regionOf(10, 10)).isZero();
+        assertThat(service.regionOf(150, 10)).isEqualTo(1);
+        assertThat(service.regionOf(10, 150)).isEqualTo(2);
+        assertThat(service.regionOf(150, 150)).isEqualTo(3);
+        assertThat(service.regionOf(-5, 500)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should assign the nearest truck of the home region and persist it")
+    void testAssign_NearestInHomeRegion() throws Exception {
+        // Given
+        service = start(2, 2, jdbcTemplate);
+        service.release(createTruck(1L, 20, 20));
+        service.release(createTruck(2L, 60, 60));
+        service.release(createTruck(3L, 110, 20));
+        settle();
+
+        // When
+        TruckReservationTable.Reservation reservation = service.assign(55, 50).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(reservation.getTruckDbId()).isEqualTo(2L);
+        assertThat(reservation.getPersisted().get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(jdbcTemplate.persistedIds).containsExactly(2L);
+        assertThat(service.getStatistics()).containsEntry("handoffs", 0L);
+    }
+
+    @Test
+    @DisplayName("Should hand off a neighbour's truck when the home region has none idle")
+    void testAssign_HandoffFromNeighbour() throws Exception {
+        // Given - only truck is in region 3
+        service = start(2, 2, jdbcTemplate);
+        service.release(createTruck(7L, 150, 150));
+        settle();
+
+        // When
+        TruckReservationTable.Reservation reservation = service.assign(10, 10).get(5, TimeUnit.SECONDS);
+        TruckReservationTable.Reservation none = service.assign(150, 150).get(5, TimeUnit.SECONDS);
+
+        // Then - ownership moved to region 0, region 3 has nothing left
+        assertThat(reservation.getTruckDbId()).isEqualTo(7L);
+        assertThat(none).isNull();
+        Map<String, Object> stats = service.getStatistics();
+        assertThat(stats).containsEntry("handoffs", 1L).containsEntry("misses", 1L);
+        assertThat(ownedBy(stats, 0)).isEqualTo(1);
+        assertThat(ownedBy(stats, 3)).isZero();
+    }
+
+    @Test
+    @DisplayName("Should hand a released truck to the region it ends up in")
+    void testRelease_MovesOwnership() throws Exception {
+        // Given
+        service = start(1, 2, jdbcTemplate);
+        Truck truck = createTruck(5L, 10, 10);
+        service.release(truck);
+        settle();
+        service.assign(10, 10).get(5, TimeUnit.SECONDS);
+
+        // When - delivery ends in the other half of the grid
+        truck.setCurrentX(180);
+        truck.setVersion(2L);
+        service.release(truck);
+        settle();
+
+        // Then
+        Map<String, Object> stats = service.getStatistics();
+        assertThat(ownedBy(stats, 0)).isZero();
+        assertThat(ownedBy(stats, 1)).isEqualTo(1);
+        assertThat(service.assign(190, 10).get(5, TimeUnit.SECONDS).getTruckDbId()).isEqualTo(5L);
+        assertThat(service.getStatistics()).containsEntry("handoffs", 1L);
+    }
+
+    @Test
+    @DisplayName("Should ignore a stale database snapshot of a truck it already assigned")
+    void testRefresh_StaleSnapshotIgnored() throws Exception {
+        // Given - truck 9 assigned and persisted at version 1
+        service = start(2, 2, jdbcTemplate);
+        service.release(createTruck(9L, 30, 30));
+        settle();
+        TruckReservationTable.Reservation reservation = service.assign(30, 30).get(5, TimeUnit.SECONDS);
+        reservation.getPersisted().get(5, TimeUnit.SECONDS);
+
+        // When - the refresh read the row before our write landed
+        when(truckRepository.findByStatus(TruckStatus.IDLE)).thenReturn(List.of(createTruck(9L, 30, 30)));
+        service.refresh();
+        settle();
+
+        // Then
+        assertThat(service.assign(30, 30).get(5, TimeUnit.SECONDS)).isNull();
+    }
+
+    @Test
+    @DisplayName("Should give back a truck assigned after the blocking caller timed out")
+    void testAssignNearest_TimeoutReleasesLateTruck() throws Exception {
+        // Given - the dispatcher is stuck writing the first assignment
+        service = start(1, 1, jdbcTemplate);
+        ReflectionTestUtils.setField(service, "assignTimeoutMs", 100L);
+        service.release(createTruck(1L, 10, 10));
+        service.release(createTruck(2L, 20, 20));
+        settle();
+        CountDownLatch gate = new CountDownLatch(1);
+        jdbcTemplate.gate = gate;
+        service.assign(10, 10).get(5, TimeUnit.SECONDS);
+
+        // When
+        TruckReservationTable.Reservation late = service.assignNearest(20, 20);
+        gate.countDown();
+        settle();
+        settle();
+
+        // Then - truck 2 was written EN_ROUTE and back to IDLE, and can be assigned again
+        assertThat(late).isNull();
+        assertThat(jdbcTemplate.persistedIds).containsExactly(1L, 2L);
+        assertThat(jdbcTemplate.idledIds).containsExactly(2L);
+        assertThat(service.getStatistics()).containsEntry("abandoned", 1L);
+        assertThat(service.assign(20, 20).get(5, TimeUnit.SECONDS).getTruckDbId()).isEqualTo(2L);
+    }
+
+    @Test
+    @DisplayName("Should never hand the same truck to two callers")
+    void testConcurrentAssign_SingleOwnership() throws Exception {
+        // Given
+        service = start(2, 2, jdbcTemplate);
+        Random random = new Random(1);
+        for (long id = 1; id <= 200; id++) {
+            service.release(createTruck(id, random.nextInt(200), random.nextInt(200)));
+        }
+        settle();
+
+        // When - 16 threads ask for 400 trucks at random pickups
+        ExecutorService clients = Executors.newFixedThreadPool(16);
+        List<Future<TruckReservationTable.Reservation>> results = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            int x = random.nextInt(200);
+            int y = random.nextInt(200);
+            results.add(clients.submit(() -> service.assignNearest(x, y)));
+        }
+        Set<Long> assigned = new HashSet<>();
+        int granted = 0;
+        for (Future<TruckReservationTable.Reservation> result : results) {
+            TruckReservationTable.Reservation reservation = result.get(10, TimeUnit.SECONDS);
+            if (reservation != null) {
+                granted++;
+                assigned.add(reservation.getTruckDbId());
+            }
+        }
+        clients.shutdown();
+
+        // Then
+        assertThat(granted).isEqualTo(200);
+        assertThat(assigned).hasSize(200);
+    }
+
+    @Test
+    @DisplayName("Benchmark: assignment throughput as the region count grows")
+    void benchmarkRegionScaling() throws Exception {
+        int[][] layouts = {{1, 1}, {1, 2}, {2, 2}, {2, 4}, {4, 4}};
+        int trucks = 4000;
+        int clientThreads = 8;
+        int perClient = 5000;
+        Map<Integer, Double> throughput = new LinkedHashMap<>();
+
+        for (int[] layout : layouts) {
+            // 100 microseconds per JDBC batch stands in for the database round trip
+            RegionalDispatchService dispatcher = start(layout[0], layout[1], new RecordingJdbcTemplate(100_000));
+            try {
+                Random random = new Random(42);
+                for (long id = 1; id <= trucks; id++) {
+                    dispatcher.release(createTruck(id, random.nextInt(200), random.nextInt(200)));
+                }
+                dispatcher.getStatistics();
+                dispatcher.getStatistics();
+
+                ExecutorService clients = Executors.newFixedThreadPool(clientThreads);
+                AtomicInteger failures = new AtomicInteger();
+                long start = System.nanoTime();
+                List<Future<?>> done = new ArrayList<>();
+                for (int c = 0; c < clientThreads; c++) {
+                    int seed = c;
+                    done.add(clients.submit(() -> {
+                        Random local = new Random(seed);
+                        for (int i = 0; i < perClient; i++) {
+                            int x = local.nextInt(200);
+                            int y = local.nextInt(200);
+                            TruckReservationTable.Reservation reservation = dispatcher.assignNearest(x, y);
+                            if (reservation == null) {
+                                failures.incrementAndGet();
+                                continue;
+                            }
+                            // Delivery ends near the pickup; some trucks cross into the next region
+                            Truck truck = reservation.toTruck();
+                            truck.setCurrentX(Math.floorMod(x + local.nextInt(21) - 10, 200));
+                            truck.setCurrentY(Math.floorMod(y + local.nextInt(21) - 10, 200));
+                            truck.setVersion(reservation.toTruck().getVersion() + 2);
+                            dispatcher.release(truck);
+                        }
+                    }));
+                }
+                for (Future<?> future : done) {
+                    future.get(5, TimeUnit.MINUTES);
+                }
+                long elapsed = System.nanoTime() - start;
+                clients.shutdown();
+
+                int regions = layout[0] * layout[1];
+                double opsPerSecond = clientThreads * (double) perClient / (elapsed / 1e9);
+                throughput.put(regions, opsPerSecond);
+                System.out.printf("regions=%2d  assignments/s=%10.0f  handoffs=%6d  misses=%d%n", regions,
+                    opsPerSecond, dispatcher.getStatistics().get("handoffs"), failures.get());
+            } finally {
+                dispatcher.stop();
+            }
+        }
+
+        assertThat(throughput.get(16)).isGreaterThan(throughput.get(1));
+    }
+
+    // Helper methods
+
+    private void settle() {
+        // Two round trips through every dispatcher cover one handoff hop
+        service.getStatistics();
+        service.getStatistics();
+    }
+
+    @SuppressWarnings("unchecked")
+    private int ownedBy(Map<String, Object> stats, int region) {
+        List<Map<String, Object>> perRegion = (List<Map<String, Object>>) stats.get("per_region");
+        return (Integer) perRegion.get(region).get("owned_trucks");
+    }
+
+    private Truck createTruck(Long id, int x, int y) {
+        Truck truck = new Truck();
+        truck.setId(id);
+        truck.setTruckId(id.intValue());
+        truck.setCurrentX(x);
+        truck.setCurrentY(y);
+        truck.setStatus(TruckStatus.IDLE);
+        truck.setVersion(0L);
+        return truck;
+    }
+
+    /**
+     * JDBC stand-in that accepts every conditional update and records the truck ids written
+     */
+    private static class RecordingJdbcTemplate extends JdbcTemplate {
+        final List<Long> persistedIds = Collections.synchronizedList(new ArrayList<>());
+        final List<Long> idledIds = Collections.synchronizedList(new ArrayList<>());
+        volatile CountDownLatch gate;
+        private final long latencyNanos;
+
+        RecordingJdbcTemplate(long latencyNanos) {
+            this.latencyNanos = latencyNanos;
+        }
+
+        @Override
+        public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                       ParameterizedPreparedStatementSetter<T> pss) {
+            long[] id = new long[1];
+            PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("setLong") && (Integer) args[0] == 2) {
+                        id[0] = (Long) args[1];
+                    }
+                    return null;
+                });
+            int[] updated = new int[batchArgs.size()];
+            int i = 0;
+            for (T arg : batchArgs) {
+                try {
+                    pss.setValues(statement, arg);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                persistedIds.add(id[0]);
+                updated[i++] = 1;
+            }
+            if (latencyNanos > 0) {
+                LockSupport.parkNanos(latencyNanos);
+            }
+            if (gate != null) {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new int[][]{updated};
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            idledIds.add((Long) args[1]);
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.miniups.service;
+
+import com.miniups.config.TestConfig;
+import com.miniups.model.dto.AmazonMessageDto;
+import com.miniups.model.dto.ShipmentCreatedMessage;
+import com.miniups.model.dto.UpsResponseDto;
+import com.miniups.model.entity.Shipment;
+import com.miniups.model.entity.Truck;
+import com.miniups.model.entity.User;
+import com.miniups.model.enums.TruckStatus;
+import com.miniups.repository.ShipmentRepository;
+import com.miniups.repository.TruckRepository;
+import com.miniups.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Integration tests for ShipmentBatchService against the H2 test database.
+ * Tests per-item results, de-duplication, user resolution, bulk truck claims
+ * and throughput compared with the single-shipment path.
+ */
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.NONE,
+    properties = {
+        "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.amqp.RabbitAutoConfiguration",
+        "amazon.base-url=http://localhost:1"
+    }
+)
+@ActiveProfiles("test")
+@Import(TestConfig.class)
+@DisplayName("ShipmentBatchService Integration Tests")
+class ShipmentBatchServiceTest {
+
+    @Autowired
+    private ShipmentBatchService batchService;
+
+    @Autowired
+    private ShipmentRepository shipmentRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TruckRepository truckRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AutowireCapableBeanFactory beanFactory;
+
+    @Autowired
+    private TruckRebalancingService rebalancingService;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM shipment_status_history");
+        jdbcTemplate.update("DELETE FROM packages");
+        jdbcTemplate.update("DELETE FROM address_changes");
+        jdbcTemplate.update("DELETE FROM truck_location_history");
+        jdbcTemplate.update("DELETE FROM shipments");
+        jdbcTemplate.update("DELETE FROM trucks");
+        jdbcTemplate.update("DELETE FROM users WHERE email LIKE '%@batch.test'");
+    }
+
+    @Test
+    @DisplayName("Should create a batch and report every item in request order")
+    void testIngest_PerItemResults() {
+        // Given - one existing user, one existing shipment, 5 idle trucks
+        createTrucks(5, 100);
+        User existingUser = createUser("known@batch.test");
+        batchService.ingest(List.of(dto("900", "known@batch.test", 1L, 10)), false);
+
+        List<ShipmentCreatedMessage> items = new ArrayList<>();
+        items.add(dto("1", "known@batch.test", 1L, 10));   // created, existing user
+        items.add(dto("2", "new@batch.test", 1L, 10));     // created, new user
+        items.add(dto("1", "known@batch.test", 1L, 10));   // duplicate in batch
+        items.add(dto("900", "known@batch.test", 1L, 10)); // already exists
+        items.add(null);                                    // not a JSON object
+        items.add(dto("3", null, 1L, 10));                 // missing email
+        items.add(dto("4", "new@batch.test", 2L, 10));     // created, same new user
+
+        // When
+        ShipmentBatchService.BatchResult result = batchService.ingest(items, false);
+
+        // Then
+        List<ShipmentBatchService.ItemResult> results = result.getItems();
+        assertThat(results).hasSize(7);
+        assertThat(results).extracting(ShipmentBatchService.ItemResult::getCode)
+            .isEqualTo(List.of(200, 200, 1002, 1002, 1001, 1001, 200));
+        assertThat(result.getCreatedCount()).isEqualTo(3);
+
+        Shipment first = shipmentRepository.findByShipmentId("1").orElseThrow();
+        assertThat(first.getUser().getId()).isEqualTo(existingUser.getId());
+        assertThat(first.getUpsTrackingId()).isEqualTo(results.get(0).getTrackingNumber());
+        List<User> newUsers = userRepository.findByEmailIn(List.of("new@batch.test"));
+        assertThat(newUsers).hasSize(1);
+        assertThat(shipmentRepository.findByShipmentId("4").orElseThrow().getUser().getId())
+            .isEqualTo(newUsers.get(0).getId());
+
+        // One truck per shipment without load packing
+        assertThat(truckRepository.countByStatus(TruckStatus.EN_ROUTE)).isEqualTo(4);
+        assertThat(result.getDispatches()).hasSize(3);
+        assertThat(results.stream().filter(ShipmentBatchService.ItemResult::isCreated)
+            .map(ShipmentBatchService.ItemResult::getTrackingNumber).distinct()).hasSize(3);
+    }
+
+    @Test
+    @DisplayName("Should pack shipments of one warehouse onto shared trucks up to capacity")
+    void testIngest_PacksByWarehouse() {
+        // Given - trucks of capacity 30
+        createTrucks(10, 30);
+        List<ShipmentCreatedMessage> items = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            items.add(dto(String.valueOf(100 + i), "packer@batch.test", 1L, 10)); // 70 units at warehouse 1
+        }
+        items.add(dto("200", "packer@batch.test", 2L, 10));                        // 10 units at warehouse 2
+
+        // When
+        ShipmentBatchService.BatchResult result = batchService.ingest(items, true);
+
+        // Then - 3 trucks for warehouse 1 (30 + 30 + 10), one for warehouse 2
+        assertThat(result.getCreatedCount()).isEqualTo(8);
+        assertThat(result.getDispatches()).hasSize(4);
+        assertThat(result.getDispatches()).extracting(d -> d.getShipments().size())
+            .isEqualTo(List.of(3, 3, 1, 1));
+        assertThat(truckRepository.countByStatus(TruckStatus.EN_ROUTE)).isEqualTo(4);
+        Truck full = truckRepository.findById(result.getDispatches().get(0).getTruck().getId()).orElseThrow();
+        assertThat(full.getCurrentLoad()).isEqualTo(30.0);
+    }
+
+    @Test
+    @DisplayName("Should create what fits and reject the rest when the fleet runs out")
+    void testIngest_FleetExhausted() {
+        // Given
+        createTrucks(3, 100);
+        List<ShipmentCreatedMessage> items = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            items.add(dto(String.valueOf(300 + i), "busy@batch.test", 1L, 10));
+        }
+
+        // When
+        ShipmentBatchService.BatchResult result = batchService.ingest(items, false);
+
+        // Then
+        assertThat(result.getItems()).extracting(ShipmentBatchService.ItemResult::getCode)
+            .isEqualTo(List.of(200, 200, 200, 2001, 2001));
+        assertThat(shipmentRepository.findExistingShipmentIds(List.of("303", "304"))).isEmpty();
+        assertThat(truckRepository.countByStatus(TruckStatus.IDLE)).isZero();
+    }
+
+    @Test
+    @DisplayName("Should claim the trucks nearest to each warehouse once its location is known")
+    void testIngest_ClaimsNearestTrucks() {
+        // Given - trucks along the diagonal, warehouse 1 at (40, 40), warehouse 2 not located yet
+        createTrucks(60, 100);
+        ReflectionTestUtils.setField(rebalancingService, "enabled", true);
+        rebalancingService.recordWarehouseLocation("1", 40, 40);
+        List<ShipmentCreatedMessage> items = List.of(
+            dto("400", "near@batch.test", 1L, 10),
+            dto("401", "near@batch.test", 1L, 10),
+            dto("402", "near@batch.test", 2L, 10));
+
+        // When
+        ShipmentBatchService.BatchResult result;
+        try {
+            result = batchService.ingest(items, false);
+        } finally {
+            ReflectionTestUtils.setField(rebalancingService, "enabled", false);
+        }
+
+        // Then - nearest first (ties by id) for warehouse 1, lowest id for warehouse 2
+        assertThat(result.getItems()).extracting(ShipmentBatchService.ItemResult::getTruckId)
+            .isEqualTo(List.of(40, 39, 1));
+    }
+
+    @Test
+    @DisplayName("Benchmark: batch endpoint vs one request per shipment")
+    void benchmarkBatchVsSingle() {
+        int shipments = 200;
+        createTrucks(2 * shipments + 10, 100);
+        // Fresh instance: the test context replaces the bean with a mock
+        AmazonIntegrationService integrationService = beanFactory.createBean(AmazonIntegrationService.class);
+
+        // Warm up both paths
+        integrationService.handleShipmentCreated(message(payload("1", "warm@batch.test")));
+        integrationService.handleShipmentBatch(List.of(dto("2", "warm@batch.test", 1L, 10)));
+
+        // One call per shipment
+        long start = System.nanoTime();
+        int singleCreated = 0;
+        for (int i = 0; i < shipments; i++) {
+            UpsResponseDto response = integrationService.handleShipmentCreated(
+                message(payload(String.valueOf(10_000 + i), "single" + (i % 50) + "@batch.test")));
+            if (!response.isError()) {
+                singleCreated++;
+            }
+        }
+        double singleSeconds = (System.nanoTime() - start) / 1e9;
+
+        // One call for the whole batch
+        List<ShipmentCreatedMessage> batch = new ArrayList<>();
+        for (int i = 0; i < shipments; i++) {
+            batch.add(dto(String.valueOf(20_000 + i), "batch" + (i % 50) + "@batch.test", 1L, 10));
+        }
+        start = System.nanoTime();
+        UpsResponseDto response = integrationService.handleShipmentBatch(batch);
+        double batchSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("single: %d shipments in %.3f s (%.0f/s)%n", singleCreated, singleSeconds,
+            singleCreated / singleSeconds);
+        System.out.printf("batch:  %s shipments in %.3f s (%.0f/s)%n", response.getPayload().get("created"),
+            batchSeconds, shipments / batchSeconds);
+
+        assertThat(singleCreated).isEqualTo(shipments);
+        assertThat(response.getPayload()).containsEntry("created", shipments);
+        assertThat(batchSeconds).isLessThan(singleSeconds);
+    }
+
+    // Helper methods
+
+    private void createTrucks(int count, int capacity) {
+        List<Truck> trucks = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Truck truck = new Truck(i, capacity);
+            truck.setStatus(TruckStatus.IDLE);
+            truck.setCurrentX(i % 100);
+            truck.setCurrentY(i % 100);
+            trucks.add(truck);
+        }
+        truckRepository.saveAll(trucks);
+    }
+
+    private User createUser(String email) {
+        User user = new User();
+        user.setUsername(email.substring(0, email.indexOf('@')) + "_batch");
+        user.setEmail(email);
+        user.setPassword("password");
+        return userRepository.save(user);
+    }
+
+    private ShipmentCreatedMessage dto(String shipmentId, String email, Long warehouseId, int weight) {
+        return ShipmentCreatedMessage.builder()
+            .shipmentId(shipmentId)
+            .email(email)
+            .userId((long) Math.abs(Objects.hashCode(email)))
+            .warehouseId(warehouseId)
+            .destinationX(50)
+            .destinationY(50)
+            .weight(BigDecimal.valueOf(weight))
+            .build();
+    }
+
+    private Map<String, Object> payload(String shipmentId, String email) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("shipment_id", shipmentId);
+        payload.put("email", email);
+        payload.put("user_id", Math.abs(email.hashCode()));
+        payload.put("warehouse_id", 1);
+        payload.put("destination_x", 50);
+        payload.put("destination_y", 50);
+        return payload;
+    }
+
+    private AmazonMessageDto message(Map<String, Object> payload) {
+        AmazonMessageDto message = new AmazonMessageDto();
+        message.setMessageType("ShipmentCreated");
+        message.setPayload(payload);
+        return message;
+    }
+}
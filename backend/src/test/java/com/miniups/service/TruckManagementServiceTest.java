@@ -22,6 +22,8 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -414,6 +416,64 @@ class TruckManagementServiceTest {
         verify(worldSimulatorService).getWorldId();
     }
 
+    @Test
+    @DisplayName("Should move a shipment to another truck when its reservation is revoked")
+    void testTrackAssignment_RevokedReservationMovesShipment() throws Exception {
+        // Given - a saved shipment holding a reserved truck that reconciliation then revokes
+        CompletableFuture<Boolean> persisted = new CompletableFuture<>();
+        testShipment.setTruck(new TruckReservationTable.Reservation(9L, 9, 10, 20, 0L, persisted).toTruck());
+        testShipment.setStatus(ShipmentStatus.TRUCK_DISPATCHED);
+        when(shipmentRepository.findById(1L)).thenReturn(Optional.of(testShipment));
+        when(shipmentRepository.save(testShipment)).thenReturn(testShipment);
+        when(truckRepository.findNearestAvailableTruckForAssignment(12, 22)).thenReturn(Optional.of(testTruck1));
+        when(truckRepository.save(testTruck1)).thenReturn(testTruck1);
+        CompletableFuture<Shipment> reassigned = new CompletableFuture<>();
+
+        // When
+        truckManagementService.trackAssignment(testShipment, reassigned::complete);
+        persisted.complete(false);
+
+        // Then
+        Shipment moved = reassigned.get(5, TimeUnit.SECONDS);
+        assertThat(moved.getTruck()).isSameAs(testTruck1);
+        assertThat(moved.getStatus()).isEqualTo(ShipmentStatus.TRUCK_DISPATCHED);
+        assertThat(testTruck1.getStatus()).isEqualTo(TruckStatus.EN_ROUTE);
+    }
+
+    @Test
+    @DisplayName("Should clear a revoked truck back to CREATED when no other truck is free")
+    void testTrackAssignment_RevokedWithoutReplacementCleared() {
+        // Given
+        testShipment.setTruck(new TruckReservationTable.Reservation(9L, 9, 10, 20, 0L,
+            CompletableFuture.completedFuture(false)).toTruck());
+        testShipment.setStatus(ShipmentStatus.TRUCK_DISPATCHED);
+        when(shipmentRepository.findById(1L)).thenReturn(Optional.of(testShipment));
+        when(truckRepository.findNearestAvailableTruckForAssignment(12, 22)).thenReturn(Optional.empty());
+        when(truckRepository.findIdleForUpdateSkipLocked()).thenReturn(List.of());
+
+        // When
+        truckManagementService.trackAssignment(testShipment);
+
+        // Then
+        verify(shipmentRepository, timeout(5000)).save(testShipment);
+        assertThat(testShipment.getTruck()).isNull();
+        assertThat(testShipment.getStatus()).isEqualTo(ShipmentStatus.CREATED);
+    }
+
+    @Test
+    @DisplayName("Should leave a shipment alone once its reservation is persisted")
+    void testTrackAssignment_PersistedReservationKept() {
+        // Given
+        testShipment.setTruck(new TruckReservationTable.Reservation(9L, 9, 10, 20, 0L,
+            CompletableFuture.completedFuture(true)).toTruck());
+
+        // When
+        truckManagementService.trackAssignment(testShipment);
+
+        // Then
+        verifyNoInteractions(shipmentRepository);
+    }
+
     /**
      * Helper method to create test truck.
      */
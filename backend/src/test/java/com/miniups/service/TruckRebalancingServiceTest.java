@@ -0,0 +1,311 @@
+package com.miniups.service;
+
+import com.miniups.model.entity.Truck;
+import com.miniups.model.enums.TruckStatus;
+import com.miniups.repository.TruckRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for TruckRebalancingService.
+ * Tests demand tracking, move planning limits and pickup latency against a simple world stand-in.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TruckRebalancingService Unit Tests")
+class TruckRebalancingServiceTest {
+
+    @Mock
+    private TruckRepository truckRepository;
+
+    @Mock
+    private WorldSimulatorService worldSimulatorService;
+
+    private TruckRebalancingService rebalancingService;
+
+    @BeforeEach
+    void setUp() {
+        rebalancingService = new TruckRebalancingService(truckRepository, null);
+        ReflectionTestUtils.setField(rebalancingService, "worldSimulatorService", worldSimulatorService);
+        ReflectionTestUtils.setField(rebalancingService, "enabled", true);
+    }
+
+    @Test
+    @DisplayName("Should track a decaying per-warehouse demand rate")
+    void testDemandRate_Decays() {
+        // Given - 10 shipments in one burst, half-life is 300s
+        for (int i = 0; i < 10; i++) {
+            rebalancingService.recordDemand("1", 0L);
+        }
+
+        // When
+        double initial = rebalancingService.getDemandPerMinute("1", 0L);
+        double afterHalfLife = rebalancingService.getDemandPerMinute("1", 300_000L);
+
+        // Then
+        assertThat(initial).isGreaterThan(0.0);
+        assertThat(afterHalfLife).isCloseTo(initial / 2, within(1e-9));
+        assertThat(rebalancingService.getDemandPerMinute("2", 0L)).isZero();
+    }
+
+    @Test
+    @DisplayName("Should send the nearest idle trucks to the busiest warehouse within limits")
+    void testPlanMoves_NearestTrucksToBusiestWarehouse() {
+        // Given
+        ReflectionTestUtils.setField(rebalancingService, "maxMovesPerCycle", 2);
+        rebalancingService.recordWarehouseLocation("1", 10, 10);
+        rebalancingService.recordWarehouseLocation("2", 90, 90);
+        for (int i = 0; i < 20; i++) {
+            rebalancingService.recordDemand("1", 0L);
+        }
+        for (int i = 0; i < 5; i++) {
+            rebalancingService.recordDemand("2", 0L);
+        }
+        List<Truck> idle = List.of(createTruck(1, 50, 50), createTruck(2, 15, 15), createTruck(3, 20, 12),
+                                   createTruck(4, 85, 85));
+
+        // When
+        List<TruckRebalancingService.Move> moves = rebalancingService.planMoves(idle, 0L);
+
+        // Then - busiest warehouse first, capped at two moves
+        assertThat(moves).extracting(TruckRebalancingService.Move::getTruckId).containsExactly(2, 3);
+        assertThat(moves).extracting(TruckRebalancingService.Move::getWarehouseId).containsOnly("1");
+    }
+
+    @Test
+    @DisplayName("Should not pull a truck away from a warehouse that still needs it")
+    void testPlanMoves_KeepsTrucksCoveringDemand() {
+        // Given - truck 1 already parked at warehouse 2 which has demand of its own
+        ReflectionTestUtils.setField(rebalancingService, "maxTrucksPerWarehouse", 1);
+        rebalancingService.recordWarehouseLocation("1", 10, 10);
+        rebalancingService.recordWarehouseLocation("2", 12, 12);
+        for (int i = 0; i < 10; i++) {
+            rebalancingService.recordDemand("1", 0L);
+            rebalancingService.recordDemand("2", 0L);
+        }
+        List<Truck> idle = List.of(createTruck(1, 12, 12), createTruck(2, 60, 60));
+
+        // When
+        List<TruckRebalancingService.Move> moves = rebalancingService.planMoves(idle, 0L);
+
+        // Then
+        assertThat(moves).hasSize(1);
+        assertThat(moves.get(0).getTruckId()).isEqualTo(2);
+        assertThat(moves.get(0).getWarehouseId()).isEqualTo("1");
+    }
+
+    @Test
+    @DisplayName("Should ignore warehouses with unknown location or low demand")
+    void testPlanMoves_NoMovesWithoutLocationOrDemand() {
+        // Given
+        rebalancingService.recordWarehouseLocation("2", 10, 10);
+        for (int i = 0; i < 10; i++) {
+            rebalancingService.recordDemand("1", 0L);
+        }
+
+        // When / Then
+        assertThat(rebalancingService.planMoves(List.of(createTruck(1, 50, 50)), 0L)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should hand a repositioned truck back only if it is still idle")
+    void testOnTruckArrived_OnlyIdleRepositionedTrucks() {
+        // Given
+        Truck moved = createTruck(1, 50, 50);
+        Truck assigned = createTruck(2, 60, 60);
+        rebalancingService.recordWarehouseLocation("1", 10, 10);
+        for (int i = 0; i < 10; i++) {
+            rebalancingService.recordDemand("1");
+        }
+        when(worldSimulatorService.isConnected()).thenReturn(true);
+        when(truckRepository.findByStatus(TruckStatus.IDLE)).thenReturn(List.of(moved, assigned));
+        when(worldSimulatorService.sendTruckToPickup(anyInt(), eq(1))).thenReturn(CompletableFuture.completedFuture(true));
+
+        // When
+        rebalancingService.scheduledRebalance();
+        assigned.setStatus(TruckStatus.EN_ROUTE);
+
+        // Then
+        assertThat(rebalancingService.onTruckArrived(moved, 10, 10)).isTrue();
+        assertThat(rebalancingService.onTruckArrived(assigned, 10, 10)).isFalse();
+        assertThat(rebalancingService.onTruckArrived(moved, 10, 10)).isFalse();
+        assertThat(rebalancingService.getStatistics()).containsEntry("moves_completed", 1L);
+    }
+
+    @Test
+    @DisplayName("Should reduce mean pickup latency against the world stand-in")
+    void testPickupLatency_Reduction() {
+        // Given
+        double baseline = new WorldStandIn(null).run();
+
+        WorldStandIn world = new WorldStandIn(rebalancingService);
+        when(truckRepository.findByStatus(TruckStatus.IDLE)).thenAnswer(inv -> world.idleTrucks());
+        when(worldSimulatorService.sendTruckToPickup(anyInt(), anyInt())).thenAnswer(inv -> {
+            world.reposition(inv.getArgument(0), inv.getArgument(1));
+            return CompletableFuture.completedFuture(true);
+        });
+
+        // When
+        double rebalanced = world.run();
+
+        // Then
+        System.out.printf("Mean pickup latency: %.2f ticks without rebalancing, %.2f with rebalancing (%.1f%% lower)%n",
+            baseline, rebalanced, (baseline - rebalanced) * 100.0 / baseline);
+        System.out.println("Rebalancer statistics: " + rebalancingService.getStatistics());
+        assertThat((Long) rebalancingService.getStatistics().get("moves_issued")).isPositive();
+        assertThat(rebalanced).isLessThan(baseline);
+    }
+
+    private Truck createTruck(int truckId, int x, int y) {
+        Truck truck = new Truck();
+        truck.setId((long) truckId);
+        truck.setTruckId(truckId);
+        truck.setCurrentX(x);
+        truck.setCurrentY(y);
+        truck.setStatus(TruckStatus.IDLE);
+        return truck;
+    }
+
+    /**
+     * Minimal world stand-in: trucks move one cell per tick on a 100x100 grid,
+     * shipments arrive at skewed warehouses and take the nearest idle truck
+     */
+    private class WorldStandIn {
+        private static final int TICKS = 3000;
+        private static final int REBALANCE_EVERY = 10;
+        private final int[][] warehouses = {{10, 10}, {85, 80}, {50, 95}};
+        private final double[] demandShare = {0.7, 0.2, 0.1};
+
+        private final TruckRebalancingService rebalancer;
+        private final Random random = new Random(42);
+        private final List<Truck> trucks = new ArrayList<>();
+        private final Map<Integer, int[]> targets = new HashMap<>();
+        private final Map<Integer, Integer> busyUntil = new HashMap<>();
+        private final Map<Integer, int[]> dropOff = new HashMap<>();
+        private final Deque<int[]> waiting = new ArrayDeque<>();
+
+        WorldStandIn(TruckRebalancingService rebalancer) {
+            this.rebalancer = rebalancer;
+            for (int i = 1; i <= 15; i++) {
+                trucks.add(createTruck(i, random.nextInt(100), random.nextInt(100)));
+            }
+            if (rebalancer != null) {
+                for (int w = 0; w < warehouses.length; w++) {
+                    rebalancer.recordWarehouseLocation(String.valueOf(w + 1), warehouses[w][0], warehouses[w][1]);
+                }
+            }
+        }
+
+        List<Truck> idleTrucks() {
+            return trucks.stream().filter(t -> t.getStatus() == TruckStatus.IDLE).toList();
+        }
+
+        void reposition(int truckId, int warehouseId) {
+            targets.put(truckId, warehouses[warehouseId - 1]);
+        }
+
+        double run() {
+            long totalLatency = 0;
+            int pickups = 0;
+
+            for (int tick = 0; tick < TICKS; tick++) {
+                long nowMillis = tick * 1000L;
+                finishDeliveries(tick);
+                moveRepositioningTrucks();
+
+                if (random.nextDouble() < 0.1) {
+                    int warehouse = pickWarehouse();
+                    waiting.add(new int[]{warehouse, tick});
+                    if (rebalancer != null) {
+                        rebalancer.recordDemand(String.valueOf(warehouse + 1), nowMillis);
+                    }
+                }
+
+                while (!waiting.isEmpty()) {
+                    int[] shipment = waiting.peek();
+                    Truck truck = nearestIdle(warehouses[shipment[0]]);
+                    if (truck == null) {
+                        break;
+                    }
+                    waiting.poll();
+                    int drive = distance(truck, warehouses[shipment[0]]);
+                    totalLatency += (tick - shipment[1]) + drive;
+                    pickups++;
+
+                    truck.setStatus(TruckStatus.EN_ROUTE);
+                    targets.remove(truck.getTruckId());
+                    busyUntil.put(truck.getTruckId(), tick + drive + 20 + random.nextInt(40));
+                    dropOff.put(truck.getTruckId(), new int[]{random.nextInt(100), random.nextInt(100)});
+                }
+
+                if (rebalancer != null && tick % REBALANCE_EVERY == 0) {
+                    rebalancer.rebalance(nowMillis);
+                }
+            }
+            return (double) totalLatency / pickups;
+        }
+
+        private void finishDeliveries(int tick) {
+            for (Truck truck : trucks) {
+                Integer until = busyUntil.get(truck.getTruckId());
+                if (until != null && until <= tick) {
+                    int[] at = dropOff.remove(truck.getTruckId());
+                    truck.setCurrentX(at[0]);
+                    truck.setCurrentY(at[1]);
+                    truck.setStatus(TruckStatus.IDLE);
+                    busyUntil.remove(truck.getTruckId());
+                }
+            }
+        }
+
+        private void moveRepositioningTrucks() {
+            for (Truck truck : idleTrucks()) {
+                int[] target = targets.get(truck.getTruckId());
+                if (target == null) {
+                    continue;
+                }
+                if (truck.getCurrentX() != target[0]) {
+                    truck.setCurrentX(truck.getCurrentX() + Integer.signum(target[0] - truck.getCurrentX()));
+                } else if (truck.getCurrentY() != target[1]) {
+                    truck.setCurrentY(truck.getCurrentY() + Integer.signum(target[1] - truck.getCurrentY()));
+                }
+                if (truck.getCurrentX() == target[0] && truck.getCurrentY() == target[1]) {
+                    targets.remove(truck.getTruckId());
+                    rebalancer.onTruckArrived(truck, target[0], target[1]);
+                }
+            }
+        }
+
+        private int pickWarehouse() {
+            double r = random.nextDouble();
+            for (int w = 0; w < demandShare.length; w++) {
+                r -= demandShare[w];
+                if (r < 0) {
+                    return w;
+                }
+            }
+            return demandShare.length - 1;
+        }
+
+        private Truck nearestIdle(int[] location) {
+            return idleTrucks().stream()
+                .min(Comparator.comparingInt((Truck t) -> distance(t, location)).thenComparing(Truck::getTruckId))
+                .orElse(null);
+        }
+
+        private int distance(Truck truck, int[] location) {
+            return Math.abs(truck.getCurrentX() - location[0]) + Math.abs(truck.getCurrentY() - location[1]);
+        }
+    }
+}
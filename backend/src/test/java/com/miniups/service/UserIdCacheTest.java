@@ -0,0 +1,161 @@
+package com.miniups.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for UserIdCache.
+ * Tests hits skipping the loader, caching only after commit, invalidation on
+ * UserChangedEvent, dropping stale in-flight lookups, and the hit rate for a
+ * skewed customer mix.
+ */
+@DisplayName("UserIdCache Unit Tests")
+class UserIdCacheTest {
+
+    private UserIdCache cache;
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<String, Long> loader = email -> {
+        loads.incrementAndGet();
+        return (long) email.hashCode();
+    };
+
+    @BeforeEach
+    void setUp() {
+        cache = new UserIdCache(null);
+        cache.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("Should answer repeated lookups from the cache without calling the loader")
+    void testRepeatedLookup_LoaderCalledOnce() {
+        // When
+        Long first = cache.resolve("a@example.com", loader);
+        Long second = cache.resolve("a@example.com", loader);
+
+        // Then
+        assertThat(second).isEqualTo(first);
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(cache.getStatistics()).containsEntry("hits", 1L).containsEntry("misses", 1L);
+    }
+
+    @Test
+    @DisplayName("Should cache a lookup only once its transaction commits")
+    void testRolledBack_NotCached() {
+        // Given - a transaction that rolls back
+        TransactionSynchronizationManager.initSynchronization();
+        cache.resolve("a@example.com", loader);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        // When - a transaction that commits
+        TransactionSynchronizationManager.initSynchronization();
+        cache.resolve("a@example.com", loader);
+        assertThat(cache.getAll(List.of("a@example.com"))).isEmpty();
+        commit();
+
+        // Then
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(cache.getAll(List.of("a@example.com"))).containsKey("a@example.com");
+    }
+
+    @Test
+    @DisplayName("Should drop the old and new email when a user changes")
+    void testUserChanged_BothEmailsInvalidated() {
+        // Given
+        cache.putAll(Map.of("old@example.com", 1L, "new@example.com", 2L), cache.currentGeneration());
+
+        // When
+        cache.onUserChanged(new UserChangedEvent(this, 1L, "old@example.com", "new@example.com"));
+
+        // Then
+        assertThat(cache.getAll(List.of("old@example.com", "new@example.com"))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should not cache a lookup that raced with an invalidation")
+    void testInvalidatedDuringLookup_NotCached() {
+        // Given
+        long generation = cache.currentGeneration();
+
+        // When - the user changes between the lookup and its put
+        cache.onUserChanged(new UserChangedEvent(this, 1L, "a@example.com", "b@example.com"));
+        cache.putAll(Map.of("a@example.com", 1L), generation);
+
+        // Then
+        assertThat(cache.getAll(List.of("a@example.com"))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should always call the loader when disabled")
+    void testDisabled_AlwaysLoads() {
+        // Given
+        cache.clear();
+        ReflectionTestUtils.setField(cache, "enabled", false);
+
+        // When
+        cache.resolve("a@example.com", loader);
+        cache.resolve("a@example.com", loader);
+
+        // Then
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(cache.getAll(List.of("a@example.com"))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Benchmark hit rate and queries saved for a skewed customer mix")
+    void benchmarkHitRate() {
+        // Zipf-like mix: a few customers send most shipments
+        int customers = 5000;
+        int shipments = 50000;
+        double[] cumulative = new double[customers];
+        double total = 0;
+        for (int i = 0; i < customers; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+        Random random = new Random(42);
+
+        for (int i = 0; i < shipments; i++) {
+            double target = random.nextDouble() * total;
+            int customer = Arrays.binarySearch(cumulative, target);
+            customer = customer >= 0 ? customer : -customer - 1;
+            cache.resolve("customer" + customer + "@example.com", loader);
+        }
+
+        Map<String, Object> stats = cache.getStatistics();
+        System.out.printf("user id cache: %d lookups, %d queries saved, hit rate %.1f%%, %d users cached%n",
+            shipments, stats.get("queries_saved"), 100 * (double) stats.get("hit_rate"), stats.get("size"));
+
+        assertThat(loads.get()).isLessThanOrEqualTo(customers);
+        assertThat((long) stats.get("queries_saved")).isEqualTo(shipments - loads.get());
+        assertThat((double) stats.get("hit_rate")).isGreaterThan(0.9);
+    }
+
+    // Helper methods
+
+    private void commit() {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+    }
+}
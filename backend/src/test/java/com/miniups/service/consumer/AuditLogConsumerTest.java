@@ -0,0 +1,251 @@
+package com.miniups.service.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniups.config.TestConfig;
+import com.miniups.model.entity.AuditLog;
+import com.miniups.model.event.AuditLogPayload;
+import com.miniups.model.event.BusinessEvent;
+import com.miniups.repository.AuditLogRepository;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Integration tests for AuditLogConsumer against the H2 test database.
+ * Tests batch inserts with one multiple ack, deduplication within a batch and against
+ * the table, invalid and unreadable messages, the one-at-a-time fallback, and
+ * throughput for 100k events against the former per-message handling.
+ */
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.NONE,
+    properties = "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.amqp.RabbitAutoConfiguration"
+)
+@ActiveProfiles("test")
+@Import(TestConfig.class)
+@DisplayName("AuditLogConsumer Integration Tests")
+class AuditLogConsumerTest {
+
+    @Autowired
+    private AuditLogConsumer consumer;
+
+    @Autowired
+    private AuditLogRepository auditLogRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Channel channel;
+    private long nextTag;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM audit_logs");
+        channel = mock(Channel.class);
+        nextTag = 1;
+    }
+
+    @Test
+    @DisplayName("Should insert a batch and ack it once with multiple=true")
+    void testBatch_InsertedAndAckedOnce() throws IOException {
+        // Given
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            batch.add(message(event("evt-" + i, "SHIPMENT_CREATE")));
+        }
+
+        // When
+        consumer.handleAuditLogEvents(batch, channel);
+
+        // Then
+        assertThat(auditLogRepository.count()).isEqualTo(5);
+        verify(channel).basicAck(5, true);
+        verifyNoMoreInteractions(channel);
+
+        AuditLog saved = auditLogRepository.findByEventId("evt-3").orElseThrow();
+        assertThat(saved.getOperationType()).isEqualTo("SHIPMENT_CREATE");
+        assertThat(saved.getEntityId()).isEqualTo("42");
+        assertThat(saved.getAdditionalData()).isEqualTo("{\"truckId\":7}");
+        assertThat(saved.getId()).isNotNull();
+    }
+
+    @Test
+    @DisplayName("Should skip events already recorded and repeated within the batch")
+    void testDuplicates_Skipped() throws IOException {
+        // Given
+        consumer.handleAuditLogEvents(List.of(message(event("evt-1", "LOGIN"))), channel);
+        List<Message> batch = List.of(
+            message(event("evt-1", "LOGIN")),
+            message(event("evt-2", "LOGIN")),
+            message(event("evt-2", "LOGIN")));
+
+        // When
+        consumer.handleAuditLogEvents(batch, channel);
+
+        // Then
+        assertThat(auditLogRepository.count()).isEqualTo(2);
+        verify(channel).basicAck(4, true);
+    }
+
+    @Test
+    @DisplayName("Should ack invalid events without storing them and reject unreadable ones")
+    void testInvalidAndUnreadable() throws IOException {
+        // Given
+        BusinessEvent<AuditLogPayload> invalid = event("evt-invalid", "LOGIN");
+        invalid.getPayload().setOperationResult(null);
+        List<Message> batch = List.of(
+            message(event("evt-1", "LOGIN")),
+            message(invalid),
+            message(event("evt-2", "LOGIN")),
+            rawMessage("{not json"));
+
+        // When
+        consumer.handleAuditLogEvents(batch, channel);
+
+        // Then - the ack stops before the rejected last message
+        assertThat(auditLogRepository.count()).isEqualTo(2);
+        verify(channel).basicNack(4, false, false);
+        verify(channel).basicAck(3, true);
+    }
+
+    @Test
+    @DisplayName("Should fall back to one event at a time so only the bad row is dead-lettered")
+    void testFailedBatch_OneByOne() throws IOException {
+        // Given - an operation type longer than its column
+        List<Message> batch = List.of(
+            message(event("evt-1", "LOGIN")),
+            message(event("evt-2", "X".repeat(150))),
+            message(event("evt-3", "LOGIN")));
+
+        // When
+        consumer.handleAuditLogEvents(batch, channel);
+
+        // Then
+        assertThat(auditLogRepository.count()).isEqualTo(2);
+        verify(channel).basicAck(1, false);
+        verify(channel).basicNack(2, false, false);
+        verify(channel).basicAck(3, false);
+        verify(channel, never()).basicAck(anyLong(), eq(true));
+    }
+
+    @Test
+    @DisplayName("Benchmark: 100k audit events, batches of 100 vs one message at a time")
+    void benchmarkBatchVsPerMessage() throws IOException {
+        int events = 100_000;
+        int batchSize = 100;
+        channel = mock(Channel.class, withSettings().stubOnly());
+        List<Message> messages = new ArrayList<>(events);
+        for (int i = 0; i < events; i++) {
+            messages.add(message(event("old-" + i, "SHIPMENT_CREATE")));
+        }
+
+        // Former handling: per message, new ObjectMapper, existsByEventId, save, ack
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long oldStart = System.nanoTime();
+        for (Message message : messages) {
+            BusinessEvent<AuditLogPayload> event = objectMapper.readValue(message.getBody(),
+                objectMapper.getTypeFactory().constructParametricType(BusinessEvent.class, AuditLogPayload.class));
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!auditLogRepository.existsByEventId(event.getEventId())) {
+                    auditLogRepository.save(toEntity(event));
+                }
+            });
+            channel.basicAck(message.getMessageProperties().getDeliveryTag(), false);
+        }
+        double oldSeconds = (System.nanoTime() - oldStart) / 1e9;
+        assertThat(auditLogRepository.count()).isEqualTo(events);
+
+        // Batched handling, as the container delivers it
+        messages.clear();
+        for (int i = 0; i < events; i++) {
+            messages.add(message(event("new-" + i, "SHIPMENT_CREATE")));
+        }
+        long newStart = System.nanoTime();
+        for (int from = 0; from < events; from += batchSize) {
+            consumer.handleAuditLogEvents(messages.subList(from, from + batchSize), channel);
+        }
+        double newSeconds = (System.nanoTime() - newStart) / 1e9;
+        assertThat(auditLogRepository.count()).isEqualTo(2L * events);
+
+        System.out.printf("per message: %.0f events/s (%.1f s for %d)%n", events / oldSeconds, oldSeconds, events);
+        System.out.printf("batched:     %.0f events/s (%.1f s for %d, batches of %d)%n",
+            events / newSeconds, newSeconds, events, batchSize);
+
+        assertThat(newSeconds).isLessThan(oldSeconds);
+    }
+
+    // Helper methods
+
+    private static BusinessEvent<AuditLogPayload> event(String eventId, String operationType) {
+        AuditLogPayload payload = new AuditLogPayload();
+        payload.setOperationType(operationType);
+        payload.setOperationResult("SUCCESS");
+        payload.setOperationTimestamp(Instant.now());
+        payload.setUserId(7L);
+        payload.setUsername("alice");
+        payload.setEntityType("Shipment");
+        payload.setEntityId("42");
+        payload.setResultCode(200);
+        payload.addAdditionalData("truckId", 7);
+        return new BusinessEvent<>(eventId, "audit.log.created", Instant.now(), "mini-ups-test", "corr-1",
+            payload, "1.0");
+    }
+
+    private Message message(BusinessEvent<AuditLogPayload> event) throws IOException {
+        return rawMessage(objectMapper.writeValueAsString(event));
+    }
+
+    private Message rawMessage(String body) {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(nextTag++);
+        return new Message(body.getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    private static AuditLog toEntity(BusinessEvent<AuditLogPayload> event) {
+        AuditLogPayload payload = event.getPayload();
+        AuditLog auditLog = new AuditLog();
+        auditLog.setEventId(event.getEventId());
+        auditLog.setCorrelationId(event.getCorrelationId());
+        auditLog.setEventTime(event.getEventTime());
+        auditLog.setSourceService(event.getSourceService());
+        auditLog.setOperationType(payload.getOperationType());
+        auditLog.setOperationResult(payload.getOperationResult());
+        auditLog.setOperationTimestamp(payload.getOperationTimestamp());
+        auditLog.setUserId(payload.getUserId());
+        auditLog.setUsername(payload.getUsername());
+        auditLog.setEntityType(payload.getEntityType());
+        auditLog.setEntityId(payload.getEntityId());
+        auditLog.setResultCode(payload.getResultCode());
+        try {
+            auditLog.setAdditionalData(new ObjectMapper().writeValueAsString(payload.getAdditionalData()));
+        } catch (IOException e) {
+            auditLog.setAdditionalData("{}");
+        }
+        auditLog.setAuditCreatedAt(Instant.now());
+        return auditLog;
+    }
+}
@@ -0,0 +1,222 @@
+package com.miniups.service.consumer;
+
+import com.miniups.config.RabbitMQConfig;
+import com.miniups.model.event.BusinessEvent;
+import com.miniups.model.event.NotificationPayload;
+import com.miniups.repository.UserRepository;
+import com.miniups.service.AsyncAuditService;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for NotificationConsumer retry and scheduling.
+ * Tests that scheduled notifications and failed deliveries are parked on the delay
+ * tiers with the retry count in a header, acknowledged only once the copy is confirmed,
+ * and dead-lettered after the maximum attempts, never requeued in a loop, and that
+ * only the mandatory channels that failed are retried.
+ */
+@DisplayName("NotificationConsumer Unit Tests")
+class NotificationConsumerTest {
+
+    private static final long TAG = 42;
+
+    private UserRepository userRepository;
+    private RabbitTemplate rabbitTemplate;
+    private Channel channel;
+    private NotificationFanout fanout;
+    private NotificationConsumer consumer;
+    private boolean confirmAck;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        when(userRepository.findById(anyLong())).thenReturn(Optional.empty());
+        fanout = new NotificationFanout(null);
+        fanout.start();
+        consumer = new NotificationConsumer(userRepository, mock(AsyncAuditService.class), fanout);
+        ReflectionTestUtils.setField(consumer, "notificationsEnabled", true);
+        ReflectionTestUtils.setField(consumer, "emailEnabled", true);
+
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+        rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.getConnectionFactory()).thenReturn(connectionFactory);
+        confirmAck = true;
+        doAnswer(invocation -> {
+            CorrelationData correlation = invocation.getArgument(3);
+            correlation.getFuture().complete(new CorrelationData.Confirm(confirmAck, confirmAck ? null : "nack"));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        ReflectionTestUtils.setField(consumer, "rabbitTemplate", rabbitTemplate);
+
+        channel = mock(Channel.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        fanout.stop();
+    }
+
+    @Test
+    @DisplayName("Should park a scheduled notification on the longest tier that does not overshoot")
+    void testScheduled_ParkedUntilDue() throws IOException {
+        // Given
+        NotificationPayload payload = payload("a@example.com");
+        payload.setScheduledDeliveryTime(Instant.now().plusSeconds(90));
+        Message message = message(null);
+
+        // When
+        consumer.handleNotificationEvent(event(payload), message, channel);
+
+        // Then
+        verify(rabbitTemplate).send(eq(""), eq("q.notifications.delay.60s"), same(message), any(CorrelationData.class));
+        verify(channel).basicAck(TAG, false);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+        assertThat(NotificationConsumer.getRetryCount(message)).isZero();
+    }
+
+    @Test
+    @DisplayName("Should deliver a due notification without touching the delay queues")
+    void testDue_Delivered() throws IOException {
+        // When
+        consumer.handleNotificationEvent(event(payload("a@example.com")), message(null), channel);
+
+        // Then
+        verify(channel).basicAck(TAG, false);
+        verifyNoInteractions(rabbitTemplate);
+    }
+
+    @Test
+    @DisplayName("Should back off a failed delivery through the tiers with the count in a header")
+    void testFailure_RetriedWithBackoff() throws IOException {
+        // Given - no address, so the email channel fails
+        Message message = message(2);
+
+        // When
+        consumer.handleNotificationEvent(event(payload(null)), message, channel);
+
+        // Then - third attempt goes to the third tier
+        verify(rabbitTemplate).send(eq(""), eq("q.notifications.delay.60s"), same(message), any(CorrelationData.class));
+        assertThat(NotificationConsumer.getRetryCount(message)).isEqualTo(3);
+        verify(channel).basicAck(TAG, false);
+    }
+
+    @Test
+    @DisplayName("Should dead-letter after the maximum attempts")
+    void testFailure_DeadLetteredAfterMaxAttempts() throws IOException {
+        // When
+        consumer.handleNotificationEvent(event(payload(null)), message(4), channel);
+
+        // Then
+        verify(channel).basicNack(TAG, false, false);
+        verifyNoInteractions(rabbitTemplate);
+    }
+
+    @Test
+    @DisplayName("Should keep the original when the delay queue does not confirm the copy")
+    void testNack_OriginalKept() throws IOException {
+        // Given
+        confirmAck = false;
+
+        // When
+        consumer.handleNotificationEvent(event(payload(null)), message(null), channel);
+
+        // Then
+        verify(channel).basicNack(TAG, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    @DisplayName("Should retry only the failed mandatory channels")
+    void testPartialFailure_OnlyFailedChannelsRetried() throws IOException {
+        // Given - email fails for want of an address, in-app and push succeed
+        NotificationPayload payload = payload(null);
+        payload.setNotificationTypes(List.of(NotificationPayload.NotificationType.EMAIL,
+            NotificationPayload.NotificationType.IN_APP_NOTIFICATION,
+            NotificationPayload.NotificationType.PUSH_NOTIFICATION));
+        Message message = message(null);
+
+        // When
+        consumer.handleNotificationEvent(event(payload), message, channel);
+
+        // Then
+        assertThat(message.getMessageProperties().<String>getHeader(NotificationConsumer.PENDING_CHANNELS_HEADER))
+            .isEqualTo("EMAIL");
+        assertThat(NotificationConsumer.getPendingChannels(message))
+            .containsExactly(NotificationPayload.NotificationType.EMAIL);
+        verify(rabbitTemplate).send(eq(""), eq("q.notifications.delay.1s"), same(message), any(CorrelationData.class));
+        verify(channel).basicAck(TAG, false);
+    }
+
+    @Test
+    @DisplayName("Should send only the pending channels on redelivery")
+    void testRedelivery_PendingChannelsOnly() throws IOException {
+        // Given - email is still pending; in-app went out on the first attempt
+        NotificationPayload payload = payload(null);
+        payload.setNotificationTypes(List.of(NotificationPayload.NotificationType.EMAIL,
+            NotificationPayload.NotificationType.IN_APP_NOTIFICATION));
+        Message message = message(1);
+        message.getMessageProperties().setHeader(NotificationConsumer.PENDING_CHANNELS_HEADER, "IN_APP_NOTIFICATION");
+
+        // When
+        consumer.handleNotificationEvent(event(payload), message, channel);
+
+        // Then - the failing email channel is not sent again
+        verify(channel).basicAck(TAG, false);
+        verifyNoInteractions(rabbitTemplate);
+    }
+
+    @Test
+    @DisplayName("Should map attempts and remaining time to the delay tiers")
+    void testTierSelection() {
+        assertThat(List.of(1, 2, 3, 4, 9)).extracting(NotificationConsumer::getRetryDelayMs)
+            .containsExactly(1_000L, 10_000L, 60_000L, 600_000L, 600_000L);
+        assertThat(List.of(200L, 1_500L, 59_999L, 3_600_000L)).extracting(NotificationConsumer::getParkDelayMs)
+            .containsExactly(1_000L, 1_000L, 10_000L, 600_000L);
+        assertThat(RabbitMQConfig.notificationDelayQueue(600_000)).isEqualTo("q.notifications.delay.600s");
+    }
+
+    // Helper methods
+
+    private static NotificationPayload payload(String email) {
+        NotificationPayload payload = new NotificationPayload();
+        payload.setNotificationId("n-1");
+        payload.setRecipientUserId(7L);
+        payload.setRecipientEmail(email);
+        payload.setNotificationTypes(List.of(NotificationPayload.NotificationType.EMAIL));
+        payload.setSubject("Your package");
+        payload.setMessage("Out for delivery");
+        return payload;
+    }
+
+    private static BusinessEvent<NotificationPayload> event(NotificationPayload payload) {
+        return BusinessEvent.create("notification.email", "mini-ups-test", payload, "corr-1");
+    }
+
+    private static Message message(Integer retryCount) {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(TAG);
+        if (retryCount != null) {
+            properties.setHeader(NotificationConsumer.RETRY_COUNT_HEADER, retryCount);
+        }
+        return new Message(new byte[0], properties);
+    }
+}
@@ -0,0 +1,261 @@
+package com.miniups.service.consumer;
+
+import com.miniups.model.event.NotificationPayload.NotificationType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static com.miniups.model.event.NotificationPayload.NotificationType.*;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for NotificationFanout against local fake channel sinks.
+ * Tests parallel sends, waiting for mandatory channels only, per-channel timeouts
+ * and rate limits, a full channel queue, and throughput against sending the channels
+ * one after another.
+ */
+@DisplayName("NotificationFanout Unit Tests")
+class NotificationFanoutTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private NotificationFanout fanout;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        fanout = new NotificationFanout(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        fanout.stop();
+    }
+
+    @Test
+    @DisplayName("Should send the channels in parallel, so the slowest sets the latency")
+    void testChannels_SentInParallel() {
+        // Given
+        fanout.start();
+        Sink email = new Sink(100, true);
+        Sink sms = new Sink(100, true);
+        Sink webhook = new Sink(100, true);
+
+        // When
+        long start = System.nanoTime();
+        Set<NotificationType> failed = fanout.dispatch(sends(EMAIL, email, SMS, sms, WEBHOOK, webhook));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Then
+        assertThat(failed).isEmpty();
+        assertThat(List.of(email, sms, webhook)).allSatisfy(sink -> assertThat(sink.calls).hasValue(1));
+        assertThat(elapsedMs).isLessThan(250);
+    }
+
+    @Test
+    @DisplayName("Should report failed mandatory channels and not wait for best-effort ones")
+    void testMandatoryOnly_WaitedAndReported() throws InterruptedException {
+        // Given - push is best effort by default
+        fanout.start();
+        Sink push = new Sink(500, false);
+
+        // When
+        long start = System.nanoTime();
+        Set<NotificationType> failed = fanout.dispatch(sends(
+            EMAIL, new Sink(0, false), IN_APP_NOTIFICATION, new Sink(0, true), PUSH_NOTIFICATION, push));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Then
+        assertThat(failed).containsExactly(EMAIL);
+        assertThat(elapsedMs).isLessThan(400);
+        assertThat(push.done.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(fanout.isMandatory(PUSH_NOTIFICATION)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should fail a channel at its timeout without holding back the others")
+    void testTimeout_PerChannel() {
+        // Given
+        ReflectionTestUtils.setField(fanout, "timeoutsMs", List.of("SMS=100"));
+        fanout.start();
+
+        // When
+        Set<NotificationType> failed = fanout.dispatch(sends(EMAIL, new Sink(0, true), SMS, new Sink(1_000, true)));
+
+        // Then
+        assertThat(failed).containsExactly(SMS);
+        assertThat(meterRegistry.get("ups.notifications.channel.sends")
+            .tag("channel", "SMS").tag("outcome", "timeout").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should rate limit each channel and fail sends that cannot get a token in time")
+    void testRateLimit_PerChannel() throws Exception {
+        // Given - 5 SMS per second with bursts of 5, 300 ms to get a token
+        ReflectionTestUtils.setField(fanout, "rateLimits", List.of("SMS=5"));
+        ReflectionTestUtils.setField(fanout, "timeoutsMs", List.of("SMS=300"));
+        ReflectionTestUtils.setField(fanout, "threads", 10);
+        fanout.start();
+
+        // When - ten listeners send an SMS at once
+        ExecutorService listeners = Executors.newFixedThreadPool(10);
+        List<Future<Set<NotificationType>>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(listeners.submit(() -> fanout.dispatch(sends(SMS, new Sink(0, true)))));
+        }
+        int failures = 0;
+        for (Future<Set<NotificationType>> result : results) {
+            failures += result.get(5, TimeUnit.SECONDS).size();
+        }
+        listeners.shutdown();
+
+        // Then - the burst of 5 and the token due in 200 ms go out, the rest are refused
+        assertThat(failures).isBetween(3, 4);
+        assertThat(meterRegistry.get("ups.notifications.channel.sends")
+            .tag("channel", "SMS").tag("outcome", "rate_limited").counter().count()).isEqualTo(failures);
+    }
+
+    @Test
+    @DisplayName("Should fail a send at once when its channel queue is full")
+    void testFullQueue_Rejected() throws InterruptedException {
+        // Given - one email worker, one queued send
+        ReflectionTestUtils.setField(fanout, "threads", 1);
+        ReflectionTestUtils.setField(fanout, "queueCapacity", 1);
+        fanout.start();
+        CountDownLatch release = new CountDownLatch(1);
+        BooleanSupplier blocked = () -> {
+            try {
+                return release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        };
+        Thread first = new Thread(() -> fanout.dispatch(sends(EMAIL, blocked)));
+        Thread second = new Thread(() -> fanout.dispatch(sends(EMAIL, blocked)));
+        first.start();
+        second.start();
+        Thread.sleep(200);
+
+        // When
+        Set<NotificationType> failed = fanout.dispatch(sends(EMAIL, new Sink(0, true)));
+        release.countDown();
+        first.join();
+        second.join();
+
+        // Then
+        assertThat(failed).containsExactly(EMAIL);
+        assertThat(meterRegistry.get("ups.notifications.channel.sends")
+            .tag("channel", "EMAIL").tag("outcome", "rejected").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Benchmark: 200 notifications over four channels, sequential vs fan-out")
+    void benchmarkSequentialVsFanout() throws InterruptedException {
+        // Email 20 ms, SMS 15 ms, in-app 2 ms, webhook 10 ms; four listener threads
+        int notifications = 200;
+        int listeners = 4;
+        ReflectionTestUtils.setField(fanout, "rateLimits",
+            List.of("EMAIL=10000", "SMS=10000", "IN_APP_NOTIFICATION=10000", "WEBHOOK=10000"));
+        ReflectionTestUtils.setField(fanout, "threads", 8);
+        fanout.start();
+
+        double sequentialSeconds = run(notifications, listeners, sends -> {
+            sends.values().forEach(BooleanSupplier::getAsBoolean);
+            return Set.of();
+        });
+        double fanoutSeconds = run(notifications, listeners, fanout::dispatch);
+
+        System.out.printf("sequential: %.0f notifications/s (%.2f s for %d)%n",
+            notifications / sequentialSeconds, sequentialSeconds, notifications);
+        System.out.printf("fan-out:    %.0f notifications/s (%.2f s for %d)%n",
+            notifications / fanoutSeconds, fanoutSeconds, notifications);
+
+        assertThat(fanoutSeconds).isLessThan(sequentialSeconds);
+    }
+
+    // Helper methods
+
+    private static Map<NotificationType, BooleanSupplier> sends(Object... channelsAndSinks) {
+        Map<NotificationType, BooleanSupplier> sends = new EnumMap<>(NotificationType.class);
+        for (int i = 0; i < channelsAndSinks.length; i += 2) {
+            sends.put((NotificationType) channelsAndSinks[i], (BooleanSupplier) channelsAndSinks[i + 1]);
+        }
+        return sends;
+    }
+
+    private static double run(int notifications, int listeners,
+                              Function<Map<NotificationType, BooleanSupplier>, Set<NotificationType>> dispatch)
+            throws InterruptedException {
+        AtomicInteger remaining = new AtomicInteger(notifications);
+        AtomicInteger delivered = new AtomicInteger();
+        Thread[] threads = new Thread[listeners];
+        long start = System.nanoTime();
+        for (int i = 0; i < listeners; i++) {
+            threads[i] = new Thread(() -> {
+                while (remaining.getAndDecrement() > 0) {
+                    Set<NotificationType> failed = dispatch.apply(sends(
+                        EMAIL, new Sink(20, true),
+                        SMS, new Sink(15, true),
+                        IN_APP_NOTIFICATION, new Sink(2, true),
+                        WEBHOOK, new Sink(10, true)));
+                    if (failed.isEmpty()) {
+                        delivered.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(delivered).hasValue(notifications);
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    /**
+     * Fake channel sink with a fixed latency and outcome
+     */
+    private static class Sink implements BooleanSupplier {
+        final long latencyMs;
+        final boolean outcome;
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Sink(long latencyMs, boolean outcome) {
+            this.latencyMs = latencyMs;
+            this.outcome = outcome;
+        }
+
+        @Override
+        public boolean getAsBoolean() {
+            calls.incrementAndGet();
+            try {
+                if (latencyMs > 0) {
+                    Thread.sleep(latencyMs);
+                }
+                return outcome;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.miniups.simulation;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Offline dispatch simulator tests and strategy comparison
+ */
+class DispatchSimulatorTest {
+
+    private static final int[][] WAREHOUSES = {{10, 10}, {80, 20}, {50, 85}, {20, 70}};
+    private static final double[] DEMAND = {0.5, 0.25, 0.15, 0.10};
+
+    private List<ShipmentArrival> arrivals(int count, double perSecond) {
+        return ShipmentArrival.synthetic(42L, count, perSecond, WAREHOUSES, DEMAND, 100, 10);
+    }
+
+    private DispatchSimulator simulator(int trucks) {
+        return new DispatchSimulator(new DispatchSimulator.Fleet(trucks, 50, 1.0, 2000, 100, 7L));
+    }
+
+    @Test
+    @DisplayName("Every strategy delivers every shipment")
+    void everyStrategyDeliversEverything() {
+        List<ShipmentArrival> arrivals = arrivals(500, 0.5);
+
+        List<SimulationReport> reports = simulator(10).compare(arrivals,
+            new GreedyNearestStrategy(), new WindowedBatchStrategy(20_000), new CapacityPackingStrategy());
+
+        for (SimulationReport report : reports) {
+            assertThat(report.getDelivered()).as(report.getStrategy()).isEqualTo(500);
+            assertThat(report.getThroughputPerMinute()).as(report.getStrategy()).isPositive();
+            assertThat(report.getUtilisation()).as(report.getStrategy()).isBetween(0.0, 1.0);
+        }
+    }
+
+    @Test
+    @DisplayName("Runs are deterministic and strategies can be reused")
+    void runsAreDeterministic() {
+        List<ShipmentArrival> arrivals = arrivals(300, 0.5);
+        DispatchSimulator simulator = simulator(8);
+        WindowedBatchStrategy strategy = new WindowedBatchStrategy(15_000);
+
+        SimulationReport first = simulator.run(arrivals, strategy);
+        SimulationReport second = simulator.run(arrivals, strategy);
+
+        assertThat(second.toString()).isEqualTo(first.toString());
+        assertThat(arrivals(300, 0.5).get(299).getArrivalMillis()).isEqualTo(arrivals.get(299).getArrivalMillis());
+    }
+
+    @Test
+    @DisplayName("Capacity packing needs fewer trips and less driving under load")
+    void packingReducesTripsAndDistance() {
+        List<ShipmentArrival> arrivals = arrivals(1000, 2.0);
+        DispatchSimulator simulator = simulator(10);
+
+        SimulationReport greedy = simulator.run(arrivals, new GreedyNearestStrategy());
+        SimulationReport packing = simulator.run(arrivals, new CapacityPackingStrategy());
+
+        assertThat(packing.getTrips()).isLessThan(greedy.getTrips());
+        assertThat(packing.getShipmentsPerTrip()).isGreaterThan(1.0);
+        assertThat(packing.getTotalDistance()).isLessThan(greedy.getTotalDistance());
+        assertThat(greedy.getShipmentsPerTrip()).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("Windowed batching holds shipments for at least the window")
+    void windowedBatchingWaitsForWindow() {
+        // A single shipment with plenty of idle trucks: greedy dispatches at once, batching waits
+        List<ShipmentArrival> one = List.of(new ShipmentArrival(0, 1000, "1", 10, 10, 20, 20, 1));
+        DispatchSimulator simulator = new DispatchSimulator(new DispatchSimulator.Fleet(1, 10, 1.0, 0, 1, 1L));
+
+        SimulationReport greedy = simulator.run(one, new GreedyNearestStrategy());
+        SimulationReport batched = simulator.run(one, new WindowedBatchStrategy(30_000));
+
+        // Truck starts at (0,0), 20 units away at one unit per second
+        assertThat(greedy.getMeanPickupWaitMillis()).isEqualTo(20_000.0);
+        assertThat(batched.getMeanPickupWaitMillis()).isEqualTo(50_000.0);
+    }
+
+    @Test
+    @DisplayName("CSV streams replay like the generated stream")
+    void csvReplay() throws Exception {
+        List<ShipmentArrival> arrivals = arrivals(200, 1.0);
+        StringBuilder csv = new StringBuilder("arrival_ms,warehouse_id,warehouse_x,warehouse_y,dest_x,dest_y,weight\n");
+        for (ShipmentArrival a : arrivals) {
+            csv.append(a.getArrivalMillis()).append(',').append(a.getWarehouseId()).append(',')
+               .append(a.getWarehouseX()).append(',').append(a.getWarehouseY()).append(',')
+               .append(a.getDestX()).append(',').append(a.getDestY()).append(',')
+               .append(a.getWeight()).append('\n');
+        }
+
+        List<ShipmentArrival> replayed = ShipmentArrival.fromCsv(new StringReader(csv.toString()));
+        DispatchSimulator simulator = simulator(6);
+
+        assertThat(replayed).hasSize(200);
+        assertThat(simulator.run(replayed, new CapacityPackingStrategy()).toString())
+            .isEqualTo(simulator.run(arrivals, new CapacityPackingStrategy()).toString());
+    }
+
+    @Test
+    @DisplayName("Benchmark: compare strategies over a busy shift")
+    void benchmarkStrategies() {
+        List<ShipmentArrival> arrivals = arrivals(5_000, 0.4);
+        DispatchSimulator simulator = simulator(25);
+
+        long start = System.nanoTime();
+        List<SimulationReport> reports = simulator.compare(arrivals,
+            new GreedyNearestStrategy(), new WindowedBatchStrategy(30_000), new CapacityPackingStrategy());
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println("Dispatch strategies, 5000 shipments, 25 trucks (" + elapsedMs + " ms wall clock)");
+        System.out.print(SimulationReport.formatTable(reports));
+
+        assertThat(reports).allSatisfy(report -> assertThat(report.getDelivered()).isEqualTo(5_000));
+    }
+}
@@ -0,0 +1,134 @@
+package com.miniups.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.miniups.util.CircuitBreaker.State.*;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for CircuitBreaker.
+ * Tests opening on failure and slow-call rates over the sliding window, rejection
+ * while open, and the half-open trial that closes or reopens the circuit.
+ */
+@DisplayName("CircuitBreaker Unit Tests")
+class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final AtomicLong now = new AtomicLong();
+    private final List<String> transitions = new ArrayList<>();
+    private CircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        // Window of 10, at least 5 calls, 50% failures or 50% slow calls, open for 1 s, 2 trial calls
+        breaker = new CircuitBreaker(10, 5, 50, 50, 200, 1000, 2, now::get,
+            (from, to) -> transitions.add(from + "->" + to));
+    }
+
+    @Test
+    @DisplayName("Should stay closed below the minimum number of calls")
+    void testBelowMinimumCalls_StaysClosed() {
+        for (int i = 0; i < 4; i++) {
+            call(true, FAST);
+        }
+        assertThat(breaker.getState()).isEqualTo(CLOSED);
+        assertThat(breaker.getFailureRate()).isEqualTo(100f);
+    }
+
+    @Test
+    @DisplayName("Should open at the failure-rate threshold and reject calls")
+    void testFailureRate_Opens() {
+        call(false, FAST);
+        call(false, FAST);
+        call(true, FAST);
+        call(false, FAST);
+        assertThat(breaker.getState()).isEqualTo(CLOSED);
+
+        call(true, FAST);
+        call(true, FAST);
+
+        assertThat(breaker.getState()).isEqualTo(OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+        assertThat(transitions).containsExactly("CLOSED->OPEN");
+    }
+
+    @Test
+    @DisplayName("Should open on slow calls even when they succeed")
+    void testSlowCallRate_Opens() {
+        for (int i = 0; i < 5; i++) {
+            call(false, i < 2 ? FAST : SLOW);
+        }
+        assertThat(breaker.getState()).isEqualTo(OPEN);
+    }
+
+    @Test
+    @DisplayName("Should forget outcomes that slide out of the window")
+    void testSlidingWindow_OldFailuresExpire() {
+        call(true, FAST);
+        call(true, FAST);
+        for (int i = 0; i < 9; i++) {
+            call(false, FAST);
+        }
+        assertThat(breaker.getFailureRate()).isEqualTo(10f);
+        call(false, FAST);
+        assertThat(breaker.getFailureRate()).isZero();
+        assertThat(breaker.getState()).isEqualTo(CLOSED);
+    }
+
+    @Test
+    @DisplayName("Should close after successful half-open trials")
+    void testHalfOpen_ClosesOnSuccess() {
+        open();
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).as("only two trial calls").isFalse();
+        breaker.onResult(false, FAST);
+        breaker.onResult(false, FAST);
+
+        assertThat(breaker.getState()).isEqualTo(CLOSED);
+        assertThat(transitions).containsExactly("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED");
+    }
+
+    @Test
+    @DisplayName("Should reopen when a half-open trial fails, and free unused trial permits")
+    void testHalfOpen_ReopensOnFailure() {
+        open();
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.release();
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onResult(true, FAST);
+        breaker.onResult(false, FAST);
+
+        assertThat(breaker.getState()).isEqualTo(OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+        assertThat(transitions).endsWith("HALF_OPEN->OPEN");
+    }
+
+    // Helper methods
+
+    private void call(boolean failed, long durationNanos) {
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onResult(failed, durationNanos);
+    }
+
+    private void open() {
+        for (int i = 0; i < 5; i++) {
+            call(true, FAST);
+        }
+        assertThat(breaker.getState()).isEqualTo(OPEN);
+    }
+}
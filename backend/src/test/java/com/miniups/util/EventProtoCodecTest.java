@@ -0,0 +1,254 @@
+package com.miniups.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.miniups.model.event.AuditLogPayload;
+import com.miniups.model.event.BusinessEvent;
+import com.miniups.model.event.NotificationPayload;
+import com.miniups.model.event.ShipmentCreationPayload;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for EventProtoCodec.
+ * Tests that each payload type, untyped payloads and nulls read back exactly as the
+ * same event does through JSON, conversion to an expected payload type, malformed
+ * bodies, and encoded size and codec cost against Jackson.
+ */
+@DisplayName("EventProtoCodec Unit Tests")
+class EventProtoCodecTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+        .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+        .build();
+
+    @Test
+    @DisplayName("Should round-trip a notification event as JSON does")
+    void testNotification_MatchesJson() throws IOException {
+        // Given
+        BusinessEvent<NotificationPayload> event = notificationEvent();
+
+        // When
+        BusinessEvent<Object> decoded = EventProtoCodec.decode(EventProtoCodec.encode(event, objectMapper));
+
+        // Then
+        assertThat(decoded.getPayload()).isInstanceOf(NotificationPayload.class);
+        assertThat(decoded).usingRecursiveComparison()
+            .isEqualTo(viaJson(event, new TypeReference<BusinessEvent<NotificationPayload>>() { }));
+    }
+
+    @Test
+    @DisplayName("Should round-trip shipment creation and audit log events as JSON does")
+    void testShipmentAndAudit_MatchJson() throws IOException {
+        // Given
+        BusinessEvent<ShipmentCreationPayload> shipment = shipmentEvent();
+        BusinessEvent<AuditLogPayload> audit = auditEvent();
+
+        // When
+        BusinessEvent<Object> decodedShipment = EventProtoCodec.decode(EventProtoCodec.encode(shipment, objectMapper));
+        BusinessEvent<Object> decodedAudit = EventProtoCodec.decode(EventProtoCodec.encode(audit, objectMapper));
+
+        // Then
+        assertThat(decodedShipment).usingRecursiveComparison()
+            .isEqualTo(viaJson(shipment, new TypeReference<BusinessEvent<ShipmentCreationPayload>>() { }));
+        assertThat(decodedAudit).usingRecursiveComparison()
+            .isEqualTo(viaJson(audit, new TypeReference<BusinessEvent<AuditLogPayload>>() { }));
+    }
+
+    @Test
+    @DisplayName("Should carry untyped payloads as the values Jackson reads from JSON")
+    void testUntypedPayload_MatchesJson() throws IOException {
+        // Given - as published for shipment status updates, plus the awkward values
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("shipmentId", 42L);
+        payload.put("big", 3_000_000_000L);
+        payload.put("huge", new BigInteger("123456789012345678901234567890"));
+        payload.put("ratio", 0.25);
+        payload.put("newStatus", "DELIVERED");
+        payload.put("timestamp", Instant.parse("2026-10-19T08:30:00.123456Z"));
+        payload.put("shipmentIds", List.of(1, 2, 3));
+        payload.put("nested", Map.of("ok", true));
+        payload.put("missing", null);
+        BusinessEvent<Object> event = BusinessEvent.create("shipment.status.updated", "mini-ups", payload, "corr-1");
+
+        // When
+        BusinessEvent<Object> decoded = EventProtoCodec.decode(EventProtoCodec.encode(event, objectMapper));
+
+        // Then
+        BusinessEvent<Object> json = viaJson(event, new TypeReference<BusinessEvent<Object>>() { });
+        assertThat(decoded).usingRecursiveComparison().isEqualTo(json);
+        assertThat(List.copyOf(((Map<?, ?>) decoded.getPayload()).keySet())).isEqualTo(List.copyOf(payload.keySet()));
+    }
+
+    @Test
+    @DisplayName("Should keep nulls as nulls, not empty strings or zeros")
+    void testNulls_Preserved() throws IOException {
+        // Given
+        BusinessEvent<NotificationPayload> event = new BusinessEvent<>("evt-1", null, null, null, null,
+            new NotificationPayload(), null);
+
+        // When
+        BusinessEvent<Object> decoded = EventProtoCodec.decode(EventProtoCodec.encode(event, objectMapper));
+
+        // Then
+        assertThat(decoded).usingRecursiveComparison().isEqualTo(event);
+        assertThat(EventProtoCodec.decode(EventProtoCodec.encode(new BusinessEvent<>(), objectMapper)))
+            .usingRecursiveComparison().isEqualTo(new BusinessEvent<>());
+    }
+
+    @Test
+    @DisplayName("Should convert the payload to the type a listener expects")
+    void testDecode_ConvertsToExpectedType() throws IOException {
+        // Given - a shipment event read by a notification listener; the shipment
+        // priority is no notification priority, so it would fail in JSON as well
+        BusinessEvent<ShipmentCreationPayload> shipment = shipmentEvent();
+        shipment.getPayload().setPriority(null);
+        byte[] body = EventProtoCodec.encode(shipment, objectMapper);
+
+        // When
+        BusinessEvent<NotificationPayload> asNotification =
+            EventProtoCodec.decode(body, NotificationPayload.class, objectMapper);
+        BusinessEvent<ShipmentCreationPayload> asShipment =
+            EventProtoCodec.decode(body, ShipmentCreationPayload.class, objectMapper);
+
+        // Then
+        assertThat(asNotification.getPayload()).isInstanceOf(NotificationPayload.class);
+        assertThat(asNotification.getPayload().getNotificationTypes()).isNull();
+        assertThat(asShipment.getPayload().getAmazonShipmentId()).isEqualTo(1001L);
+    }
+
+    @Test
+    @DisplayName("Should reject a body that is not an event envelope")
+    void testMalformed_Rejected() {
+        assertThatThrownBy(() -> EventProtoCodec.decode(new byte[] {(byte) 0xFF, 0x01, 0x02}))
+            .isInstanceOf(InvalidProtocolBufferException.class);
+    }
+
+    @Test
+    @DisplayName("Benchmark: size and codec cost of 50k events, JSON vs protobuf")
+    void benchmarkCodec() throws IOException {
+        int events = 50_000;
+        List<BusinessEvent<?>> samples = List.of(notificationEvent(), shipmentEvent(), auditEvent());
+        TypeReference<BusinessEvent<NotificationPayload>> notificationType = new TypeReference<>() { };
+
+        for (BusinessEvent<?> sample : samples) {
+            System.out.printf("%-24s json %4d bytes, protobuf %4d bytes%n",
+                sample.getPayload().getClass().getSimpleName(),
+                objectMapper.writeValueAsBytes(sample).length, EventProtoCodec.encode(sample, objectMapper).length);
+        }
+
+        // Warm both paths before timing
+        BusinessEvent<NotificationPayload> event = notificationEvent();
+        for (int i = 0; i < 5_000; i++) {
+            objectMapper.readValue(objectMapper.writeValueAsBytes(event), notificationType);
+            EventProtoCodec.decode(EventProtoCodec.encode(event, objectMapper));
+        }
+
+        long jsonBytes = 0;
+        long jsonStart = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            byte[] body = objectMapper.writeValueAsBytes(event);
+            jsonBytes += body.length;
+            objectMapper.readValue(body, notificationType);
+        }
+        double jsonSeconds = (System.nanoTime() - jsonStart) / 1e9;
+
+        long protoBytes = 0;
+        long protoStart = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            byte[] body = EventProtoCodec.encode(event, objectMapper);
+            protoBytes += body.length;
+            EventProtoCodec.decode(body);
+        }
+        double protoSeconds = (System.nanoTime() - protoStart) / 1e9;
+
+        System.out.printf("json:     %.0f events/s encode+decode, %d bytes each%n",
+            events / jsonSeconds, jsonBytes / events);
+        System.out.printf("protobuf: %.0f events/s encode+decode, %d bytes each%n",
+            events / protoSeconds, protoBytes / events);
+
+        assertThat(protoBytes).isLessThan(jsonBytes / 2);
+        assertThat(protoSeconds).isLessThan(jsonSeconds);
+    }
+
+    // Helper methods
+
+    private <T> BusinessEvent<Object> viaJson(BusinessEvent<?> event, TypeReference<BusinessEvent<T>> type)
+            throws IOException {
+        @SuppressWarnings("unchecked")
+        BusinessEvent<Object> read = (BusinessEvent<Object>) (BusinessEvent<?>)
+            objectMapper.readValue(objectMapper.writeValueAsBytes(event), type);
+        return read;
+    }
+
+    static BusinessEvent<NotificationPayload> notificationEvent() {
+        NotificationPayload payload = new NotificationPayload();
+        payload.setNotificationId("notif-7f3a9c2e");
+        payload.setRecipientUserId(1042L);
+        payload.setRecipientEmail("customer@example.com");
+        payload.setRecipientPhone("+15551234567");
+        payload.setNotificationTypes(List.of(NotificationPayload.NotificationType.EMAIL,
+            NotificationPayload.NotificationType.IN_APP_NOTIFICATION));
+        payload.setSubject("Your package is out for delivery");
+        payload.setMessage("Shipment 1001 is on truck 7 and will arrive today.");
+        payload.setTemplateId("out-for-delivery");
+        payload.addTemplateVariable("trackingNumber", "UPS1001");
+        payload.addTemplateVariable("eta", "2026-10-19T15:00:00Z");
+        payload.addTemplateVariable("truckId", 7);
+        payload.setPriority(NotificationPayload.Priority.HIGH);
+        payload.setScheduledDeliveryTime(Instant.parse("2026-10-19T08:30:00.123456Z"));
+        payload.setMaxRetryAttempts(5);
+        payload.setCurrentAttempt(0);
+        payload.setCategory("delivery");
+        payload.setRelatedEntityId("1001");
+        payload.setRelatedEntityType("Shipment");
+        payload.setActions(List.of(new NotificationPayload.NotificationAction("track", "Track", "/track/UPS1001", "LINK")));
+        payload.addMetadata("source", "dispatch");
+        return new BusinessEvent<>("evt-3b1f", "notification.high.delivery", Instant.parse("2026-10-19T08:00:00.5Z"),
+            "mini-ups-backend", "corr-8842", payload, "1.0");
+    }
+
+    static BusinessEvent<ShipmentCreationPayload> shipmentEvent() {
+        ShipmentCreationPayload payload = new ShipmentCreationPayload();
+        payload.setAmazonShipmentId(1001L);
+        payload.setWarehouseId(3);
+        payload.setDestX(12);
+        payload.setDestY(-4);
+        payload.setUserId(1042L);
+        payload.setPackageDescription("Books");
+        payload.setPackageWeight(2.5);
+        payload.setPriority("STANDARD");
+        return new BusinessEvent<>("evt-9c01", "shipment.create.request", Instant.parse("2026-10-19T08:00:00Z"),
+            "mini-ups-backend", "corr-8842", payload, "1.0");
+    }
+
+    static BusinessEvent<AuditLogPayload> auditEvent() {
+        AuditLogPayload payload = new AuditLogPayload();
+        payload.setOperationType("SHIPMENT_CREATE");
+        payload.setOperationResult("SUCCESS");
+        payload.setOperationTimestamp(Instant.parse("2026-10-19T08:00:01Z"));
+        payload.setUserId(1042L);
+        payload.setUsername("alice");
+        payload.setEntityType("Shipment");
+        payload.setEntityId("1001");
+        payload.setResultCode(200);
+        payload.setOperationDurationMs(12L);
+        payload.setEndpoint("/api/shipment");
+        payload.setHttpMethod("POST");
+        payload.addAdditionalData("truckId", 7);
+        return new BusinessEvent<>("evt-a77d", "audit.log.created", Instant.parse("2026-10-19T08:00:01Z"),
+            "mini-ups-backend", "corr-8842", payload, "1.0");
+    }
+}
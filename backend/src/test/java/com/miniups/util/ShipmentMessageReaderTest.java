@@ -0,0 +1,211 @@
+package com.miniups.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.miniups.model.dto.ShipmentCreatedDto;
+import com.miniups.model.dto.ShipmentCreatedMessage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for ShipmentMessageReader.
+ * Tests the legacy, bare payload and batch shapes, field-level validation without
+ * exceptions, and allocation/throughput against the Map-based parsing it replaces.
+ */
+@DisplayName("ShipmentMessageReader Unit Tests")
+class ShipmentMessageReaderTest {
+
+    private static final String LEGACY = "{\"message_type\":\"ShipmentCreated\","
+        + "\"timestamp\":\"2025-04-20T10:15:30.123456\","
+        + "\"payload\":{\"user_id\":7,\"email\":\"a@example.com\",\"shipment_id\":1001,"
+        + "\"warehouse_id\":3,\"destination_x\":12,\"destination_y\":-4,\"ups_account\":\"acct\","
+        + "\"weight\":2.5,\"items\":[{\"name\":\"book\",\"qty\":2}],\"notes\":null}}";
+
+    @Test
+    @DisplayName("Should read the legacy message shape in one pass")
+    void testRead_LegacyShape() throws IOException {
+        // When
+        ShipmentCreatedMessage message = ShipmentMessageReader.read(bytes(LEGACY));
+
+        // Then
+        assertThat(message.isValid()).isTrue();
+        assertThat(message.isShipmentCreated()).isTrue();
+        assertThat(message.getTimestamp()).isEqualTo(LocalDateTime.of(2025, 4, 20, 10, 15, 30, 123_456_000));
+        assertThat(message.getUserId()).isEqualTo(7L);
+        assertThat(message.getEmail()).isEqualTo("a@example.com");
+        assertThat(message.getShipmentId()).isEqualTo("1001");
+        assertThat(message.getWarehouseId()).isEqualTo(3L);
+        assertThat(message.getDestinationX()).isEqualTo(12);
+        assertThat(message.getDestinationY()).isEqualTo(-4);
+        assertThat(message.getUpsAccount()).isEqualTo("acct");
+        assertThat(message.getWeight()).isEqualByComparingTo("2.5");
+    }
+
+    @Test
+    @DisplayName("Should read a bare payload and numbers sent as strings")
+    void testRead_BarePayloadWithStringNumbers() throws IOException {
+        // Given
+        String json = "{\"email\":\"b@example.com\",\"shipment_id\":\"S-9\",\"warehouse_id\":\"5\","
+            + "\"destination_x\":\"1\",\"destination_y\":2.9,\"weight\":\"1e1\"}";
+
+        // When
+        ShipmentCreatedMessage message = ShipmentMessageReader.read(bytes(json));
+
+        // Then
+        assertThat(message.isValid()).isTrue();
+        assertThat(message.getMessageType()).isNull();
+        assertThat(message.getWarehouseId()).isEqualTo(5L);
+        assertThat(message.getDestinationX()).isEqualTo(1);
+        assertThat(message.getDestinationY()).isEqualTo(2);
+        assertThat(message.getWeight()).isEqualByComparingTo(BigDecimal.TEN);
+    }
+
+    @Test
+    @DisplayName("Should collect every field error instead of stopping at the first")
+    void testRead_FieldErrorsCollected() throws IOException {
+        // Given
+        String json = "{\"message_type\":\"ShipmentCreated\",\"payload\":{\"shipment_id\":{\"id\":1},"
+            + "\"warehouse_id\":\"north\",\"destination_x\":99999999999,\"destination_y\":3,\"weight\":\"heavy\"}}";
+
+        // When
+        ShipmentCreatedMessage message = ShipmentMessageReader.read(bytes(json));
+
+        // Then
+        assertThat(message.isValid()).isFalse();
+        assertThat(message.getErrors()).containsExactly(
+            "shipment_id must be a string or number",
+            "warehouse_id must be a number",
+            "destination_x is out of range",
+            "weight must be a number",
+            "email is required");
+    }
+
+    @Test
+    @DisplayName("Should read both batch shapes and keep non-object elements as null")
+    void testReadBatch_Shapes() throws IOException {
+        // Given
+        String payload = "{\"email\":\"c@example.com\",\"shipment_id\":1,\"warehouse_id\":1,"
+            + "\"destination_x\":1,\"destination_y\":1}";
+        String array = "[" + LEGACY + "," + payload + ",42,[1,2],{\"shipment_id\":2}]";
+        String wrapped = "{\"source\":{\"region\":\"us\"},\"shipments\":[" + payload + "]}";
+
+        // When
+        List<ShipmentCreatedMessage> fromArray = ShipmentMessageReader.readBatch(bytes(array));
+        List<ShipmentCreatedMessage> fromObject = ShipmentMessageReader.readBatch(bytes(wrapped));
+
+        // Then
+        assertThat(fromArray).hasSize(5);
+        assertThat(fromArray.get(0).getShipmentId()).isEqualTo("1001");
+        assertThat(fromArray.get(1).isValid()).isTrue();
+        assertThat(fromArray.get(2)).isNull();
+        assertThat(fromArray.get(3)).isNull();
+        assertThat(fromArray.get(4).getErrors()).contains("email is required");
+        // The reused builder must not leak fields between elements
+        assertThat(fromArray.get(4).getEmail()).isNull();
+        assertThat(fromObject).hasSize(1);
+        assertThat(fromObject.get(0).getEmail()).isEqualTo("c@example.com");
+        assertThat(ShipmentMessageReader.readBatch(bytes("{\"items\":[]}"))).isNull();
+    }
+
+    @Test
+    @DisplayName("Should drop an unreadable timestamp without failing the message")
+    void testParseTimestamp_Formats() {
+        assertThat(timestamp("2025-04-20T10:15:30")).isEqualTo(LocalDateTime.of(2025, 4, 20, 10, 15, 30));
+        assertThat(timestamp("2024-02-29T23:59:59.5")).isEqualTo(LocalDateTime.of(2024, 2, 29, 23, 59, 59, 500_000_000));
+        assertThat(timestamp("2025-02-29T00:00:00")).isNull();
+        assertThat(timestamp("2025-04-20 10:15:30")).isNull();
+        assertThat(timestamp("2025-04-20T10:15:30.")).isNull();
+        assertThat(timestamp("yesterday")).isNull();
+    }
+
+    @Test
+    @DisplayName("Should throw only for malformed JSON")
+    void testRead_MalformedJson() throws IOException {
+        assertThatThrownBy(() -> ShipmentMessageReader.read(bytes("{\"shipment_id\":")))
+            .isInstanceOf(IOException.class);
+        assertThat(ShipmentMessageReader.read(bytes("[1]")).getErrors())
+            .contains("message must be a JSON object");
+    }
+
+    @Test
+    @DisplayName("Benchmark: streaming reader vs Map parsing, allocation and throughput")
+    void benchmarkStreamingVsMap() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        byte[] body = bytes(LEGACY);
+        int iterations = 50_000;
+
+        // Warm up both paths
+        for (int i = 0; i < iterations; i++) {
+            mapPath(objectMapper, body);
+            ShipmentMessageReader.read(body);
+        }
+
+        long mapStart = System.nanoTime();
+        long mapBytes = allocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            mapPath(objectMapper, body);
+        }
+        mapBytes = allocatedBytes() - mapBytes;
+        double mapSeconds = (System.nanoTime() - mapStart) / 1e9;
+
+        long streamStart = System.nanoTime();
+        long streamBytes = allocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            ShipmentMessageReader.read(body);
+        }
+        streamBytes = allocatedBytes() - streamBytes;
+        double streamSeconds = (System.nanoTime() - streamStart) / 1e9;
+
+        System.out.printf("map:       %.0f msgs/s, %d bytes/msg%n", iterations / mapSeconds, mapBytes / iterations);
+        System.out.printf("streaming: %.0f msgs/s, %d bytes/msg%n", iterations / streamSeconds, streamBytes / iterations);
+
+        assertThat(streamBytes).isLessThan(mapBytes);
+    }
+
+    // Helper methods
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static LocalDateTime timestamp(String text) {
+        return ShipmentMessageReader.parseTimestamp(text.toCharArray(), 0, text.length());
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * What /api/shipment used to do per request: decode to a String, parse to a Map,
+     * serialise the Map again for the communication log, then convert by hand
+     */
+    @SuppressWarnings("unchecked")
+    private static ShipmentCreatedDto mapPath(ObjectMapper objectMapper, byte[] body) throws JsonProcessingException {
+        String rawJson = new String(body, StandardCharsets.UTF_8);
+        Map<String, Object> rawMessage = objectMapper.readValue(rawJson, Map.class);
+        objectMapper.writeValueAsString(rawMessage);
+        Map<String, Object> payload = (Map<String, Object>) rawMessage.get("payload");
+        ShipmentCreatedDto dto = new ShipmentCreatedDto();
+        dto.setUserId(((Number) payload.get("user_id")).longValue());
+        dto.setEmail(String.valueOf(payload.get("email")));
+        dto.setShipmentId(String.valueOf(payload.get("shipment_id")));
+        dto.setWarehouseId(((Number) payload.get("warehouse_id")).longValue());
+        dto.setDestinationX(((Number) payload.get("destination_x")).intValue());
+        dto.setDestinationY(((Number) payload.get("destination_y")).intValue());
+        dto.setWeight(new BigDecimal(payload.get("weight").toString()));
+        dto.setUpsAccount((String) payload.get("ups_account"));
+        return dto;
+    }
+}
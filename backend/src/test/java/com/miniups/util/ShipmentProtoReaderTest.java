@@ -0,0 +1,200 @@
+package com.miniups.util;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.miniups.model.dto.ShipmentCreatedMessage;
+import com.miniups.proto.AmazonUpsProto.AShipmentBatch;
+import com.miniups.proto.AmazonUpsProto.AShipmentCreated;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for ShipmentProtoReader.
+ * Tests the single, batch and length-delimited stream shapes, field-level validation,
+ * and parse cost and payload size against the JSON reader.
+ */
+@DisplayName("ShipmentProtoReader Unit Tests")
+class ShipmentProtoReaderTest {
+
+    @Test
+    @DisplayName("Should read a single shipment into the same message as the JSON reader")
+    void testRead_MatchesJsonReader() throws IOException {
+        // Given
+        byte[] json = ("{\"message_type\":\"ShipmentCreated\",\"payload\":{\"user_id\":7,\"email\":\"a@example.com\","
+            + "\"shipment_id\":\"1001\",\"warehouse_id\":3,\"destination_x\":12,\"destination_y\":-4,"
+            + "\"ups_account\":\"acct\",\"weight\":2.5}}").getBytes(StandardCharsets.UTF_8);
+
+        // When
+        ShipmentCreatedMessage fromProto = ShipmentProtoReader.read(shipment("1001").toByteArray());
+        ShipmentCreatedMessage fromJson = ShipmentMessageReader.read(json);
+
+        // Then
+        assertThat(fromProto.isValid()).isTrue();
+        assertThat(fromProto.isShipmentCreated()).isTrue();
+        assertThat(fromProto.toDto()).usingRecursiveComparison().isEqualTo(fromJson.toDto());
+    }
+
+    @Test
+    @DisplayName("Should collect missing fields and bad weights instead of failing")
+    void testRead_FieldErrorsCollected() throws IOException {
+        // Given
+        AShipmentCreated shipment = AShipmentCreated.newBuilder()
+            .setShipmentId("S-1")
+            .setWeight("heavy")
+            .build();
+
+        // When
+        ShipmentCreatedMessage message = ShipmentProtoReader.read(shipment.toByteArray());
+
+        // Then
+        assertThat(message.isValid()).isFalse();
+        assertThat(message.getErrors()).containsExactly("weight must be a number", "email is required",
+            "warehouse_id is required", "destination_x is required", "destination_y is required");
+    }
+
+    @Test
+    @DisplayName("Should read every shipment of a batch in order")
+    void testReadBatch_InOrder() throws IOException {
+        // Given
+        AShipmentBatch batch = AShipmentBatch.newBuilder()
+            .addShipments(shipment("S-1"))
+            .addShipments(AShipmentCreated.newBuilder().setShipmentId("S-2"))
+            .addShipments(shipment("S-3"))
+            .build();
+
+        // When
+        List<ShipmentCreatedMessage> messages = ShipmentProtoReader.readBatch(batch.toByteArray());
+
+        // Then
+        assertThat(messages).extracting(ShipmentCreatedMessage::getShipmentId).containsExactly("S-1", "S-2", "S-3");
+        assertThat(messages).extracting(ShipmentCreatedMessage::isValid).containsExactly(true, false, true);
+    }
+
+    @Test
+    @DisplayName("Should hand a delimited stream over in chunks as it is read")
+    void testReadDelimited_Chunks() throws IOException {
+        // Given
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 5; i++) {
+            shipment("S-" + i).writeDelimitedTo(out);
+        }
+        List<List<String>> chunks = new ArrayList<>();
+
+        // When
+        int count = ShipmentProtoReader.readDelimited(new ByteArrayInputStream(out.toByteArray()), 2,
+            chunk -> chunks.add(chunk.stream().map(ShipmentCreatedMessage::getShipmentId).toList()));
+
+        // Then
+        assertThat(count).isEqualTo(5);
+        assertThat(chunks).containsExactly(List.of("S-0", "S-1"), List.of("S-2", "S-3"), List.of("S-4"));
+    }
+
+    @Test
+    @DisplayName("Should keep the chunks before a truncated message and then fail")
+    void testReadDelimited_Truncated() throws IOException {
+        // Given
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        shipment("S-0").writeDelimitedTo(out);
+        shipment("S-1").writeDelimitedTo(out);
+        byte[] body = out.toByteArray();
+        byte[] truncated = Arrays.copyOf(body, body.length - 3);
+        List<String> read = new ArrayList<>();
+
+        // When / Then
+        assertThatThrownBy(() -> ShipmentProtoReader.readDelimited(new ByteArrayInputStream(truncated), 1,
+            chunk -> read.add(chunk.get(0).getShipmentId())))
+            .isInstanceOf(InvalidProtocolBufferException.class);
+        assertThat(read).containsExactly("S-0");
+    }
+
+    @Test
+    @DisplayName("Should reject a length prefix far beyond any shipment")
+    void testReadDelimited_OversizedLength() {
+        // Given - varint 2^20
+        byte[] body = {(byte) 0x80, (byte) 0x80, 0x40};
+
+        // When / Then
+        assertThatThrownBy(() -> ShipmentProtoReader.readDelimited(new ByteArrayInputStream(body), 10, chunk -> { }))
+            .isInstanceOf(InvalidProtocolBufferException.class)
+            .hasMessageContaining("invalid length");
+    }
+
+    @Test
+    @DisplayName("Benchmark: protobuf vs JSON batch, parse cost and payload size")
+    void benchmarkProtoVsJson() throws IOException {
+        int shipments = 100;
+        AShipmentBatch.Builder batch = AShipmentBatch.newBuilder();
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < shipments; i++) {
+            batch.addShipments(shipment("AMZ-" + (100000 + i)).toBuilder().setTimestamp(1745144130123L));
+            json.append(i > 0 ? "," : "").append("{\"message_type\":\"ShipmentCreated\",")
+                .append("\"timestamp\":\"2025-04-20T10:15:30.123456\",\"payload\":{\"user_id\":7,")
+                .append("\"email\":\"a@example.com\",\"shipment_id\":\"AMZ-").append(100000 + i)
+                .append("\",\"warehouse_id\":3,\"destination_x\":12,\"destination_y\":-4,")
+                .append("\"ups_account\":\"acct\",\"weight\":2.5}}");
+        }
+        byte[] protoBody = batch.build().toByteArray();
+        byte[] jsonBody = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        int iterations = 2_000;
+
+        // Warm up both paths
+        for (int i = 0; i < iterations; i++) {
+            ShipmentMessageReader.readBatch(jsonBody);
+            ShipmentProtoReader.readBatch(protoBody);
+        }
+
+        long jsonStart = System.nanoTime();
+        long jsonBytes = allocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            ShipmentMessageReader.readBatch(jsonBody);
+        }
+        jsonBytes = allocatedBytes() - jsonBytes;
+        double jsonSeconds = (System.nanoTime() - jsonStart) / 1e9;
+
+        long protoStart = System.nanoTime();
+        long protoBytes = allocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            ShipmentProtoReader.readBatch(protoBody);
+        }
+        protoBytes = allocatedBytes() - protoBytes;
+        double protoSeconds = (System.nanoTime() - protoStart) / 1e9;
+
+        long messages = (long) iterations * shipments;
+        System.out.printf("json:     %d payload bytes/msg, %.0f msgs/s, %d heap bytes/msg%n",
+            jsonBody.length / shipments, messages / jsonSeconds, jsonBytes / messages);
+        System.out.printf("protobuf: %d payload bytes/msg, %.0f msgs/s, %d heap bytes/msg%n",
+            protoBody.length / shipments, messages / protoSeconds, protoBytes / messages);
+
+        assertThat(protoBody.length).isLessThan(jsonBody.length / 2);
+    }
+
+    // Helper methods
+
+    private static AShipmentCreated shipment(String shipmentId) {
+        return AShipmentCreated.newBuilder()
+            .setShipmentId(shipmentId)
+            .setUserId(7)
+            .setEmail("a@example.com")
+            .setWarehouseId(3)
+            .setDestinationX(12)
+            .setDestinationY(-4)
+            .setUpsAccount("acct")
+            .setWeight("2.5")
+            .build();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,75 @@
+package com.miniups.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for TokenBucket.
+ * Tests bursts up to capacity, continuous refill capped at capacity, and waiting
+ * for a token only when it is due within the allowed wait.
+ */
+@DisplayName("TokenBucket Unit Tests")
+class TokenBucketTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private TokenBucket bucket;
+
+    @BeforeEach
+    void setUp() {
+        // 10 per second, bursts of 5
+        bucket = new TokenBucket(10, 5, now::get);
+    }
+
+    @Test
+    @DisplayName("Should allow a burst up to capacity, then refuse")
+    void testBurst_UpToCapacity() {
+        for (int i = 0; i < 5; i++) {
+            assertThat(bucket.tryAcquire()).isTrue();
+        }
+        assertThat(bucket.tryAcquire()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should refill at the rate without exceeding capacity")
+    void testRefill_CappedAtCapacity() {
+        // Given
+        for (int i = 0; i < 5; i++) {
+            bucket.tryAcquire();
+        }
+
+        // When - 100 ms is one token
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+        // Then
+        assertThat(bucket.tryAcquire()).isTrue();
+        assertThat(bucket.tryAcquire()).isFalse();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        assertThat(bucket.getAvailable()).isEqualTo(5.0);
+    }
+
+    @Test
+    @DisplayName("Should wait for a token due within the wait and refuse one due later")
+    void testAcquire_WaitsOnlyWithinLimit() throws InterruptedException {
+        // Given - real clock, so the wait actually sleeps
+        TokenBucket real = new TokenBucket(20, 1, null);
+        assertThat(real.tryAcquire()).isTrue();
+
+        // When - the next token is about 50 ms away
+        boolean refused = real.acquire(5, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        boolean waited = real.acquire(200, TimeUnit.MILLISECONDS);
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Then
+        assertThat(refused).isFalse();
+        assertThat(waited).isTrue();
+        assertThat(waitedMs).isBetween(20L, 200L);
+    }
+}